@@ -0,0 +1,150 @@
+package com.example.musicplayer;
+
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.ServiceTestRule;
+import com.example.musicplayer.library.TrackStore;
+import com.example.musicplayer.model.MusicItem;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+// Measures the silence between the end of one track and the first frame of the next. Each
+// track's timeline is anchored from its own playback position: the first track ends at
+// sampleTime + (duration - position), the second started at sampleTime - position.
+@RunWith(AndroidJUnit4.class)
+public class GaplessPlaybackTest {
+    private static final String TAG = "GaplessPlaybackTest";
+    private static final int TAIL_MS = 3000; // Played from this far before the end of the first track
+    private static final long MAX_GAP_MS = 60;
+
+    @Rule
+    public final ServiceTestRule serviceRule = new ServiceTestRule();
+
+    @Test
+    public void testGapBetweenTracks() throws Exception {
+        Intent serviceIntent = new Intent(
+            InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            MusicPlayerService.class);
+        final MusicPlayerService service =
+            ((MusicPlayerService.MusicPlayerBinder) serviceRule.bindService(serviceIntent)).getService();
+
+        final TrackStore tracks = new TrackStore();
+        tracks.addAll(Arrays.asList(
+            new MusicItem("First", "Artist", "Album", 0, "mp3_test.mp3"),
+            new MusicItem("Second", "Artist", "Album", 0, "mp3_test.mp3")));
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.setTrackStore(tracks);
+                service.playSongAtIndex(0);
+            }
+        });
+        // Tracks are prepared on the playback thread; the duration is published once that is done
+        long prepareDeadline = SystemClock.elapsedRealtime() + 5000;
+        while (service.getDuration() <= 0 && SystemClock.elapsedRealtime() < prepareDeadline) {
+            SystemClock.sleep(5);
+        }
+        assertTrue("first track never prepared", service.getDuration() > 0);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Within the preload lead, so the second track is prepared at once
+                service.seekTo(Math.max(0, service.getDuration() - TAIL_MS));
+            }
+        });
+
+        long deadline = SystemClock.elapsedRealtime() + TAIL_MS + 5000;
+        long firstEnd = -1;
+        long secondStart = -1;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            long now = SystemClock.elapsedRealtime();
+            int index = service.getCurrentSongIndex();
+            int position = service.getCurrentPosition();
+            int duration = service.getDuration();
+            if (index == 0) {
+                // Only while the position still advances; it sticks at the end once playback completes
+                if (position < duration - 50) firstEnd = now + (duration - position);
+            } else if (position > 0) {
+                secondStart = now - position;
+                break;
+            }
+            SystemClock.sleep(1);
+        }
+
+        assertTrue("first track never played", firstEnd > 0);
+        assertTrue("second track never started", secondStart > 0);
+        long gap = secondStart - firstEnd;
+        Log.i(TAG, "Gap between tracks: " + gap + " ms");
+        assertTrue("gap of " + gap + " ms", gap <= MAX_GAP_MS);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.pause();
+            }
+        });
+    }
+
+    // A WAV is never chained on a second MediaPlayer: it starts on the PCM path once the MP3 before
+    // it completes, and plays from there
+    @Test
+    public void testWavAfterMp3() throws Exception {
+        Intent serviceIntent = new Intent(
+            InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            MusicPlayerService.class);
+        final MusicPlayerService service =
+            ((MusicPlayerService.MusicPlayerBinder) serviceRule.bindService(serviceIntent)).getService();
+
+        final TrackStore tracks = new TrackStore();
+        tracks.addAll(Arrays.asList(
+            new MusicItem("First", "Artist", "Album", 0, "mp3_test.mp3"),
+            new MusicItem("Tone", "Artist", "Album", 0, "wav_test.wav")));
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.setTrackStore(tracks);
+                service.playSongAtIndex(0);
+            }
+        });
+        long prepareDeadline = SystemClock.elapsedRealtime() + 5000;
+        while (service.getDuration() <= 0 && SystemClock.elapsedRealtime() < prepareDeadline) {
+            SystemClock.sleep(5);
+        }
+        assertTrue("first track never prepared", service.getDuration() > 0);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.seekTo(Math.max(0, service.getDuration() - TAIL_MS));
+            }
+        });
+
+        // The WAV is 1.5 s of mono 16-bit PCM; its position has to move once it is current
+        long deadline = SystemClock.elapsedRealtime() + TAIL_MS + 5000;
+        boolean advanced = false;
+        while (SystemClock.elapsedRealtime() < deadline) {
+            if (service.getCurrentSongIndex() == 1 && service.getCurrentPosition() > 0) {
+                advanced = true;
+                break;
+            }
+            SystemClock.sleep(5);
+        }
+        assertTrue("WAV never started", advanced);
+        assertTrue(service.isPlaying());
+        assertEquals(1500, service.getDuration(), 10);
+        assertEquals(0, service.getFailureCount());
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.pause();
+            }
+        });
+    }
+}
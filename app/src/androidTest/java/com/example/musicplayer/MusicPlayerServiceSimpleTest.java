@@ -2,9 +2,14 @@ package com.example.musicplayer;
 
 import android.content.Intent;
 import android.os.IBinder;
+import android.os.SystemClock;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.platform.app.InstrumentationRegistry;
 import androidx.test.rule.ServiceTestRule;
+import com.example.musicplayer.library.TrackStore;
+import com.example.musicplayer.model.MusicItem;
+import com.example.musicplayer.playback.PlaybackClock;
+import java.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -29,4 +34,46 @@ public class MusicPlayerServiceSimpleTest {
         assertNotNull(service);
         // 可以直接调用service的方法进行测试
     }
-} 
\ No newline at end of file
+
+    // Player work happens on the playback thread; a command only posts to its mailbox. The settled
+    // track is prepared while the main thread is still busy, which it could not be if any of that
+    // work needed the main thread.
+    @Test
+    public void testCommandsDoNotBlockMainThread() throws Exception {
+        Intent serviceIntent = new Intent(
+            InstrumentationRegistry.getInstrumentation().getTargetContext(),
+            MusicPlayerService.class);
+        final MusicPlayerService service =
+            ((MusicPlayerService.MusicPlayerBinder) serviceRule.bindService(serviceIntent)).getService();
+        final TrackStore tracks = new TrackStore();
+        tracks.addAll(Arrays.asList(
+            new MusicItem("One", "Artist", "Album", 0, "mp3_test.mp3"),
+            new MusicItem("Two", "Artist", "Album", 0, "m4a_test.m4a"),
+            new MusicItem("Three", "Artist", "Album", 0, "ogg_test.ogg")));
+        final PlaybackClock.Anchor[] anchor = new PlaybackClock.Anchor[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.setTrackStore(tracks);
+                service.playSongAtIndex(0);
+                service.nextTrack();
+                service.nextTrack();
+                service.prevTrack();
+                service.seekTo(1000); // Settles the skips on track Two
+                service.pause();
+                // Hold the main thread until the playback thread has prepared the settled track
+                long deadline = SystemClock.elapsedRealtime() + 5000;
+                anchor[0] = service.getClock().anchor();
+                while (anchor[0].durationMs <= 0 && SystemClock.elapsedRealtime() < deadline) {
+                    SystemClock.sleep(5);
+                    anchor[0] = service.getClock().anchor();
+                }
+            }
+        });
+        assertTrue("not prepared while the main thread was busy", anchor[0].durationMs > 0);
+        assertEquals(tracks.getTrackId(1), anchor[0].trackId);
+        assertFalse(anchor[0].isMoving());
+        assertEquals(1, service.getCurrentSongIndex());
+        assertFalse(service.isPlaying());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.musicplayer;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.ServiceTestRule;
+import com.example.musicplayer.playback.PlaybackJournal;
+import com.example.musicplayer.playback.RepeatMode;
+import java.io.File;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+// The service resumes the journal's track at its position before any library is handed to it,
+// and reports how long that took
+@RunWith(AndroidJUnit4.class)
+public class ResumeFromJournalTest {
+    private static final String TAG = "ResumeFromJournalTest";
+    private static final int SAVED_POSITION_MS = 2000;
+
+    @Rule
+    public final ServiceTestRule serviceRule = new ServiceTestRule();
+
+    @Test
+    public void testResumesBeforeScan() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PlaybackJournal journal =
+            new PlaybackJournal(new File(context.getFilesDir(), MusicPlayerService.JOURNAL_FILE_NAME));
+        journal.load();
+        journal.setTrack("mp3_test.mp3", SAVED_POSITION_MS);
+        journal.setPlaying(true);
+        journal.setModes(false, RepeatMode.ALL);
+        journal.setUpNext(Collections.<String>emptyList());
+        journal.flush();
+
+        long bindStart = SystemClock.uptimeMillis();
+        final MusicPlayerService service = ((MusicPlayerService.MusicPlayerBinder) serviceRule.bindService(
+            new Intent(context, MusicPlayerService.class))).getService();
+
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (!service.getClock().anchor().isMoving() && SystemClock.uptimeMillis() < deadline) {
+            SystemClock.sleep(1);
+        }
+        long bindToAudio = SystemClock.uptimeMillis() - bindStart;
+        assertTrue("never resumed", service.getClock().anchor().isMoving());
+        assertTrue("resumed at " + service.getCurrentPosition(), service.getCurrentPosition() >= SAVED_POSITION_MS);
+        Log.i(TAG, "Service start to first audio: " + bindToAudio + " ms, process start to first audio: "
+            + service.getColdStartToAudioMs() + " ms");
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                service.pause();
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.musicplayer.adapter;
+
+import android.content.Context;
+import android.view.View;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.example.musicplayer.library.TrackStore;
+import com.example.musicplayer.model.MusicItem;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class MusicAdapterBindTest {
+    private static class CountingAdapter extends MusicAdapter {
+        int fullBinds;
+        int partialBinds;
+
+        CountingAdapter(Context context, TrackStore tracks) {
+            super(context, tracks);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position,
+                                     @NonNull List<Object> payloads) {
+            if (payloads.isEmpty()) {
+                fullBinds++;
+            } else {
+                partialBinds++;
+            }
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    @Test
+    public void testSongChangeRebindsOnlyOldAndNewRows() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+                TrackStore tracks = new TrackStore();
+                for (int i = 0; i < 50; i++) {
+                    tracks.add(new MusicItem("Song " + i, "Artist", "Album", 180000, "song" + i + ".mp3"));
+                }
+                CountingAdapter adapter = new CountingAdapter(context, tracks);
+                RecyclerView recyclerView = new RecyclerView(context);
+                recyclerView.setItemAnimator(null); // Rebind in place so every bind is counted once
+                recyclerView.setLayoutManager(new LinearLayoutManager(context));
+                recyclerView.setAdapter(adapter);
+                layout(recyclerView);
+                assertTrue("some rows should be visible", adapter.fullBinds > 2);
+
+                adapter.fullBinds = 0;
+                adapter.partialBinds = 0;
+                adapter.updateCurrentSongIndex(1);
+                layout(recyclerView);
+                assertEquals(0, adapter.fullBinds);
+                assertEquals(2, adapter.partialBinds);
+
+                adapter.partialBinds = 0;
+                adapter.updateCurrentSongIndex(1);
+                layout(recyclerView);
+                assertEquals(0, adapter.fullBinds);
+                assertEquals(0, adapter.partialBinds);
+            }
+        });
+    }
+
+    private static void layout(RecyclerView recyclerView) {
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1920, 1080);
+    }
+}
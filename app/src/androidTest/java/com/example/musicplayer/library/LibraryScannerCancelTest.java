@@ -0,0 +1,77 @@
+package com.example.musicplayer.library;
+
+import android.content.Context;
+import android.os.SystemClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.example.musicplayer.model.MusicItem;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+// Cancelling while the listing is still handing files to the worker pool ends the scan quietly:
+// no rejected submission escapes a scanner thread and nothing reaches the callback afterwards
+@RunWith(AndroidJUnit4.class)
+public class LibraryScannerCancelTest {
+    private static final int ROUNDS = 40;
+
+    @Test
+    public void testCancelWhileListing() throws Exception {
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<Throwable>());
+        final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                uncaught.add(e);
+            }
+        });
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                // Without an index every file is probed, so the listing submits one task per file
+                new File(context.getFilesDir(), "library.idx").delete();
+                final boolean[] cancelled = new boolean[1];
+                final List<String> lateCalls = new ArrayList<>();
+                final LibraryScanner[] scanner = new LibraryScanner[1];
+                InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        scanner[0] = new LibraryScanner(context, new LibraryScanner.Callback() {
+                            @Override
+                            public void onTracksScanned(List<MusicItem> batch) {
+                                if (cancelled[0]) lateCalls.add("onTracksScanned");
+                            }
+
+                            @Override
+                            public void onScanFinished(int totalTracks) {
+                                if (cancelled[0]) lateCalls.add("onScanFinished");
+                            }
+                        });
+                        scanner[0].start();
+                    }
+                });
+                // Spread the cancel over the first few milliseconds of the listing
+                SystemClock.sleep(round % 5);
+                InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                    @Override
+                    public void run() {
+                        scanner[0].cancel();
+                        cancelled[0] = true;
+                    }
+                });
+                SystemClock.sleep(20);
+                InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+                assertTrue("delivered after cancel: " + lateCalls, lateCalls.isEmpty());
+            }
+            assertTrue("uncaught: " + uncaught, uncaught.isEmpty());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+            new File(context.getFilesDir(), "library.idx").delete();
+        }
+    }
+}
@@ -4,16 +4,20 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
-import android.content.res.AssetFileDescriptor;
 import android.content.pm.ActivityInfo;
 import android.media.AudioManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.SeekBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -22,18 +26,28 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.musicplayer.adapter.MusicAdapter;
+import com.example.musicplayer.library.AlbumArtLoader;
+import com.example.musicplayer.library.BrowseView;
+import com.example.musicplayer.library.LibraryScanner;
+import com.example.musicplayer.library.LoudnessAnalyzer;
+import com.example.musicplayer.library.SearchIndex;
+import com.example.musicplayer.library.TrackStore;
 import com.example.musicplayer.model.MusicItem;
-import com.example.musicplayer.utils.MetadataExtractor;
-import java.io.IOException;
-import java.util.ArrayList;
+import com.example.musicplayer.playback.FrameTicker;
+import com.example.musicplayer.playback.PlaybackEventBus;
 import java.util.List;
 
-public class MainActivity extends AppCompatActivity implements MusicPlayerService.OnPlaybackListener {
+public class MainActivity extends AppCompatActivity implements PlaybackEventBus.Listener {
     private RecyclerView rvPlaylist;
     private MusicAdapter musicAdapter;
-    private List<MusicItem> musicList;
+    private TrackStore trackStore;
+    private SearchIndex searchIndex;
+    private EditText etSearch;
+    private TextView tvBrowseMode;
+    private BrowseView.Mode browseMode = BrowseView.Mode.FILES;
     private ImageButton btnPlay, btnNext, btnPrev, btnVolumeUp, btnVolumeDown;
     private SeekBar seekBar;
+    private ImageView ivCurrentCover;
     private TextView tvCurrentTitle, tvCurrentArtist, tvCurrentAlbum, tvCurrentTime, tvTotalTime;
     private boolean isPlaying = false;
     private int currentSongIndex = 0; // Track current song position
@@ -41,9 +55,19 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
     // Service binding
     private MusicPlayerService musicPlayerService;
     private boolean bound = false;
+    private PlaybackEventBus.Subscription playbackSubscription;
     
     // UI state
     private boolean isSeekBarUserTouching = false;
+    private boolean visible = false; // Between onStart and onStop
+
+    // Progress display, redrawn each frame from the service's clock without allocating
+    private FrameTicker progressTicker;
+    private final char[] currentTimeChars = new char[12];
+    private final char[] totalTimeChars = new char[12];
+    private int shownDuration = -1;
+    private int shownSecond = -1;
+    private int shownTotalSecond = -1;
     
     // Volume control variables
     private AudioManager audioManager;
@@ -52,6 +76,11 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
     private Handler volumeToastHandler;
     private Runnable volumeToastRunnable;
 
+    // Background library scan
+    private LibraryScanner libraryScanner;
+    // Measures the tracks that carry no gain tag once the scan is done
+    private LoudnessAnalyzer loudnessAnalyzer;
+
     // Service connection
     private ServiceConnection connection = new ServiceConnection() {
         @Override
@@ -62,10 +91,12 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
                 bound = true;
                 
                 // Set up the service with our music list and listener
-                if (musicList != null) {
-                    musicPlayerService.setMusicList(musicList);
+                if (trackStore != null) {
+                    musicPlayerService.setTrackStore(trackStore);
                 }
-                musicPlayerService.setOnPlaybackListener(MainActivity.this);
+                playbackSubscription = musicPlayerService.subscribe(MainActivity.this, MainActivity.this);
+                progressTicker = createProgressTicker();
+                progressTicker.setVisible(visible);
                 
                 // Update UI with current service state
                 isPlaying = musicPlayerService.isPlaying();
@@ -85,6 +116,11 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
 
         @Override
         public void onServiceDisconnected(ComponentName arg0) {
+            stopProgressTicker();
+            if (playbackSubscription != null) {
+                playbackSubscription.cancel();
+                playbackSubscription = null;
+            }
             bound = false;
             musicPlayerService = null;
             Log.d("MainActivity", "Service disconnected");
@@ -183,11 +219,14 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
         btnVolumeUp = findViewById(R.id.btnVolumeUp);
         btnVolumeDown = findViewById(R.id.btnVolumeDown);
         seekBar = findViewById(R.id.seekBar);
+        ivCurrentCover = findViewById(R.id.iv_current_cover);
         tvCurrentTitle = findViewById(R.id.tv_current_title);
         tvCurrentArtist = findViewById(R.id.tv_current_artist);
         tvCurrentAlbum = findViewById(R.id.tv_current_album);
         tvCurrentTime = findViewById(R.id.tv_current_time);
         tvTotalTime = findViewById(R.id.tv_total_time);
+        etSearch = findViewById(R.id.et_search);
+        tvBrowseMode = findViewById(R.id.tv_browse_mode);
 
         // Bind to MusicPlayerService
         try {
@@ -203,7 +242,7 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (fromUser && bound && musicPlayerService != null) {
-                    tvCurrentTime.setText(formatTime(progress / 1000));
+                    showCurrentTime(progress / 1000);
                 }
             }
 
@@ -221,23 +260,103 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
             }
         });
 
-        // Setup RecyclerView
-        try {
-            musicList = getMusicListFromAssets();
-            Log.d("MusicPlayer", "Playlist created with " + musicList.size() + " songs");
-            musicAdapter = new MusicAdapter(this, musicList);
-            rvPlaylist.setLayoutManager(new LinearLayoutManager(this));
-            rvPlaylist.setAdapter(musicAdapter);
-            musicAdapter.updateCurrentSongIndex(currentSongIndex); // Set initial highlighting
-        } catch (Exception e) {
-            Log.e("MainActivity", "Error setting up RecyclerView: " + e.getMessage());
-            e.printStackTrace();
-            // Create empty list to prevent crashes
-            musicList = new ArrayList<>();
-            musicAdapter = new MusicAdapter(this, musicList);
-            rvPlaylist.setLayoutManager(new LinearLayoutManager(this));
-            rvPlaylist.setAdapter(musicAdapter);
-        }
+        // Setup RecyclerView; tracks are appended as the background scan finds them
+        trackStore = new TrackStore();
+        searchIndex = new SearchIndex();
+        musicAdapter = new MusicAdapter(this, trackStore);
+        rvPlaylist.setLayoutManager(new LinearLayoutManager(this));
+        rvPlaylist.setAdapter(musicAdapter);
+        musicAdapter.updateCurrentSongIndex(currentSongIndex); // Set initial highlighting
+
+        libraryScanner = new LibraryScanner(this, new LibraryScanner.Callback() {
+            @Override
+            public void onTracksScanned(List<MusicItem> batch) {
+                boolean firstBatch = trackStore.isEmpty();
+                int firstId = trackStore.size();
+                musicAdapter.addItems(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    MusicItem item = batch.get(i);
+                    searchIndex.add(firstId + i, item.getTitle(), item.getArtist(), item.getAlbum(), item.getSpellings());
+                }
+                if (musicAdapter.isFiltered()) {
+                    musicAdapter.setFilter(searchIndex.search(etSearch.getText().toString()));
+                }
+                // The track after the last one is no longer the first
+                if (bound && musicPlayerService != null) {
+                    musicPlayerService.onQueueChanged();
+                }
+                if (firstBatch) {
+                    updateCurrentSongDisplay();
+                }
+            }
+
+            @Override
+            public void onScanFinished(int totalTracks) {
+                Log.d("MusicPlayer", "Playlist created with " + totalTracks + " songs");
+                analyzeLoudness();
+                if (browseMode != BrowseView.Mode.FILES) {
+                    // Tracks found after the view was chosen were appended below it; regroup them
+                    musicAdapter.browse(browseMode, new Runnable() {
+                        @Override
+                        public void run() {
+                            syncCurrentSongIndex();
+                        }
+                    });
+                    return;
+                }
+                // Batches arrive in completion order; settle into asset order, moving only the rows that differ
+                musicAdapter.submitOrder(trackStore.orderByAssetName(), new Runnable() {
+                    @Override
+                    public void run() {
+                        syncCurrentSongIndex();
+                    }
+                });
+            }
+        });
+        libraryScanner.start();
+        loudnessAnalyzer = new LoudnessAnalyzer(this, libraryScanner.getIndex(), new LoudnessAnalyzer.Listener() {
+            @Override
+            public void onGainMeasured(int trackId, float gainDb) {
+                trackStore.setGainDb(trackId, gainDb);
+                if (bound && musicPlayerService != null) {
+                    musicPlayerService.onTrackGainChanged(trackId);
+                }
+            }
+        });
+
+        // Cycle the playlist grouping; each view is built once off the main thread, then reused
+        tvBrowseMode.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                BrowseView.Mode[] modes = BrowseView.Mode.values();
+                browseMode = modes[(browseMode.ordinal() + 1) % modes.length];
+                tvBrowseMode.setText(browseModeLabel(browseMode));
+                if (trackStore.isEmpty()) return;
+                musicAdapter.browse(browseMode, new Runnable() {
+                    @Override
+                    public void run() {
+                        syncCurrentSongIndex();
+                        scrollToCurrentSong();
+                    }
+                });
+            }
+        });
+
+        // Type-ahead search; each keystroke refines the previous results
+        etSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                musicAdapter.setFilter(searchIndex.search(s.toString()));
+            }
+        });
 
         // Make playlist items clickable
         musicAdapter.setOnItemClickListener(new MusicAdapter.OnItemClickListener() {
@@ -260,9 +379,10 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
 
         // Set initial song display (first song)
         updateCurrentSongDisplay();
-        
-        // Set initial time display
-        updateTimeDisplay();
+
+        // Set initial time display; the clock takes over once the service is bound
+        showCurrentTime(0);
+        showTotalTime(0);
 
         // Setup button listeners
         btnPlay.setOnClickListener(new View.OnClickListener() {
@@ -321,26 +441,14 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
     }
 
     // Service callback methods
-    @Override
-    public void onPlaybackProgress(int currentPosition, int duration) {
-        try {
-            if (!isSeekBarUserTouching) {
-                seekBar.setMax(duration);
-                seekBar.setProgress(currentPosition);
-                tvCurrentTime.setText(formatTime(currentPosition / 1000));
-                tvTotalTime.setText(formatTime(duration / 1000));
-            }
-        } catch (Exception e) {
-            Log.e("MainActivity", "Error in onPlaybackProgress: " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
     @Override
     public void onPlaybackStateChanged(boolean playing) {
         try {
             isPlaying = playing;
             updatePlayButton();
+            if (loudnessAnalyzer != null) {
+                loudnessAnalyzer.setPlaybackActive(playing);
+            }
         } catch (Exception e) {
             Log.e("MainActivity", "Error in onPlaybackStateChanged: " + e.getMessage());
             e.printStackTrace();
@@ -373,11 +481,16 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
     // Update the current song display on the left panel
     private void updateCurrentSongDisplay() {
         try {
-            if (musicList != null && !musicList.isEmpty() && currentSongIndex < musicList.size()) {
-                MusicItem currentSong = musicList.get(currentSongIndex);
-                tvCurrentTitle.setText(currentSong.getTitle());
-                tvCurrentArtist.setText(currentSong.getArtist());
-                tvCurrentAlbum.setText(currentSong.getAlbum());
+            if (trackStore != null && !trackStore.isEmpty() && currentSongIndex < trackStore.size()) {
+                int trackId = trackStore.getTrackId(currentSongIndex);
+                tvCurrentTitle.setText(trackStore.getTitle(trackId));
+                tvCurrentArtist.setText(trackStore.getArtist(trackId));
+                tvCurrentAlbum.setText(trackStore.getAlbum(trackId));
+                // Same cache as the playlist rows, decoded at the left panel's size
+                AlbumArtLoader.get(this).load(trackStore.getAssetFileName(trackId),
+                        trackStore.getArtOffset(trackId), trackStore.getArtLength(trackId), ivCurrentCover,
+                        getResources().getDimensionPixelSize(R.dimen.current_cover_width),
+                        getResources().getDimensionPixelSize(R.dimen.current_cover_height), R.drawable.left_cover);
             }
         } catch (Exception e) {
             Log.e("MainActivity", "Error in updateCurrentSongDisplay: " + e.getMessage());
@@ -385,81 +498,57 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
         }
     }
 
-    // Generate playlist based on available audio files in assets
-    private List<MusicItem> getMusicListFromAssets() {
-        List<MusicItem> list = new ArrayList<>();
-        try {
-            String[] files = getAssets().list("");
-            if (files != null) {
-                for (String file : files) {
-                    // Only support well-supported audio formats
-                    if (isAudioFormatSupported(file)) {
-                        // Extract metadata from the audio file
-                        MetadataExtractor.AudioMetadata metadata = MetadataExtractor.extractMetadata(this, file);
-                        
-                        // Use extracted metadata or fallback to defaults
-                        String title = metadata.title != null ? metadata.title : "Unknown Title";
-                        String artist = metadata.artist != null ? metadata.artist : "Unknown Artist";
-                        String album = metadata.album != null ? metadata.album : "Unknown Album";
-                        String duration = getAudioDurationStringFromAsset(file);
-                        
-                        list.add(new MusicItem(title, artist, album, duration, file));
-                        Log.d("MusicPlayer", "Found supported audio file: " + file + 
-                              " - Title: " + title + ", Artist: " + artist + ", Album: " + album);
-                    } else if (file.toLowerCase().endsWith(".flac") || file.toLowerCase().endsWith(".ogg") || 
-                               file.toLowerCase().endsWith(".wma")) {
-                        Log.w("MusicPlayer", "Skipping unsupported audio format: " + file);
-                    }
+    // Scroll to current song with smooth animation
+    private void scrollToCurrentSong() {
+        // Rows include headers and search filtering, so they differ from library positions
+        final int row = musicAdapter != null ? musicAdapter.rowOf(currentSongIndex) : -1;
+        if (rvPlaylist == null || row < 0) return;
+        // A long smooth scroll binds every row on the way, paging in the whole list up to the
+        // current song; jump to a screen away from it and glide only the rest
+        LinearLayoutManager layoutManager = (LinearLayoutManager) rvPlaylist.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        int screen = Math.max(1, last - first + 1);
+        if (first >= 0 && (row > last + screen || row < first - screen)) {
+            rvPlaylist.scrollToPosition(row > last ? row - screen : row + screen);
+            rvPlaylist.post(new Runnable() {
+                @Override
+                public void run() {
+                    rvPlaylist.smoothScrollToPosition(row);
                 }
-            }
-            Log.d("MusicPlayer", "Total supported audio files found: " + list.size());
-        } catch (IOException e) {
-            e.printStackTrace();
+            });
+            return;
         }
-        return list;
+        rvPlaylist.smoothScrollToPosition(row);
     }
 
-    // Helper to get duration string from asset file
-    private String getAudioDurationStringFromAsset(String assetFileName) {
-        int durationMs = 0;
-        try {
-            AssetFileDescriptor afd = getAssets().openFd(assetFileName);
-            android.media.MediaPlayer tempPlayer = new android.media.MediaPlayer();
-            tempPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            tempPlayer.prepare();
-            durationMs = tempPlayer.getDuration();
-            tempPlayer.release();
-            afd.close();
-            Log.d("MusicPlayer", "Duration for " + assetFileName + ": " + durationMs + "ms");
-        } catch (IOException e) {
-            Log.e("MusicPlayer", "Error getting duration for " + assetFileName + ": " + e.getMessage());
-            e.printStackTrace();
-            return "00:00"; // Return default duration for unsupported formats
-        } catch (Exception e) {
-            Log.e("MusicPlayer", "Unexpected error getting duration for " + assetFileName + ": " + e.getMessage());
-            e.printStackTrace();
-            return "00:00"; // Return default duration for unsupported formats
+    // The list was reordered under the current song; the service plays by position, so tell it where it went
+    private void syncCurrentSongIndex() {
+        currentSongIndex = musicAdapter.getCurrentSongIndex();
+        if (bound && musicPlayerService != null) {
+            musicPlayerService.setCurrentSongIndex(currentSongIndex);
         }
-        int durationSec = durationMs / 1000;
-        return MusicItem.formatDuration(durationSec);
     }
 
-
-
-    // Check if audio format is supported by MediaPlayer
-    private boolean isAudioFormatSupported(String fileName) {
-        if (fileName == null) return false;
-        String lowerFile = fileName.toLowerCase();
-        return lowerFile.endsWith(".mp3") || lowerFile.endsWith(".m4a") || 
-               lowerFile.endsWith(".aac") || lowerFile.endsWith(".wav");
+    // Queues every track whose gain is neither tagged nor measured yet, in scan order
+    private void analyzeLoudness() {
+        for (int id = 0; id < trackStore.size(); id++) {
+            if (Float.isNaN(trackStore.getGainDb(id))) {
+                loudnessAnalyzer.analyze(id, trackStore.getAssetFileName(id));
+            }
+        }
     }
 
-
-
-    // Scroll to current song with smooth animation
-    private void scrollToCurrentSong() {
-        if (rvPlaylist != null && currentSongIndex < musicList.size()) {
-            rvPlaylist.smoothScrollToPosition(currentSongIndex);
+    private int browseModeLabel(BrowseView.Mode mode) {
+        switch (mode) {
+            case TITLE:
+                return R.string.browse_title;
+            case ARTIST:
+                return R.string.browse_artist;
+            case ALBUM:
+                return R.string.browse_album;
+            default:
+                return R.string.browse_files;
         }
     }
 
@@ -506,36 +595,99 @@ public class MainActivity extends AppCompatActivity implements MusicPlayerServic
         }
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        visible = true;
+        if (progressTicker != null) {
+            progressTicker.setVisible(true);
+        }
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
         syncVolumeState();
     }
 
-    // Update time display
-    private void updateTimeDisplay() {
-        if (bound && musicPlayerService != null) {
-            tvCurrentTime.setText(formatTime(musicPlayerService.getCurrentPosition() / 1000));
-            tvTotalTime.setText(formatTime(musicPlayerService.getDuration() / 1000));
+    @Override
+    protected void onStop() {
+        visible = false;
+        if (progressTicker != null) {
+            progressTicker.setVisible(false);
+        }
+        super.onStop();
+    }
+
+    // Draws on display frames while the position moves and this screen is shown
+    private FrameTicker createProgressTicker() {
+        return new FrameTicker(musicPlayerService.getClock(), new FrameTicker.FrameScheduler() {
+            private Runnable frame;
+            private final Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    frame.run();
+                }
+            };
+
+            @Override
+            public void postFrame(Runnable frame) {
+                this.frame = frame;
+                Choreographer.getInstance().postFrameCallback(callback);
+            }
+
+            @Override
+            public void removeFrame(Runnable frame) {
+                Choreographer.getInstance().removeFrameCallback(callback);
+            }
+        }, new FrameTicker.Renderer() {
+            @Override
+            public void render(int positionMs, int durationMs) {
+                renderProgress(positionMs, durationMs);
+            }
+        });
+    }
+
+    private void stopProgressTicker() {
+        if (progressTicker != null) {
+            progressTicker.setVisible(false);
+            progressTicker = null;
         }
     }
 
-    // Update seek bar progress
-    private void updateSeekBarProgress() {
-        if (!isSeekBarUserTouching && bound && musicPlayerService != null) {
-            seekBar.setProgress(musicPlayerService.getCurrentPosition());
+    // Runs every frame, so views are only touched when what they show changes
+    private void renderProgress(int positionMs, int durationMs) {
+        if (isSeekBarUserTouching) return;
+        if (durationMs != shownDuration) {
+            shownDuration = durationMs;
+            seekBar.setMax(durationMs);
+            showTotalTime(durationMs / 1000);
         }
+        seekBar.setProgress(positionMs);
+        showCurrentTime(positionMs / 1000);
+    }
+
+    private void showCurrentTime(int seconds) {
+        if (seconds == shownSecond) return;
+        shownSecond = seconds;
+        tvCurrentTime.setText(currentTimeChars, 0, MusicItem.formatDuration(seconds, currentTimeChars));
     }
 
-    // Format seconds to mm:ss
-    private String formatTime(int seconds) {
-        int minutes = seconds / 60;
-        int remainingSeconds = seconds % 60;
-        return String.format("%02d:%02d", minutes, remainingSeconds);
+    private void showTotalTime(int seconds) {
+        if (seconds == shownTotalSecond) return;
+        shownTotalSecond = seconds;
+        tvTotalTime.setText(totalTimeChars, 0, MusicItem.formatDuration(seconds, totalTimeChars));
     }
 
     @Override
     protected void onDestroy() {
+        stopProgressTicker();
+        if (libraryScanner != null) {
+            libraryScanner.cancel();
+        }
+        if (loudnessAnalyzer != null) {
+            loudnessAnalyzer.cancel();
+        }
         if (bound) {
             unbindService(connection);
             bound = false;
@@ -2,219 +2,774 @@ package com.example.musicplayer;
 
 import android.app.Service;
 import android.content.Intent;
-import android.media.MediaPlayer;
+import android.media.session.MediaSession;
+import android.media.session.PlaybackState;
 import android.os.Binder;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
-import android.content.res.AssetFileDescriptor;
+import androidx.lifecycle.LifecycleOwner;
+import com.example.musicplayer.library.TrackStore;
+import com.example.musicplayer.playback.DspChain;
+import com.example.musicplayer.playback.FadeCurve;
+import com.example.musicplayer.playback.FailureCache;
+import com.example.musicplayer.playback.FailureSkipper;
+import com.example.musicplayer.playback.PlaybackClock;
+import com.example.musicplayer.playback.PlaybackEngine;
+import com.example.musicplayer.playback.PlaybackEventBus;
+import com.example.musicplayer.playback.PlaybackJournal;
+import com.example.musicplayer.playback.PlaybackQueue;
+import com.example.musicplayer.playback.RepeatMode;
+import com.example.musicplayer.playback.SkipCoalescer;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import com.example.musicplayer.model.MusicItem;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class MusicPlayerService extends Service {
+// Decides what plays; the PlaybackEngine plays it on its own thread. Every public method returns
+// at once: it resolves the track on the main thread and posts a command, and the engine reports
+// back through PlaybackEngine.Listener. Main thread only; subscribers to its events may be
+// anywhere.
+public class MusicPlayerService extends Service implements PlaybackEngine.Listener {
     private static final String TAG = "MusicPlayerService";
-    
+    static final String JOURNAL_FILE_NAME = "playback.journal";
+    static final String FAILURE_CACHE_FILE_NAME = "failures.cache";
+    // Changes are gathered this long before the journal is written
+    private static final long JOURNAL_FLUSH_DELAY_MS = 2000;
+    // How often the position is saved while playing; at most this much is lost to a power cut
+    private static final long POSITION_SAVE_MS = 15000;
+    // Engine id of a track started from the journal before the library scan has found it
+    private static final int RESTORED_TRACK_ID = Integer.MAX_VALUE;
+
     private final IBinder binder = new MusicPlayerBinder();
-    private MediaPlayer mediaPlayer;
-    private Handler progressHandler;
-    private Runnable progressRunnable;
-    private boolean isPlaying = false;
+    private PlaybackEngine engine;
+    private Handler mainHandler;
+    private boolean isPlaying = false; // What the user asked for; the engine catches up asynchronously
     private int currentSongIndex = 0;
-    private List<MusicItem> musicList;
-    private OnPlaybackListener playbackListener;
-    
-    // Interface for communication with MainActivity
-    public interface OnPlaybackListener {
-        void onPlaybackProgress(int currentPosition, int duration);
-        void onPlaybackStateChanged(boolean isPlaying);
-        void onSongChanged(int songIndex);
-    }
-    
+    private TrackStore tracks; // Shared with the playlist, read in place
+    // Which track follows which: order, shuffle, repeat and up next. currentSongIndex mirrors it.
+    private PlaybackQueue queue;
+    // Tracks that fail are stepped over for the rest of the run, and remembered across runs when
+    // the file itself is at fault
+    private FailureSkipper failureSkipper;
+    private FailureCache failureCache;
+    // EQ, pre-gain and limiter for the tracks played through the PCM path
+    private final DspChain dsp = new DspChain();
+    private int nextTrackId = -1; // Handed to the engine to chain after the current track
+    private Executor mainExecutor;
+    private PlaybackEventBus events;
+    private PlaybackEventBus.Subscription sessionSubscription;
+    // Bursts of next/prev/taps, from the UI or the media buttons, start only their last track
+    private SkipCoalescer skipCoalescer;
+    private MediaSession mediaSession;
+    // Playback state survives restarts in the journal, written on its own thread
+    private PlaybackJournal journal;
+    private HandlerThread journalThread;
+    private Handler journalHandler;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private PendingRestore pendingRestore;
+    private boolean awaitingFirstAudio;
+    private long coldStartToAudioMs = -1;
+
+    // Journal state that is playing, or about to, while the scan looks for its tracks by name
+    private static final class PendingRestore {
+        final PlaybackJournal.State state;
+        final int[] upNextIds; // -1 until found, QUEUED once handed to the queue
+        int trackId = -1;
+        int searched; // Track ids below this have been compared
+        boolean placed; // The current track has been found and is the queue's current one
+
+        static final int QUEUED = -2;
+
+        PendingRestore(PlaybackJournal.State state) {
+            this.state = state;
+            upNextIds = new int[state.upNext.size()];
+            Arrays.fill(upNextIds, -1);
+        }
+
+        // Looks through the tracks added since the last call; ids only ever grow
+        void search(TrackStore tracks) {
+            for (int id = searched; id < tracks.size(); id++) {
+                String name = tracks.getAssetFileName(id);
+                if (trackId < 0 && name.equals(state.assetFileName)) trackId = id;
+                for (int i = 0; i < upNextIds.length; i++) {
+                    if (upNextIds[i] == -1 && name.equals(state.upNext.get(i))) upNextIds[i] = id;
+                }
+            }
+            searched = tracks.size();
+        }
+
+        boolean isComplete() {
+            if (!placed) return false;
+            for (int id : upNextIds) {
+                if (id == -1) return false;
+            }
+            return true;
+        }
+    }
+
+    private final Runnable flushJournal = new Runnable() {
+        @Override
+        public void run() {
+            flushScheduled.set(false);
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not write the playback journal", e);
+            }
+        }
+    };
+
+    private final Runnable saveFailureCache = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                failureCache.save();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not save the failure cache", e);
+            }
+        }
+    };
+
+    private final Runnable savePosition = new Runnable() {
+        @Override
+        public void run() {
+            saveState();
+            mainHandler.postDelayed(this, POSITION_SAVE_MS);
+        }
+    };
+
+    // Hands the clock's anchors to the bus while some subscriber wants progress, and only then
+    private final PlaybackClock.Listener progressForwarder = new PlaybackClock.Listener() {
+        @Override
+        public void onAnchorChanged(PlaybackClock.Anchor anchor) {
+            events.postProgress(anchor);
+        }
+    };
+
+    private final Runnable updateProgressForwarding = new Runnable() {
+        @Override
+        public void run() {
+            if (engine == null) return;
+            if (events.isProgressWatched()) {
+                engine.clock().addListener(progressForwarder);
+            } else {
+                engine.clock().removeListener(progressForwarder);
+            }
+        }
+    };
+
     public class MusicPlayerBinder extends Binder {
         public MusicPlayerService getService() {
             return MusicPlayerService.this;
         }
     }
-    
+
     @Override
     public IBinder onBind(Intent intent) {
         return binder;
     }
-    
+
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Service created");
-        
-        mediaPlayer = new MediaPlayer();
-        progressHandler = new Handler(Looper.getMainLooper());
-        
-        // Setup progress tracking
-        progressRunnable = new Runnable() {
+
+        failureCache = new FailureCache(new File(getFilesDir(), FAILURE_CACHE_FILE_NAME));
+        engine = new PlaybackEngine(this, this, failureCache, dsp);
+        mainHandler = new Handler(Looper.getMainLooper());
+        queue = new PlaybackQueue(new PlaybackQueue.Tracks() {
             @Override
-            public void run() {
-                if (mediaPlayer != null && isPlaying) {
-                    int current = mediaPlayer.getCurrentPosition();
-                    int total = mediaPlayer.getDuration();
-                    if (playbackListener != null) {
-                        playbackListener.onPlaybackProgress(current, total);
-                    }
-                }
-                progressHandler.postDelayed(this, 500);
+            public int size() {
+                return tracks != null ? tracks.size() : 0;
+            }
+
+            @Override
+            public int trackIdAt(int position) {
+                return tracks.getTrackId(position);
+            }
+
+            @Override
+            public int positionOf(int trackId) {
+                return tracks.positionOf(trackId);
+            }
+
+            @Override
+            public boolean isPlayable(int trackId) {
+                // Failed on this run, or on an earlier one according to the failure cache
+                if (failureSkipper != null && !failureSkipper.isPlayable(trackId)) return false;
+                return !failureCache.contains(tracks.getAssetFileName(trackId));
+            }
+        }, new Random());
+        failureSkipper = new FailureSkipper(queue, new FailureSkipper.Player() {
+            @Override
+            public void play(int position) {
+                skipTo(position);
+            }
+        }, new PlaybackClock.TimeSource() {
+            @Override
+            public long now() {
+                return SystemClock.uptimeMillis();
+            }
+        }, new FailureSkipper.Listener() {
+            @Override
+            public void onGaveUp(int failuresInRow) {
+                Log.w(TAG, "Stopping after " + failuresInRow + " tracks in a row failed to play");
+                stopAtEnd();
+            }
+        });
+        mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable r) {
+                mainHandler.post(r);
             }
         };
-        
-        // Setup completion listener
-        mediaPlayer.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+        events = new PlaybackEventBus(new PlaybackEventBus.ProgressWatcher() {
+            @Override
+            public void onProgressWatchedChanged() {
+                // Subscriptions come and go on any thread; the clock is main-thread only
+                mainHandler.post(updateProgressForwarding);
+            }
+        });
+
+        skipCoalescer = new SkipCoalescer(new SkipCoalescer.Scheduler() {
             @Override
-            public void onCompletion(MediaPlayer mp) {
+            public void postDelayed(Runnable r, long delayMs) {
+                mainHandler.postDelayed(r, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable r) {
+                mainHandler.removeCallbacks(r);
+            }
+        }, SkipCoalescer.DEFAULT_WINDOW_MS, new SkipCoalescer.Listener() {
+            @Override
+            public void onSettled(int index) {
+                if (tracks == null || index < 0 || index >= tracks.size()) return;
+                currentSongIndex = index;
+                startCurrent();
+            }
+        });
+
+        // Steering-wheel and headset buttons arrive here and take the same paths as the UI
+        mediaSession = new MediaSession(this, TAG);
+        mediaSession.setCallback(new MediaSession.Callback() {
+            @Override
+            public void onPlay() {
+                if (!isPlaying) play();
+            }
+
+            @Override
+            public void onPause() {
+                pause();
+            }
+
+            @Override
+            public void onSkipToNext() {
                 nextTrack();
             }
+
+            @Override
+            public void onSkipToPrevious() {
+                prevTrack();
+            }
+
+            @Override
+            public void onSeekTo(long position) {
+                seekTo((int) position);
+            }
+        });
+        mediaSession.setFlags(MediaSession.FLAG_HANDLES_MEDIA_BUTTONS | MediaSession.FLAG_HANDLES_TRANSPORT_CONTROLS);
+        updateSessionState(false);
+        mediaSession.setActive(true);
+        sessionSubscription = events.subscribe(new PlaybackEventBus.Listener() {
+            @Override
+            public void onPlaybackStateChanged(boolean playing) {
+                updateSessionState(playing);
+            }
+
+            @Override
+            public void onSongChanged(int songIndex) {
+            }
+        }, mainExecutor);
+
+        // Picks up where the last run left off, without waiting for the library scan
+        journalThread = new HandlerThread("Journal", Process.THREAD_PRIORITY_BACKGROUND);
+        journalThread.start();
+        journalHandler = new Handler(journalThread.getLooper());
+        journal = new PlaybackJournal(new File(getFilesDir(), JOURNAL_FILE_NAME));
+        journalHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    failureCache.load();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not read the failure cache", e);
+                }
+                final PlaybackJournal.State state;
+                try {
+                    state = journal.load();
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not read the playback journal", e);
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        restore(state);
+                    }
+                });
+            }
         });
     }
-    
-    public void setMusicList(List<MusicItem> musicList) {
-        this.musicList = musicList;
+
+    public void setTrackStore(TrackStore tracks) {
+        this.tracks = tracks;
+        if (pendingRestore != null) {
+            pendingRestore.searched = 0;
+            placeRestored();
+        }
     }
-    
-    public void setOnPlaybackListener(OnPlaybackListener listener) {
-        this.playbackListener = listener;
+
+    // Starts the journal's track straight from its asset, at its position; it is matched up
+    // with the library as the scan finds it
+    private void restore(PlaybackJournal.State state) {
+        // The user got there first
+        if (engine == null || isPlaying || engine.getTrackId() >= 0) return;
+        queue.setShuffle(state.shuffle);
+        queue.setRepeatMode(state.repeatMode);
+        if (state.assetFileName == null) return;
+
+        pendingRestore = new PendingRestore(state);
+        engine.play(RESTORED_TRACK_ID, state.assetFileName, Float.NaN);
+        if (state.positionMs > 0) engine.seekTo(state.positionMs);
+        if (state.playing) {
+            isPlaying = true;
+            awaitingFirstAudio = true;
+        } else {
+            engine.pause();
+        }
+        Log.i(TAG, "Restoring " + state.assetFileName + " at " + state.positionMs + " ms");
+        placeRestored();
     }
-    
+
+    // Hands the restored tracks that the scan has found so far to the queue
+    private void placeRestored() {
+        PendingRestore restore = pendingRestore;
+        if (restore == null || tracks == null) return;
+        restore.search(tracks);
+        if (restore.trackId < 0) return;
+        if (!restore.placed) {
+            restore.placed = true;
+            engine.renameTrack(RESTORED_TRACK_ID, restore.trackId);
+            engine.setTrackGain(restore.trackId, tracks.getGainDb(restore.trackId));
+            currentSongIndex = queue.jumpTo(tracks.positionOf(restore.trackId));
+            notifySongChanged();
+        }
+        // Up-next tracks found later than others are queued after them
+        for (int i = 0; i < restore.upNextIds.length; i++) {
+            if (restore.upNextIds[i] < 0) continue;
+            queue.append(tracks.positionOf(restore.upNextIds[i]));
+            restore.upNextIds[i] = PendingRestore.QUEUED;
+        }
+        if (restore.isComplete()) pendingRestore = null;
+        chainNext();
+    }
+
+    // Copies the playback state into the journal, to be written out with whatever else changes
+    // within the flush delay
+    private void saveState() {
+        if (journal == null || tracks == null || tracks.isEmpty()) return;
+        // Until the restored track is found, the journal still describes it better than we can
+        if (pendingRestore != null && !pendingRestore.placed) return;
+        int trackId = tracks.getTrackId(Math.min(currentSongIndex, tracks.size() - 1));
+        journal.setTrack(tracks.getAssetFileName(trackId), engine.getTrackId() == trackId ? engine.getCurrentPosition() : 0);
+        journal.setPlaying(isPlaying);
+        journal.setModes(queue.isShuffle(), queue.getRepeatMode());
+        int[] upNext = queue.upNextTrackIds();
+        List<String> names = new ArrayList<>(upNext.length);
+        for (int id : upNext) {
+            names.add(tracks.getAssetFileName(id));
+        }
+        journal.setUpNext(names);
+        if (journal.isDirty() && flushScheduled.compareAndSet(false, true)) {
+            journalHandler.postDelayed(flushJournal, JOURNAL_FLUSH_DELAY_MS);
+        }
+    }
+
+    // Writes the journal now rather than after the delay, e.g. on pause, when power may go next
+    private void flushStateNow() {
+        saveState();
+        journalHandler.removeCallbacks(flushJournal);
+        flushScheduled.set(true);
+        journalHandler.post(flushJournal);
+    }
+
+    // Milliseconds from process start to the first audio of a restored track, or -1
+    public long getColdStartToAudioMs() {
+        return coldStartToAudioMs;
+    }
+
+    // Delivered through executor until the subscription is cancelled. A ProgressListener also
+    // hears the latest position anchor, coalesced.
+    public PlaybackEventBus.Subscription subscribe(PlaybackEventBus.Listener listener, Executor executor) {
+        return events.subscribe(listener, executor);
+    }
+
+    // Delivered on the main thread until owner is destroyed
+    public PlaybackEventBus.Subscription subscribe(LifecycleOwner owner, PlaybackEventBus.Listener listener) {
+        return events.subscribe(owner, listener, mainExecutor);
+    }
+
     public void play() {
-        if (musicList == null || musicList.isEmpty()) {
+        if (tracks == null || tracks.isEmpty()) {
             Log.e(TAG, "No music list available");
             return;
         }
 
-        if (mediaPlayer != null && !isPlaying && mediaPlayer.getCurrentPosition() > 0) {
-            // Resume from paused position
-            mediaPlayer.start();
-            isPlaying = true;
-            progressHandler.post(progressRunnable);
-            if (playbackListener != null) {
-                playbackListener.onPlaybackStateChanged(true);
-            }
-            Log.d(TAG, "Resuming playback");
+        if (isPlaying) {
+            pause();
             return;
         }
 
-        if (isPlaying) {
-            pause();
+        int trackId = tracks.getTrackId(Math.min(currentSongIndex, tracks.size() - 1));
+        if (engine.getTrackId() == trackId && engine.getCurrentPosition() > 0) {
+            // Resume from paused position
+            isPlaying = true;
+            engine.resume();
+            Log.d(TAG, "Resuming playback");
             return;
         }
 
-        if (currentSongIndex >= musicList.size()) {
+        if (currentSongIndex >= tracks.size()) {
             currentSongIndex = 0;
         }
 
-        playSong(musicList.get(currentSongIndex).getAssetFileName());
+        failureSkipper.reset();
+        skipTo(queue.jumpTo(currentSongIndex));
     }
-    
-    public void playSong(String assetFileName) {
-        try {
-            if (mediaPlayer == null) {
-                mediaPlayer = new MediaPlayer();
-            }
-            
-            mediaPlayer.reset();
-            AssetFileDescriptor afd = getAssets().openFd(assetFileName);
-            mediaPlayer.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            afd.close();
-            
-            mediaPlayer.prepare();
-            mediaPlayer.start();
-            isPlaying = true;
-            
-            // Start progress tracking
-            progressHandler.post(progressRunnable);
-            
-            // Notify activity
-            if (playbackListener != null) {
-                playbackListener.onPlaybackStateChanged(true);
-                playbackListener.onSongChanged(currentSongIndex);
-            }
-            
-            Log.d(TAG, "Playing: " + assetFileName);
-            
-        } catch (IOException e) {
-            Log.e(TAG, "Error playing song: " + assetFileName, e);
-            // Try next song if current one fails
-            nextTrack();
-        }
-    }
-    
+
+    // Starts the track at currentSongIndex; it is heard once the engine has prepared it
+    private void startCurrent() {
+        pendingRestore = null;
+        int trackId = tracks.getTrackId(currentSongIndex);
+        isPlaying = true;
+        nextTrackId = -1;
+        engine.play(trackId, tracks.getAssetFileName(trackId), tracks.getGainDb(trackId));
+        chainNext();
+    }
+
+    // Plays the track at index, where the queue already is, straight away, ending any burst of skips
+    private void skipTo(int index) {
+        skipCoalescer.cancel();
+        currentSongIndex = index;
+        startCurrent();
+        notifySongChanged();
+    }
+
+    // The UI follows every press at once; the engine only hears about the last one of a burst
+    private void coalesceSkip(int index) {
+        failureSkipper.reset();
+        currentSongIndex = index;
+        isPlaying = true;
+        notifySongChanged();
+    }
+
+    private void notifySongChanged() {
+        events.postSongChanged(currentSongIndex);
+        saveState();
+    }
+
     public void pause() {
-        if (mediaPlayer != null && isPlaying) {
-            mediaPlayer.pause();
+        if (isPlaying) {
             isPlaying = false;
-            
-            // Stop progress tracking
-            progressHandler.removeCallbacks(progressRunnable);
-            
-            if (playbackListener != null) {
-                playbackListener.onPlaybackStateChanged(false);
-            }
+            // A burst still settling is dropped; play starts the track it landed on
+            skipCoalescer.cancel();
+            engine.pause();
         }
     }
-    
+
     public void nextTrack() {
-        if (musicList == null || musicList.isEmpty()) return;
-        
-        currentSongIndex = (currentSongIndex + 1) % musicList.size();
-        playSong(musicList.get(currentSongIndex).getAssetFileName());
+        if (tracks == null || tracks.isEmpty()) return;
+
+        int index = queue.next();
+        if (index == PlaybackQueue.NONE) return;
+        skipCoalescer.jumpTo(index);
+        coalesceSkip(index);
     }
-    
+
     public void prevTrack() {
-        if (musicList == null || musicList.isEmpty()) return;
-        
-        currentSongIndex = (currentSongIndex - 1 + musicList.size()) % musicList.size();
-        playSong(musicList.get(currentSongIndex).getAssetFileName());
+        if (tracks == null || tracks.isEmpty()) return;
+
+        int index = queue.previous();
+        if (index == PlaybackQueue.NONE) return;
+        skipCoalescer.jumpTo(index);
+        coalesceSkip(index);
     }
-    
+
     public void seekTo(int position) {
-        if (mediaPlayer != null) {
-            mediaPlayer.seekTo(position);
-        }
+        // The seek belongs to the track on screen, so a pending skip has to land first
+        skipCoalescer.flush();
+        engine.seekTo(position);
+        saveState();
     }
-    
+
     public void playSongAtIndex(int index) {
-        if (musicList == null || index < 0 || index >= musicList.size()) return;
-        
+        if (tracks == null || index < 0 || index >= tracks.size()) return;
+
+        queue.jumpTo(index);
+        skipCoalescer.jumpTo(index);
+        coalesceSkip(index);
+    }
+
+    // Plays the track at index after the current one, ahead of anything queued before
+    public void playNext(int index) {
+        if (tracks == null || index < 0 || index >= tracks.size()) return;
+        queue.playNext(index);
+        onQueueChanged();
+    }
+
+    // Plays the track at index after everything already queued
+    public void addToQueue(int index) {
+        if (tracks == null || index < 0 || index >= tracks.size()) return;
+        queue.append(index);
+        onQueueChanged();
+    }
+
+    public void setShuffle(boolean shuffle) {
+        queue.setShuffle(shuffle);
+        onQueueChanged();
+    }
+
+    public boolean isShuffle() {
+        return queue.isShuffle();
+    }
+
+    public void setRepeatMode(RepeatMode repeatMode) {
+        queue.setRepeatMode(repeatMode);
+        onQueueChanged();
+    }
+
+    public RepeatMode getRepeatMode() {
+        return queue.getRepeatMode();
+    }
+
+    // The list was reordered in place; index is where the current song now sits
+    public void setCurrentSongIndex(int index) {
+        if (tracks == null || index < 0 || index >= tracks.size()) return;
         currentSongIndex = index;
-        playSong(musicList.get(currentSongIndex).getAssetFileName());
+        queue.onTracksChanged();
+        // A pending skip follows its track to the new position
+        if (skipCoalescer.isPending()) {
+            skipCoalescer.jumpTo(index);
+            return;
+        }
+        onQueueChanged();
     }
-    
+
+    // Tracks were added or reordered, or the queue was edited; a prepared next track that is no
+    // longer next is replaced
+    public void onQueueChanged() {
+        queue.onTracksChanged();
+        placeRestored();
+        saveState();
+        if (tracks == null || tracks.isEmpty() || engine.getTrackId() < 0 || skipCoalescer.isPending()) return;
+        chainNext();
+    }
+
+    // Tells the engine which track follows the current one, so it can be prepared ahead of time
+    private void chainNext() {
+        int index = queue.peekNext();
+        int trackId = index != PlaybackQueue.NONE ? tracks.getTrackId(index) : -1;
+        if (trackId == nextTrackId) return;
+        nextTrackId = trackId;
+        engine.setNext(trackId, trackId >= 0 ? tracks.getAssetFileName(trackId) : null,
+                trackId >= 0 ? tracks.getGainDb(trackId) : Float.NaN);
+    }
+
+    // The track's gain was measured after it was handed to the engine
+    public void onTrackGainChanged(int trackId) {
+        if (engine == null || tracks == null) return;
+        engine.setTrackGain(trackId, tracks.getGainDb(trackId));
+    }
+
+    @Override
+    public void onTrackStarted(int trackId, int durationMs) {
+        // The engine stops calling back once released, but onDestroy may already have dropped it
+        if (engine == null) return;
+        // The new duration reaches the UI through the clock
+        failureSkipper.onStarted(trackId);
+    }
+
+    @Override
+    public void onPlayingChanged(boolean playing) {
+        if (engine == null) return;
+        events.postStateChanged(playing);
+        mainHandler.removeCallbacks(savePosition);
+        if (playing) {
+            mainHandler.postDelayed(savePosition, POSITION_SAVE_MS);
+            if (awaitingFirstAudio) {
+                awaitingFirstAudio = false;
+                coldStartToAudioMs = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+                Log.i(TAG, "Resumed playback " + coldStartToAudioMs + " ms after process start");
+            }
+        } else {
+            flushStateNow();
+        }
+    }
+
+    @Override
+    public void onAdvanced(int trackId) {
+        if (engine == null) return;
+        // The engine moved on to the track chained from peekNext, which advance now confirms
+        int position = queue.advance();
+        if (position == PlaybackQueue.NONE || tracks.getTrackId(position) != trackId) {
+            position = queue.jumpTo(tracks.positionOf(trackId));
+        }
+        currentSongIndex = position;
+        nextTrackId = -1;
+        chainNext();
+        notifySongChanged();
+    }
+
+    @Override
+    public void onCompleted(int trackId) {
+        if (engine == null || isStale(trackId)) return;
+        int index = queue.advance();
+        if (index == PlaybackQueue.NONE) {
+            stopAtEnd();
+            return;
+        }
+        skipTo(index);
+    }
+
+    @Override
+    public void onError(int trackId) {
+        if (engine == null) return;
+        if (trackId == RESTORED_TRACK_ID) {
+            // The restore was superseded by a track the user started; the error is about neither
+            if (pendingRestore == null) return;
+            if (!pendingRestore.placed) {
+                // The journal's track is gone; wait for the user instead
+                pendingRestore = null;
+                awaitingFirstAudio = false;
+                stopAtEnd();
+                return;
+            }
+            // Failed before the engine took its library id; it is the queue's current track now
+            trackId = pendingRestore.trackId;
+        }
+        // Try the next playable song; even with repeat one, replaying this one would fail again
+        if (isStale(trackId)) return;
+        failureSkipper.onFailed(trackId);
+        if (failureCache.isDirty()) journalHandler.post(saveFailureCache);
+    }
+
+    // The end of the list with repeat off; the engine has stopped without a state change of its own
+    private void stopAtEnd() {
+        isPlaying = false;
+        events.postStateChanged(false);
+        flushStateNow();
+    }
+
+    // A report about a track the user has already moved away from
+    private boolean isStale(int trackId) {
+        return tracks == null || tracks.isEmpty() || skipCoalescer.isPending()
+                || tracks.getTrackId(currentSongIndex) != trackId;
+    }
+
+    private void updateSessionState(boolean playing) {
+        mediaSession.setPlaybackState(new PlaybackState.Builder()
+                .setActions(PlaybackState.ACTION_PLAY | PlaybackState.ACTION_PAUSE | PlaybackState.ACTION_PLAY_PAUSE
+                        | PlaybackState.ACTION_SKIP_TO_NEXT | PlaybackState.ACTION_SKIP_TO_PREVIOUS
+                        | PlaybackState.ACTION_SEEK_TO)
+                .setState(playing ? PlaybackState.STATE_PLAYING : PlaybackState.STATE_PAUSED,
+                        engine.getCurrentPosition(), playing ? 1f : 0f)
+                .build());
+    }
+
+    // Optional overlap between tracks: fadeMs from 0 (gapless, the default) to 12 s
+    public void setCrossfade(int fadeMs, FadeCurve curve) {
+        engine.setCrossfade(fadeMs, curve);
+    }
+
+    // Cabin EQ for WAV tracks, which play through the PCM path. Applies without a gap once the
+    // audio already buffered has played, about half a second; DspChain.Settings.FLAT turns it off.
+    public void setEqualizer(DspChain.Settings settings) {
+        dsp.setSettings(settings);
+    }
+
+    public DspChain.Settings getEqualizer() {
+        return dsp.getSettings();
+    }
+
     public boolean isPlaying() {
         return isPlaying;
     }
-    
+
     public int getCurrentSongIndex() {
         return currentSongIndex;
     }
-    
+
+    // Tracks that failed to play since the service started, counting repeats
+    public int getFailureCount() {
+        return failureSkipper.getFailureCount();
+    }
+
+    // How long the last run of failures kept the player silent, in milliseconds, or -1
+    public long getLastSkipLatencyMs() {
+        return failureSkipper.getLastSkipLatencyMs();
+    }
+
+    // Position anchors published by the playback thread
+    public PlaybackClock getClock() {
+        return engine.clock();
+    }
+
     public int getCurrentPosition() {
-        return mediaPlayer != null ? mediaPlayer.getCurrentPosition() : 0;
+        return engine != null ? engine.getCurrentPosition() : 0;
     }
-    
+
     public int getDuration() {
-        return mediaPlayer != null ? mediaPlayer.getDuration() : 0;
+        return engine != null ? engine.getDuration() : 0;
     }
-    
+
     @Override
     public void onDestroy() {
         super.onDestroy();
         Log.d(TAG, "Service destroyed");
-        
-        if (progressHandler != null) {
-            progressHandler.removeCallbacks(progressRunnable);
+
+        if (skipCoalescer != null) {
+            skipCoalescer.cancel();
+        }
+        if (journalThread != null) {
+            mainHandler.removeCallbacks(savePosition);
+            flushStateNow();
+            journalThread.quitSafely();
+            journalThread = null;
+        }
+        if (sessionSubscription != null) {
+            sessionSubscription.cancel();
         }
-        
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-            mediaPlayer = null;
+        if (engine != null) {
+            engine.clock().removeListener(progressForwarder);
+        }
+        if (mediaSession != null) {
+            mediaSession.release();
+            mediaSession = null;
+        }
+
+        if (engine != null) {
+            engine.release();
+            engine = null;
         }
     }
-} 
\ No newline at end of file
+}
@@ -1,23 +1,60 @@
 package com.example.musicplayer.adapter;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.example.musicplayer.R;
+import com.example.musicplayer.library.AlbumArtLoader;
+import com.example.musicplayer.library.BrowseView;
+import com.example.musicplayer.library.TrackStore;
 import com.example.musicplayer.model.MusicItem;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHolder> {
-    private List<MusicItem> musicList;
+public class MusicAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+    // Payload for a row whose only change is whether it is the current song
+    static final Object PAYLOAD_CURRENT = new Object();
+
+    static final int VIEW_TYPE_TRACK = 0;
+    static final int VIEW_TYPE_SECTION = 1; // Artist, album or letter heading
+    static final int VIEW_TYPE_SUBSECTION = 2; // Album heading under an artist
+
+    private static final int COLOR_CURRENT = 0xFF2FEFE4; // #ff2fefe4
+    private static final int COLOR_NORMAL = 0xFF000000; // Black
+
+    static final int DEFAULT_PAGE_SIZE = 32;
+    static final int DEFAULT_WINDOW_PAGES = 4;
+
+    // List diffs can be slow for large libraries, so they are computed off the main thread
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final TrackStore tracks;
     private Context context;
     private int currentSongIndex = 0; // Track current song position
+    // Track ids shown while searching, in track id order; null shows the whole library
+    private int[] filter;
+    // Headers shown between the library's tracks; null lists the tracks without headers.
+    // Tracks added after the view was built follow its last row.
+    private BrowseView view;
+    private final AlbumArtLoader artLoader;
+    private final int coverSize;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int diffGeneration = 0; // Only the most recently submitted list is applied
+    // Row text is prepared and covers are decoded a page at a time around the visible rows
+    private final RowPager<RowPage> pager;
 
-    // Interface for item click
+    // Interface for item click; position is the track's position in the library, even while searching
     public interface OnItemClickListener {
         void onItemClick(int position);
     }
@@ -26,63 +63,339 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHol
         this.onItemClickListener = listener;
     }
 
-    public MusicAdapter(Context context, List<MusicItem> musicList) {
+    // Shared by every row; the row's current position is looked up when it is clicked
+    private final View.OnClickListener rowClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View v) {
+            MusicViewHolder holder = (MusicViewHolder) v.getTag();
+            int row = holder.getBindingAdapterPosition();
+            if (row != RecyclerView.NO_POSITION && onItemClickListener != null) {
+                onItemClickListener.onItemClick(positionAt(row));
+            }
+        }
+    };
+
+    // Keeps the pager's window following the list as it scrolls
+    private final RecyclerView.OnScrollListener scrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            if (layoutManager instanceof LinearLayoutManager) {
+                LinearLayoutManager linear = (LinearLayoutManager) layoutManager;
+                pager.onVisibleRange(linear.findFirstVisibleItemPosition(), linear.findLastVisibleItemPosition());
+            }
+        }
+    };
+
+    // Rows are bound straight from the store; it is shared with the service, never copied
+    public MusicAdapter(Context context, TrackStore tracks) {
+        this(context, tracks, DEFAULT_PAGE_SIZE, DEFAULT_WINDOW_PAGES);
+    }
+
+    // pageSize rows are prepared at a time; windowPages pages are kept around the visible ones,
+    // most of them ahead in the scroll direction
+    public MusicAdapter(Context context, TrackStore tracks, int pageSize, int windowPages) {
         this.context = context;
-        this.musicList = musicList;
+        this.tracks = tracks;
+        this.artLoader = AlbumArtLoader.get(context);
+        this.coverSize = context.getResources().getDimensionPixelSize(R.dimen.album_cover_size);
+        this.pager = new RowPager<>(pageSize, windowPages, new RowPager.Loader<RowPage>() {
+            @Override
+            public int rowCount() {
+                return getItemCount();
+            }
+
+            @Override
+            public RowPage load(int firstRow, int count) {
+                return loadPage(firstRow, count);
+            }
+
+            @Override
+            public void evict(RowPage page) {
+                for (Object prefetch : page.coverPrefetches) {
+                    if (prefetch != null) artLoader.cancelPrefetch(prefetch);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(scrollListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(scrollListener);
+        pager.clear();
+    }
+
+    @Override
+    public int getItemViewType(int row) {
+        int header = headerAt(row);
+        if (header < 0) return VIEW_TYPE_TRACK;
+        return view.headerLevel(header) == 0 ? VIEW_TYPE_SECTION : VIEW_TYPE_SUBSECTION;
     }
 
     @NonNull
     @Override
-    public MusicViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewType != VIEW_TYPE_TRACK) {
+            View view = LayoutInflater.from(context).inflate(viewType == VIEW_TYPE_SECTION
+                    ? R.layout.item_section : R.layout.item_subsection, parent, false);
+            return new HeaderViewHolder(view);
+        }
         View view = LayoutInflater.from(context).inflate(R.layout.item_music, parent, false);
-        return new MusicViewHolder(view);
+        MusicViewHolder holder = new MusicViewHolder(view);
+        view.setTag(holder);
+        view.setFocusable(true);
+        view.setOnClickListener(rowClickListener);
+        return holder;
     }
 
     @Override
-    public void onBindViewHolder(@NonNull MusicViewHolder holder, int position) {
-        MusicItem item = musicList.get(position);
-        holder.title.setText(item.getTitle());
-        holder.artist.setText(item.getArtist());
-        holder.album.setText(item.getAlbum());
-        holder.duration.setText(item.getDuration());
-        holder.albumCover.setImageResource(R.drawable.right_cover);
-        holder.albumCover.setContentDescription("Album cover for " + item.getTitle());
-        holder.itemView.setFocusable(true);
-        holder.itemView.setContentDescription(item.getTitle() + ", " + item.getArtist() + ", " + item.getAlbum() + ", " + item.getDuration());
-        
-        // Highlight current song with special color
-        if (position == currentSongIndex) {
-            holder.title.setTextColor(0xFF2FEFE4); // #ff2fefe4
-            holder.artist.setTextColor(0xFF2FEFE4); // #ff2fefe4
-            holder.album.setTextColor(0xFF2FEFE4); // #ff2fefe4
-            holder.duration.setTextColor(0xFF2FEFE4); // #ff2fefe4
-        } else {
-            holder.title.setTextColor(0xFF000000); // Black
-            holder.artist.setTextColor(0xFF000000); // Black
-            holder.album.setTextColor(0xFF000000); // Black
-            holder.duration.setTextColor(0xFF000000); // Black
-        }
-
-        // Set click listener
-        holder.itemView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                if (onItemClickListener != null) {
-                    onItemClickListener.onItemClick(position);
-                }
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder viewHolder, int position) {
+        if (viewHolder instanceof HeaderViewHolder) {
+            ((HeaderViewHolder) viewHolder).label.setText(view.headerLabel(headerAt(position)));
+            return;
+        }
+        MusicViewHolder holder = (MusicViewHolder) viewHolder;
+        RowPage page = pager.page(position);
+        int i = position - page.firstRow;
+        int id = page.trackIds[i];
+        // The title is shown from the store's char buffer; the rest was prepared with the page
+        holder.title.setText(tracks.getTitleChars(), tracks.getTitleStart(id), tracks.getTitleLength(id));
+        holder.artist.setText(tracks.getArtist(id));
+        holder.album.setText(tracks.getAlbum(id));
+        holder.duration.setText(page.durations[i]);
+        artLoader.load(page.assetFileNames[i], tracks.getArtOffset(id), tracks.getArtLength(id),
+                holder.albumCover, coverSize, coverSize, R.drawable.right_cover);
+        holder.albumCover.setContentDescription(page.coverDescriptions[i]);
+        holder.itemView.setContentDescription(page.descriptions[i]);
+        bindHighlight(holder, id);
+    }
+
+    // Everything a page of track rows needs beyond the store's columns. Cover prefetches start
+    // here, so covers for rows about to scroll in are usually decoded before they are bound.
+    private RowPage loadPage(int firstRow, int count) {
+        RowPage page = new RowPage(firstRow, count);
+        char[] durationChars = new char[12];
+        for (int i = 0; i < count; i++) {
+            int row = firstRow + i;
+            if (headerAt(row) >= 0) continue;
+            int id = trackAt(row);
+            page.trackIds[i] = id;
+            page.assetFileNames[i] = tracks.getAssetFileName(id);
+            page.durations[i] = new String(durationChars, 0,
+                    MusicItem.formatDuration(tracks.getDurationMs(id) / 1000, durationChars));
+            String title = tracks.getTitle(id);
+            page.coverDescriptions[i] = "Album cover for " + title;
+            page.descriptions[i] = title + ", " + tracks.getArtist(id) + ", " + tracks.getAlbum(id) + ", "
+                    + page.durations[i];
+            page.coverPrefetches[i] = artLoader.prefetch(page.assetFileNames[i], tracks.getArtOffset(id),
+                    tracks.getArtLength(id), coverSize, coverSize);
+        }
+        return page;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty() || !(holder instanceof MusicViewHolder)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (payload != PAYLOAD_CURRENT) {
+                onBindViewHolder(holder, position);
+                return;
             }
-        });
+        }
+        // Only the highlight changed; leave text, cover and descriptions alone
+        RowPage page = pager.page(position);
+        bindHighlight((MusicViewHolder) holder, page.trackIds[position - page.firstRow]);
+    }
+
+    // Highlight current song with special color
+    private void bindHighlight(MusicViewHolder holder, int trackId) {
+        int color = trackId == currentTrackId() ? COLOR_CURRENT : COLOR_NORMAL;
+        holder.title.setTextColor(color);
+        holder.artist.setTextColor(color);
+        holder.album.setTextColor(color);
+        holder.duration.setTextColor(color);
+    }
+
+    // A recycled row must not receive the cover it asked for before it scrolled away
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        if (holder instanceof MusicViewHolder) {
+            artLoader.cancel(((MusicViewHolder) holder).albumCover);
+        }
     }
 
     @Override
     public int getItemCount() {
-        return musicList.size();
+        if (filter != null) return filter.length;
+        return view != null ? tracks.size() + view.headerCount() : tracks.size();
+    }
+
+    // Header index of the browse view shown at the row, or -1 for a track row
+    private int headerAt(int row) {
+        if (filter != null || view == null || row >= view.rowCount()) return -1;
+        return view.headerAt(row);
+    }
+
+    // Library position of the track at a track row
+    private int positionAt(int row) {
+        if (filter != null) return tracks.positionOf(filter[row]);
+        if (view == null) return row;
+        return row < view.rowCount() ? view.positionAt(row) : row - view.headerCount();
+    }
+
+    private int trackAt(int row) {
+        return filter != null ? filter[row] : tracks.getTrackId(positionAt(row));
+    }
+
+    private int currentTrackId() {
+        return currentSongIndex >= 0 && currentSongIndex < tracks.size() ? tracks.getTrackId(currentSongIndex) : -1;
+    }
+
+    // Row showing the track at a library position, or -1 if it is filtered out
+    public int rowOf(int libraryPosition) {
+        if (libraryPosition < 0 || libraryPosition >= tracks.size()) return -1;
+        if (filter != null) {
+            int row = Arrays.binarySearch(filter, tracks.getTrackId(libraryPosition));
+            return row >= 0 ? row : -1;
+        }
+        if (view == null) return libraryPosition;
+        return libraryPosition < view.size() ? view.rowOf(libraryPosition) : libraryPosition + view.headerCount();
     }
 
-    // Update the current song index and refresh the adapter
+    // Shows only the given track ids (search results, in track id order), or the whole library if null.
+    // The rows change wholesale, so this is a data set change; only the visible rows are rebound.
+    public void setFilter(int[] trackIds) {
+        if (trackIds == null && filter == null) return;
+        filter = trackIds;
+        pager.clear();
+        notifyDataSetChanged();
+    }
+
+    public boolean isFiltered() {
+        return filter != null;
+    }
+
+    // Lists the library grouped and ordered by mode, with header rows. A cached view is a ready-made
+    // permutation and is applied at once; otherwise it is built on the diff thread from a snapshot
+    // of the store's sort keys. The current song keeps its highlight at its new position.
+    // onApplied runs on the main thread once the new order is in place.
+    public void browse(final BrowseView.Mode mode, final Runnable onApplied) {
+        final int generation = ++diffGeneration; // An order submitted earlier must not replace this one
+        BrowseView cached = tracks.cachedView(mode);
+        if (cached != null) {
+            showBrowseView(cached);
+            if (onApplied != null) onApplied.run();
+            return;
+        }
+        final TrackStore.BrowseSource source = tracks.browseSource();
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final BrowseView built = source.build(mode);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != diffGeneration) return;
+                        // Tracks scanned in the meantime are listed after the view until it is rebuilt
+                        tracks.cacheView(built);
+                        showBrowseView(built);
+                        if (onApplied != null) onApplied.run();
+                    }
+                });
+            }
+        });
+    }
+
+    private void showBrowseView(BrowseView newView) {
+        int current = currentTrackId();
+        tracks.setOrder(newView);
+        view = newView;
+        pager.clear();
+        if (current >= 0) {
+            currentSongIndex = Math.max(0, tracks.positionOf(current));
+        }
+        notifyDataSetChanged();
+    }
+
+    public int getCurrentSongIndex() {
+        return currentSongIndex;
+    }
+
+    // Append newly scanned tracks without rebinding the rows already on screen
+    public void addItems(List<MusicItem> items) {
+        if (items.isEmpty()) return;
+        int start = tracks.size();
+        tracks.addAll(items);
+        // While searching, the caller re-runs the query to pick up matching new tracks
+        if (filter == null) {
+            int firstRow = view != null ? start + view.headerCount() : start;
+            pager.invalidateFrom(firstRow); // The last page may have been short
+            notifyItemRangeInserted(firstRow, items.size());
+        }
+    }
+
+    // Switches the list to a new order of the store's track ids, without headers, diffed on a
+    // background thread so only the rows that actually moved are animated. The current song
+    // highlight follows its track. onApplied runs on the main thread once the new order is in place.
+    public void submitOrder(int[] newOrder, final Runnable onApplied) {
+        final int generation = ++diffGeneration;
+        final int[] oldOrder = tracks.copyOrder();
+        final int[] order = newOrder.clone();
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new OrderDiffCallback(oldOrder, order));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // An order computed before newer tracks arrived is out of date
+                        if (generation != diffGeneration || oldOrder.length != tracks.size()) return;
+                        int current = currentSongIndex >= 0 && currentSongIndex < oldOrder.length
+                                ? oldOrder[currentSongIndex] : -1;
+                        boolean hadHeaders = view != null && view.headerCount() > 0;
+                        tracks.setOrder(order);
+                        view = null;
+                        pager.clear();
+                        if (current >= 0) {
+                            currentSongIndex = Math.max(0, tracks.positionOf(current));
+                        }
+                        // Search results are listed by track id, so a new library order does not move them
+                        if (filter == null) {
+                            // The diff is over track rows only; dropped headers need a full rebind
+                            if (hadHeaders) {
+                                notifyDataSetChanged();
+                            } else {
+                                result.dispatchUpdatesTo(MusicAdapter.this);
+                            }
+                        }
+                        if (onApplied != null) onApplied.run();
+                    }
+                });
+            }
+        });
+    }
+
+    // Moves the highlight, rebinding only the old and new current rows
     public void updateCurrentSongIndex(int newIndex) {
+        int oldRow = rowOf(currentSongIndex);
+        boolean changed = newIndex != currentSongIndex;
         this.currentSongIndex = newIndex;
-        notifyDataSetChanged();
+        if (!changed) return;
+        int newRow = rowOf(newIndex);
+        if (oldRow >= 0) {
+            notifyItemChanged(oldRow, PAYLOAD_CURRENT);
+        }
+        if (newRow >= 0) {
+            notifyItemChanged(newRow, PAYLOAD_CURRENT);
+        }
     }
 
     public static class MusicViewHolder extends RecyclerView.ViewHolder {
@@ -97,4 +410,33 @@ public class MusicAdapter extends RecyclerView.Adapter<MusicAdapter.MusicViewHol
             duration = itemView.findViewById(R.id.tv_track_duration);
         }
     }
+
+    // Header rows leave their slots empty
+    private static class RowPage {
+        final int firstRow;
+        final int[] trackIds;
+        final String[] assetFileNames;
+        final String[] durations;
+        final String[] descriptions;
+        final String[] coverDescriptions;
+        final Object[] coverPrefetches;
+
+        RowPage(int firstRow, int count) {
+            this.firstRow = firstRow;
+            this.trackIds = new int[count];
+            this.assetFileNames = new String[count];
+            this.durations = new String[count];
+            this.descriptions = new String[count];
+            this.coverDescriptions = new String[count];
+            this.coverPrefetches = new Object[count];
+        }
+    }
+
+    public static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        TextView label;
+        public HeaderViewHolder(@NonNull View itemView) {
+            super(itemView);
+            label = itemView.findViewById(R.id.tv_header);
+        }
+    }
 }
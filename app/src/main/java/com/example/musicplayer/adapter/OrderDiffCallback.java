@@ -0,0 +1,35 @@
+package com.example.musicplayer.adapter;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+// Diffs two orders of the same TrackStore: a row is identified by its track id, and since only
+// the order changes its contents are always the same
+class OrderDiffCallback extends DiffUtil.Callback {
+    private final int[] oldOrder;
+    private final int[] newOrder;
+
+    OrderDiffCallback(int[] oldOrder, int[] newOrder) {
+        this.oldOrder = oldOrder;
+        this.newOrder = newOrder;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldOrder.length;
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newOrder.length;
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldPosition, int newPosition) {
+        return oldOrder[oldPosition] == newOrder[newPosition];
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldPosition, int newPosition) {
+        return true;
+    }
+}
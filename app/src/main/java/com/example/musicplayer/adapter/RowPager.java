@@ -0,0 +1,117 @@
+package com.example.musicplayer.adapter;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Keeps fixed-size pages of a list's rows loaded around the visible range. Pages ahead in the
+// scroll direction are loaded before they come into view, and pages that fall outside the window
+// are evicted, so what is held depends on the window, not on the length of the list. A jump far
+// down the list loads only the pages around the target. Main thread only.
+class RowPager<P> {
+    interface Loader<P> {
+        int rowCount();
+
+        // Loads rows [firstRow, firstRow + count); the last page of the list may be short
+        P load(int firstRow, int count);
+
+        void evict(P page);
+    }
+
+    private final int pageSize;
+    private final int windowPages;
+    private final Loader<P> loader;
+    private final Map<Integer, P> pages = new HashMap<>();
+    private int lastFirstVisible = -1;
+    private int direction = 1; // 1 scrolling down the list, -1 scrolling up
+
+    // windowPages is how many pages are kept beyond the visible ones: one behind the visible
+    // range and the rest ahead of it in the scroll direction
+    RowPager(int pageSize, int windowPages, Loader<P> loader) {
+        if (pageSize <= 0 || windowPages < 1) {
+            throw new IllegalArgumentException("pageSize " + pageSize + ", windowPages " + windowPages);
+        }
+        this.pageSize = pageSize;
+        this.windowPages = windowPages;
+        this.loader = loader;
+    }
+
+    // Page holding the row, loading it now if it was not prefetched
+    P page(int row) {
+        return loadPage(row / pageSize);
+    }
+
+    // Called whenever the visible rows change: prefetches ahead of them and evicts the rest
+    void onVisibleRange(int firstRow, int lastRow) {
+        if (firstRow < 0 || lastRow < firstRow) return;
+        if (lastFirstVisible >= 0 && firstRow != lastFirstVisible) {
+            direction = firstRow > lastFirstVisible ? 1 : -1;
+        }
+        lastFirstVisible = firstRow;
+        int rowCount = loader.rowCount();
+        if (rowCount == 0) return;
+
+        int lastPage = (rowCount - 1) / pageSize;
+        int firstVisiblePage = firstRow / pageSize;
+        int lastVisiblePage = Math.min(lastRow / pageSize, lastPage);
+        int ahead = windowPages - 1;
+        int from = Math.max(0, firstVisiblePage - (direction > 0 ? 1 : ahead));
+        int to = Math.min(lastPage, lastVisiblePage + (direction > 0 ? ahead : 1));
+
+        Iterator<Map.Entry<Integer, P>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, P> entry = it.next();
+            if (entry.getKey() < from || entry.getKey() > to) {
+                it.remove();
+                loader.evict(entry.getValue());
+            }
+        }
+        // Visible pages first, then outwards in the scroll direction, the page behind last
+        for (int page = firstVisiblePage; page <= lastVisiblePage; page++) loadPage(page);
+        if (direction > 0) {
+            for (int page = lastVisiblePage + 1; page <= to; page++) loadPage(page);
+            for (int page = firstVisiblePage - 1; page >= from; page--) loadPage(page);
+        } else {
+            for (int page = firstVisiblePage - 1; page >= from; page--) loadPage(page);
+            for (int page = lastVisiblePage + 1; page <= to; page++) loadPage(page);
+        }
+    }
+
+    // Drops every page, e.g. when the rows are reordered or filtered
+    void clear() {
+        for (P page : pages.values()) loader.evict(page);
+        pages.clear();
+    }
+
+    // Drops the pages holding the row and everything after it, e.g. when rows are appended to a
+    // short last page
+    void invalidateFrom(int row) {
+        int firstInvalid = row / pageSize;
+        Iterator<Map.Entry<Integer, P>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, P> entry = it.next();
+            if (entry.getKey() >= firstInvalid) {
+                it.remove();
+                loader.evict(entry.getValue());
+            }
+        }
+    }
+
+    boolean isLoaded(int pageIndex) {
+        return pages.containsKey(pageIndex);
+    }
+
+    int loadedPages() {
+        return pages.size();
+    }
+
+    private P loadPage(int pageIndex) {
+        P page = pages.get(pageIndex);
+        if (page == null) {
+            int firstRow = pageIndex * pageSize;
+            page = loader.load(firstRow, Math.min(pageSize, loader.rowCount() - firstRow));
+            pages.put(pageIndex, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.musicplayer.library;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+import com.example.musicplayer.utils.MetadataExtractor;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Loads embedded cover art (ID3 APIC / MP4 covr, located by the scanner) into ImageViews.
+// Images are decoded off the main thread at exactly the size they are shown at, kept in a
+// memory-bounded LRU cache, and written to an on-disk thumbnail cache so later launches skip
+// the full-size JPEG decode. All public methods must be called on the main thread.
+public class AlbumArtLoader {
+    private static final String TAG = "AlbumArtLoader";
+
+    private static final String DISK_CACHE_DIR = "thumbs";
+    private static final long DISK_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+    private static final int DISK_CACHE_QUALITY = 90;
+    // Covers are small next to the audio; anything bigger is corrupt
+    private static final int MAX_ART_SIZE = 8 * 1024 * 1024;
+    private static final int WORKERS = 2;
+
+    private static AlbumArtLoader instance;
+
+    private final Context context;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDir;
+    private final ExecutorService workers;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // The request each view is currently waiting for; a view only ever shows its latest request
+    private final WeakHashMap<ImageView, Request> pending = new WeakHashMap<>();
+    // Covers being decoded ahead of the rows that will show them, by cache key
+    private final Map<String, Request> prefetches = new HashMap<>();
+
+    // One loader per process so the playlist and the current-song cover share the same cache
+    public static AlbumArtLoader get(Context context) {
+        if (instance == null) {
+            instance = new AlbumArtLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlbumArtLoader(Context context) {
+        this.context = context;
+        // An eighth of the heap, counted in kilobytes
+        int cacheKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+        this.memoryCache = new LruCache<String, Bitmap>(cacheKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return Math.max(1, bitmap.getByteCount() / 1024);
+            }
+        };
+        this.diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        this.workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ArtThreadFactory());
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                trimDiskCache();
+            }
+        });
+    }
+
+    // Shows the cover embedded at artOffset in the asset in view at width x height pixels, or the
+    // placeholder if there is none (artOffset < 0). Any earlier request for the same view is cancelled.
+    public void load(String assetFileName, long artOffset, int artLength, ImageView view, int width, int height,
+                     int placeholderResId) {
+        cancel(view);
+        if (artOffset < 0 || artLength <= 0 || width <= 0 || height <= 0) {
+            view.setImageResource(placeholderResId);
+            return;
+        }
+
+        String key = cacheKey(assetFileName, artOffset, artLength, width, height);
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageResource(placeholderResId);
+        // A prefetch already under way is adopted rather than decoding the same cover twice
+        Request request = prefetches.get(key);
+        if (request != null && request.view == null) {
+            request.view = view;
+            pending.put(view, request);
+            return;
+        }
+        request = new Request(key, new ArtLocation(assetFileName, artOffset, artLength), view, width, height);
+        pending.put(view, request);
+        request.future = workers.submit(request);
+    }
+
+    // Decodes a cover into the memory cache before any view asks for it, so a row scrolled into
+    // view shows it at once. Returns a token for cancelPrefetch, or null if there is nothing to load.
+    public Object prefetch(String assetFileName, long artOffset, int artLength, int width, int height) {
+        if (artOffset < 0 || artLength <= 0 || width <= 0 || height <= 0) return null;
+        String key = cacheKey(assetFileName, artOffset, artLength, width, height);
+        if (prefetches.containsKey(key) || memoryCache.get(key) != null) return null;
+        Request request = new Request(key, new ArtLocation(assetFileName, artOffset, artLength), null, width, height);
+        prefetches.put(key, request);
+        request.future = workers.submit(request);
+        return request;
+    }
+
+    // Drops a prefetch that is no longer wanted; one a view has since adopted keeps going
+    public void cancelPrefetch(Object token) {
+        Request request = (Request) token;
+        if (request.view != null) return;
+        if (prefetches.get(request.key) == request) prefetches.remove(request.key);
+        request.cancelled = true;
+        request.future.cancel(false);
+    }
+
+    // Drops the view's outstanding request, e.g. when its row is recycled
+    public void cancel(ImageView view) {
+        Request request = pending.remove(view);
+        if (request != null) {
+            if (prefetches.get(request.key) == request) prefetches.remove(request.key);
+            request.cancelled = true;
+            request.future.cancel(false);
+        }
+    }
+
+    private static class ArtLocation {
+        final String assetFileName;
+        final long offset;
+        final int length;
+
+        ArtLocation(String assetFileName, long offset, int length) {
+            this.assetFileName = assetFileName;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private class Request implements Runnable {
+        final String key;
+        final ArtLocation art;
+        ImageView view; // null while nothing but a prefetch wants the cover
+        final int width;
+        final int height;
+        volatile boolean cancelled;
+        Future<?> future;
+
+        Request(String key, ArtLocation art, ImageView view, int width, int height) {
+            this.key = key;
+            this.art = art;
+            this.view = view;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            final Bitmap bitmap = loadBitmap(key, art, width, height);
+            if (cancelled) return;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (prefetches.get(key) == Request.this) prefetches.remove(key);
+                    if (bitmap == null || view == null || pending.get(view) != Request.this) return;
+                    pending.remove(view);
+                    view.setImageBitmap(bitmap);
+                }
+            });
+        }
+    }
+
+    // Runs on a worker: disk thumbnail first, then the embedded image
+    private Bitmap loadBitmap(String key, ArtLocation art, int width, int height) {
+        File thumb = new File(diskCacheDir, cacheFileName(key));
+        Bitmap bitmap = null;
+        if (thumb.exists()) {
+            bitmap = BitmapFactory.decodeFile(thumb.getPath());
+            if (bitmap != null) {
+                thumb.setLastModified(System.currentTimeMillis());
+            }
+        }
+        if (bitmap == null) {
+            bitmap = decodeEmbedded(art, width, height);
+            if (bitmap != null) {
+                writeThumbnail(thumb, bitmap);
+            }
+        }
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeEmbedded(ArtLocation art, int width, int height) {
+        if (art.length > MAX_ART_SIZE) return null;
+        byte[] data;
+        try {
+            AssetFileDescriptor afd = context.getAssets().openFd(art.assetFileName);
+            try {
+                data = MetadataExtractor.openSource(afd).readBytes(art.offset, art.length);
+            } finally {
+                afd.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error reading cover of " + art.assetFileName + ": " + e.getMessage());
+            return null;
+        }
+
+        // Read the dimensions first so the full-resolution image is never allocated
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        Bitmap sampled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (sampled == null) return null;
+        return cropAndScale(sampled, width, height);
+    }
+
+    // Centre-crops to the target aspect ratio, then scales to exactly width x height
+    private static Bitmap cropAndScale(Bitmap source, int width, int height) {
+        int[] crop = centerCrop(source.getWidth(), source.getHeight(), width, height);
+        Bitmap cropped = source;
+        if (crop[0] != 0 || crop[1] != 0 || crop[2] != source.getWidth() || crop[3] != source.getHeight()) {
+            cropped = Bitmap.createBitmap(source, crop[0], crop[1], crop[2], crop[3]);
+        }
+        Bitmap scaled = cropped;
+        if (cropped.getWidth() != width || cropped.getHeight() != height) {
+            scaled = Bitmap.createScaledBitmap(cropped, width, height, true);
+        }
+        if (cropped != source && cropped != scaled) cropped.recycle();
+        if (source != scaled) source.recycle();
+        return scaled;
+    }
+
+    private void writeThumbnail(File thumb, Bitmap bitmap) {
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) return;
+        File tmp = new File(thumb.getPath() + ".tmp");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_CACHE_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(thumb)) {
+                tmp.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error writing thumbnail: " + e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    // Deletes the least recently used thumbnails once the cache grows past its budget
+    private void trimDiskCache() {
+        File[] files = diskCacheDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_CACHE_MAX_BYTES) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= DISK_CACHE_MAX_BYTES) break;
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    // The art location changes whenever the file does, so it doubles as a version
+    static String cacheKey(String assetFileName, long artOffset, int artLength, int width, int height) {
+        return assetFileName + '@' + artOffset + '+' + artLength + '/' + width + 'x' + height;
+    }
+
+    static String cacheFileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2 + 4);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return name.append(".jpg").toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Largest power of two that keeps both dimensions at or above the requested size
+    static int calculateInSampleSize(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        while (srcWidth / (sampleSize * 2) >= reqWidth && srcHeight / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // {x, y, width, height} of the largest centred region of the source with the target's aspect ratio
+    static int[] centerCrop(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        if ((long) srcWidth * reqHeight > (long) srcHeight * reqWidth) {
+            int width = (int) ((long) srcHeight * reqWidth / reqHeight);
+            return new int[] {(srcWidth - width) / 2, 0, width, srcHeight};
+        }
+        int height = (int) ((long) srcWidth * reqHeight / reqWidth);
+        return new int[] {0, (srcHeight - height) / 2, srcWidth, height};
+    }
+
+    // Decoding is background work; it must not compete with the UI thread while scrolling
+    private static class ArtThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "AlbumArtLoader-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
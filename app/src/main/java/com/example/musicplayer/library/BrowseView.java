@@ -0,0 +1,106 @@
+package com.example.musicplayer.library;
+
+import java.util.Arrays;
+
+// One way of browsing the library: an order of all track ids plus the section headers shown
+// between them. Rows interleave headers and tracks; a header sits directly above the list
+// position it starts, and an artist's album headers nest under the artist header. Built by
+// TrackStore.browse and immutable afterwards, so switching back to a view costs nothing.
+public final class BrowseView {
+    public enum Mode {
+        FILES,  // Asset file order, no headers
+        TITLE,  // A-Z by title, one header per initial
+        ARTIST, // Artist, then album, then title
+        ALBUM   // Album, then title
+    }
+
+    public final Mode mode;
+    private final int[] order; // List position -> track id
+    private final int[] headerPositions; // Position each header sits above, ascending
+    private final int[] headerLevels; // 0 for a section, 1 for a subsection
+    private final String[] headerLabels;
+
+    BrowseView(Mode mode, int[] order, int[] headerPositions, int[] headerLevels, String[] headerLabels) {
+        this.mode = mode;
+        this.order = order;
+        this.headerPositions = headerPositions;
+        this.headerLevels = headerLevels;
+        this.headerLabels = headerLabels;
+    }
+
+    // Track ids in display order; a permutation of every track in the store it was built from
+    public int[] copyOrder() {
+        return order.clone();
+    }
+
+    int[] order() {
+        return order;
+    }
+
+    public int size() {
+        return order.length;
+    }
+
+    public int headerCount() {
+        return headerPositions.length;
+    }
+
+    public int rowCount() {
+        return order.length + headerPositions.length;
+    }
+
+    // Header index shown at the row, or -1 if the row is a track
+    public int headerAt(int row) {
+        // Row of header k is headerPositions[k] + k, which increases with k
+        int low = 0;
+        int high = headerPositions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int headerRow = headerPositions[mid] + mid;
+            if (headerRow < row) {
+                low = mid + 1;
+            } else if (headerRow > row) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // List position of the track at a row, which must not be a header
+    public int positionAt(int row) {
+        // The number of headers above the row is the number of headers whose row is smaller
+        int low = 0;
+        int high = headerPositions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (headerPositions[mid] + mid < row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return row - low;
+    }
+
+    public int rowOf(int position) {
+        return position + headersAbove(position);
+    }
+
+    private int headersAbove(int position) {
+        int index = Arrays.binarySearch(headerPositions, position);
+        if (index < 0) return -index - 1;
+        // Several headers can sit above the same position; all of them count
+        while (index + 1 < headerPositions.length && headerPositions[index + 1] == position) index++;
+        return index + 1;
+    }
+
+    public int headerLevel(int header) {
+        return headerLevels[header];
+    }
+
+    public String headerLabel(int header) {
+        return headerLabels[header];
+    }
+}
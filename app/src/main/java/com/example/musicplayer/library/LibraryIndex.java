@@ -0,0 +1,173 @@
+package com.example.musicplayer.library;
+
+import com.example.musicplayer.utils.AtomicFiles;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+// On-disk cache of probed track metadata so unchanged files are not re-probed on every launch.
+// An entry is keyed by name and is only valid while the file's size and stamp still match
+// (the stamp is the start offset for assets or the modification time for plain files).
+public class LibraryIndex {
+    private static final int MAGIC = 0x4D504C49; // "MPLI"
+    private static final int VERSION = 4;
+
+    public static class Entry {
+        public final String name;
+        public final long size;
+        public final long stamp;
+        public final String title;
+        public final String artist;
+        public final String album;
+        public final int durationMs;
+        public final long artOffset; // Embedded cover location within the file, -1 if there is none
+        public final int artLength;
+        public final String spellings; // Pinyin spellings for search, null if there is no Chinese text
+        public final float gainDb; // ReplayGain track gain, tagged or measured; NaN until known
+
+        public Entry(String name, long size, long stamp, String title, String artist, String album, int durationMs,
+                     long artOffset, int artLength, String spellings, float gainDb) {
+            this.name = name;
+            this.size = size;
+            this.stamp = stamp;
+            this.title = title;
+            this.artist = artist;
+            this.album = album;
+            this.durationMs = durationMs;
+            this.artOffset = artOffset;
+            this.artLength = artLength;
+            this.spellings = spellings;
+            this.gainDb = gainDb;
+        }
+
+        // The same entry with a measured gain
+        public Entry withGain(float gainDb) {
+            return new Entry(name, size, stamp, title, artist, album, durationMs, artOffset, artLength, spellings,
+                    gainDb);
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean dirty = false;
+
+    public LibraryIndex(File file) {
+        this.file = file;
+    }
+
+    // Reads the whole index with a single sequential read; a missing or unreadable file leaves it empty
+    public synchronized void load() throws IOException {
+        entries.clear();
+        dirty = false;
+        if (!file.exists()) return;
+
+        byte[] data = AtomicFiles.readFully(file);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                dirty = true;
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long stamp = in.readLong();
+                String title = readNullableUTF(in);
+                String artist = readNullableUTF(in);
+                String album = readNullableUTF(in);
+                int durationMs = in.readInt();
+                long artOffset = in.readLong();
+                int artLength = in.readInt();
+                String spellings = readNullableUTF(in);
+                float gainDb = in.readFloat();
+                entries.put(name, new Entry(name, size, stamp, title, artist, album, durationMs, artOffset, artLength,
+                        spellings, gainDb));
+            }
+        } catch (EOFException e) {
+            // Truncated index; keep what was read and rewrite it on the next save
+            dirty = true;
+        }
+    }
+
+    // Returns the cached entry only if the file has not changed since it was probed
+    public synchronized Entry lookup(String name, long size, long stamp) {
+        Entry entry = entries.get(name);
+        if (entry == null || entry.size != size || entry.stamp != stamp) {
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void put(Entry entry) {
+        entries.put(entry.name, entry);
+        dirty = true;
+    }
+
+    // Drops entries for files that no longer exist
+    public synchronized void retainAll(Collection<String> names) {
+        Set<String> keep = new HashSet<>(names);
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (!keep.contains(it.next())) {
+                it.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    // Writes to a temporary file first so a crash mid-write never leaves a corrupt index behind
+    public synchronized void save() throws IOException {
+        if (!dirty) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(entries.size());
+        for (Entry entry : entries.values()) {
+            out.writeUTF(entry.name);
+            out.writeLong(entry.size);
+            out.writeLong(entry.stamp);
+            writeNullableUTF(out, entry.title);
+            writeNullableUTF(out, entry.artist);
+            writeNullableUTF(out, entry.album);
+            out.writeInt(entry.durationMs);
+            out.writeLong(entry.artOffset);
+            out.writeInt(entry.artLength);
+            writeNullableUTF(out, entry.spellings);
+            out.writeFloat(entry.gainDb);
+        }
+        AtomicFiles.write(file, bytes.toByteArray());
+        dirty = false;
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
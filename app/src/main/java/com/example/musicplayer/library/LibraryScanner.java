@@ -0,0 +1,314 @@
+package com.example.musicplayer.library;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import com.example.musicplayer.model.MusicItem;
+import com.example.musicplayer.model.SortKeys;
+import com.example.musicplayer.utils.FormatSniffer;
+import com.example.musicplayer.utils.MetadataExtractor;
+import com.example.musicplayer.utils.TrackInfo;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Scans the audio files in assets on a small worker pool and hands the
+// resulting MusicItems back to the main thread in batches.
+public class LibraryScanner {
+    private static final String TAG = "LibraryScanner";
+
+    // Enough rows to fill the visible part of the playlist; published as soon as they are ready
+    private static final int FIRST_BATCH_SIZE = 8;
+    // Later results are coalesced so the list is not re-laid out for every single track
+    private static final long BATCH_INTERVAL_MS = 100;
+    private static final int MAX_WORKERS = 4;
+    private static final String INDEX_FILE_NAME = "library.idx";
+
+    // Receives scan results on the main thread
+    public interface Callback {
+        void onTracksScanned(List<MusicItem> batch);
+        void onScanFinished(int totalTracks);
+    }
+
+    private final Context context;
+    private final Callback callback;
+    private final LibraryIndex index;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object lock = new Object();
+    private final List<MusicItem> pending = new ArrayList<>(); // guarded by lock
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private ExecutorService workers;
+    private volatile boolean cancelled = false;
+    private boolean publishScheduled = false; // guarded by lock
+    private boolean firstBatchPublished = false; // guarded by lock
+    private int totalTracks = 0;
+
+    private final Runnable publishRunnable = new Runnable() {
+        @Override
+        public void run() {
+            publishPending();
+        }
+    };
+
+    public LibraryScanner(Context context, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.callback = callback;
+        this.index = new LibraryIndex(new File(this.context.getFilesDir(), INDEX_FILE_NAME));
+    }
+
+    public void start() {
+        if (workers != null) return;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        int poolSize = Math.max(1, Math.min(MAX_WORKERS, cores - 1));
+        workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ScannerThreadFactory());
+
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                listAndSubmit();
+            }
+        });
+    }
+
+    // The index the scan reads and fills in; other background work may add to its entries
+    public LibraryIndex getIndex() {
+        return index;
+    }
+
+    // Stops the scan; nothing is delivered to the callback after this returns
+    public void cancel() {
+        cancelled = true;
+        mainHandler.removeCallbacks(publishRunnable);
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void listAndSubmit() {
+        String[] files;
+        try {
+            files = context.getAssets().list("");
+        } catch (IOException e) {
+            Log.e(TAG, "Error listing assets: " + e.getMessage());
+            files = null;
+        }
+
+        List<String> candidates = new ArrayList<>();
+        if (files != null) {
+            for (String file : files) {
+                candidates.add(file);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            finishScan(candidates);
+            return;
+        }
+
+        try {
+            index.load();
+        } catch (IOException e) {
+            Log.w(TAG, "Error loading library index: " + e.getMessage());
+        }
+
+        // Unchanged files come straight from the index; only new or modified ones are probed.
+        // Files are recognised by content, so extensions are not trusted either way.
+        remaining.set(candidates.size());
+        int cached = 0;
+        for (final String file : candidates) {
+            if (cancelled) return;
+            long length = -1;
+            long offset = -1;
+            FormatSniffer.Format format = FormatSniffer.Format.UNKNOWN;
+            LibraryIndex.Entry entry = null;
+            try {
+                AssetFileDescriptor afd = context.getAssets().openFd(file);
+                length = afd.getLength();
+                offset = afd.getStartOffset();
+                entry = index.lookup(file, length, offset);
+                if (entry == null) {
+                    format = MetadataExtractor.sniffFormat(afd);
+                }
+                afd.close();
+            } catch (IOException e) {
+                // Directories and compressed entries cannot be opened as descriptors
+                Log.w(TAG, "Error opening " + file + ": " + e.getMessage());
+            }
+
+            if (entry != null) {
+                cached++;
+                MusicItem item = new MusicItem(entry.title, entry.artist, entry.album, entry.durationMs,
+                        entry.artOffset, entry.artLength, file);
+                item.setSpellings(entry.spellings);
+                // Collation keys depend on the device locale, so they are made fresh rather than stored
+                item.setSortKeys(SortKeys.of(entry.title, entry.artist, entry.album, entry.spellings));
+                item.setGainDb(entry.gainDb);
+                onTrackScanned(item, candidates);
+                continue;
+            }
+            if (!format.isPlayable()) {
+                if (format != FormatSniffer.Format.UNKNOWN) {
+                    Log.w(TAG, "Skipping unsupported audio format: " + file + " (" + format + ")");
+                }
+                onTrackScanned(null, candidates);
+                continue;
+            }
+
+            final long fileLength = length;
+            final long fileOffset = offset;
+            final FormatSniffer.Format fileFormat = format;
+            if (cancelled) return;
+            try {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (cancelled) return;
+                        MusicItem item = scanTrack(file, fileFormat);
+                        if (item != null) {
+                            index.put(new LibraryIndex.Entry(file, fileLength, fileOffset, item.getTitle(),
+                                    item.getArtist(), item.getAlbum(), item.getDurationMs(), item.getArtOffset(),
+                                    item.getArtLength(), item.getSpellings(), item.getGainDb()));
+                        }
+                        onTrackScanned(item, candidates);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // cancel() shut the pool down after the check above; the listing ends here
+                return;
+            }
+        }
+        Log.d(TAG, cached + " of " + candidates.size() + " assets loaded from the library index");
+    }
+
+    private MusicItem scanTrack(String file, FormatSniffer.Format format) {
+        // One probe per file covers tags and duration
+        TrackInfo info;
+        try {
+            info = MetadataExtractor.extractMetadata(context, file, format);
+        } catch (RuntimeException e) {
+            // The parsers report bad input as IOException, so this is a bug in one of them; it costs
+            // this file its tags rather than the whole scan. The sniff already found it playable.
+            Log.e(TAG, "Error probing " + file, e);
+            info = MetadataExtractor.unprobed(format);
+            info.title = MetadataExtractor.getTitleFromFileName(file);
+        }
+        bytesRead.addAndGet(info.bytesRead);
+        if (!info.format.isPlayable()) return null;
+
+        // Use extracted metadata or fallback to defaults
+        String title = info.title != null ? info.title : "Unknown Title";
+        String artist = info.artist != null ? info.artist : "Unknown Artist";
+        String album = info.album != null ? info.album : "Unknown Album";
+        int durationMs = info.hasDuration() ? (int) info.durationMs : 0;
+
+        // Transliterated and collated here, off the main thread, so searching and sorting cost nothing extra
+        String spellings = Pinyin.get().spell(title, artist, album);
+
+        Log.d(TAG, "Found supported audio file: " + file +
+              " - Title: " + title + ", Artist: " + artist + ", Album: " + album);
+        MusicItem item = new MusicItem(title, artist, album, durationMs, info.artOffset, info.artLength, file);
+        item.setSpellings(spellings);
+        item.setSortKeys(SortKeys.of(title, artist, album, spellings));
+        item.setGainDb(info.gainDb);
+        return item;
+    }
+
+    // item is null for assets that turned out not to be playable tracks
+    private void onTrackScanned(MusicItem item, List<String> scannedFiles) {
+        boolean last = remaining.decrementAndGet() == 0;
+        synchronized (lock) {
+            if (item != null) {
+                pending.add(item);
+            }
+            if (last) {
+                publishScheduled = false;
+                mainHandler.removeCallbacks(publishRunnable);
+            } else if (!firstBatchPublished) {
+                if (pending.size() >= FIRST_BATCH_SIZE) {
+                    firstBatchPublished = true;
+                    publishScheduled = true;
+                    mainHandler.post(publishRunnable);
+                }
+                return;
+            } else {
+                if (!publishScheduled) {
+                    publishScheduled = true;
+                    mainHandler.postDelayed(publishRunnable, BATCH_INTERVAL_MS);
+                }
+                return;
+            }
+        }
+        finishScan(scannedFiles);
+    }
+
+    // Runs on the worker that completed the last track
+    private void finishScan(List<String> scannedFiles) {
+        if (!cancelled) {
+            index.retainAll(scannedFiles);
+            try {
+                index.save();
+            } catch (IOException e) {
+                Log.w(TAG, "Error saving library index: " + e.getMessage());
+            }
+        }
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                publishPending();
+                if (!cancelled) {
+                    Log.d(TAG, "Total supported audio files found: " + totalTracks +
+                          ", probed " + bytesRead.get() + " bytes");
+                    callback.onScanFinished(totalTracks);
+                }
+            }
+        });
+        workers.shutdown();
+    }
+
+    // Runs on the main thread
+    private void publishPending() {
+        List<MusicItem> batch;
+        synchronized (lock) {
+            publishScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        if (cancelled) return;
+        totalTracks += batch.size();
+        callback.onTracksScanned(batch);
+    }
+
+    // Scan workers run at background priority so they never compete with the UI thread
+    private static class ScannerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "LibraryScanner-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.musicplayer.library;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import com.example.musicplayer.utils.ReplayGain;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Measures the loudness of tracks that carry no ReplayGain tag, one at a time on a single thread
+// at the lowest priority, and stores the resulting gain in the library index so each file is
+// only ever measured once. Long tracks are not decoded whole: a few evenly spaced windows are
+// enough for integrated loudness. While playback is active, decoding is paced to a few times
+// real time so that it never competes with the player for the CPU.
+public class LoudnessAnalyzer {
+    private static final String TAG = "LoudnessAnalyzer";
+
+    // Tracks longer than WINDOWS windows of WINDOW_US are sampled rather than decoded whole
+    private static final int WINDOWS = 6;
+    private static final long WINDOW_US = 10_000_000L;
+    // Audio decoded per second of wall time, at most, while something is playing
+    private static final int THROTTLED_SPEED = 4;
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+    // Measurements written to the index file at a time, besides when the queue runs dry
+    private static final int SAVE_EVERY = 20;
+
+    // Called on the main thread
+    public interface Listener {
+        void onGainMeasured(int trackId, float gainDb);
+    }
+
+    private final Context context;
+    private final LibraryIndex index;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker;
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile boolean throttled = false;
+
+    // Analyzer thread only from here on
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private int unsaved;
+
+    public LoudnessAnalyzer(Context context, LibraryIndex index, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.index = index;
+        this.listener = listener;
+        this.worker = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new AnalyzerThreadFactory());
+    }
+
+    // Queues the track for measuring; the gain comes back through the listener unless the track
+    // turns out to be silent or undecodable
+    public void analyze(final int trackId, final String assetFileName) {
+        if (cancelled) return;
+        queued.incrementAndGet();
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!cancelled) measureAndStore(trackId, assetFileName);
+                } finally {
+                    if (queued.decrementAndGet() == 0 || unsaved >= SAVE_EVERY || cancelled) save();
+                }
+            }
+        });
+    }
+
+    // Slows decoding down while playback is active
+    public void setPlaybackActive(boolean active) {
+        throttled = active;
+    }
+
+    // Stops after the current track's next buffer; nothing is delivered to the listener after this returns
+    public void cancel() {
+        cancelled = true;
+        worker.shutdownNow();
+    }
+
+    private void measureAndStore(final int trackId, String assetFileName) {
+        LibraryIndex.Entry entry;
+        final float gainDb;
+        long startMs = System.currentTimeMillis();
+        try {
+            AssetFileDescriptor afd = context.getAssets().openFd(assetFileName);
+            try {
+                entry = index.lookup(assetFileName, afd.getLength(), afd.getStartOffset());
+                // Measured on an earlier run whose result the caller has not seen
+                gainDb = entry != null && !Float.isNaN(entry.gainDb) ? entry.gainDb : measure(afd);
+            } finally {
+                afd.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            // MediaCodec throws IllegalStateException for streams it gives up on
+            Log.w(TAG, "Could not measure " + assetFileName + ": " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            return;
+        }
+        if (Float.isNaN(gainDb)) return;
+        if (entry != null && Float.isNaN(entry.gainDb)) {
+            index.put(entry.withGain(gainDb));
+            unsaved++;
+        }
+        Log.d(TAG, assetFileName + ": " + gainDb + " dB in " + (System.currentTimeMillis() - startMs) + " ms");
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!cancelled) listener.onGainMeasured(trackId, gainDb);
+            }
+        });
+    }
+
+    // The track gain for the audio in afd, or NaN if it is silent
+    private float measure(AssetFileDescriptor afd) throws IOException, InterruptedException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount() && format == null; i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                }
+            }
+            if (format == null) throw new IOException("No audio track");
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : -1;
+            Decoding decoding = new Decoding(extractor, codec);
+            if (durationUs < 2 * WINDOWS * WINDOW_US) {
+                decoding.decodeUntil(Long.MAX_VALUE);
+            } else {
+                // Window w is centred on the middle of the w-th of WINDOWS equal parts of the track
+                for (int w = 0; w < WINDOWS; w++) {
+                    long startUs = durationUs * (2 * w + 1) / (2 * WINDOWS) - WINDOW_US / 2;
+                    extractor.seekTo(startUs, MediaExtractor.SEEK_TO_CLOSEST_SYNC);
+                    codec.flush();
+                    if (decoding.meter != null) decoding.meter.startSegment();
+                    decoding.decodeUntil(startUs + WINDOW_US);
+                }
+            }
+            return decoding.meter != null ? ReplayGain.forLoudness(decoding.meter.integratedLufs()) : Float.NaN;
+        } finally {
+            if (codec != null) {
+                codec.stop();
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void save() {
+        if (unsaved == 0) return;
+        unsaved = 0;
+        try {
+            index.save();
+        } catch (IOException e) {
+            Log.w(TAG, "Error saving library index: " + e.getMessage());
+        }
+    }
+
+    // One track's decoder feeding its meter
+    private final class Decoding {
+        final MediaExtractor extractor;
+        final MediaCodec codec;
+        LoudnessMeter meter; // Made once the decoder reports its output format
+        int frameSize;
+        int sampleRate;
+
+        Decoding(MediaExtractor extractor, MediaCodec codec) {
+            this.extractor = extractor;
+            this.codec = codec;
+        }
+
+        // Feeds the decoder from where the extractor stands until endUs or the end of the track,
+        // and meters what comes out
+        void decodeUntil(long endUs) throws IOException, InterruptedException {
+            boolean inputDone = false;
+            while (!cancelled) {
+                if (!inputDone) {
+                    int in = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (in >= 0) {
+                        int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+                        long timeUs = extractor.getSampleTime();
+                        if (size < 0 || timeUs >= endUs) {
+                            codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(in, 0, size, timeUs, 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int out = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    onOutputFormat(codec.getOutputFormat());
+                    continue;
+                }
+                if (out < 0) continue;
+                if (info.size > 0) {
+                    if (meter == null) onOutputFormat(codec.getOutputFormat());
+                    ByteBuffer pcm = codec.getOutputBuffer(out);
+                    pcm.limit(info.offset + info.size);
+                    pcm.position(info.offset);
+                    meter.addPcm16(pcm);
+                }
+                codec.releaseOutputBuffer(out, false);
+                pace(info.size);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) return;
+            }
+            throw new InterruptedException();
+        }
+
+        private void onOutputFormat(MediaFormat format) throws IOException {
+            if (meter != null) return;
+            int encoding = format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                    ? format.getInteger(MediaFormat.KEY_PCM_ENCODING) : AudioFormat.ENCODING_PCM_16BIT;
+            if (encoding != AudioFormat.ENCODING_PCM_16BIT) throw new IOException("Decoder output encoding " + encoding);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            frameSize = 2 * channels;
+            meter = new LoudnessMeter(sampleRate, channels);
+        }
+
+        // While playing, sleeps long enough that decoding runs at THROTTLED_SPEED at most
+        private void pace(int bytes) throws InterruptedException {
+            if (!throttled || sampleRate == 0 || bytes <= 0) return;
+            long audioMs = (long) bytes / frameSize * 1000 / sampleRate;
+            Thread.sleep(audioMs / THROTTLED_SPEED);
+        }
+    }
+
+    // The analyzer runs at the lowest priority there is, behind the scan, art loading and the UI
+    private static class AnalyzerThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                    r.run();
+                }
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
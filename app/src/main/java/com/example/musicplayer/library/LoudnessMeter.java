@@ -0,0 +1,167 @@
+package com.example.musicplayer.library;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// Integrated loudness as defined by ITU-R BS.1770 / EBU R128: the signal is K-weighted (a high
+// shelf and a high pass), its mean square is taken over 400 ms blocks every 100 ms, and the
+// blocks are gated twice, at -70 LUFS and then at 10 LU below the loudness of what passed, so
+// silence and quiet passages do not drag the result down. Every channel counts with weight 1,
+// which is exact for mono and stereo.
+//
+// Audio may be fed in separate segments (e.g. windows sampled from a long track); blocks never
+// span two segments. Allocates nothing per buffer. Single-threaded.
+public class LoudnessMeter {
+    private static final int SUB_BLOCKS_PER_BLOCK = 4; // 400 ms blocks, 100 ms apart
+    private static final double ABSOLUTE_GATE_LUFS = -70;
+    private static final double RELATIVE_GATE_LU = -10;
+
+    private final int channels;
+    private final int subBlockFrames;
+    // K-weighting biquads, one state per channel for each of the two stages
+    private final double shelfB0, shelfB1, shelfB2, shelfA1, shelfA2;
+    private final double passA1, passA2;
+    private final double[] shelfZ1, shelfZ2, passZ1, passZ2;
+
+    private double subBlockEnergy; // Summed over channels for the sub-block being filled
+    private int subBlockFill; // Frames in it so far
+    private final double[] recent = new double[SUB_BLOCKS_PER_BLOCK]; // Energies of the latest sub-blocks
+    private int recentCount;
+    private double[] blocks = new double[256]; // Mean square of each block, summed over channels
+    private int blockCount;
+
+    public LoudnessMeter(int sampleRate, int channels) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException(channels + " channels at " + sampleRate + " Hz");
+        }
+        this.channels = channels;
+        this.subBlockFrames = Math.max(1, sampleRate / 10);
+
+        // Stage 1: high shelf, +4 dB above about 1.5 kHz, modelling the head
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10, 3.999843853973347 / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelfB0 = (vh + vb * k / q + k * k) / a0;
+        shelfB1 = 2 * (k * k - vh) / a0;
+        shelfB2 = (vh - vb * k / q + k * k) / a0;
+        shelfA1 = 2 * (k * k - 1) / a0;
+        shelfA2 = (1 - k / q + k * k) / a0;
+
+        // Stage 2: high pass at about 38 Hz; its numerator is 1, -2, 1
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1 + k / q + k * k;
+        passA1 = 2 * (k * k - 1) / a0;
+        passA2 = (1 - k / q + k * k) / a0;
+
+        shelfZ1 = new double[channels];
+        shelfZ2 = new double[channels];
+        passZ1 = new double[channels];
+        passZ2 = new double[channels];
+    }
+
+    // Interleaved 16-bit little-endian PCM from the buffer's position to its limit; the buffer's
+    // position is left where it was
+    public void addPcm16(ByteBuffer pcm) {
+        ByteOrder order = pcm.order();
+        pcm.order(ByteOrder.LITTLE_ENDIAN);
+        int end = pcm.limit() - (pcm.limit() - pcm.position()) % (2 * channels);
+        for (int i = pcm.position(); i < end; i += 2 * channels) {
+            for (int c = 0; c < channels; c++) {
+                addSample(c, pcm.getShort(i + 2 * c) / 32768.0);
+            }
+            endFrame();
+        }
+        pcm.order(order);
+    }
+
+    // Interleaved samples in [-1, 1]
+    public void add(float[] samples, int offset, int frames) {
+        for (int f = 0; f < frames; f++) {
+            for (int c = 0; c < channels; c++) {
+                addSample(c, samples[offset + f * channels + c]);
+            }
+            endFrame();
+        }
+    }
+
+    // The audio that follows does not continue what came before; a partly filled block is dropped
+    public void startSegment() {
+        Arrays.fill(shelfZ1, 0);
+        Arrays.fill(shelfZ2, 0);
+        Arrays.fill(passZ1, 0);
+        Arrays.fill(passZ2, 0);
+        subBlockEnergy = 0;
+        subBlockFill = 0;
+        recentCount = 0;
+    }
+
+    // Gated loudness in LUFS of everything added so far, or NaN if nothing was loud enough
+    public double integratedLufs() {
+        double absoluteGate = energyOf(ABSOLUTE_GATE_LUFS);
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] > absoluteGate) {
+                sum += blocks[i];
+                count++;
+            }
+        }
+        if (count == 0) return Double.NaN;
+        double relativeGate = energyOf(loudnessOf(sum / count) + RELATIVE_GATE_LU);
+        double gated = 0;
+        int gatedCount = 0;
+        for (int i = 0; i < blockCount; i++) {
+            if (blocks[i] > relativeGate && blocks[i] > absoluteGate) {
+                gated += blocks[i];
+                gatedCount++;
+            }
+        }
+        return gatedCount == 0 ? Double.NaN : loudnessOf(gated / gatedCount);
+    }
+
+    // 400 ms blocks measured so far
+    public int blockCount() {
+        return blockCount;
+    }
+
+    private void addSample(int c, double x) {
+        double y = shelfB0 * x + shelfZ1[c];
+        shelfZ1[c] = shelfB1 * x - shelfA1 * y + shelfZ2[c];
+        shelfZ2[c] = shelfB2 * x - shelfA2 * y;
+        double z = y + passZ1[c];
+        passZ1[c] = -2 * y - passA1 * z + passZ2[c];
+        passZ2[c] = y - passA2 * z;
+        subBlockEnergy += z * z;
+    }
+
+    private void endFrame() {
+        if (++subBlockFill < subBlockFrames) return;
+        System.arraycopy(recent, 1, recent, 0, SUB_BLOCKS_PER_BLOCK - 1);
+        recent[SUB_BLOCKS_PER_BLOCK - 1] = subBlockEnergy;
+        subBlockEnergy = 0;
+        subBlockFill = 0;
+        if (recentCount < SUB_BLOCKS_PER_BLOCK) recentCount++;
+        if (recentCount == SUB_BLOCKS_PER_BLOCK) {
+            double energy = 0;
+            for (double e : recent) energy += e;
+            addBlock(energy / (SUB_BLOCKS_PER_BLOCK * subBlockFrames));
+        }
+    }
+
+    private void addBlock(double meanSquare) {
+        if (blockCount == blocks.length) blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        blocks[blockCount++] = meanSquare;
+    }
+
+    private static double loudnessOf(double meanSquare) {
+        return -0.691 + 10 * Math.log10(meanSquare);
+    }
+
+    private static double energyOf(double lufs) {
+        return Math.pow(10, (lufs + 0.691) / 10);
+    }
+}
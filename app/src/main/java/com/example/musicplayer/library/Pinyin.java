@@ -0,0 +1,197 @@
+package com.example.musicplayer.library;
+
+import android.icu.text.AlphabeticIndex;
+import android.icu.text.Transliterator;
+import android.os.Build;
+import androidx.annotation.RequiresApi;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Latin spellings of Chinese text, so titles and artists can be searched from a Latin keypad.
+// Every run of Han characters is spelled out as toneless pinyin with the syllables joined by
+// SYLLABLE_BREAK ("zhou'jie'lun") and as its initials ("z'j'l"); a character with several
+// readings adds a spelling for each of them. Spellings are produced by the scan workers and
+// stored with the track, so searching never transliterates anything.
+public class Pinyin {
+    // Marks a syllable boundary inside a spelling; a search term may start at any syllable
+    public static final char SYLLABLE_BREAK = '\'';
+
+    // Spellings per run are capped so a title full of polyphonic characters stays small
+    private static final int MAX_VARIANTS = 4;
+
+    // Common characters whose readings differ by more than tone, most frequent reading first
+    private static final String[] POLYPHONES = {
+            "长chang,zhang", "重zhong,chong", "乐le,yue", "行xing,hang", "曾zeng,ceng", "单dan,shan,chan",
+            "朝chao,zhao", "解jie,xie", "区qu,ou", "仇chou,qiu", "查cha,zha", "沈shen,chen", "覃qin,tan",
+            "翟zhai,di", "尉wei,yu", "传chuan,zhuan", "还hai,huan", "了le,liao", "的de,di", "地di,de",
+            "和he,huo,hu", "都dou,du", "藏cang,zang", "调diao,tiao", "弹tan,dan", "差cha,chai,ci",
+            "角jiao,jue", "大da,dai", "会hui,kuai", "血xue,xie", "给gei,ji", "强qiang,jiang", "薄bo,bao",
+            "便bian,pian", "得de,dei", "着zhe,zhao,zhuo", "没mei,mo", "降jiang,xiang", "奇qi,ji",
+            "省sheng,xing", "系xi,ji", "厦xia,sha", "折zhe,she", "露lu,lou", "落luo,la,lao", "柏bai,bo",
+            "盛sheng,cheng", "缪miao,mou", "车che,ju", "参can,shen", "率lv,shuai", "数shu,shuo",
+            "蔓man,wan", "校xiao,jiao", "似si,shi", "塞sai,se", "识shi,zhi", "属shu,zhu", "宿su,xiu",
+            "恶e,wu", "模mo,mu", "莎sha,suo", "咖ka,ga", "员yuan,yun", "秘mi,bi", "繁fan,po", "盖gai,ge",
+            "乘cheng,sheng", "阿a,e", "那na,nei", "哪na,nei", "呢ne,ni", "削xiao,xue", "脉mai,mo",
+            "壳ke,qiao", "觉jue,jiao", "弄nong,long", "石shi,dan", "屏ping,bing", "仔zai,zi", "伯bo,bai",
+            "贾jia,gu", "叶ye,xie", "万wan,mo", "朴pu,piao,po", "藉ji,jie", "番fan,pan", "佛fo,fu",
+            "提ti,di",
+    };
+
+    private static final Map<Character, String[]> POLYPHONE_READINGS = new HashMap<>();
+    static {
+        for (String entry : POLYPHONES) {
+            POLYPHONE_READINGS.put(entry.charAt(0), entry.substring(1).split(","));
+        }
+    }
+
+    private static Pinyin instance;
+
+    // Default reading of a single Han character in any romanisation, or null if it has none
+    public interface Source {
+        String reading(char c);
+    }
+
+    private final Source source;
+    private final Map<Character, String[]> readings = new HashMap<>(); // guarded by itself
+
+    // The platform's ICU data supplies readings: full pinyin from API 29, initials only before that
+    public static synchronized Pinyin get() {
+        if (instance == null) {
+            instance = new Pinyin(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    ? new TransliteratorSource() : new InitialsSource());
+        }
+        return instance;
+    }
+
+    Pinyin(Source source) {
+        this.source = source;
+    }
+
+    // Space-separated spellings of every Han run in the given fields, or null if there are none
+    public String spell(String... fields) {
+        Set<String> spellings = new LinkedHashSet<>();
+        for (String field : fields) {
+            if (field == null) continue;
+            int length = field.length();
+            int i = 0;
+            while (i < length) {
+                if (!Character.isIdeographic(field.charAt(i))) {
+                    i++;
+                    continue;
+                }
+                int end = i + 1;
+                while (end < length && Character.isIdeographic(field.charAt(end))) end++;
+                spellRun(field, i, end, spellings);
+                i = end;
+            }
+        }
+        if (spellings.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (String spelling : spellings) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(spelling);
+        }
+        return sb.toString();
+    }
+
+    private void spellRun(String field, int start, int end, Set<String> spellings) {
+        List<List<String>> variants = new ArrayList<>();
+        variants.add(new ArrayList<String>());
+        for (int i = start; i < end; i++) {
+            String[] choices = readings(field.charAt(i));
+            if (choices == null) continue;
+            List<List<String>> next = new ArrayList<>();
+            for (int v = 0; v < variants.size(); v++) {
+                List<String> variant = variants.get(v);
+                for (int k = 0; k < choices.length; k++) {
+                    // Every variant still to come needs room for at least its first reading
+                    if (k > 0 && next.size() + variants.size() - v > MAX_VARIANTS) break;
+                    List<String> extended = new ArrayList<>(variant);
+                    extended.add(choices[k]);
+                    next.add(extended);
+                }
+            }
+            variants = next;
+        }
+
+        for (List<String> syllables : variants) {
+            if (syllables.isEmpty()) continue;
+            StringBuilder full = new StringBuilder();
+            StringBuilder initials = new StringBuilder();
+            for (String syllable : syllables) {
+                if (full.length() > 0) {
+                    full.append(SYLLABLE_BREAK);
+                    initials.append(SYLLABLE_BREAK);
+                }
+                full.append(syllable);
+                initials.append(syllable.charAt(0));
+            }
+            spellings.add(full.toString());
+            // A single syllable's initial is already a prefix of its spelling
+            if (syllables.size() > 1) {
+                spellings.add(initials.toString());
+            }
+        }
+    }
+
+    // Toneless lower-case readings of c, most common first; null if it has none
+    String[] readings(char c) {
+        String[] polyphone = POLYPHONE_READINGS.get(c);
+        if (polyphone != null) return polyphone;
+        synchronized (readings) {
+            if (readings.containsKey(c)) return readings.get(c);
+        }
+        String reading = toneless(source.reading(c));
+        String[] result = reading != null ? new String[] {reading} : null;
+        synchronized (readings) {
+            readings.put(c, result);
+        }
+        return result;
+    }
+
+    // "lǜ" -> "lv": marks dropped, ü written as v the way pinyin keyboards type it
+    static String toneless(String latin) {
+        if (latin == null) return null;
+        String decomposed = Normalizer.normalize(latin.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (c < 'a' || c > 'z') continue;
+            if (c == 'u' && i + 1 < decomposed.length() && decomposed.charAt(i + 1) == '\u0308') {
+                c = 'v';
+            }
+            sb.append(c);
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private static class TransliteratorSource implements Source {
+        private final Transliterator hanLatin = Transliterator.getInstance("Han-Latin");
+
+        @Override
+        public synchronized String reading(char c) {
+            String han = String.valueOf(c);
+            String latin = hanLatin.transliterate(han);
+            return latin.equals(han) ? null : latin;
+        }
+    }
+
+    // Older devices have no transliterator, but the pinyin-ordered contact index knows each initial
+    private static class InitialsSource implements Source {
+        private final AlphabeticIndex.ImmutableIndex<String> index =
+                new AlphabeticIndex<String>(Locale.SIMPLIFIED_CHINESE).buildImmutableIndex();
+
+        @Override
+        public String reading(char c) {
+            String label = index.getBucket(index.getBucketIndex(String.valueOf(c))).getLabel();
+            return label.length() == 1 && label.charAt(0) >= 'A' && label.charAt(0) <= 'Z' ? label : null;
+        }
+    }
+}
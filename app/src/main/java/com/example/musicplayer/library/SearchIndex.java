@@ -0,0 +1,217 @@
+package com.example.musicplayer.library;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// In-memory type-ahead index over title, artist and album. Text is case- and accent-folded and
+// matched by word prefix ("bea" finds "The Beatles"); each CJK ideograph starts a word of its own,
+// so any substring of a Chinese title matches. Chinese text is also matched through its pinyin
+// spellings ("zjl" or "zhoujielun" finds 周杰伦), which the scanner works out ahead of time; a
+// term may start at any syllable and runs across syllable breaks. Every word start is posted
+// under its first one and two characters, so short queries are answered straight from a posting
+// list and longer ones only verify the candidates of their most selective term. While the user
+// keeps typing, each query refines the previous result set instead of going back to the index.
+//
+// Tracks are added incrementally by track id as the scan delivers them. Not thread-safe: used on
+// the main thread only.
+public class SearchIndex {
+    private static final int KEY_LENGTH = 2;
+    private static final char SYLLABLE_BREAK = Pinyin.SYLLABLE_BREAK;
+
+    private final Map<Integer, IntList> postings = new HashMap<>();
+    // Folded "title artist album" of every track and its pinyin spellings, packed back to back
+    private char[] text = new char[4096];
+    private int[] textStarts = new int[65];
+    private int count = 0;
+
+    // Result cache for refining successive keystrokes
+    private String lastQuery = "";
+    private int[] lastResults;
+
+    public int size() {
+        return count;
+    }
+
+    public void add(int trackId, String title, String artist, String album) {
+        add(trackId, title, artist, album, null);
+    }
+
+    // Tracks must be added in track id order, starting at 0. spellings is Pinyin.spell's output
+    // for the same fields, or null.
+    public void add(int trackId, String title, String artist, String album, String spellings) {
+        if (trackId != count) {
+            throw new IllegalArgumentException("Expected track " + count + ", got " + trackId);
+        }
+        String folded = fold(join(title, artist, album));
+        if (spellings != null && !spellings.isEmpty()) {
+            folded = folded + ' ' + spellings;
+        }
+        int start = textStarts[count];
+        int end = start + folded.length();
+        if (end > text.length) {
+            text = Arrays.copyOf(text, Math.max(end, text.length + (text.length >> 1)));
+        }
+        if (count + 2 > textStarts.length) {
+            textStarts = Arrays.copyOf(textStarts, textStarts.length + (textStarts.length >> 1) + 1);
+        }
+        folded.getChars(0, folded.length(), text, start);
+        count++;
+        textStarts[count] = end;
+
+        for (int i = start; i < end; i++) {
+            if (!isWordStart(text, start, i)) continue;
+            post(text[i], trackId);
+            int second = nextInWord(text, i + 1, end);
+            if (second >= 0) {
+                post(text[i] << 16 | text[second], trackId);
+            }
+        }
+        // A cached result set would miss the new track
+        lastResults = null;
+    }
+
+    // Track ids matching every word of the query, in track id order; null for an empty query
+    public int[] search(String query) {
+        String folded = fold(query).trim();
+        if (folded.isEmpty()) {
+            lastQuery = "";
+            lastResults = null;
+            return null;
+        }
+        String[] terms = folded.split(" +");
+
+        int[] results;
+        if (lastResults != null && !lastQuery.isEmpty() && folded.startsWith(lastQuery)) {
+            // Typing more can only narrow the match, so only the previous matches need checking
+            results = filter(lastResults, lastResults.length, terms);
+        } else {
+            results = lookup(terms);
+        }
+        lastQuery = folded;
+        lastResults = results;
+        return results;
+    }
+
+    private int[] lookup(String[] terms) {
+        IntList best = null;
+        boolean exact = terms.length == 1 && terms[0].length() <= KEY_LENGTH;
+        for (String term : terms) {
+            char[] chars = term.toCharArray();
+            int key = chars.length >= KEY_LENGTH ? chars[0] << 16 | chars[1] : chars[0];
+            IntList candidates = postings.get(key);
+            if (candidates == null) return new int[0];
+            if (best == null || candidates.size < best.size) {
+                best = candidates;
+            }
+        }
+        if (exact) {
+            return Arrays.copyOf(best.values, best.size);
+        }
+        return filter(best.values, best.size, terms);
+    }
+
+    private int[] filter(int[] candidates, int length, String[] terms) {
+        int[] matches = new int[length];
+        int found = 0;
+        for (int i = 0; i < length; i++) {
+            int trackId = candidates[i];
+            if (matchesAll(trackId, terms)) {
+                matches[found++] = trackId;
+            }
+        }
+        return Arrays.copyOf(matches, found);
+    }
+
+    private boolean matchesAll(int trackId, String[] terms) {
+        int start = textStarts[trackId];
+        int end = textStarts[trackId + 1];
+        for (String term : terms) {
+            if (!containsWordPrefix(start, end, term)) return false;
+        }
+        return true;
+    }
+
+    private boolean containsWordPrefix(int start, int end, String term) {
+        int length = term.length();
+        char first = term.charAt(0);
+        for (int i = start; i + length <= end; i++) {
+            if (text[i] != first || !isWordStart(text, start, i)) continue;
+            // Terms never contain syllable breaks, so they are stepped over in the text
+            int k = 1;
+            int j = i + 1;
+            while (k < length && j < end) {
+                if (text[j] == SYLLABLE_BREAK) {
+                    j++;
+                } else if (text[j] == term.charAt(k)) {
+                    j++;
+                    k++;
+                } else {
+                    break;
+                }
+            }
+            if (k == length) return true;
+        }
+        return false;
+    }
+
+    private void post(int key, int trackId) {
+        IntList list = postings.get(key);
+        if (list == null) {
+            list = new IntList();
+            postings.put(key, list);
+        }
+        // Tracks are added in id order, so a repeat can only be the last entry
+        if (list.size == 0 || list.values[list.size - 1] != trackId) {
+            list.add(trackId);
+        }
+    }
+
+    // Index of the next character of the same word at or after i, skipping syllable breaks; -1 at its end
+    private static int nextInWord(char[] chars, int i, int end) {
+        while (i < end && chars[i] == SYLLABLE_BREAK) i++;
+        return i < end && chars[i] != ' ' ? i : -1;
+    }
+
+    private static boolean isWordStart(char[] chars, int textStart, int i) {
+        char c = chars[i];
+        if (c == ' ' || c == SYLLABLE_BREAK) return false;
+        return i == textStart || chars[i - 1] == ' ' || chars[i - 1] == SYLLABLE_BREAK || Character.isIdeographic(c);
+    }
+
+    private static String join(String title, String artist, String album) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : new String[] {title, artist, album}) {
+            if (part == null) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    // Lower case, accents stripped, and anything that is not a letter or digit turned into a space
+    static String fold(String value) {
+        if (value == null) return "";
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+            sb.append(Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ');
+        }
+        return sb.toString();
+    }
+
+    private static class IntList {
+        int[] values = new int[4];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,619 @@
+package com.example.musicplayer.library;
+
+import com.example.musicplayer.model.MusicItem;
+import com.example.musicplayer.model.SortKeys;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read-optimised, column-oriented track table shared by the playlist and the playback service.
+// Each column is a primitive array indexed by track id (the order tracks were added in):
+// durations are ints, artists and albums are ids into deduplicated dictionaries, and titles and
+// asset names are packed into shared char buffers. A separate display order maps list positions
+// to track ids, so re-sorting the list only swaps one int[]. Collation keys made at scan time
+// are kept alongside (per track for titles, per dictionary entry for artists and albums), so the
+// browse views are built from byte comparisons and cached until the next track is added.
+//
+// Field accessors take a track id; getTrackId maps a list position to one. MusicItem row views
+// are only created on demand via getItem. Not thread-safe: the store is only touched on the main thread.
+public class TrackStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long RANK_MASK = (1L << 21) - 1;
+    // Key bytes per sort pass: each takes 9 bits so that a missing byte sorts before any byte
+    private static final int KEY_CHUNK = 4;
+    private static final long CHUNK_BYTE_MASK = (1L << 9) - 1;
+    // Gains are kept to a quarter dB, well under what can be heard, in a byte: ±31.75 dB
+    private static final float GAIN_STEPS_PER_DB = 4f;
+    private static final byte UNKNOWN_GAIN = Byte.MIN_VALUE;
+
+    private int count = 0;
+    private int[] durationMs = new int[INITIAL_CAPACITY];
+    private int[] artistIds = new int[INITIAL_CAPACITY];
+    private int[] albumIds = new int[INITIAL_CAPACITY];
+    // Embedded art sits in the tag near the start of the file, so an int offset is plenty
+    private int[] artOffsets = new int[INITIAL_CAPACITY];
+    private int[] artLengths = new int[INITIAL_CAPACITY];
+    private byte[] gains = new byte[INITIAL_CAPACITY]; // Track gain in quarter dB, see packGain
+    private char[] initials = new char[INITIAL_CAPACITY];
+    private final PackedStrings titles = new PackedStrings();
+    private final PackedBytes titleKeys = new PackedBytes();
+    private final PackedStrings assetNames = new PackedStrings();
+    private final Dictionary artists = new Dictionary();
+    private final Dictionary albums = new Dictionary();
+    private int[] order = new int[INITIAL_CAPACITY]; // list position -> track id
+    private int[] positions = new int[INITIAL_CAPACITY]; // track id -> list position, the inverse of order
+    // Browse views and their source, cleared whenever a track is added
+    private final BrowseView[] views = new BrowseView[BrowseView.Mode.values().length];
+    private BrowseSource browseSource;
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // Appends a track at the end of the current order; returns its track id
+    public int add(MusicItem item) {
+        ensureCapacity(count + 1);
+        SortKeys keys = item.getSortKeys();
+        if (keys == null) {
+            keys = SortKeys.of(item.getTitle(), item.getArtist(), item.getAlbum(), item.getSpellings());
+        }
+        int id = count;
+        durationMs[id] = item.getDurationMs();
+        artistIds[id] = artists.intern(item.getArtist(), keys.artist);
+        albumIds[id] = albums.intern(item.getAlbum(), keys.album);
+        long artOffset = item.getArtOffset();
+        artOffsets[id] = artOffset <= Integer.MAX_VALUE ? (int) artOffset : -1;
+        artLengths[id] = item.getArtLength();
+        gains[id] = packGain(item.getGainDb());
+        initials[id] = keys.initial;
+        titles.add(item.getTitle());
+        titleKeys.add(keys.title);
+        assetNames.add(item.getAssetFileName());
+        order[id] = id;
+        positions[id] = id;
+        count++;
+        Arrays.fill(views, null);
+        browseSource = null;
+        return id;
+    }
+
+    public void addAll(List<MusicItem> items) {
+        ensureCapacity(count + items.size());
+        for (MusicItem item : items) {
+            add(item);
+        }
+    }
+
+    public int getTrackId(int position) {
+        return order[position];
+    }
+
+    // Titles live in one shared buffer: chars [getTitleStart, getTitleStart + getTitleLength) of
+    // getTitleChars(). Existing characters never change, so the slice can be displayed in place.
+    public char[] getTitleChars() {
+        return titles.chars;
+    }
+
+    public int getTitleStart(int id) {
+        return titles.start(id);
+    }
+
+    public int getTitleLength(int id) {
+        return titles.length(id);
+    }
+
+    public String getTitle(int id) {
+        return titles.get(id);
+    }
+
+    public String getArtist(int id) {
+        return artists.get(artistIds[id]);
+    }
+
+    public String getAlbum(int id) {
+        return albums.get(albumIds[id]);
+    }
+
+    public int getArtistId(int id) {
+        return artistIds[id];
+    }
+
+    public int getAlbumId(int id) {
+        return albumIds[id];
+    }
+
+    public int getDurationMs(int id) {
+        return durationMs[id];
+    }
+
+    public String getAssetFileName(int id) {
+        return assetNames.get(id);
+    }
+
+    public boolean hasArt(int id) {
+        return artOffsets[id] >= 0 && artLengths[id] > 0;
+    }
+
+    public long getArtOffset(int id) {
+        return artOffsets[id];
+    }
+
+    public int getArtLength(int id) {
+        return artLengths[id];
+    }
+
+    // ReplayGain track gain in dB, NaN until tagged or measured
+    public float getGainDb(int id) {
+        return gains[id] == UNKNOWN_GAIN ? Float.NaN : gains[id] / GAIN_STEPS_PER_DB;
+    }
+
+    // A measurement that arrived after the track was added
+    public void setGainDb(int id, float gainDb) {
+        gains[id] = packGain(gainDb);
+    }
+
+    // A standalone row view, e.g. to hand one track to code outside the list
+    public MusicItem getItem(int id) {
+        MusicItem item = new MusicItem(titles.get(id), artists.get(artistIds[id]), albums.get(albumIds[id]),
+                durationMs[id], artOffsets[id], artLengths[id], assetNames.get(id));
+        item.setGainDb(getGainDb(id));
+        return item;
+    }
+
+    // List position currently showing the given track, or -1
+    public int positionOf(int trackId) {
+        return trackId >= 0 && trackId < count ? positions[trackId] : -1;
+    }
+
+    public int[] copyOrder() {
+        return Arrays.copyOf(order, count);
+    }
+
+    // newOrder must be a permutation of all track ids
+    public void setOrder(int[] newOrder) {
+        if (newOrder.length != count) {
+            throw new IllegalArgumentException("Order has " + newOrder.length + " entries for " + count + " tracks");
+        }
+        System.arraycopy(newOrder, 0, order, 0, count);
+        updatePositions();
+    }
+
+    // Lists the tracks in a browse view's order. Tracks added after the view was built follow it.
+    public void setOrder(BrowseView view) {
+        int[] viewOrder = view.order();
+        System.arraycopy(viewOrder, 0, order, 0, viewOrder.length);
+        for (int id = viewOrder.length; id < count; id++) {
+            order[id] = id;
+        }
+        updatePositions();
+    }
+
+    private void updatePositions() {
+        for (int i = 0; i < count; i++) {
+            positions[order[i]] = i;
+        }
+    }
+
+    // Track ids sorted by asset name, compared straight from the packed buffer
+    public int[] orderByAssetName() {
+        return sortIds(count, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return assetNames.compare(a, b);
+            }
+        });
+    }
+
+    private static void sortRange(int[] ids, int from, int to, Comparator<Integer> comparator) {
+        Integer[] boxed = new Integer[to - from];
+        for (int i = from; i < to; i++) {
+            boxed[i - from] = ids[i];
+        }
+        Arrays.sort(boxed, comparator);
+        for (int i = from; i < to; i++) {
+            ids[i] = boxed[i - from];
+        }
+    }
+
+    private static int[] sortIds(int count, Comparator<Integer> comparator) {
+        Integer[] ids = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, comparator);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = ids[i];
+        }
+        return result;
+    }
+
+    // The library grouped and ordered for browsing, if it has been built since the last track was added
+    public BrowseView cachedView(BrowseView.Mode mode) {
+        return views[mode.ordinal()];
+    }
+
+    // The library grouped and ordered for browsing, built on the calling thread if it is not cached.
+    // Apply it with setOrder.
+    public BrowseView browse(BrowseView.Mode mode) {
+        BrowseView view = views[mode.ordinal()];
+        if (view == null) {
+            view = browseSource().build(mode);
+            views[mode.ordinal()] = view;
+        }
+        return view;
+    }
+
+    // A snapshot of the sort columns that builds views on any thread, for libraries large enough
+    // that sorting them would stall the main thread. Hand the result back through cacheView.
+    public BrowseSource browseSource() {
+        if (browseSource == null) {
+            browseSource = new BrowseSource(this);
+        }
+        return browseSource;
+    }
+
+    // Keeps a view built by browseSource, unless tracks have been added since
+    public void cacheView(BrowseView view) {
+        if (view.size() == count) {
+            views[view.mode.ordinal()] = view;
+        }
+    }
+
+    // Approximate heap taken by the columns and dictionaries, including unused capacity
+    public long estimatedBytes() {
+        long bytes = (long) durationMs.length * 4 + (long) artistIds.length * 4 + (long) albumIds.length * 4
+                + (long) artOffsets.length * 4 + (long) artLengths.length * 4 + (long) order.length * 4
+                + (long) positions.length * 4 + (long) initials.length * 2 + (long) gains.length;
+        return bytes + titles.estimatedBytes() + titleKeys.estimatedBytes() + assetNames.estimatedBytes()
+                + artists.estimatedBytes() + albums.estimatedBytes();
+    }
+
+    private static byte packGain(float gainDb) {
+        if (Float.isNaN(gainDb)) return UNKNOWN_GAIN;
+        return (byte) Math.max(-Byte.MAX_VALUE, Math.min(Byte.MAX_VALUE, Math.round(gainDb * GAIN_STEPS_PER_DB)));
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= order.length) return;
+        int capacity = Math.max(needed, order.length + (order.length >> 1));
+        durationMs = Arrays.copyOf(durationMs, capacity);
+        artistIds = Arrays.copyOf(artistIds, capacity);
+        albumIds = Arrays.copyOf(albumIds, capacity);
+        artOffsets = Arrays.copyOf(artOffsets, capacity);
+        artLengths = Arrays.copyOf(artLengths, capacity);
+        initials = Arrays.copyOf(initials, capacity);
+        gains = Arrays.copyOf(gains, capacity);
+        order = Arrays.copyOf(order, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+    }
+
+    // What the browse views are built from, copied out of the store. Columns are append-only and
+    // their existing entries never change, so the snapshot shares the big buffers with the store
+    // and only copies the small per-track arrays. Safe to use from any thread once created.
+    public static final class BrowseSource {
+        private final int count;
+        private final char[] initials;
+        private final int[] artistIds;
+        private final int[] albumIds;
+        private final PackedBytes titleKeys;
+        private final PackedStrings assetNames;
+        private final String[] artists;
+        private final String[] albums;
+        private final byte[][] artistKeys;
+        private final byte[][] albumKeys;
+        private int[] titleOrder; // guarded by this
+
+        BrowseSource(TrackStore store) {
+            count = store.count;
+            initials = Arrays.copyOf(store.initials, count);
+            artistIds = Arrays.copyOf(store.artistIds, count);
+            albumIds = Arrays.copyOf(store.albumIds, count);
+            titleKeys = store.titleKeys.snapshot();
+            assetNames = store.assetNames.snapshot();
+            artists = store.artists.values.toArray(new String[0]);
+            albums = store.albums.values.toArray(new String[0]);
+            artistKeys = store.artists.keys.toArray(new byte[0][]);
+            albumKeys = store.albums.keys.toArray(new byte[0][]);
+        }
+
+        public BrowseView build(BrowseView.Mode mode) {
+            if (mode == BrowseView.Mode.FILES) {
+                int[] byName = sortIds(count, new Comparator<Integer>() {
+                    @Override
+                    public int compare(Integer a, Integer b) {
+                        return assetNames.compare(a, b);
+                    }
+                });
+                return new BrowseView(mode, byName, new int[0], new int[0], new String[0]);
+            }
+            return buildGrouped(mode);
+        }
+
+        // Each track gets one long: section rank, subsection rank and title rank packed 21 bits apiece,
+        // so grouping is a single primitive sort with no string or key comparisons at all
+        private BrowseView buildGrouped(BrowseView.Mode mode) {
+            int[] byTitle = titleOrder();
+            int[] artistRanks = mode == BrowseView.Mode.ARTIST ? ranks(artistKeys) : null;
+            int[] albumRanks = mode != BrowseView.Mode.TITLE ? ranks(albumKeys) : null;
+            long[] packed = new long[count];
+            for (int rank = 0; rank < count; rank++) {
+                int id = byTitle[rank];
+                long section;
+                long subsection = 0;
+                if (mode == BrowseView.Mode.TITLE) {
+                    // A-Z first, everything else after
+                    section = initials[id] == SortKeys.OTHER_INITIAL ? 26 : initials[id] - 'A';
+                } else if (mode == BrowseView.Mode.ARTIST) {
+                    section = artistRanks[artistIds[id]];
+                    subsection = albumRanks[albumIds[id]];
+                } else {
+                    section = albumRanks[albumIds[id]];
+                }
+                packed[rank] = section << 42 | subsection << 21 | rank;
+            }
+            Arrays.sort(packed);
+
+            int[] newOrder = new int[count];
+            int[] headerPositions = new int[count * 2];
+            int[] headerLevels = new int[count * 2];
+            List<String> headerLabels = new ArrayList<>();
+            long lastSection = -1;
+            long lastSubsection = -1;
+            for (int position = 0; position < count; position++) {
+                long key = packed[position];
+                int id = byTitle[(int) (key & RANK_MASK)];
+                long section = key >>> 42;
+                long subsection = (key >>> 21) & RANK_MASK;
+                newOrder[position] = id;
+                boolean newSection = section != lastSection;
+                if (newSection) {
+                    String label = mode == BrowseView.Mode.TITLE ? String.valueOf(initials[id])
+                            : mode == BrowseView.Mode.ARTIST ? artists[artistIds[id]] : albums[albumIds[id]];
+                    headerPositions[headerLabels.size()] = position;
+                    headerLevels[headerLabels.size()] = 0;
+                    headerLabels.add(label);
+                }
+                if (mode == BrowseView.Mode.ARTIST && (newSection || subsection != lastSubsection)) {
+                    headerPositions[headerLabels.size()] = position;
+                    headerLevels[headerLabels.size()] = 1;
+                    headerLabels.add(albums[albumIds[id]]);
+                }
+                lastSection = section;
+                lastSubsection = subsection;
+            }
+            int headers = headerLabels.size();
+            return new BrowseView(mode, newOrder, Arrays.copyOf(headerPositions, headers),
+                    Arrays.copyOf(headerLevels, headers), headerLabels.toArray(new String[headers]));
+        }
+
+        // Track ids by title collation key, shared by every grouped view; ties keep asset order
+        private synchronized int[] titleOrder() {
+            if (titleOrder == null) {
+                int[] ids = new int[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = i;
+                }
+                sortByTitleKey(ids, 0, count, 0);
+                titleOrder = ids;
+            }
+            return titleOrder;
+        }
+
+        // Most-significant-digit sort: each pass packs the next KEY_CHUNK bytes of every key with
+        // its index into a long and sorts those primitively, then only runs that still tie go on
+        // to the next bytes. Whole keys are never compared, which matters because collation keys
+        // are long and titles often share a prefix.
+        private void sortByTitleKey(int[] ids, int from, int to, int depth) {
+            int length = to - from;
+            if (length < 2) return;
+            long[] packed = new long[length];
+            for (int i = 0; i < length; i++) {
+                packed[i] = titleKeys.chunk(ids[from + i], depth, KEY_CHUNK) << 21 | i;
+            }
+            Arrays.sort(packed);
+            int[] sorted = new int[length];
+            for (int i = 0; i < length; i++) {
+                sorted[i] = ids[from + (int) (packed[i] & RANK_MASK)];
+            }
+            System.arraycopy(sorted, 0, ids, from, length);
+
+            int runStart = 0;
+            for (int i = 1; i <= length; i++) {
+                if (i < length && packed[i] >>> 21 == packed[runStart] >>> 21) continue;
+                if (i - runStart > 1) {
+                    if ((packed[runStart] >>> 21 & CHUNK_BYTE_MASK) != 0) {
+                        // The keys go on past this chunk; the next bytes decide
+                        sortByTitleKey(ids, from + runStart, from + i, depth + KEY_CHUNK);
+                    } else {
+                        sortRange(ids, from + runStart, from + i, new Comparator<Integer>() {
+                            @Override
+                            public int compare(Integer a, Integer b) {
+                                return assetNames.compare(a, b);
+                            }
+                        });
+                    }
+                }
+                runStart = i;
+            }
+        }
+
+        // Collation rank of each dictionary id; values that collate equally ("Adele", "ADELE") share one
+        private static int[] ranks(final byte[][] keys) {
+            int[] sorted = sortIds(keys.length, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return SortKeys.compare(keys[a], keys[b]);
+                }
+            });
+            int[] ranks = new int[keys.length];
+            int rank = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i > 0 && SortKeys.compare(keys[sorted[i - 1]], keys[sorted[i]]) != 0) rank++;
+                ranks[sorted[i]] = rank;
+            }
+            return ranks;
+        }
+    }
+
+    // Strings stored back to back in one char[]; string i spans [starts[i], starts[i + 1])
+    private static class PackedStrings {
+        char[] chars = new char[INITIAL_CAPACITY * 16];
+        int[] starts = new int[INITIAL_CAPACITY + 1];
+        int count = 0;
+
+        void add(String value) {
+            int length = value != null ? value.length() : 0;
+            int end = starts[count] + length;
+            if (end > chars.length) {
+                chars = Arrays.copyOf(chars, Math.max(end, chars.length + (chars.length >> 1)));
+            }
+            if (count + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length + (starts.length >> 1) + 1);
+            }
+            if (length > 0) {
+                value.getChars(0, length, chars, starts[count]);
+            }
+            count++;
+            starts[count] = end;
+        }
+
+        // Shares the buffer like PackedBytes.snapshot
+        PackedStrings snapshot() {
+            PackedStrings copy = new PackedStrings();
+            copy.chars = chars;
+            copy.starts = Arrays.copyOf(starts, count + 1);
+            copy.count = count;
+            return copy;
+        }
+
+        int start(int i) {
+            return starts[i];
+        }
+
+        int length(int i) {
+            return starts[i + 1] - starts[i];
+        }
+
+        String get(int i) {
+            return new String(chars, starts[i], length(i));
+        }
+
+        int compare(int a, int b) {
+            int aStart = starts[a];
+            int bStart = starts[b];
+            int aLength = length(a);
+            int bLength = length(b);
+            int n = Math.min(aLength, bLength);
+            for (int k = 0; k < n; k++) {
+                char ca = chars[aStart + k];
+                char cb = chars[bStart + k];
+                if (ca != cb) return ca - cb;
+            }
+            return aLength - bLength;
+        }
+
+        long estimatedBytes() {
+            return (long) chars.length * 2 + (long) starts.length * 4;
+        }
+    }
+
+    // Collation keys stored back to back in one byte[], laid out like PackedStrings
+    private static class PackedBytes {
+        byte[] bytes = new byte[INITIAL_CAPACITY * 16];
+        int[] starts = new int[INITIAL_CAPACITY + 1];
+        int count = 0;
+
+        void add(byte[] value) {
+            int end = starts[count] + value.length;
+            if (end > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(end, bytes.length + (bytes.length >> 1)));
+            }
+            if (count + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length + (starts.length >> 1) + 1);
+            }
+            System.arraycopy(value, 0, bytes, starts[count], value.length);
+            count++;
+            starts[count] = end;
+        }
+
+        // Shares the buffer: bytes already written never change, later ones land past the copied starts
+        PackedBytes snapshot() {
+            PackedBytes copy = new PackedBytes();
+            copy.bytes = bytes;
+            copy.starts = Arrays.copyOf(starts, count + 1);
+            copy.count = count;
+            return copy;
+        }
+
+        // Bytes [offset, offset + length) of value i, each as 1 + its unsigned value in 9 bits, most
+        // significant first; bytes past the end of the value are 0
+        long chunk(int i, int offset, int length) {
+            int start = starts[i] + offset;
+            int end = starts[i + 1];
+            long chunk = 0;
+            for (int k = 0; k < length; k++) {
+                int index = start + k;
+                chunk = chunk << 9 | (index < end ? (bytes[index] & 0xFF) + 1 : 0);
+            }
+            return chunk;
+        }
+
+        // Unsigned, like SortKeys.compare
+        int compare(int a, int b) {
+            int aStart = starts[a];
+            int bStart = starts[b];
+            int aLength = starts[a + 1] - aStart;
+            int bLength = starts[b + 1] - bStart;
+            int n = Math.min(aLength, bLength);
+            for (int k = 0; k < n; k++) {
+                int x = bytes[aStart + k] & 0xFF;
+                int y = bytes[bStart + k] & 0xFF;
+                if (x != y) return x - y;
+            }
+            return aLength - bLength;
+        }
+
+        long estimatedBytes() {
+            return bytes.length + (long) starts.length * 4;
+        }
+    }
+
+    // Each distinct string is kept once, with its collation key, and referred to by a small int id
+    private static class Dictionary {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<String> values = new ArrayList<>();
+        final List<byte[]> keys = new ArrayList<>();
+        private long charCount = 0;
+        private long keyBytes = 0;
+
+        int intern(String value, byte[] key) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+                keys.add(key);
+                charCount += value != null ? value.length() : 0;
+                keyBytes += key.length;
+            }
+            return id;
+        }
+
+        String get(int id) {
+            return values.get(id);
+        }
+
+        // String object and its chars, plus a hash map entry and a list slot; keys likewise
+        long estimatedBytes() {
+            return values.size() * (24L + 16 + 32 + 4 + 16 + 4) + charCount * 2 + keyBytes;
+        }
+    }
+}
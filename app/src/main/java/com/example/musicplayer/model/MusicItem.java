@@ -5,7 +5,13 @@ public class MusicItem {
     private String artist;
     private String album;
     private String duration; // Format: mm:ss
+    private int durationMs;
+    private long artOffset = -1; // Embedded cover location within the asset, -1 if there is none
+    private int artLength;
+    private String spellings; // Pinyin spellings of any Chinese text, for search; null if there is none
     private String assetFileName;
+    private SortKeys sortKeys; // Attached by the scanner; null if the item was made elsewhere
+    private float gainDb = Float.NaN; // ReplayGain track gain, tagged or measured; NaN until known
 
     public MusicItem(String title, String artist, String album, String duration, String assetFileName) {
         this.title = title;
@@ -15,6 +21,18 @@ public class MusicItem {
         this.assetFileName = assetFileName;
     }
 
+    public MusicItem(String title, String artist, String album, int durationMs, String assetFileName) {
+        this(title, artist, album, formatDuration(durationMs / 1000), assetFileName);
+        this.durationMs = durationMs;
+    }
+
+    public MusicItem(String title, String artist, String album, int durationMs, long artOffset, int artLength,
+                     String assetFileName) {
+        this(title, artist, album, durationMs, assetFileName);
+        this.artOffset = artOffset;
+        this.artLength = artLength;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -31,14 +49,73 @@ public class MusicItem {
         return duration;
     }
 
+    public int getDurationMs() {
+        return durationMs;
+    }
+
+    public boolean hasArt() {
+        return artOffset >= 0 && artLength > 0;
+    }
+
+    public long getArtOffset() {
+        return artOffset;
+    }
+
+    public int getArtLength() {
+        return artLength;
+    }
+
+    public String getSpellings() {
+        return spellings;
+    }
+
+    public void setSpellings(String spellings) {
+        this.spellings = spellings;
+    }
+
     public String getAssetFileName() {
         return assetFileName;
     }
 
+    public SortKeys getSortKeys() {
+        return sortKeys;
+    }
+
+    public void setSortKeys(SortKeys sortKeys) {
+        this.sortKeys = sortKeys;
+    }
+
+    public float getGainDb() {
+        return gainDb;
+    }
+
+    public void setGainDb(float gainDb) {
+        this.gainDb = gainDb;
+    }
+
     // Formats seconds as mm:ss
     public static String formatDuration(int totalSeconds) {
         int minutes = totalSeconds / 60;
         int seconds = totalSeconds % 60;
         return String.format("%02d:%02d", minutes, seconds);
     }
+
+    // Same as formatDuration(int) but writes into out (at least 12 chars) instead of allocating;
+    // returns the number of chars written
+    public static int formatDuration(int totalSeconds, char[] out) {
+        int minutes = totalSeconds / 60;
+        int seconds = totalSeconds % 60;
+        int digits = 2;
+        for (int m = minutes; m >= 100; m /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            out[i] = (char) ('0' + minutes % 10);
+            minutes /= 10;
+        }
+        out[digits] = ':';
+        out[digits + 1] = (char) ('0' + seconds / 10);
+        out[digits + 2] = (char) ('0' + seconds % 10);
+        return digits + 3;
+    }
 }
@@ -0,0 +1,79 @@
+package com.example.musicplayer.model;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+
+// Collation keys for one track, computed once on a scan worker so that ordering the library
+// later is a plain byte comparison instead of a locale-aware Collator comparison per pair.
+public final class SortKeys {
+    public static final char OTHER_INITIAL = '#';
+
+    // Collators are not thread-safe, and scan workers compute keys in parallel
+    private static final ThreadLocal<Collator> COLLATOR = new ThreadLocal<Collator>() {
+        @Override
+        protected Collator initialValue() {
+            Collator collator = Collator.getInstance();
+            collator.setStrength(Collator.SECONDARY); // Case never decides the order
+            return collator;
+        }
+    };
+
+    public final byte[] title;
+    public final byte[] artist;
+    public final byte[] album;
+    // A-Z section of the title, taken from its pinyin for Chinese titles; OTHER_INITIAL otherwise
+    public final char initial;
+
+    private SortKeys(byte[] title, byte[] artist, byte[] album, char initial) {
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.initial = initial;
+    }
+
+    // spellings is the track's pinyin spellings (title first), or null
+    public static SortKeys of(String title, String artist, String album, String spellings) {
+        Collator collator = COLLATOR.get();
+        return new SortKeys(key(collator, title), key(collator, artist), key(collator, album),
+                initialOf(title, spellings));
+    }
+
+    private static byte[] key(Collator collator, String value) {
+        CollationKey key = collator.getCollationKey(value != null ? value : "");
+        return key.toByteArray();
+    }
+
+    static char initialOf(String title, String spellings) {
+        if (title == null) return OTHER_INITIAL;
+        for (int i = 0; i < title.length(); i++) {
+            char c = title.charAt(i);
+            if (Character.isIdeographic(c)) {
+                // The first spelling belongs to the title's first run of Chinese characters
+                return spellings != null && !spellings.isEmpty() ? latinInitial(spellings.charAt(0)) : OTHER_INITIAL;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                return latinInitial(c);
+            }
+        }
+        return OTHER_INITIAL;
+    }
+
+    // 'é' -> 'E'; anything outside A-Z, digits included, is OTHER_INITIAL
+    private static char latinInitial(char c) {
+        char base = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD).charAt(0);
+        char upper = Character.toUpperCase(base);
+        return upper >= 'A' && upper <= 'Z' ? upper : OTHER_INITIAL;
+    }
+
+    // Unsigned lexicographic order, the order of the strings the keys were made from
+    public static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int x = a[i] & 0xFF;
+            int y = b[i] & 0xFF;
+            if (x != y) return x - y;
+        }
+        return a.length - b.length;
+    }
+}
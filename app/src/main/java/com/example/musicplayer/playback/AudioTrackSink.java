@@ -0,0 +1,119 @@
+package com.example.musicplayer.playback;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import com.example.musicplayer.utils.WavReader;
+import java.nio.ByteBuffer;
+
+// A streaming AudioTrack for one sample layout; tracks with the same layout reuse it
+final class AudioTrackSink implements PcmSink {
+    // Room for this much audio in the track's own buffer, at least twice the platform minimum
+    private static final int BUFFER_MS = 200;
+
+    private final AudioTrack track;
+    private final int sampleRate;
+    private final int channelMask;
+    private final int encoding;
+
+    private AudioTrackSink(AudioTrack track, int sampleRate, int channelMask, int encoding) {
+        this.track = track;
+        this.sampleRate = sampleRate;
+        this.channelMask = channelMask;
+        this.encoding = encoding;
+    }
+
+    // Mono or stereo, 8 or 16-bit integers or 32-bit floats; other layouts go to MediaPlayer
+    static boolean supports(WavReader.Layout layout) {
+        return channelMask(layout) != 0 && encoding(layout) != 0;
+    }
+
+    static AudioTrackSink create(WavReader.Layout layout) {
+        int channelMask = channelMask(layout);
+        int encoding = encoding(layout);
+        int minBuffer = AudioTrack.getMinBufferSize(layout.sampleRate, channelMask, encoding);
+        int bufferBytes = Math.max(minBuffer * 2, (int) ((long) layout.sampleRate * BUFFER_MS / 1000) * layout.frameSize());
+        AudioTrack track = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setSampleRate(layout.sampleRate)
+                        .setChannelMask(channelMask)
+                        .setEncoding(encoding)
+                        .build())
+                .setBufferSizeInBytes(bufferBytes)
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .build();
+        return new AudioTrackSink(track, layout.sampleRate, channelMask, encoding);
+    }
+
+    boolean matches(WavReader.Layout layout) {
+        return layout.sampleRate == sampleRate && channelMask(layout) == channelMask && encoding(layout) == encoding;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer, int size) {
+        return track.write(buffer, size, AudioTrack.WRITE_BLOCKING);
+    }
+
+    @Override
+    public void play() {
+        track.play();
+    }
+
+    @Override
+    public void pause() {
+        track.pause();
+    }
+
+    @Override
+    public void flush() {
+        track.flush();
+    }
+
+    @Override
+    public void stop() {
+        track.stop();
+    }
+
+    @Override
+    public long framesPlayed() {
+        // An unsigned 32-bit counter
+        return track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+    }
+
+    // Scales every sample, from 0 to 1; used for the track's gain
+    void setVolume(float volume) {
+        track.setVolume(volume);
+    }
+
+    void release() {
+        track.release();
+    }
+
+    private static int channelMask(WavReader.Layout layout) {
+        switch (layout.channels) {
+            case 1:
+                return AudioFormat.CHANNEL_OUT_MONO;
+            case 2:
+                return AudioFormat.CHANNEL_OUT_STEREO;
+            default:
+                return 0;
+        }
+    }
+
+    private static int encoding(WavReader.Layout layout) {
+        if (layout.floating) return layout.bitsPerSample == 32 ? AudioFormat.ENCODING_PCM_FLOAT : 0;
+        switch (layout.bitsPerSample) {
+            case 8:
+                return AudioFormat.ENCODING_PCM_8BIT;
+            case 16:
+                return AudioFormat.ENCODING_PCM_16BIT;
+            default:
+                // 24-bit packed needs API 31
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.musicplayer.playback;
+
+// Ramps the gains of an outgoing and an incoming track over a fade. Steps are posted for
+// absolute times STEP_MS apart, so late steps do not push the rest of the ramp back, and each
+// gain is computed from the time actually reached. A step allocates nothing: this object is the
+// posted callback and the gains are handed over as floats. Single-threaded.
+public final class Crossfade implements Runnable {
+    public static final int MAX_FADE_MS = 12000;
+    public static final int STEP_MS = 10;
+
+    public interface Clock {
+        long now();
+    }
+
+    // Matches Handler.postAtTime / removeCallbacks
+    public interface Ticker {
+        void postAtTime(Runnable r, long atMs);
+
+        void removeCallbacks(Runnable r);
+    }
+
+    public interface Target {
+        void setGains(float out, float in);
+
+        // The outgoing track is silent and can be released
+        void onFadeFinished();
+    }
+
+    private final Clock clock;
+    private final Ticker ticker;
+    private final Target target;
+    private FadeCurve curve = FadeCurve.EQUAL_POWER;
+    private boolean running;
+    private boolean paused;
+    // The current span runs progress from spanFrom to 1 between spanStart and spanStart + spanMs
+    private float spanFrom;
+    private long spanStart;
+    private long spanMs;
+    private float progress;
+    private long nextStep;
+
+    public Crossfade(Clock clock, Ticker ticker, Target target) {
+        this.clock = clock;
+        this.ticker = ticker;
+        this.target = target;
+    }
+
+    public void start(FadeCurve curve, long durationMs) {
+        ticker.removeCallbacks(this);
+        this.curve = curve;
+        running = true;
+        paused = false;
+        progress = 0f;
+        beginSpan(clock.now(), 0f, durationMs);
+        run();
+    }
+
+    // Finishes within maxRemainingMs, continuing from the gains already reached, e.g. when a
+    // manual skip should not wait for a long fade
+    public void shorten(long maxRemainingMs) {
+        if (!running) return;
+        long now = clock.now();
+        float p = paused ? progress : progressAt(now);
+        long remaining = (long) Math.ceil((1f - p) * spanMs / Math.max(1e-6f, 1f - spanFrom));
+        if (remaining <= maxRemainingMs) return;
+        progress = p;
+        beginSpan(now, p, maxRemainingMs);
+        if (!paused) {
+            ticker.removeCallbacks(this);
+            run();
+        }
+    }
+
+    // Holds the gains where they are until resume
+    public void pause() {
+        if (!running || paused) return;
+        progress = progressAt(clock.now());
+        paused = true;
+        ticker.removeCallbacks(this);
+    }
+
+    public void resume() {
+        if (!running || !paused) return;
+        paused = false;
+        long remaining = (long) Math.ceil((1f - progress) * spanMs / Math.max(1e-6f, 1f - spanFrom));
+        beginSpan(clock.now(), progress, remaining);
+        run();
+    }
+
+    // Jumps to the end of the fade: outgoing silent, incoming at full gain
+    public void finish() {
+        if (!running) return;
+        ticker.removeCallbacks(this);
+        complete();
+    }
+
+    // Stops ramping and leaves the gains as they are; the caller takes over both tracks
+    public void abort() {
+        ticker.removeCallbacks(this);
+        running = false;
+        paused = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public float progress() {
+        return progress;
+    }
+
+    @Override
+    public void run() {
+        if (!running || paused) return;
+        long now = clock.now();
+        progress = progressAt(now);
+        if (progress >= 1f) {
+            complete();
+            return;
+        }
+        target.setGains(curve.out(progress), curve.in(progress));
+        nextStep += STEP_MS;
+        if (nextStep <= now) nextStep = now + 1; // Running late: catch up with the next step at once
+        ticker.postAtTime(this, nextStep);
+    }
+
+    private void beginSpan(long now, float from, long durationMs) {
+        spanStart = now;
+        spanFrom = from;
+        spanMs = Math.max(0, durationMs);
+        nextStep = now;
+    }
+
+    private float progressAt(long now) {
+        if (spanMs <= 0) return 1f;
+        float fraction = Math.min(1f, (now - spanStart) / (float) spanMs);
+        return spanFrom + (1f - spanFrom) * fraction;
+    }
+
+    private void complete() {
+        running = false;
+        paused = false;
+        progress = 1f;
+        target.setGains(curve.out(1f), curve.in(1f));
+        target.onFadeFinished();
+    }
+}
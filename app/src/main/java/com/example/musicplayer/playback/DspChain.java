@@ -0,0 +1,321 @@
+package com.example.musicplayer.playback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// In-place DSP for interleaved PCM: a pre-gain, then up to MAX_BANDS biquad filters (a parametric
+// EQ, from the RBJ cookbook), then a peak limiter that keeps boosts from clipping. Works on
+// float or 16-bit samples, in arrays or in a little-endian ByteBuffer.
+//
+// Settings are immutable and published through a volatile field, so the UI thread can replace
+// them at any time without a lock; the audio thread picks the new ones up at the start of its
+// next process call and recomputes the coefficients into arrays it already has. Nothing is
+// allocated while processing. With flat settings the samples are not touched at all.
+//
+// Everything but setSettings belongs to the one audio thread that calls configure and process.
+public final class DspChain {
+    public static final int MAX_BANDS = 16;
+    public static final int MAX_CHANNELS = 8;
+    // How fast the limiter lets go after a peak
+    private static final double RELEASE_MS = 50;
+
+    public enum FilterType {
+        PEAKING, LOW_SHELF, HIGH_SHELF, LOW_PASS, HIGH_PASS
+    }
+
+    public static final class Band {
+        public final FilterType type;
+        public final float frequencyHz;
+        public final float gainDb; // Ignored by the pass filters
+        public final float q;
+
+        public Band(FilterType type, float frequencyHz, float gainDb, float q) {
+            if (type == null || !(frequencyHz > 0) || !(q > 0) || Float.isNaN(gainDb) || Math.abs(gainDb) > 24) {
+                throw new IllegalArgumentException(type + " at " + frequencyHz + " Hz, " + gainDb + " dB, Q " + q);
+            }
+            this.type = type;
+            this.frequencyHz = frequencyHz;
+            this.gainDb = gainDb;
+            this.q = q;
+        }
+    }
+
+    public static final class Settings {
+        public static final Settings FLAT = new Settings(0f, Collections.<Band>emptyList(), 0f);
+
+        public final float preGainDb;
+        public final float ceilingDb; // The limiter's ceiling, at most full scale
+        private final Band[] bands;
+
+        public Settings(float preGainDb, List<Band> bands, float ceilingDb) {
+            if (bands.size() > MAX_BANDS || Float.isNaN(preGainDb) || Math.abs(preGainDb) > 24
+                    || !(ceilingDb <= 0) || ceilingDb < -24) {
+                throw new IllegalArgumentException(bands.size() + " bands, pre-gain " + preGainDb + " dB, ceiling "
+                        + ceilingDb + " dB");
+            }
+            this.preGainDb = preGainDb;
+            this.ceilingDb = ceilingDb;
+            this.bands = bands.toArray(new Band[0]);
+        }
+
+        public int bandCount() {
+            return bands.length;
+        }
+
+        public Band band(int i) {
+            return bands[i];
+        }
+
+        // Nothing to do: the audio passes through untouched
+        public boolean isFlat() {
+            return preGainDb == 0 && bands.length == 0 && ceilingDb == 0;
+        }
+    }
+
+    private volatile Settings settings = Settings.FLAT;
+
+    // Audio thread only from here on
+    private Settings applied;
+    private int sampleRate;
+    private int channels;
+    private int bandCount;
+    private double preGain = 1;
+    private double ceiling = 1;
+    private double release;
+    private double limiterGain = 1;
+    private final double[] b0 = new double[MAX_BANDS];
+    private final double[] b1 = new double[MAX_BANDS];
+    private final double[] b2 = new double[MAX_BANDS];
+    private final double[] a1 = new double[MAX_BANDS];
+    private final double[] a2 = new double[MAX_BANDS];
+    // Transposed direct form II state, band * MAX_CHANNELS + channel
+    private final double[] z1 = new double[MAX_BANDS * MAX_CHANNELS];
+    private final double[] z2 = new double[MAX_BANDS * MAX_CHANNELS];
+    private final double[] frame = new double[MAX_CHANNELS];
+
+    private final PcmProcessor pcm16 = new PcmProcessor() {
+        @Override
+        public void process(ByteBuffer buffer, int position, int size) {
+            processPcm16(buffer, position, size);
+        }
+    };
+
+    private final PcmProcessor pcmFloat = new PcmProcessor() {
+        @Override
+        public void process(ByteBuffer buffer, int position, int size) {
+            processFloat(buffer, position, size);
+        }
+    };
+
+    // Any thread; takes effect from the next buffer processed
+    public void setSettings(Settings settings) {
+        if (settings == null) throw new IllegalArgumentException("No settings");
+        this.settings = settings;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    // Sets up for a stream and clears the filters; call before the first buffer of each track
+    public void configure(int sampleRate, int channels) {
+        if (sampleRate <= 0 || channels <= 0 || channels > MAX_CHANNELS) {
+            throw new IllegalArgumentException(channels + " channels at " + sampleRate + " Hz");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        release = 1 - Math.exp(-1000 / (RELEASE_MS * sampleRate));
+        Arrays.fill(z1, 0);
+        Arrays.fill(z2, 0);
+        limiterGain = 1;
+        applied = null;
+    }
+
+    // The processor for PCM with this sample format, or null for formats the chain cannot handle
+    public PcmProcessor processorFor(int bitsPerSample, boolean floating) {
+        if (floating) return bitsPerSample == 32 ? pcmFloat : null;
+        return bitsPerSample == 16 ? pcm16 : null;
+    }
+
+    public void process(float[] samples, int offset, int frames) {
+        if (!prepare()) return;
+        for (int i = offset, end = offset + frames * channels; i < end; i += channels) {
+            for (int c = 0; c < channels; c++) {
+                frame[c] = samples[i + c];
+            }
+            runFrame();
+            for (int c = 0; c < channels; c++) {
+                samples[i + c] = (float) frame[c];
+            }
+        }
+    }
+
+    public void process(short[] samples, int offset, int frames) {
+        if (!prepare()) return;
+        for (int i = offset, end = offset + frames * channels; i < end; i += channels) {
+            for (int c = 0; c < channels; c++) {
+                frame[c] = samples[i + c] / 32768.0;
+            }
+            runFrame();
+            for (int c = 0; c < channels; c++) {
+                samples[i + c] = toShort(frame[c]);
+            }
+        }
+    }
+
+    // 16-bit little-endian samples, size bytes of whole frames from index position
+    public void processPcm16(ByteBuffer buffer, int position, int size) {
+        if (!prepare()) return;
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int step = 2 * channels;
+        for (int i = position, end = position + size - size % step; i < end; i += step) {
+            for (int c = 0; c < channels; c++) {
+                frame[c] = buffer.getShort(i + 2 * c) / 32768.0;
+            }
+            runFrame();
+            for (int c = 0; c < channels; c++) {
+                buffer.putShort(i + 2 * c, toShort(frame[c]));
+            }
+        }
+        buffer.order(order);
+    }
+
+    // 32-bit float little-endian samples, size bytes of whole frames from index position
+    public void processFloat(ByteBuffer buffer, int position, int size) {
+        if (!prepare()) return;
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int step = 4 * channels;
+        for (int i = position, end = position + size - size % step; i < end; i += step) {
+            for (int c = 0; c < channels; c++) {
+                frame[c] = buffer.getFloat(i + 4 * c);
+            }
+            runFrame();
+            for (int c = 0; c < channels; c++) {
+                buffer.putFloat(i + 4 * c, (float) frame[c]);
+            }
+        }
+        buffer.order(order);
+    }
+
+    // Picks up new settings; false if there is nothing to do
+    private boolean prepare() {
+        Settings current = settings;
+        if (sampleRate == 0) return false;
+        if (current != applied) apply(current);
+        return !current.isFlat();
+    }
+
+    private void apply(Settings next) {
+        int count = next.bandCount();
+        if (applied != null && applied.isFlat() && !next.isFlat()) {
+            // Coming back from bypass: what the filters and limiter held from before does not
+            // belong to the audio that follows
+            Arrays.fill(z1, 0);
+            Arrays.fill(z2, 0);
+            limiterGain = 1;
+        }
+        // Bands that keep their place keep their state, so a change does not click; new ones start clean
+        for (int b = bandCount; b < count; b++) {
+            Arrays.fill(z1, b * MAX_CHANNELS, (b + 1) * MAX_CHANNELS, 0);
+            Arrays.fill(z2, b * MAX_CHANNELS, (b + 1) * MAX_CHANNELS, 0);
+        }
+        for (int b = 0; b < count; b++) {
+            design(next.band(b), b);
+        }
+        bandCount = count;
+        preGain = Math.pow(10, next.preGainDb / 20);
+        ceiling = Math.pow(10, next.ceilingDb / 20);
+        applied = next;
+    }
+
+    // The frame through the pre-gain, every band and the limiter
+    private void runFrame() {
+        double peak = 0;
+        for (int c = 0; c < channels; c++) {
+            double x = frame[c] * preGain;
+            for (int b = 0, s = c; b < bandCount; b++, s += MAX_CHANNELS) {
+                double y = b0[b] * x + z1[s];
+                z1[s] = b1[b] * x - a1[b] * y + z2[s];
+                z2[s] = b2[b] * x - a2[b] * y;
+                x = y;
+            }
+            frame[c] = x;
+            peak = Math.max(peak, Math.abs(x));
+        }
+        // Instant attack, so no sample goes over the ceiling; the gain recovers exponentially
+        limiterGain += (1 - limiterGain) * release;
+        if (peak * limiterGain > ceiling) limiterGain = ceiling / peak;
+        if (limiterGain < 1) {
+            for (int c = 0; c < channels; c++) {
+                frame[c] *= limiterGain;
+            }
+        }
+    }
+
+    private static short toShort(double sample) {
+        long value = Math.round(sample * 32768);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    // Robert Bristow-Johnson's audio EQ cookbook, normalised so that a0 is 1
+    private void design(Band band, int b) {
+        double w0 = 2 * Math.PI * Math.min(band.frequencyHz, 0.49 * sampleRate) / sampleRate;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * band.q);
+        double a = Math.pow(10, band.gainDb / 40);
+        double rootA = 2 * Math.sqrt(a) * alpha;
+        double n0, n1, n2, d0, d1, d2;
+        switch (band.type) {
+            case LOW_SHELF:
+                n0 = a * ((a + 1) - (a - 1) * cos + rootA);
+                n1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                n2 = a * ((a + 1) - (a - 1) * cos - rootA);
+                d0 = (a + 1) + (a - 1) * cos + rootA;
+                d1 = -2 * ((a - 1) + (a + 1) * cos);
+                d2 = (a + 1) + (a - 1) * cos - rootA;
+                break;
+            case HIGH_SHELF:
+                n0 = a * ((a + 1) + (a - 1) * cos + rootA);
+                n1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                n2 = a * ((a + 1) + (a - 1) * cos - rootA);
+                d0 = (a + 1) - (a - 1) * cos + rootA;
+                d1 = 2 * ((a - 1) - (a + 1) * cos);
+                d2 = (a + 1) - (a - 1) * cos - rootA;
+                break;
+            case LOW_PASS:
+                n0 = (1 - cos) / 2;
+                n1 = 1 - cos;
+                n2 = (1 - cos) / 2;
+                d0 = 1 + alpha;
+                d1 = -2 * cos;
+                d2 = 1 - alpha;
+                break;
+            case HIGH_PASS:
+                n0 = (1 + cos) / 2;
+                n1 = -(1 + cos);
+                n2 = (1 + cos) / 2;
+                d0 = 1 + alpha;
+                d1 = -2 * cos;
+                d2 = 1 - alpha;
+                break;
+            default:
+                n0 = 1 + alpha * a;
+                n1 = -2 * cos;
+                n2 = 1 - alpha * a;
+                d0 = 1 + alpha / a;
+                d1 = -2 * cos;
+                d2 = 1 - alpha / a;
+                break;
+        }
+        b0[b] = n0 / d0;
+        b1[b] = n1 / d0;
+        b2[b] = n2 / d0;
+        a1[b] = d1 / d0;
+        a2[b] = d2 / d0;
+    }
+}
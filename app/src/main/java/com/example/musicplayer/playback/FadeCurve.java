@@ -0,0 +1,33 @@
+package com.example.musicplayer.playback;
+
+// Gain of the outgoing and incoming track at fade progress t in [0, 1]
+public enum FadeCurve {
+    // Gains sum to one; the mix dips in loudness halfway through uncorrelated material
+    LINEAR {
+        @Override
+        public float out(float t) {
+            return 1f - t;
+        }
+
+        @Override
+        public float in(float t) {
+            return t;
+        }
+    },
+    // Squared gains sum to one, so the combined power stays level throughout
+    EQUAL_POWER {
+        @Override
+        public float out(float t) {
+            return (float) Math.cos(t * Math.PI / 2);
+        }
+
+        @Override
+        public float in(float t) {
+            return (float) Math.sin(t * Math.PI / 2);
+        }
+    };
+
+    public abstract float out(float t);
+
+    public abstract float in(float t);
+}
@@ -0,0 +1,135 @@
+package com.example.musicplayer.playback;
+
+import com.example.musicplayer.utils.AtomicFiles;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Remembers the files the player could not prepare, so later runs skip them without paying for
+// the failed prepare again. Like LibraryIndex, an entry is keyed by name and only holds while
+// the file's size and stamp still match; a file that has changed gets another chance.
+public class FailureCache {
+    private static final int MAGIC = 0x4D504643; // "MPFC"
+    private static final int VERSION = 1;
+
+    private static final class Entry {
+        final long size;
+        final long stamp;
+
+        Entry(long size, long stamp) {
+            this.size = size;
+            this.stamp = stamp;
+        }
+    }
+
+    private final File file;
+    // Held by save() while it writes, so two saves never interleave on disk
+    private final Object writeLock = new Object();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean dirty = false;
+
+    public FailureCache(File file) {
+        this.file = file;
+    }
+
+    // A missing or unreadable file adds nothing. The file is read into a map of its own and merged
+    // under the lock, so a failure recorded by the engine in the meantime is kept, not cleared.
+    public void load() throws IOException {
+        if (!file.exists()) return;
+
+        Map<String, Entry> loaded = new HashMap<>();
+        boolean damaged = false;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(AtomicFiles.readFully(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                damaged = true;
+            } else {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    long size = in.readLong();
+                    long stamp = in.readLong();
+                    loaded.put(name, new Entry(size, stamp));
+                }
+            }
+        } catch (EOFException e) {
+            // Truncated; keep what was read and rewrite it on the next save
+            damaged = true;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, Entry> entry : loaded.entrySet()) {
+                if (!entries.containsKey(entry.getKey())) entries.put(entry.getKey(), entry.getValue());
+            }
+            if (damaged) dirty = true;
+        }
+    }
+
+    // Whether this exact file failed before; an entry for an older version of it is dropped
+    public synchronized boolean contains(String name, long size, long stamp) {
+        Entry entry = entries.get(name);
+        if (entry == null) return false;
+        if (entry.size == size && entry.stamp == stamp) return true;
+        entries.remove(name);
+        dirty = true;
+        return false;
+    }
+
+    // Whether a file of this name failed before, whatever its size and stamp are now; cheap enough
+    // for the queue to ask about every candidate without opening it. The exact check above drops
+    // the entry once the file itself is opened again, e.g. when the user picks it.
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public synchronized void put(String name, long size, long stamp) {
+        entries.put(name, new Entry(size, stamp));
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    // Writes to a temporary file first so a crash mid-write never leaves a corrupt cache behind.
+    // The bytes are built under the lock but written and synced outside it, so the queue and the
+    // engine never wait on the disk.
+    public void save() throws IOException {
+        synchronized (writeLock) {
+            byte[] data;
+            synchronized (this) {
+                if (!dirty) return;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size);
+                    out.writeLong(entry.getValue().stamp);
+                }
+                data = bytes.toByteArray();
+                dirty = false;
+            }
+            try {
+                AtomicFiles.write(file, data);
+            } catch (IOException e) {
+                synchronized (this) {
+                    dirty = true;
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.musicplayer.playback;
+
+import java.util.HashSet;
+import java.util.Set;
+
+// Moves on from tracks that fail to play. A failed track is remembered for the rest of the run,
+// so the queue steps over it from then on, and the next playable track is started in its place.
+// Skipping is a loop rather than a chain of calls: a player that fails from inside play() only
+// leaves the next track for the loop already running. After a whole pass over the queue has
+// failed without a single track starting, it gives up. Single-threaded.
+public class FailureSkipper {
+    // Starts the track at position; the outcome comes back through onStarted or onFailed, which
+    // may happen before play returns
+    public interface Player {
+        void play(int position);
+    }
+
+    public interface Listener {
+        void onGaveUp(int failuresInRow);
+    }
+
+    private final PlaybackQueue queue;
+    private final Player player;
+    private final PlaybackClock.TimeSource time;
+    private final Listener listener;
+    private final Set<Integer> failed = new HashSet<>();
+    private boolean dispatching;
+    private int pendingPosition = PlaybackQueue.NONE;
+
+    private int failuresInRow;
+    private long firstFailureAt;
+    private int failureCount;
+    private int skipCount;
+    private long lastSkipLatencyMs = -1;
+    private long maxSkipLatencyMs = -1;
+
+    public FailureSkipper(PlaybackQueue queue, Player player, PlaybackClock.TimeSource time, Listener listener) {
+        this.queue = queue;
+        this.player = player;
+        this.time = time;
+        this.listener = listener;
+    }
+
+    // False for tracks that already failed this run
+    public boolean isPlayable(int trackId) {
+        return !failed.contains(trackId);
+    }
+
+    public void onFailed(int trackId) {
+        failureCount++;
+        failed.add(trackId);
+        if (failuresInRow++ == 0) firstFailureAt = time.now();
+        int position = failuresInRow < queue.trackCount() + queue.upNextSize() ? queue.next() : PlaybackQueue.NONE;
+        if (position == PlaybackQueue.NONE) {
+            pendingPosition = PlaybackQueue.NONE;
+            int failures = failuresInRow;
+            failuresInRow = 0;
+            listener.onGaveUp(failures);
+            return;
+        }
+        skipCount++;
+        pendingPosition = position;
+        if (dispatching) return;
+        dispatching = true;
+        try {
+            while (pendingPosition != PlaybackQueue.NONE) {
+                int next = pendingPosition;
+                pendingPosition = PlaybackQueue.NONE;
+                player.play(next);
+            }
+        } finally {
+            dispatching = false;
+        }
+    }
+
+    // A track is playing; ends the run of failures and times how long it took to get here
+    public void onStarted(int trackId) {
+        if (failuresInRow == 0) return;
+        lastSkipLatencyMs = time.now() - firstFailureAt;
+        maxSkipLatencyMs = Math.max(maxSkipLatencyMs, lastSkipLatencyMs);
+        failuresInRow = 0;
+    }
+
+    // The user picked a track; it gets a full pass of its own
+    public void reset() {
+        failuresInRow = 0;
+        pendingPosition = PlaybackQueue.NONE;
+    }
+
+    // Tracks that failed since the process started, counting repeats
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    // Tracks started in place of a failed one
+    public int getSkipCount() {
+        return skipCount;
+    }
+
+    public int getFailedTrackCount() {
+        return failed.size();
+    }
+
+    // From the first failure of the last run of failures to the track that finally started, or -1
+    public long getLastSkipLatencyMs() {
+        return lastSkipLatencyMs;
+    }
+
+    public long getMaxSkipLatencyMs() {
+        return maxSkipLatencyMs;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.musicplayer.playback;
+
+// Redraws the playback position once per display frame while it is on screen and moving, by
+// interpolating the clock's anchor. At most one frame callback is ever pending: starting an
+// already running ticker does nothing, and it stops as soon as playback pauses or the screen
+// is hidden. Main thread only.
+public final class FrameTicker implements PlaybackClock.Listener {
+    // Matches Choreographer.postFrameCallback / removeFrameCallback
+    public interface FrameScheduler {
+        void postFrame(Runnable frame);
+
+        void removeFrame(Runnable frame);
+    }
+
+    public interface Renderer {
+        void render(int positionMs, int durationMs);
+    }
+
+    private final PlaybackClock clock;
+    private final FrameScheduler scheduler;
+    private final Renderer renderer;
+    private PlaybackClock.Anchor anchor;
+    private boolean visible;
+    private boolean scheduled;
+
+    private final Runnable frame = new Runnable() {
+        @Override
+        public void run() {
+            scheduled = false;
+            render();
+            update();
+        }
+    };
+
+    public FrameTicker(PlaybackClock clock, FrameScheduler scheduler, Renderer renderer) {
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.renderer = renderer;
+        this.anchor = clock.anchor();
+    }
+
+    // Observes the clock while visible, so an unwatched clock is left alone
+    public void setVisible(boolean visible) {
+        if (visible == this.visible) return;
+        this.visible = visible;
+        if (visible) {
+            clock.addListener(this); // Renders the current anchor
+        } else {
+            clock.removeListener(this);
+            update();
+        }
+    }
+
+    @Override
+    public void onAnchorChanged(PlaybackClock.Anchor anchor) {
+        this.anchor = anchor;
+        if (!visible) return;
+        render();
+        update();
+    }
+
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    private void render() {
+        renderer.render(anchor.positionAt(clock.now()), anchor.durationMs);
+    }
+
+    private void update() {
+        boolean wanted = visible && anchor.isMoving();
+        if (wanted && !scheduled) {
+            scheduled = true;
+            scheduler.postFrame(frame);
+        } else if (!wanted && scheduled) {
+            scheduled = false;
+            scheduler.removeFrame(frame);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.musicplayer.playback;
+
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+import com.example.musicplayer.utils.ByteSource;
+import com.example.musicplayer.utils.WavReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Plays WAV tracks without a MediaPlayer: the data chunk is memory-mapped and a PcmStreamer
+// feeds it to an AudioTrack from a thread of its own at urgent audio priority. There is nothing
+// to prepare, so a track starts as soon as it is mapped. Writes go a chunk at a time through the
+// thread's mailbox, so a command waits at most one chunk before it takes effect.
+//
+// Called on the engine's playback thread; the listener hears back on the PCM thread, with the
+// generation the track was opened under so that reports about an older track can be told apart.
+// The DspChain is run over every 16-bit and float track on the PCM thread.
+final class PcmPlayer {
+    private static final String TAG = "PcmPlayer";
+    // Allocated once; every track streams through it
+    static final int RING_BYTES = 64 * 1024;
+    // Audio written per pump, and so the longest a command waits
+    private static final int CHUNK_MS = 20;
+    // How often the end of a track is checked for once all of it has been written
+    private static final int DRAIN_POLL_MS = 10;
+
+    private static final int MSG_OPEN = 1;
+    private static final int MSG_PLAY = 2;
+    private static final int MSG_PAUSE = 3;
+    private static final int MSG_SEEK = 4;
+    private static final int MSG_STOP = 5;
+    private static final int MSG_RELEASE = 6;
+    private static final int MSG_VOLUME = 7;
+
+    interface Listener {
+        void onCompleted(int generation);
+
+        void onError(int generation);
+    }
+
+    private static final class Source {
+        final PcmStreamer streamer;
+        final WavReader.Layout layout;
+
+        Source(PcmStreamer streamer, WavReader.Layout layout) {
+            this.streamer = streamer;
+            this.layout = layout;
+        }
+    }
+
+    private final Listener listener;
+    private final DspChain dsp;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final ByteBuffer ring = ByteBuffer.allocateDirect(RING_BYTES);
+    private volatile PcmStreamer current; // The open track, for positions read on the engine thread
+
+    // PCM thread only from here on
+    private PcmStreamer streamer;
+    private AudioTrackSink sink;
+    private int generation;
+    private float volume = 1f;
+
+    PcmPlayer(Listener listener, DspChain dsp) {
+        this.listener = listener;
+        this.dsp = dsp;
+        this.thread = new HandlerThread("PcmPlayback", Process.THREAD_PRIORITY_URGENT_AUDIO);
+        thread.start();
+        this.handler = new Handler(thread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                handle(msg);
+                return true;
+            }
+        });
+    }
+
+    // Maps the WAV in afd and makes it the current track, paused at its start. Returns false,
+    // having changed nothing, if the file is not PCM in a layout AudioTrack takes. The mapping
+    // outlives afd, which stays the caller's to close.
+    boolean open(AssetFileDescriptor afd, int generation) throws IOException {
+        FileChannel channel = new FileInputStream(afd.getFileDescriptor()).getChannel();
+        WavReader.Layout layout = WavReader.read(ByteSource.of(channel, afd.getStartOffset(), afd.getLength()));
+        if (layout == null || !AudioTrackSink.supports(layout) || layout.dataLength > Integer.MAX_VALUE) return false;
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, afd.getStartOffset() + layout.dataOffset,
+                layout.dataLength);
+        int chunkBytes = (int) ((long) layout.sampleRate * CHUNK_MS / 1000) * layout.frameSize();
+        PcmStreamer streamer = new PcmStreamer(ring, data, layout.frameSize(), layout.sampleRate, chunkBytes);
+        current = streamer;
+        handler.removeMessages(MSG_SEEK);
+        handler.obtainMessage(MSG_OPEN, generation, 0, new Source(streamer, layout)).sendToTarget();
+        return true;
+    }
+
+    void play() {
+        handler.sendEmptyMessage(MSG_PLAY);
+    }
+
+    void pause() {
+        handler.sendEmptyMessage(MSG_PAUSE);
+    }
+
+    void seekTo(int positionMs) {
+        handler.removeMessages(MSG_SEEK);
+        handler.obtainMessage(MSG_SEEK, positionMs, 0).sendToTarget();
+    }
+
+    // Scales the output from here on, from 0 to 1; kept across tracks until changed
+    void setVolume(float volume) {
+        handler.removeMessages(MSG_VOLUME);
+        handler.obtainMessage(MSG_VOLUME, volume).sendToTarget();
+    }
+
+    // Silences and forgets the current track; the AudioTrack is kept for the next one
+    void stop() {
+        current = null;
+        handler.removeMessages(MSG_SEEK);
+        handler.sendEmptyMessage(MSG_STOP);
+    }
+
+    // Releases the AudioTrack and stops the thread once the commands already posted have run
+    void release() {
+        current = null;
+        handler.sendEmptyMessage(MSG_RELEASE);
+    }
+
+    int getCurrentPosition() {
+        PcmStreamer streamer = current;
+        return streamer != null ? streamer.positionMs() : 0;
+    }
+
+    int getDuration() {
+        PcmStreamer streamer = current;
+        return streamer != null ? streamer.durationMs() : 0;
+    }
+
+    private void handle(Message msg) {
+        switch (msg.what) {
+            case MSG_OPEN:
+                handleOpen((Source) msg.obj, msg.arg1);
+                break;
+            case MSG_PLAY:
+                if (streamer == null) return;
+                streamer.play();
+                schedulePump();
+                break;
+            case MSG_PAUSE:
+                if (streamer == null) return;
+                streamer.pause();
+                cancelPump();
+                break;
+            case MSG_SEEK:
+                if (streamer == null) return;
+                cancelPump();
+                streamer.seekToMs(msg.arg1);
+                if (streamer.isPlaying()) schedulePump();
+                break;
+            case MSG_VOLUME:
+                volume = (Float) msg.obj;
+                if (sink != null) sink.setVolume(volume);
+                break;
+            case MSG_STOP:
+                cancelPump();
+                if (streamer != null) {
+                    streamer.pause();
+                    sink.flush();
+                    streamer = null;
+                }
+                break;
+            case MSG_RELEASE:
+                handler.removeCallbacksAndMessages(null);
+                streamer = null;
+                if (sink != null) {
+                    sink.release();
+                    sink = null;
+                }
+                thread.quitSafely();
+                break;
+        }
+    }
+
+    private void handleOpen(Source source, int generation) {
+        cancelPump();
+        this.generation = generation;
+        streamer = null;
+        try {
+            if (sink != null && !sink.matches(source.layout)) {
+                sink.release();
+                sink = null;
+            }
+            if (sink == null) {
+                sink = AudioTrackSink.create(source.layout);
+                sink.setVolume(volume);
+            }
+        } catch (RuntimeException e) {
+            // The builder throws for a layout the device cannot output
+            Log.e(TAG, "Could not create an AudioTrack", e);
+            sink = null;
+            listener.onError(generation);
+            return;
+        }
+        streamer = source.streamer;
+        dsp.configure(source.layout.sampleRate, source.layout.channels);
+        streamer.setProcessor(dsp.processorFor(source.layout.bitsPerSample, source.layout.floating));
+        streamer.attach(sink);
+    }
+
+    private void schedulePump() {
+        cancelPump();
+        handler.post(pump);
+    }
+
+    private void cancelPump() {
+        handler.removeCallbacks(pump);
+        handler.removeCallbacks(drain);
+    }
+
+    // One chunk per run, so commands get in between
+    private final Runnable pump = new Runnable() {
+        @Override
+        public void run() {
+            if (streamer == null || !streamer.isPlaying()) return;
+            int written;
+            try {
+                written = streamer.pump();
+            } catch (IOException e) {
+                Log.e(TAG, "AudioTrack write failed", e);
+                streamer = null;
+                listener.onError(generation);
+                return;
+            }
+            if (written == PcmStreamer.END) {
+                handler.postDelayed(drain, DRAIN_POLL_MS);
+            } else {
+                handler.post(this);
+            }
+        }
+    };
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            if (streamer == null || !streamer.isPlaying()) return;
+            if (!streamer.isDrained()) {
+                handler.postDelayed(this, DRAIN_POLL_MS);
+                return;
+            }
+            streamer.pause();
+            listener.onCompleted(generation);
+        }
+    };
+}
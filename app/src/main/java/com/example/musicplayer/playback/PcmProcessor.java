@@ -0,0 +1,12 @@
+package com.example.musicplayer.playback;
+
+import java.nio.ByteBuffer;
+
+// Changes PCM frames in place on their way from PcmStreamer's ring to the sink, e.g. DspChain.
+// Called on the streaming thread for every piece of the track copied into the ring, in order;
+// must not allocate or block.
+public interface PcmProcessor {
+    // size bytes of whole frames starting at index position in buffer; the buffer's position and
+    // limit are left alone
+    void process(ByteBuffer buffer, int position, int size);
+}
@@ -0,0 +1,24 @@
+package com.example.musicplayer.playback;
+
+import java.nio.ByteBuffer;
+
+// Where PcmStreamer sends its frames: an AudioTrack in the app, a fake in tests
+public interface PcmSink {
+    // Writes size bytes from the buffer's position, blocking until there is room, and advances
+    // the position past them. Returns the bytes written, whole frames only, fewer if paused or
+    // flushed meanwhile, or a negative error code.
+    int write(ByteBuffer buffer, int size);
+
+    void play();
+
+    void pause();
+
+    // Drops what was written but not yet played; only while paused or stopped
+    void flush();
+
+    // Plays out what was written, then stops
+    void stop();
+
+    // Frames played since the last flush
+    long framesPlayed();
+}
@@ -0,0 +1,165 @@
+package com.example.musicplayer.playback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Streams one track's PCM frames from a read-only buffer (the memory-mapped data chunk of a WAV)
+// into a PcmSink. Frames are copied into a ring buffer that is allocated once and shared by
+// every track, then written to the sink a chunk at a time; nothing is allocated per write. What
+// the sink did not take, because it was paused mid-write, stays in the ring for the next pump.
+//
+// Positions are in frames, so seeks land on an exact sample: the ring and the sink are flushed
+// and reading restarts at that frame. The position heard is the frame last seeked to plus what
+// the sink reports as played.
+//
+// An optional PcmProcessor changes the frames as they are copied into the ring, once each, so
+// what stays behind after a short write is not processed twice.
+//
+// Driven by one thread; positionFrame() and positionMs() may be read from any other.
+public class PcmStreamer {
+    // Returned by pump once there is nothing left to write
+    public static final int END = -1;
+
+    private final ByteBuffer ring;
+    private final int capacity; // Usable ring bytes, whole frames only
+    private final ByteBuffer data;
+    private final int frameSize;
+    private final int sampleRate;
+    private final int chunkBytes;
+    private final long totalFrames;
+    private volatile PcmSink sink;
+    private PcmProcessor processor;
+    private int readIndex; // Ring index of the oldest byte not yet written to the sink
+    private int count; // Bytes waiting in the ring
+    private boolean playing;
+    private boolean stopped; // The sink was told to play out the end of the data
+    private volatile long baseFrame; // The frame the sink was last flushed at
+    private volatile long bytesWritten; // To the sink since then
+
+    // chunkBytes is how much one pump writes at most, rounded down to whole frames
+    public PcmStreamer(ByteBuffer ring, ByteBuffer data, int frameSize, int sampleRate, int chunkBytes) {
+        if (frameSize <= 0 || ring.capacity() < frameSize) {
+            throw new IllegalArgumentException("Frames of " + frameSize + " bytes in a ring of " + ring.capacity());
+        }
+        this.ring = ring;
+        this.capacity = ring.capacity() - ring.capacity() % frameSize;
+        this.data = data;
+        this.frameSize = frameSize;
+        this.sampleRate = sampleRate;
+        this.chunkBytes = Math.max(frameSize, Math.min(capacity, chunkBytes - chunkBytes % frameSize));
+        // A trailing partial frame is never played
+        data.limit(data.capacity() - data.capacity() % frameSize);
+        data.position(0);
+        this.totalFrames = data.limit() / frameSize;
+    }
+
+    // Hands the stream a sink to write to, flushing whatever it held; paused until play()
+    public void attach(PcmSink sink) {
+        this.sink = sink;
+        playing = false;
+        seekToFrame(baseFrame);
+    }
+
+    // Applied to frames copied into the ring from now on; null for none
+    public void setProcessor(PcmProcessor processor) {
+        this.processor = processor;
+    }
+
+    public void play() {
+        playing = true;
+        sink.play();
+    }
+
+    public void pause() {
+        playing = false;
+        sink.pause();
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    // Moves to frame exactly, clamped to the track; the ring and anything the sink had not played
+    // yet are dropped
+    public void seekToFrame(long frame) {
+        frame = Math.max(0, Math.min(frame, totalFrames));
+        if (sink != null) {
+            sink.pause();
+            sink.flush();
+        }
+        data.position((int) (frame * frameSize));
+        readIndex = 0;
+        count = 0;
+        stopped = false;
+        bytesWritten = 0;
+        baseFrame = frame;
+        if (sink != null && playing) sink.play();
+    }
+
+    public void seekToMs(int positionMs) {
+        seekToFrame((long) positionMs * sampleRate / 1000);
+    }
+
+    // Tops up the ring and writes up to one chunk to the sink, blocking while it has no room.
+    // Returns the bytes written, or END once all the data has been written; the sink is then told
+    // to play out what it holds.
+    public int pump() throws IOException {
+        fill();
+        if (count == 0) {
+            if (!stopped) {
+                stopped = true;
+                sink.stop();
+            }
+            return END;
+        }
+        int size = Math.min(chunkBytes, Math.min(count, capacity - readIndex));
+        ring.clear();
+        ring.position(readIndex);
+        ring.limit(readIndex + size);
+        int written = sink.write(ring, size);
+        if (written < 0) throw new IOException("PCM sink error " + written);
+        readIndex = (readIndex + written) % capacity;
+        count -= written;
+        bytesWritten += written;
+        return written;
+    }
+
+    // Every frame has been written and the sink has played them all
+    public boolean isDrained() {
+        return stopped && sink.framesPlayed() >= bytesWritten / frameSize;
+    }
+
+    public long positionFrame() {
+        long written = bytesWritten / frameSize;
+        PcmSink sink = this.sink;
+        return baseFrame + (sink == null ? 0 : Math.min(sink.framesPlayed(), written));
+    }
+
+    public int positionMs() {
+        return (int) (positionFrame() * 1000 / sampleRate);
+    }
+
+    public long durationFrames() {
+        return totalFrames;
+    }
+
+    public int durationMs() {
+        return (int) (totalFrames * 1000 / sampleRate);
+    }
+
+    // Copies as much of the data as fits into the free part of the ring, in at most two pieces
+    private void fill() {
+        while (count < capacity && data.hasRemaining()) {
+            int writeIndex = (readIndex + count) % capacity;
+            int size = Math.min(data.remaining(), Math.min(capacity - count, capacity - writeIndex));
+            int limit = data.limit();
+            data.limit(data.position() + size);
+            ring.clear();
+            ring.position(writeIndex);
+            ring.put(data);
+            data.limit(limit);
+            if (processor != null) processor.process(ring, writeIndex, size);
+            count += size;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.musicplayer.playback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// The playback position as an anchor: where the track was at a moment and how fast it was
+// moving. The playback thread publishes a new anchor only when that changes (start, pause,
+// seek, a new track, an occasional drift check); readers interpolate from it for any moment, so
+// nothing has to ask the player for its position to draw a progress bar. Listeners hear about
+// new anchors on the main thread, at most once per batch of anchors published in between.
+public final class PlaybackClock {
+    public interface TimeSource {
+        long now();
+    }
+
+    // Called on the main thread
+    public interface Listener {
+        void onAnchorChanged(Anchor anchor);
+    }
+
+    public static final class Anchor {
+        public final int trackId;
+        public final int durationMs;
+        public final int positionMs;
+        public final long atMs; // TimeSource time the position was read
+        public final float rate; // Playback ms per ms; 0 while paused or loading
+
+        Anchor(int trackId, int durationMs, int positionMs, long atMs, float rate) {
+            this.trackId = trackId;
+            this.durationMs = durationMs;
+            this.positionMs = positionMs;
+            this.atMs = atMs;
+            this.rate = rate;
+        }
+
+        public boolean isMoving() {
+            return rate != 0f;
+        }
+
+        // Never runs past the end of the track
+        public int positionAt(long nowMs) {
+            if (rate == 0f) return positionMs;
+            long position = positionMs + (long) ((nowMs - atMs) * rate);
+            return (int) Math.max(0, Math.min(position, Math.max(durationMs, positionMs)));
+        }
+    }
+
+    private final TimeSource time;
+    private final Executor mainThread;
+    private volatile Anchor anchor = new Anchor(-1, 0, 0, 0, 0f);
+    private final List<Listener> listeners = new ArrayList<>(); // Main thread only
+    private volatile boolean observed;
+    private final AtomicBoolean notifyPending = new AtomicBoolean();
+    private Runnable onObserved;
+
+    private final Runnable notifier = new Runnable() {
+        @Override
+        public void run() {
+            notifyPending.set(false);
+            Anchor current = anchor;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onAnchorChanged(current);
+            }
+        }
+    };
+
+    public PlaybackClock(TimeSource time, Executor mainThread) {
+        this.time = time;
+        this.mainThread = mainThread;
+    }
+
+    // Any thread
+    public void publish(int trackId, int durationMs, int positionMs, boolean moving) {
+        anchor = new Anchor(trackId, durationMs, positionMs, time.now(), moving ? 1f : 0f);
+        if (observed && notifyPending.compareAndSet(false, true)) {
+            mainThread.execute(notifier);
+        }
+    }
+
+    public Anchor anchor() {
+        return anchor;
+    }
+
+    public int position() {
+        return anchor.positionAt(time.now());
+    }
+
+    public long now() {
+        return time.now();
+    }
+
+    // Whether anyone is showing the position; the playback thread only checks for drift then
+    public boolean isObserved() {
+        return observed;
+    }
+
+    // Runs on the main thread whenever the clock goes from unobserved to observed
+    public void setOnObserved(Runnable onObserved) {
+        this.onObserved = onObserved;
+    }
+
+    // Main thread; the listener hears the current anchor at once
+    public void addListener(Listener listener) {
+        if (listeners.contains(listener)) return;
+        listeners.add(listener);
+        listener.onAnchorChanged(anchor);
+        if (!observed) {
+            observed = true;
+            if (onObserved != null) onObserved.run();
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+        observed = !listeners.isEmpty();
+    }
+}
@@ -0,0 +1,790 @@
+package com.example.musicplayer.playback;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import com.example.musicplayer.utils.FormatSniffer;
+import com.example.musicplayer.utils.MetadataExtractor;
+import com.example.musicplayer.utils.ReplayGain;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+// Owns the MediaPlayers on a dedicated playback thread. Every operation is a command posted to
+// that thread's mailbox, so callers never wait on file access or decoder setup; tracks are
+// prepared with prepareAsync. A command that supersedes one still waiting in the mailbox (a
+// second play, a later seek) removes it before it runs. Results come back to the listener on
+// the main thread, and the state getters read the anchor the playback thread publishes to its
+// PlaybackClock, so they never block either.
+//
+// PCM WAV tracks skip MediaPlayer and go to a PcmPlayer, which streams the mapped file into an
+// AudioTrack with no prepare and seeks to the exact sample. Such a track is not prepared ahead
+// or faded into the next one: when it ends the listener starts the next track as usual. Only
+// this path has the samples in hand, so the DspChain (EQ and limiter) applies to it alone.
+//
+// Each track plays at its ReplayGain: the gain is turned into a volume for whichever player or
+// AudioTrack carries the track, and a crossfade ramps between the two tracks' volumes rather
+// than between full scale.
+public class PlaybackEngine {
+    private static final String TAG = "PlaybackEngine";
+
+    // The next track is prepared this long before the current one ends, then chained to it
+    public static final int PRELOAD_LEAD_MS = 10000;
+    // How often the anchor is checked against the player while someone is watching the position
+    private static final int DRIFT_CHECK_MS = 2000;
+    // A manual skip during a crossfade fades the outgoing track out this fast instead of cutting it
+    static final int SKIP_FADE_MS = 150;
+
+    private static final int MSG_PLAY = 1;
+    private static final int MSG_PAUSE = 2;
+    private static final int MSG_RESUME = 3;
+    private static final int MSG_SEEK = 4;
+    private static final int MSG_SET_NEXT = 5;
+    private static final int MSG_PRELOAD = 6; // Internal: the lead time before the end was reached
+    private static final int MSG_SAMPLE = 7; // Internal: re-anchor the clock to the player's position
+    private static final int MSG_RELEASE = 8;
+    private static final int MSG_SET_CROSSFADE = 9;
+    private static final int MSG_FADE_START = 10; // Internal: the current track is crossfadeMs from its end
+    private static final int MSG_RENAME = 11;
+    private static final int MSG_PCM_COMPLETED = 12; // Internal: arg1 is the PCM generation
+    private static final int MSG_PCM_ERROR = 13;
+    private static final int MSG_SET_GAIN = 14;
+
+    // Called on the main thread
+    public interface Listener {
+        // The track is prepared; it is playing unless a pause arrived meanwhile
+        void onTrackStarted(int trackId, int durationMs);
+
+        void onPlayingChanged(boolean playing);
+
+        // The chained next track took over without a gap
+        void onAdvanced(int trackId);
+
+        // The track ended and nothing was chained after it
+        void onCompleted(int trackId);
+
+        // The track could not be played
+        void onError(int trackId);
+    }
+
+    private static final class Track {
+        final int id;
+        final String assetFileName;
+        final float gainDb; // NaN when not known
+
+        Track(int id, String assetFileName, float gainDb) {
+            this.id = id;
+            this.assetFileName = assetFileName;
+            this.gainDb = gainDb;
+        }
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final FailureCache failures; // Files that failed to prepare, on this run or an earlier one
+    private final DspChain dsp; // Run by the PcmPlayer over the tracks it plays
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean released; // Nothing reaches the listener once release() has been called
+    private final PlaybackClock clock;
+
+    // Playback thread only from here on
+    private MediaPlayer player;
+    private int trackId = -1;
+    // The file behind trackId as it was opened, so that a failed prepare can be remembered
+    private String assetFileName;
+    private long assetSize;
+    private long assetStamp;
+    private boolean preparing; // prepareAsync is in flight
+    private boolean prepared; // The player can report its position and start
+    private boolean playWhenReady;
+    private int pendingSeekMs = -1; // A seek that arrived while the track was still preparing
+    private float volume = 1f; // The current track's gain as a volume, for player or pcm
+    private Track next; // The track to chain after the current one, or null
+    private MediaPlayer nextPlayer; // Set up for next once the lead time is reached
+    private boolean nextPrepared;
+    private boolean nextChained; // nextPlayer is set as player's next player (no crossfade)
+    private int crossfadeMs; // 0 chains tracks gaplessly instead
+    private FadeCurve fadeCurve = FadeCurve.EQUAL_POWER;
+    private MediaPlayer fadingPlayer; // The previous track, fading out under the current one
+    private float fadingVolume = 1f; // Its gain as a volume, which the fade scales down from
+    private MediaPlayer fadeInPlayer; // Raised by the fade; null once a skip replaced its track
+    private final Crossfade crossfade;
+    private PcmPlayer pcm; // Created with the first WAV track
+    private boolean pcmActive; // The current track plays through pcm instead of player
+    private int pcmGeneration; // Counts PCM tracks, so reports about an earlier one are ignored
+
+    public PlaybackEngine(Context context, Listener listener, FailureCache failures, DspChain dsp) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.failures = failures;
+        this.dsp = dsp;
+        this.thread = new HandlerThread("Playback", Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+        this.handler = new Handler(thread.getLooper(), new Handler.Callback() {
+            @Override
+            public boolean handleMessage(Message msg) {
+                handle(msg);
+                return true;
+            }
+        });
+        this.clock = new PlaybackClock(new PlaybackClock.TimeSource() {
+            @Override
+            public long now() {
+                return SystemClock.uptimeMillis();
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable r) {
+                mainHandler.post(r);
+            }
+        });
+        // The anchor may have drifted while nobody was looking
+        clock.setOnObserved(new Runnable() {
+            @Override
+            public void run() {
+                handler.removeMessages(MSG_SAMPLE);
+                handler.sendEmptyMessage(MSG_SAMPLE);
+            }
+        });
+        this.crossfade = new Crossfade(new Crossfade.Clock() {
+            @Override
+            public long now() {
+                return SystemClock.uptimeMillis();
+            }
+        }, new Crossfade.Ticker() {
+            @Override
+            public void postAtTime(Runnable r, long atMs) {
+                handler.postAtTime(r, atMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable r) {
+                handler.removeCallbacks(r);
+            }
+        }, new Crossfade.Target() {
+            @Override
+            public void setGains(float out, float in) {
+                if (fadingPlayer != null) fadingPlayer.setVolume(out * fadingVolume, out * fadingVolume);
+                if (fadeInPlayer != null) fadeInPlayer.setVolume(in * volume, in * volume);
+            }
+
+            @Override
+            public void onFadeFinished() {
+                if (fadingPlayer != null) {
+                    fadingPlayer.release();
+                    fadingPlayer = null;
+                }
+                fadeInPlayer = null;
+            }
+        });
+    }
+
+    // Plays the track from the start at gainDb (NaN for none). Anything still waiting to act on
+    // the previous track is dropped.
+    public void play(int trackId, String assetFileName, float gainDb) {
+        handler.removeMessages(MSG_PLAY);
+        handler.removeMessages(MSG_SEEK);
+        handler.removeMessages(MSG_PAUSE);
+        handler.removeMessages(MSG_RESUME);
+        handler.obtainMessage(MSG_PLAY, new Track(trackId, assetFileName, gainDb)).sendToTarget();
+    }
+
+    public void pause() {
+        handler.removeMessages(MSG_RESUME);
+        handler.removeMessages(MSG_PAUSE);
+        handler.sendEmptyMessage(MSG_PAUSE);
+    }
+
+    public void resume() {
+        handler.removeMessages(MSG_PAUSE);
+        handler.removeMessages(MSG_RESUME);
+        handler.sendEmptyMessage(MSG_RESUME);
+    }
+
+    public void seekTo(int positionMs) {
+        handler.removeMessages(MSG_SEEK);
+        handler.obtainMessage(MSG_SEEK, positionMs, 0).sendToTarget();
+    }
+
+    // Gives the current track a new id if it is still fromId, e.g. once a track that was started
+    // by asset name alone has been found in the library
+    public void renameTrack(int fromId, int toId) {
+        handler.obtainMessage(MSG_RENAME, fromId, toId).sendToTarget();
+    }
+
+    // The track to chain after the current one, prepared shortly before the current one ends;
+    // null discards whatever was prepared
+    public void setNext(int trackId, String assetFileName, float gainDb) {
+        handler.removeMessages(MSG_SET_NEXT);
+        handler.obtainMessage(MSG_SET_NEXT, assetFileName != null ? new Track(trackId, assetFileName, gainDb) : null)
+                .sendToTarget();
+    }
+
+    // A gain measured after the track was handed over; applies at once if it is the current or
+    // the next track
+    public void setTrackGain(int trackId, float gainDb) {
+        handler.obtainMessage(MSG_SET_GAIN, trackId, 0, gainDb).sendToTarget();
+    }
+
+    // Overlaps the end of each track with the start of the next for fadeMs (0 to
+    // Crossfade.MAX_FADE_MS); 0 joins them gaplessly instead
+    public void setCrossfade(int fadeMs, FadeCurve curve) {
+        if (fadeMs < 0 || fadeMs > Crossfade.MAX_FADE_MS || curve == null) {
+            throw new IllegalArgumentException("Crossfade of " + fadeMs + " ms with " + curve);
+        }
+        handler.removeMessages(MSG_SET_CROSSFADE);
+        handler.obtainMessage(MSG_SET_CROSSFADE, fadeMs, 0, curve).sendToTarget();
+    }
+
+    // Releases the players and stops the thread once the commands already posted have run. Call on
+    // the main thread; no listener callback runs after this returns.
+    public void release() {
+        released = true;
+        mainHandler.removeCallbacksAndMessages(null);
+        handler.sendEmptyMessage(MSG_RELEASE);
+    }
+
+    public PlaybackClock clock() {
+        return clock;
+    }
+
+    public boolean isPlaying() {
+        return clock.anchor().isMoving();
+    }
+
+    public int getTrackId() {
+        return clock.anchor().trackId;
+    }
+
+    public int getDuration() {
+        return clock.anchor().durationMs;
+    }
+
+    public int getCurrentPosition() {
+        return clock.position();
+    }
+
+    private void handle(Message msg) {
+        switch (msg.what) {
+            case MSG_PLAY:
+                handlePlay((Track) msg.obj);
+                break;
+            case MSG_PAUSE:
+                handlePause();
+                break;
+            case MSG_RESUME:
+                handleResume();
+                break;
+            case MSG_SEEK:
+                handleSeek(msg.arg1);
+                break;
+            case MSG_SET_NEXT:
+                handleSetNext((Track) msg.obj);
+                break;
+            case MSG_PRELOAD:
+                prepareNext();
+                break;
+            case MSG_SAMPLE:
+                publish();
+                startSampling();
+                break;
+            case MSG_SET_CROSSFADE:
+                handleSetCrossfade(msg.arg1, (FadeCurve) msg.obj);
+                break;
+            case MSG_FADE_START:
+                startFade();
+                break;
+            case MSG_PCM_COMPLETED:
+                if (pcmActive && msg.arg1 == pcmGeneration) complete();
+                break;
+            case MSG_PCM_ERROR:
+                if (pcmActive && msg.arg1 == pcmGeneration) {
+                    Log.w(TAG, "PCM playback failed on track " + trackId);
+                    pcmActive = false;
+                    fail(trackId);
+                }
+                break;
+            case MSG_SET_GAIN:
+                handleSetGain(msg.arg1, (Float) msg.obj);
+                break;
+            case MSG_RENAME:
+                if (trackId == msg.arg1) {
+                    trackId = msg.arg2;
+                    publish();
+                }
+                break;
+            case MSG_RELEASE:
+                handleRelease();
+                break;
+        }
+    }
+
+    private void handlePlay(Track track) {
+        discardNextPlayer();
+        next = null;
+        if (crossfade.isRunning()) {
+            // The track fading in is replaced; the one fading out finishes quickly on its own
+            fadeInPlayer = null;
+            crossfade.shorten(SKIP_FADE_MS);
+        }
+        if (pcmActive) {
+            pcm.stop();
+            pcmActive = false;
+        }
+        if (player == null) player = newPlayer();
+        player.reset();
+        volume = ReplayGain.volume(track.gainDb);
+        player.setVolume(volume, volume);
+        trackId = track.id;
+        preparing = false;
+        prepared = false;
+        pendingSeekMs = -1;
+        playWhenReady = true;
+        assetFileName = track.assetFileName;
+        assetSize = -1;
+        try {
+            AssetFileDescriptor afd = context.getAssets().openFd(track.assetFileName);
+            try {
+                assetSize = afd.getLength();
+                assetStamp = afd.getStartOffset();
+                if (failures.contains(assetFileName, assetSize, assetStamp)) {
+                    Log.w(TAG, "Skipping " + track.assetFileName + ", which failed to prepare before");
+                    fail(track.id);
+                    return;
+                }
+                // Check the content before handing it to the decoder; a mislabelled file fails fast here
+                FormatSniffer.Format format = MetadataExtractor.sniffFormat(afd);
+                if (!format.isPlayable()) {
+                    Log.w(TAG, "Skipping unsupported audio format: " + track.assetFileName);
+                    failures.put(assetFileName, assetSize, assetStamp);
+                    fail(track.id);
+                    return;
+                }
+                if (format == FormatSniffer.Format.WAV && startPcm(afd)) return;
+                player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            } finally {
+                afd.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error playing song: " + track.assetFileName, e);
+            fail(track.id);
+            return;
+        }
+        preparing = true;
+        publish();
+        player.prepareAsync();
+    }
+
+    // Plays the WAV in afd through the PcmPlayer, with nothing to prepare; false if it is not PCM
+    // that AudioTrack can take, leaving it to MediaPlayer
+    private boolean startPcm(AssetFileDescriptor afd) throws IOException {
+        if (pcm == null) pcm = new PcmPlayer(pcmListener, dsp);
+        pcm.setVolume(volume);
+        if (!pcm.open(afd, ++pcmGeneration)) return false;
+        pcmActive = true;
+        prepared = true;
+        if (playWhenReady) pcm.play();
+        publish();
+        final int id = trackId;
+        final int duration = pcm.getDuration();
+        final boolean playing = playWhenReady;
+        postToListener(new Runnable() {
+            @Override
+            public void run() {
+                listener.onTrackStarted(id, duration);
+                listener.onPlayingChanged(playing);
+            }
+        });
+        if (playing) startSampling();
+        Log.d(TAG, "Playing track " + id + " as PCM");
+        return true;
+    }
+
+    // Called on the PCM thread; handled here in order with everything else
+    private final PcmPlayer.Listener pcmListener = new PcmPlayer.Listener() {
+        @Override
+        public void onCompleted(int generation) {
+            handler.obtainMessage(MSG_PCM_COMPLETED, generation, 0).sendToTarget();
+        }
+
+        @Override
+        public void onError(int generation) {
+            handler.obtainMessage(MSG_PCM_ERROR, generation, 0).sendToTarget();
+        }
+    };
+
+    private final MediaPlayer.OnPreparedListener preparedListener = new MediaPlayer.OnPreparedListener() {
+        @Override
+        public void onPrepared(MediaPlayer mp) {
+            if (mp == nextPlayer) {
+                nextPrepared = true;
+                if (crossfadeMs > 0) {
+                    scheduleFadeStart();
+                } else {
+                    player.setNextMediaPlayer(mp);
+                    nextChained = true;
+                }
+                return;
+            }
+            if (mp != player || !preparing) return;
+            preparing = false;
+            prepared = true;
+            if (pendingSeekMs >= 0) {
+                player.seekTo(pendingSeekMs);
+                pendingSeekMs = -1;
+            }
+            if (playWhenReady) player.start();
+            publish();
+            final int id = trackId;
+            final int duration = player.getDuration();
+            final boolean playing = playWhenReady;
+            postToListener(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onTrackStarted(id, duration);
+                    listener.onPlayingChanged(playing);
+                }
+            });
+            if (playing) startSampling();
+            schedulePreload();
+            Log.d(TAG, "Playing track " + id);
+        }
+    };
+
+    private final MediaPlayer.OnCompletionListener completionListener = new MediaPlayer.OnCompletionListener() {
+        @Override
+        public void onCompletion(MediaPlayer mp) {
+            if (mp == fadingPlayer) {
+                // The outgoing track ran out before its ramp did
+                crossfade.finish();
+                return;
+            }
+            if (mp != player) return;
+            if (nextChained) {
+                // The next player has already started on its own; it only has to take over
+                player.release();
+                player = nextPlayer;
+                trackId = next.id;
+                volume = ReplayGain.volume(next.gainDb);
+                nextPlayer = null;
+                nextPrepared = false;
+                nextChained = false;
+                next = null;
+                publish();
+                final int started = trackId;
+                postToListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onAdvanced(started);
+                    }
+                });
+                return;
+            }
+            complete();
+        }
+    };
+
+    // The current track ended with nothing chained after it
+    private void complete() {
+        final int finished = trackId;
+        playWhenReady = false;
+        publish();
+        postToListener(new Runnable() {
+            @Override
+            public void run() {
+                listener.onCompleted(finished);
+            }
+        });
+    }
+
+    private final MediaPlayer.OnErrorListener errorListener = new MediaPlayer.OnErrorListener() {
+        @Override
+        public boolean onError(MediaPlayer mp, int what, int extra) {
+            if (mp == nextPlayer) {
+                // Playback falls back to starting the next track when the current one ends
+                discardNextPlayer();
+            } else if (mp == fadingPlayer) {
+                crossfade.finish();
+            } else if (mp == player) {
+                Log.w(TAG, "Player error " + what + "/" + extra + " on track " + trackId);
+                // Only a prepare that fails is held against the file; later errors may be passing
+                if (preparing && assetSize >= 0) failures.put(assetFileName, assetSize, assetStamp);
+                preparing = false;
+                prepared = false;
+                fail(trackId);
+            }
+            return true;
+        }
+    };
+
+    private void handlePause() {
+        playWhenReady = false;
+        if (trackId < 0) return;
+        if (pcmActive) {
+            pcm.pause();
+        } else if (prepared && player.isPlaying()) {
+            player.pause();
+        }
+        if (crossfade.isRunning()) {
+            fadingPlayer.pause();
+            crossfade.pause();
+        }
+        handler.removeMessages(MSG_SAMPLE);
+        publish();
+        postPlayingChanged(false);
+    }
+
+    private void handleResume() {
+        if (!prepared && !preparing) return;
+        playWhenReady = true;
+        if (prepared) {
+            if (pcmActive) {
+                pcm.play();
+            } else {
+                player.start();
+            }
+            if (crossfade.isRunning()) {
+                fadingPlayer.start();
+                crossfade.resume();
+            }
+            startSampling();
+            scheduleFadeStart();
+        }
+        publish();
+        postPlayingChanged(true);
+    }
+
+    private void handleSeek(int positionMs) {
+        if (preparing) {
+            pendingSeekMs = positionMs;
+            return;
+        }
+        if (!prepared) return;
+        // Seeking in the track fading in ends the fade; the outgoing track has nothing more to add
+        crossfade.finish();
+        if (pcmActive) {
+            pcm.seekTo(positionMs);
+        } else {
+            player.seekTo(positionMs);
+        }
+        publish(positionMs);
+        // A seek towards the end brings the preload forward
+        if (nextPlayer == null) {
+            schedulePreload();
+        } else {
+            scheduleFadeStart();
+        }
+    }
+
+    private void handleSetNext(Track track) {
+        if (track != null && next != null && track.id == next.id) return;
+        discardNextPlayer();
+        next = track;
+        if (track != null && prepared) schedulePreload();
+    }
+
+    private void handleSetGain(int id, float gainDb) {
+        if (next != null && next.id == id) {
+            next = new Track(id, next.assetFileName, gainDb);
+            float nextVolume = ReplayGain.volume(gainDb);
+            // A player waiting to fade in starts silent and picks its volume up from the fade
+            if (nextPlayer != null) nextPlayer.setVolume(nextVolume, nextVolume);
+        }
+        if (id != trackId) return;
+        volume = ReplayGain.volume(gainDb);
+        if (pcmActive) {
+            pcm.setVolume(volume);
+        } else if (player != null && !crossfade.isRunning()) {
+            // While fading in, the next step of the ramp applies it
+            player.setVolume(volume, volume);
+        }
+    }
+
+    private void schedulePreload() {
+        handler.removeMessages(MSG_PRELOAD);
+        if (next == null || nextPlayer != null || pcmActive) return;
+        int remaining = player.getDuration() - player.getCurrentPosition();
+        handler.sendEmptyMessageDelayed(MSG_PRELOAD, Math.max(0, remaining - PRELOAD_LEAD_MS - crossfadeMs));
+    }
+
+    private void handleSetCrossfade(int fadeMs, FadeCurve curve) {
+        crossfadeMs = fadeMs;
+        fadeCurve = curve;
+        if (!nextPrepared) return;
+        // Switch an already prepared next track between chaining and fading
+        if (fadeMs > 0 && nextChained) {
+            player.setNextMediaPlayer(null);
+            nextChained = false;
+            scheduleFadeStart();
+        } else if (fadeMs == 0 && !nextChained) {
+            handler.removeMessages(MSG_FADE_START);
+            player.setNextMediaPlayer(nextPlayer);
+            nextChained = true;
+        }
+    }
+
+    private void scheduleFadeStart() {
+        handler.removeMessages(MSG_FADE_START);
+        if (!nextPrepared || nextChained || crossfadeMs == 0 || !playWhenReady) return;
+        int remaining = player.getDuration() - player.getCurrentPosition();
+        handler.sendEmptyMessageDelayed(MSG_FADE_START, Math.max(0, remaining - crossfadeMs));
+    }
+
+    // Starts the prepared next track silently under the current one and hands it the current
+    // slot; the crossfade raises one and lowers the other, then releases the old player
+    private void startFade() {
+        if (!nextPrepared || nextChained || !playWhenReady || !prepared) return;
+        crossfade.finish(); // A fade still running from the previous track ends here
+        int remaining = Math.max(0, player.getDuration() - player.getCurrentPosition());
+        fadingPlayer = player;
+        fadingVolume = volume;
+        player = nextPlayer;
+        fadeInPlayer = player;
+        trackId = next.id;
+        volume = ReplayGain.volume(next.gainDb);
+        nextPlayer = null;
+        nextPrepared = false;
+        next = null;
+        player.setVolume(0f, 0f);
+        player.start();
+        crossfade.start(fadeCurve, Math.min(crossfadeMs, remaining));
+        publish();
+        startSampling();
+        final int started = trackId;
+        postToListener(new Runnable() {
+            @Override
+            public void run() {
+                listener.onAdvanced(started);
+            }
+        });
+    }
+
+    // Sets up the next track on a second player; it is chained once prepared. A WAV is not: it
+    // has to go through the PcmPlayer and the DSP chain, so it starts when the current track
+    // completes, like a track that could not be chained.
+    private void prepareNext() {
+        if (next == null || nextPlayer != null || !prepared) return;
+        MediaPlayer candidate = null;
+        try {
+            AssetFileDescriptor afd = context.getAssets().openFd(next.assetFileName);
+            try {
+                // An unplayable file is left to the caller, which skips it when the current one ends
+                FormatSniffer.Format format = MetadataExtractor.sniffFormat(afd);
+                if (!format.isPlayable() || format == FormatSniffer.Format.WAV) return;
+                candidate = newPlayer();
+                // A chained player starts on its own, so it needs its gain before then
+                float nextVolume = ReplayGain.volume(next.gainDb);
+                candidate.setVolume(nextVolume, nextVolume);
+                candidate.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            } finally {
+                afd.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error preparing next song: " + next.assetFileName, e);
+            if (candidate != null) candidate.release();
+            return;
+        }
+        nextPlayer = candidate;
+        candidate.prepareAsync();
+    }
+
+    private void discardNextPlayer() {
+        handler.removeMessages(MSG_PRELOAD);
+        handler.removeMessages(MSG_FADE_START);
+        if (nextPlayer == null) return;
+        if (nextChained) player.setNextMediaPlayer(null);
+        nextPlayer.release();
+        nextPlayer = null;
+        nextPrepared = false;
+        nextChained = false;
+    }
+
+    private void handleRelease() {
+        handler.removeCallbacksAndMessages(null);
+        crossfade.abort();
+        if (fadingPlayer != null) {
+            fadingPlayer.release();
+            fadingPlayer = null;
+        }
+        fadeInPlayer = null;
+        discardNextPlayer();
+        if (player != null) {
+            player.release();
+            player = null;
+        }
+        if (pcm != null) {
+            pcm.release();
+            pcm = null;
+            pcmActive = false;
+        }
+        trackId = -1;
+        prepared = false;
+        publish();
+        thread.quitSafely();
+    }
+
+    private MediaPlayer newPlayer() {
+        MediaPlayer mp = new MediaPlayer(); // Its callbacks arrive on this thread's looper
+        mp.setOnPreparedListener(preparedListener);
+        mp.setOnCompletionListener(completionListener);
+        mp.setOnErrorListener(errorListener);
+        return mp;
+    }
+
+    private void fail(final int id) {
+        playWhenReady = false;
+        prepared = false;
+        publish();
+        postToListener(new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(id);
+            }
+        });
+    }
+
+    // Runs r on the main thread unless the engine has been released by then; the playback thread
+    // may still be reporting on its last track when the service lets go of it
+    private void postToListener(final Runnable r) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!released) r.run();
+            }
+        });
+    }
+
+    private void postPlayingChanged(final boolean playing) {
+        postToListener(new Runnable() {
+            @Override
+            public void run() {
+                listener.onPlayingChanged(playing);
+            }
+        });
+    }
+
+    // Only while playing and watched; a paused or unwatched clock needs no checking
+    private void startSampling() {
+        handler.removeMessages(MSG_SAMPLE);
+        if (prepared && playWhenReady && clock.isObserved()) {
+            handler.sendEmptyMessageDelayed(MSG_SAMPLE, DRIFT_CHECK_MS);
+        }
+    }
+
+    private void publish() {
+        publish(!prepared ? 0 : pcmActive ? pcm.getCurrentPosition() : player.getCurrentPosition());
+    }
+
+    private void publish(int positionMs) {
+        int durationMs = !prepared ? 0 : pcmActive ? pcm.getDuration() : player.getDuration();
+        clock.publish(trackId, durationMs, positionMs, prepared && playWhenReady);
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.musicplayer.playback;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Fans playback events out to any number of subscribers, each on the executor it picked.
+// Posting never waits on a subscriber: state and song changes are queued per subscriber and
+// delivered in order, progress keeps only the latest anchor, and a subscriber that falls behind
+// gets one drain task however much piles up. A cancelled subscription hears nothing more once
+// cancel returns, as long as it is cancelled on its delivery thread. Any thread.
+public final class PlaybackEventBus {
+    public interface Listener {
+        void onPlaybackStateChanged(boolean isPlaying);
+
+        void onSongChanged(int songIndex);
+    }
+
+    // Implemented by subscribers that also want the playback position
+    public interface ProgressListener extends Listener {
+        void onProgress(PlaybackClock.Anchor anchor);
+    }
+
+    // Nudged when the first progress subscriber arrives and when the last one leaves, on the
+    // thread that subscribed or cancelled; isProgressWatched() has the current answer
+    public interface ProgressWatcher {
+        void onProgressWatchedChanged();
+    }
+
+    private static final int STATE_CHANGED = 0;
+    private static final int SONG_CHANGED = 1;
+
+    private static final class Event {
+        final int type;
+        final int value;
+
+        Event(int type, int value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    public final class Subscription {
+        private final Listener listener;
+        private final Executor executor;
+        private final ProgressListener progressListener;
+        private final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<PlaybackClock.Anchor> progress = new AtomicReference<>();
+        private final AtomicBoolean drainPending = new AtomicBoolean();
+        private final AtomicBoolean active = new AtomicBoolean(true);
+
+        Subscription(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+            this.progressListener = listener instanceof ProgressListener ? (ProgressListener) listener : null;
+        }
+
+        public boolean isActive() {
+            return active.get();
+        }
+
+        public void cancel() {
+            if (!active.compareAndSet(true, false)) return;
+            subscriptions.remove(this);
+            events.clear();
+            progress.set(null);
+            if (progressListener != null) progressWatchers(-1);
+        }
+
+        // Runs on the subscriber's executor
+        private final Runnable drainTask = new Runnable() {
+            @Override
+            public void run() {
+                drainPending.set(false);
+                Event event;
+                while ((event = events.poll()) != null) {
+                    if (!active.get()) return;
+                    if (event.type == STATE_CHANGED) {
+                        listener.onPlaybackStateChanged(event.value != 0);
+                    } else {
+                        listener.onSongChanged(event.value);
+                    }
+                }
+                PlaybackClock.Anchor anchor = progress.getAndSet(null);
+                if (anchor != null && active.get()) progressListener.onProgress(anchor);
+            }
+        };
+
+        void post(Event event) {
+            events.add(event);
+            drain();
+        }
+
+        void postProgress(PlaybackClock.Anchor anchor) {
+            if (progressListener == null) return;
+            progress.set(anchor);
+            drain();
+        }
+
+        private void drain() {
+            if (drainPending.compareAndSet(false, true)) executor.execute(drainTask);
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger progressSubscribers = new AtomicInteger();
+    private final ProgressWatcher progressWatcher;
+
+    public PlaybackEventBus(ProgressWatcher progressWatcher) {
+        this.progressWatcher = progressWatcher;
+    }
+
+    public Subscription subscribe(Listener listener, Executor executor) {
+        Subscription subscription = new Subscription(listener, executor);
+        subscriptions.add(subscription);
+        if (subscription.progressListener != null) progressWatchers(1);
+        return subscription;
+    }
+
+    // Cancelled when owner is destroyed; returns an inactive subscription if it already is.
+    // Main thread, like Lifecycle itself.
+    public Subscription subscribe(LifecycleOwner owner, Listener listener, Executor executor) {
+        final Lifecycle lifecycle = owner.getLifecycle();
+        final Subscription subscription = new Subscription(listener, executor);
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            subscription.active.set(false);
+            return subscription;
+        }
+        subscriptions.add(subscription);
+        if (subscription.progressListener != null) progressWatchers(1);
+        lifecycle.addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(LifecycleOwner source, Lifecycle.Event event) {
+                if (event != Lifecycle.Event.ON_DESTROY) return;
+                lifecycle.removeObserver(this);
+                subscription.cancel();
+            }
+        });
+        return subscription;
+    }
+
+    public void postStateChanged(boolean isPlaying) {
+        post(new Event(STATE_CHANGED, isPlaying ? 1 : 0));
+    }
+
+    public void postSongChanged(int songIndex) {
+        post(new Event(SONG_CHANGED, songIndex));
+    }
+
+    public void postProgress(PlaybackClock.Anchor anchor) {
+        for (Subscription subscription : subscriptions) {
+            subscription.postProgress(anchor);
+        }
+    }
+
+    public boolean isProgressWatched() {
+        return progressSubscribers.get() > 0;
+    }
+
+    public int subscriberCount() {
+        return subscriptions.size();
+    }
+
+    private void post(Event event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.post(event);
+        }
+    }
+
+    private void progressWatchers(int delta) {
+        int count = progressSubscribers.addAndGet(delta);
+        if (progressWatcher == null) return;
+        if ((delta > 0 && count == 1) || (delta < 0 && count == 0)) progressWatcher.onProgressWatchedChanged();
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.musicplayer.playback;
+
+import com.example.musicplayer.utils.AtomicFiles;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Remembers what was playing across restarts: the current track by asset name (track ids are
+// handed out afresh by every scan), its position, whether it was playing, the shuffle and
+// repeat modes and the up-next list. Setters only change the state in memory; flush() appends
+// one record per changed field, so the caller decides how often flash is written. Once enough
+// records have piled up the next flush rewrites the file as a single snapshot. Each record
+// carries a checksum, so a record torn by a power cut is dropped, with anything after it, on
+// load.
+public class PlaybackJournal {
+    private static final int MAGIC = 0x4D50504A; // "MPPJ"
+    private static final int VERSION = 1;
+    // Bytes appended after a snapshot before the file is compacted into a new one
+    static final int COMPACT_BYTES = 16 * 1024;
+
+    private static final int TRACK = 1;
+    private static final int POSITION = 2;
+    private static final int PLAYING = 3;
+    private static final int MODES = 4;
+    private static final int UP_NEXT = 5;
+    private static final int FIELD_COUNT = 6;
+
+    public static final class State {
+        public final String assetFileName; // null if nothing was playing
+        public final int positionMs;
+        public final boolean playing;
+        public final boolean shuffle;
+        public final RepeatMode repeatMode;
+        public final List<String> upNext; // Asset names, in play order
+
+        State(String assetFileName, int positionMs, boolean playing, boolean shuffle, RepeatMode repeatMode,
+              List<String> upNext) {
+            this.assetFileName = assetFileName;
+            this.positionMs = positionMs;
+            this.playing = playing;
+            this.shuffle = shuffle;
+            this.repeatMode = repeatMode;
+            this.upNext = upNext;
+        }
+    }
+
+    private final File file;
+    // Held by flush() while it writes, so two flushes never interleave on disk
+    private final Object writeLock = new Object();
+    private String assetFileName;
+    private int positionMs;
+    private boolean playing;
+    private boolean shuffle;
+    private RepeatMode repeatMode = RepeatMode.ALL;
+    private List<String> upNext = Collections.emptyList();
+    private final boolean[] dirty = new boolean[FIELD_COUNT];
+    private boolean anyDirty;
+    private int appendedBytes; // Since the last snapshot
+    private boolean needsSnapshot = true; // No valid file to append to yet
+
+    public PlaybackJournal(File file) {
+        this.file = file;
+    }
+
+    // Replays the file; a missing file, or one that does not start with a valid header, reads as
+    // nothing playing
+    public synchronized State load() throws IOException {
+        needsSnapshot = true;
+        appendedBytes = 0;
+        if (file.exists()) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(AtomicFiles.readFully(file)));
+            try {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    needsSnapshot = false;
+                    while (in.available() > 0) {
+                        int type = in.readUnsignedByte();
+                        int length = in.readInt();
+                        if (length < 0 || length > in.available()) break;
+                        byte[] payload = new byte[length];
+                        in.readFully(payload);
+                        if (in.readInt() != checksum(type, payload)) break;
+                        apply(type, new DataInputStream(new ByteArrayInputStream(payload)));
+                        appendedBytes += recordSize(length);
+                    }
+                    // Anything left over is a torn record; the next flush starts a clean file
+                    if (in.available() > 0) needsSnapshot = true;
+                }
+            } catch (EOFException e) {
+                needsSnapshot = true;
+            }
+        }
+        return snapshot();
+    }
+
+    public synchronized State snapshot() {
+        return new State(assetFileName, positionMs, playing, shuffle, repeatMode, upNext);
+    }
+
+    public synchronized void setTrack(String assetFileName, int positionMs) {
+        if (!equal(assetFileName, this.assetFileName)) {
+            this.assetFileName = assetFileName;
+            markDirty(TRACK);
+        }
+        setPosition(positionMs);
+    }
+
+    public synchronized void setPosition(int positionMs) {
+        if (positionMs == this.positionMs) return;
+        this.positionMs = positionMs;
+        markDirty(POSITION);
+    }
+
+    public synchronized void setPlaying(boolean playing) {
+        if (playing == this.playing) return;
+        this.playing = playing;
+        markDirty(PLAYING);
+    }
+
+    public synchronized void setModes(boolean shuffle, RepeatMode repeatMode) {
+        if (shuffle == this.shuffle && repeatMode == this.repeatMode) return;
+        this.shuffle = shuffle;
+        this.repeatMode = repeatMode;
+        markDirty(MODES);
+    }
+
+    public synchronized void setUpNext(List<String> upNext) {
+        if (upNext.equals(this.upNext)) return;
+        this.upNext = Collections.unmodifiableList(new ArrayList<>(upNext));
+        markDirty(UP_NEXT);
+    }
+
+    public synchronized boolean isDirty() {
+        return anyDirty;
+    }
+
+    // Appends the changed fields in one write, or rewrites the file when it is due for compaction.
+    // The records are built under the lock but written and synced outside it, so the setters
+    // never wait on the disk.
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            boolean snapshot;
+            byte[] data;
+            synchronized (this) {
+                if (!anyDirty) return;
+                snapshot = needsSnapshot || appendedBytes >= COMPACT_BYTES;
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                if (snapshot) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                }
+                for (int type = 1; type < FIELD_COUNT; type++) {
+                    if (snapshot || dirty[type]) writeRecord(out, type);
+                }
+                data = bytes.toByteArray();
+                clearDirty();
+            }
+            try {
+                if (snapshot) {
+                    // A crash mid-write must not leave a corrupt journal behind
+                    AtomicFiles.write(file, data);
+                } else {
+                    append(data);
+                }
+            } catch (IOException e) {
+                // A failed append may have left part of a record behind, so start over with a snapshot
+                synchronized (this) {
+                    needsSnapshot = true;
+                    anyDirty = true;
+                }
+                throw e;
+            }
+            synchronized (this) {
+                appendedBytes = snapshot ? 0 : appendedBytes + data.length;
+                if (snapshot) needsSnapshot = false;
+            }
+        }
+    }
+
+    // Size of the file's appended records; compaction resets it
+    synchronized int appendedBytes() {
+        return appendedBytes;
+    }
+
+    private void append(byte[] data) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file, true);
+        try {
+            stream.write(data);
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void writeRecord(DataOutputStream out, int type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(bytes);
+        switch (type) {
+            case TRACK:
+                payload.writeBoolean(assetFileName != null);
+                if (assetFileName != null) payload.writeUTF(assetFileName);
+                break;
+            case POSITION:
+                payload.writeInt(positionMs);
+                break;
+            case PLAYING:
+                payload.writeBoolean(playing);
+                break;
+            case MODES:
+                payload.writeBoolean(shuffle);
+                payload.writeByte(repeatMode.ordinal());
+                break;
+            case UP_NEXT:
+                payload.writeInt(upNext.size());
+                for (String name : upNext) {
+                    payload.writeUTF(name);
+                }
+                break;
+        }
+        byte[] data = bytes.toByteArray();
+        out.writeByte(type);
+        out.writeInt(data.length);
+        out.write(data);
+        out.writeInt(checksum(type, data));
+    }
+
+    private void apply(int type, DataInputStream in) throws IOException {
+        switch (type) {
+            case TRACK:
+                assetFileName = in.readBoolean() ? in.readUTF() : null;
+                break;
+            case POSITION:
+                positionMs = in.readInt();
+                break;
+            case PLAYING:
+                playing = in.readBoolean();
+                break;
+            case MODES:
+                shuffle = in.readBoolean();
+                int repeat = in.readUnsignedByte();
+                repeatMode = repeat < RepeatMode.values().length ? RepeatMode.values()[repeat] : RepeatMode.ALL;
+                break;
+            case UP_NEXT:
+                int count = in.readInt();
+                List<String> names = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    names.add(in.readUTF());
+                }
+                upNext = Collections.unmodifiableList(names);
+                break;
+            default:
+                // Written by a newer version; skipped
+                break;
+        }
+    }
+
+    private void markDirty(int type) {
+        dirty[type] = true;
+        anyDirty = true;
+    }
+
+    private void clearDirty() {
+        for (int type = 0; type < FIELD_COUNT; type++) {
+            dirty[type] = false;
+        }
+        anyDirty = false;
+    }
+
+    private static int recordSize(int payloadLength) {
+        return 1 + 4 + payloadLength + 4;
+    }
+
+    private static int checksum(int type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
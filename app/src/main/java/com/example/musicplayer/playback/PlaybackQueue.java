@@ -0,0 +1,340 @@
+package com.example.musicplayer.playback;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Random;
+
+// Decides what plays after the current track: tracks queued with playNext/append first, then the
+// list in order or shuffled, as the repeat mode allows. Tracks the list reports as unplayable
+// are stepped over. Tracks are remembered by id, so re-sorting the list moves nothing;
+// positions only come in and go out at the edges.
+//
+// Shuffle is a Fisher–Yates shuffle over the track ids that is only carried out as far as it
+// has been played: each draw swaps one random not-yet-played id into the next slot, and the
+// swaps are kept in two maps, so a cycle through 100k tracks costs nothing up front and memory
+// grows with the tracks played. A history of played tracks lets previous retrace a shuffle,
+// and next after previous replays the same tracks again before drawing new ones.
+//
+// Every operation takes constant time, expected time where the maps are involved. Single-threaded.
+public class PlaybackQueue {
+    public static final int NONE = -1;
+    // Tracks previous can step back through
+    public static final int HISTORY_LIMIT = 1000;
+
+    // The list being played, TrackStore in the app; track ids run from 0 to size() - 1
+    public interface Tracks {
+        int size();
+
+        int trackIdAt(int position);
+
+        int positionOf(int trackId);
+
+        // False for tracks known to fail, which next and previous step over
+        boolean isPlayable(int trackId);
+    }
+
+    // Where the pending next track came from, so that taking it removes it there
+    private static final int FROM_FORWARD = 0;
+    private static final int FROM_UP_NEXT = 1;
+    private static final int FROM_ORDER = 2;
+    private static final int FROM_DRAW = 3;
+
+    private final Tracks tracks;
+    private final Random random;
+    private RepeatMode repeatMode = RepeatMode.ALL;
+    private boolean shuffle;
+    private int currentId = NONE;
+    private final ArrayDeque<Integer> upNext = new ArrayDeque<>();
+    private final IntStack history = new IntStack(HISTORY_LIMIT);
+    private final IntStack forward = new IntStack(HISTORY_LIMIT); // Undone by previous, newest on top
+
+    // Shuffle state: slots [0, drawn) hold the ids played this cycle. Slots and ids missing from
+    // the maps hold each other, as in the unshuffled identity permutation.
+    private final HashMap<Integer, Integer> idAtSlot = new HashMap<>();
+    private final HashMap<Integer, Integer> slotOfId = new HashMap<>();
+    private int drawn;
+
+    // The next track, chosen ahead of time so that it can be prepared while the current one
+    // plays; a shuffle draw is taken back if something changes before it is played
+    private int pendingId = NONE;
+    private int pendingSource;
+
+    public PlaybackQueue(Tracks tracks, Random random) {
+        this.tracks = tracks;
+        this.random = random;
+    }
+
+    public int trackCount() {
+        return tracks.size();
+    }
+
+    // List position of the current track, or NONE
+    public int current() {
+        return currentId == NONE ? NONE : tracks.positionOf(currentId);
+    }
+
+    // The user picked the track at position
+    public int jumpTo(int position) {
+        dropPending();
+        forward.clear();
+        moveTo(tracks.trackIdAt(position));
+        return position;
+    }
+
+    // The user skipped ahead; moves on even in RepeatMode.ONE. Returns the new position, or NONE
+    // at the end of the list with repeat off.
+    public int next() {
+        int id = chooseNext();
+        if (id == NONE) return NONE;
+        if (pendingSource == FROM_FORWARD) {
+            forward.pop();
+        } else if (pendingSource == FROM_UP_NEXT) {
+            upNext.pollFirst();
+        }
+        pendingId = NONE;
+        moveTo(id);
+        return tracks.positionOf(id);
+    }
+
+    // The current track ended by itself
+    public int advance() {
+        if (repeatMode == RepeatMode.ONE && currentId != NONE) return tracks.positionOf(currentId);
+        return next();
+    }
+
+    // What advance() would return, without moving
+    public int peekNext() {
+        if (repeatMode == RepeatMode.ONE && currentId != NONE) return tracks.positionOf(currentId);
+        int id = chooseNext();
+        return id == NONE ? NONE : tracks.positionOf(id);
+    }
+
+    // Back through the tracks actually played when shuffled, up the list otherwise. Returns the
+    // new position, or NONE if there is nothing before the current track.
+    public int previous() {
+        if (currentId == NONE || tracks.size() == 0) return NONE;
+        dropPending();
+        if (shuffle) {
+            int id = NONE;
+            while (!history.isEmpty() && id == NONE) {
+                id = history.pop();
+                if (!tracks.isPlayable(id)) id = NONE;
+            }
+            if (id == NONE) return NONE;
+            forward.push(currentId);
+            currentId = id;
+            return tracks.positionOf(currentId);
+        }
+        int position = tracks.positionOf(currentId);
+        for (int steps = 1; steps <= tracks.size(); steps++) {
+            position--;
+            if (position < 0) {
+                if (repeatMode == RepeatMode.OFF) return NONE;
+                position = tracks.size() - 1;
+            }
+            if (tracks.isPlayable(tracks.trackIdAt(position))) {
+                moveTo(tracks.trackIdAt(position));
+                return position;
+            }
+        }
+        return NONE;
+    }
+
+    // Plays the track at position after the current one, ahead of anything queued before
+    public void playNext(int position) {
+        dropPending();
+        upNext.addFirst(tracks.trackIdAt(position));
+    }
+
+    // Plays the track at position after everything already queued
+    public void append(int position) {
+        dropPending();
+        upNext.addLast(tracks.trackIdAt(position));
+    }
+
+    public int upNextSize() {
+        return upNext.size();
+    }
+
+    // Track ids waiting in up next, in the order they will play
+    public int[] upNextTrackIds() {
+        int[] ids = new int[upNext.size()];
+        int i = 0;
+        for (int id : upNext) {
+            ids[i++] = id;
+        }
+        return ids;
+    }
+
+    public void clearUpNext() {
+        dropPending();
+        upNext.clear();
+    }
+
+    // Starts a new shuffle cycle, or returns to list order, from the current track
+    public void setShuffle(boolean shuffle) {
+        if (shuffle == this.shuffle) return;
+        dropPending();
+        this.shuffle = shuffle;
+        forward.clear();
+        resetCycle();
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public void setRepeatMode(RepeatMode repeatMode) {
+        dropPending();
+        this.repeatMode = repeatMode;
+    }
+
+    public RepeatMode getRepeatMode() {
+        return repeatMode;
+    }
+
+    // Tracks were added or the list was re-sorted, so the track after the current one may differ
+    public void onTracksChanged() {
+        dropPending();
+    }
+
+    // Unplayable tracks met on the way are used up: dropped from forward and up next, counted as
+    // drawn in a shuffle. At most one pass over the list is looked at.
+    private int chooseNext() {
+        if (pendingId != NONE) return pendingId;
+        int size = tracks.size();
+        if (size == 0) return NONE;
+        while (!forward.isEmpty()) {
+            if (tracks.isPlayable(forward.peek())) return pending(FROM_FORWARD, forward.peek());
+            forward.pop();
+        }
+        while (!upNext.isEmpty()) {
+            if (tracks.isPlayable(upNext.peekFirst())) return pending(FROM_UP_NEXT, upNext.peekFirst());
+            upNext.pollFirst();
+        }
+        if (shuffle) {
+            for (int draws = 0; draws < size; draws++) {
+                int id = draw();
+                if (id == NONE) return NONE;
+                if (tracks.isPlayable(id)) return pending(FROM_DRAW, id);
+            }
+            return NONE;
+        }
+        int position = currentId == NONE ? -1 : tracks.positionOf(currentId);
+        for (int steps = 0; steps < size; steps++) {
+            position++;
+            if (position >= size) {
+                if (repeatMode == RepeatMode.OFF) return NONE;
+                position = 0;
+            }
+            int id = tracks.trackIdAt(position);
+            if (tracks.isPlayable(id)) return pending(FROM_ORDER, id);
+        }
+        return NONE;
+    }
+
+    private int pending(int source, int id) {
+        pendingSource = source;
+        pendingId = id;
+        return id;
+    }
+
+    private void dropPending() {
+        // The drawn id is still in slot drawn - 1; uncounting it returns it to the undrawn ones
+        if (pendingId != NONE && pendingSource == FROM_DRAW) drawn--;
+        pendingId = NONE;
+    }
+
+    private void moveTo(int id) {
+        if (currentId != NONE && currentId != id) history.push(currentId);
+        currentId = id;
+        if (shuffle) markDrawn(id);
+    }
+
+    // One step of Fisher–Yates: a random undrawn id into the next slot
+    private int draw() {
+        int size = tracks.size();
+        if (drawn >= size) {
+            if (repeatMode == RepeatMode.OFF) return NONE;
+            resetCycle();
+        }
+        int slot = drawn + random.nextInt(size - drawn);
+        int id = idAt(slot);
+        swap(slot, drawn);
+        drawn++;
+        return id;
+    }
+
+    // The current track opens a new cycle, so it is not played again straight away unless it is
+    // the only one
+    private void resetCycle() {
+        idAtSlot.clear();
+        slotOfId.clear();
+        drawn = 0;
+        if (currentId != NONE && tracks.size() > 1) markDrawn(currentId);
+    }
+
+    // Counts a track played out of shuffle order (picked, queued, or replayed) as drawn
+    private void markDrawn(int id) {
+        int slot = slotOf(id);
+        if (slot < drawn) return;
+        swap(slot, drawn);
+        drawn++;
+    }
+
+    private int idAt(int slot) {
+        Integer id = idAtSlot.get(slot);
+        return id == null ? slot : id;
+    }
+
+    private int slotOf(int id) {
+        Integer slot = slotOfId.get(id);
+        return slot == null ? id : slot;
+    }
+
+    private void swap(int a, int b) {
+        if (a == b) return;
+        int idA = idAt(a);
+        int idB = idAt(b);
+        idAtSlot.put(a, idB);
+        slotOfId.put(idB, a);
+        idAtSlot.put(b, idA);
+        slotOfId.put(idA, b);
+    }
+
+    // A stack that forgets its oldest entries beyond capacity
+    private static final class IntStack {
+        private final int[] items;
+        private int top; // Index after the newest entry, wrapping
+        private int size;
+
+        IntStack(int capacity) {
+            items = new int[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int value) {
+            items[top] = value;
+            top = (top + 1) % items.length;
+            if (size < items.length) size++;
+        }
+
+        int peek() {
+            return items[(top - 1 + items.length) % items.length];
+        }
+
+        int pop() {
+            int value = peek();
+            top = (top - 1 + items.length) % items.length;
+            size--;
+            return value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.musicplayer.playback;
+
+// What happens when a track ends: OFF stops after the last one, ONE plays the same track again,
+// ALL starts over from the first. A skip always moves on, whatever the mode.
+public enum RepeatMode {
+    OFF,
+    ONE,
+    ALL
+}
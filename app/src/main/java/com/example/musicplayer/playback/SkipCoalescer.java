@@ -0,0 +1,68 @@
+package com.example.musicplayer.playback;
+
+// Folds a burst of next/prev presses and list taps into one target index. Each press moves the
+// target at once, so the UI can follow it, but the target is only settled once no further press
+// has arrived for the window; only the settled track is ever prepared. Single-threaded.
+public class SkipCoalescer {
+    public static final long DEFAULT_WINDOW_MS = 250;
+
+    // Matches Handler.postDelayed / removeCallbacks
+    public interface Scheduler {
+        void postDelayed(Runnable r, long delayMs);
+
+        void removeCallbacks(Runnable r);
+    }
+
+    public interface Listener {
+        void onSettled(int index);
+    }
+
+    private final Scheduler scheduler;
+    private final long windowMs;
+    private final Listener listener;
+    private boolean pending;
+    private int target = -1;
+
+    private final Runnable settle = new Runnable() {
+        @Override
+        public void run() {
+            pending = false;
+            listener.onSettled(target);
+        }
+    };
+
+    public SkipCoalescer(Scheduler scheduler, long windowMs, Listener listener) {
+        this.scheduler = scheduler;
+        this.windowMs = windowMs;
+        this.listener = listener;
+    }
+
+    // Moves the target to index, the queue position the press or tap leads to, and restarts the window
+    public void jumpTo(int index) {
+        target = index;
+        rearm();
+    }
+
+    // Settles the pending target now, e.g. when play or seek needs the track in place
+    public void flush() {
+        if (!pending) return;
+        scheduler.removeCallbacks(settle);
+        settle.run();
+    }
+
+    // Drops the pending target without settling it
+    public void cancel() {
+        scheduler.removeCallbacks(settle);
+        pending = false;
+    }
+
+    public boolean isPending() {
+        return pending;
+    }
+
+    private void rearm() {
+        scheduler.removeCallbacks(settle);
+        pending = true;
+        scheduler.postDelayed(settle, windowMs);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.musicplayer.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Whole-file reads and replacements for the small state files the app keeps (the library index,
+// the failure cache, the playback journal). A replacement is written and synced to a temporary
+// file next to the target and then renamed over it, so a crash mid-write leaves either the old
+// contents or the new ones, never a mix.
+public final class AtomicFiles {
+    private AtomicFiles() {
+    }
+
+    // The whole file, with a single sequential read
+    public static byte[] readFully(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            return read == data.length ? data : Arrays.copyOf(data, read);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void write(File file, byte[] data) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try {
+            stream.write(data);
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.musicplayer.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Random-access, read-only view over a byte range (an asset inside the APK, a file, or memory).
+// Reads are positional, so parsers can jump straight to the few bytes they need.
+public abstract class ByteSource {
+
+    public abstract long length();
+
+    // Reads up to len bytes at position; returns fewer only at the end of the source
+    public abstract int read(long position, byte[] dst, int off, int len) throws IOException;
+
+    public void readFully(long position, byte[] dst, int off, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            int n = read(position + done, dst, off + done, len - done);
+            if (n <= 0) {
+                throw new EOFException("Unexpected end of source at " + (position + done));
+            }
+            done += n;
+        }
+    }
+
+    public byte[] readBytes(long position, int len) throws IOException {
+        byte[] data = new byte[len];
+        readFully(position, data, 0, len);
+        return data;
+    }
+
+    public static ByteSource of(byte[] data) {
+        return new ArraySource(data);
+    }
+
+    // A window of length bytes starting at offset within the channel; the channel's position is not used
+    public static ByteSource of(FileChannel channel, long offset, long length) {
+        return new ChannelSource(channel, offset, length);
+    }
+
+    private static class ArraySource extends ByteSource {
+        private final byte[] data;
+
+        ArraySource(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public int read(long position, byte[] dst, int off, int len) {
+            if (position >= data.length) return -1;
+            int n = (int) Math.min(len, data.length - position);
+            System.arraycopy(data, (int) position, dst, off, n);
+            return n;
+        }
+    }
+
+    private static class ChannelSource extends ByteSource {
+        private final FileChannel channel;
+        private final long offset;
+        private final long length;
+
+        ChannelSource(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public int read(long position, byte[] dst, int off, int len) throws IOException {
+            if (position >= length) return -1;
+            int n = (int) Math.min(len, length - position);
+            return channel.read(ByteBuffer.wrap(dst, off, n), offset + position);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+
+// Works out a track's duration, codec, sample rate and bitrate from its container/frame headers
+// so the library scan does not need to prepare a MediaPlayer per file. When a probe cannot tell,
+// the duration is left at -1 and the caller falls back to the platform retriever.
+public final class DurationProbe {
+    // How far past the ID3v2 tag we look for the first MPEG/ADTS frame
+    private static final int SYNC_SEARCH_WINDOW = 16 * 1024;
+    // ADTS has no global header: frames are walked in a few evenly spaced windows of this size and
+    // the frame density found there is extrapolated to the whole file
+    private static final int ADTS_SAMPLE_WINDOW = 16 * 1024;
+    private static final int ADTS_SAMPLE_POINTS = 8;
+
+    private static final int[][] MP3_BITRATES = {
+            // MPEG-1 Layer III
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 0},
+            // MPEG-2/2.5 Layer III
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160, 0},
+    };
+    private static final int[][] MP3_SAMPLE_RATES = {
+            {44100, 48000, 32000}, // MPEG-1
+            {22050, 24000, 16000}, // MPEG-2
+            {11025, 12000, 8000},  // MPEG-2.5
+    };
+    private static final int[] ADTS_SAMPLE_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350
+    };
+
+    private DurationProbe() {
+    }
+
+    public static long probe(ByteSource source) throws IOException {
+        TrackInfo info = new TrackInfo();
+        info.format = FormatSniffer.sniff(source);
+        probe(source, info);
+        return info.durationMs;
+    }
+
+    // Fills in durationMs, codec, sampleRate and bitrate for the already sniffed info.format;
+    // returns false if the duration is unknown
+    public static boolean probe(ByteSource source, TrackInfo info) throws IOException {
+        switch (info.format) {
+            case MP3:
+                return probeMp3(source, info);
+            case MP4:
+                return Mp4Reader.read(source, info);
+            case ADTS:
+                return probeAdts(source, info);
+            case WAV:
+                return probeWav(source, info);
+            default:
+                return false;
+        }
+    }
+
+    // ---- MP3 ----
+
+    static boolean probeMp3(ByteSource source, TrackInfo info) throws IOException {
+        long audioStart = id3v2Size(source);
+        long length = source.length();
+        int windowSize = (int) Math.min(SYNC_SEARCH_WINDOW, length - audioStart);
+        if (windowSize < 4) return false;
+
+        byte[] window = source.readBytes(audioStart, windowSize);
+        int frame = findMp3Frame(window);
+        if (frame < 0) return false;
+
+        int header = readInt(window, frame);
+        int version = mpegVersionIndex(header);
+        int sampleRate = MP3_SAMPLE_RATES[version][(header >> 10) & 3];
+        int samplesPerFrame = version == 0 ? 1152 : 576;
+        boolean mono = ((header >> 6) & 3) == 3;
+        long audioBytes = length - audioStart - frame - (hasId3v1(source) ? 128 : 0);
+        info.codec = "mp3";
+        info.sampleRate = sampleRate;
+
+        // Xing/Info sits right after the side information of the first frame
+        int sideInfo = version == 0 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+        int xing = frame + 4 + sideInfo;
+        if (xing + 12 <= window.length && (matches(window, xing, "Xing") || matches(window, xing, "Info"))) {
+            int flags = readInt(window, xing + 4);
+            if ((flags & 1) != 0) {
+                long frames = readInt(window, xing + 8) & 0xFFFFFFFFL;
+                if (frames > 0) return setVbrDuration(info, frames * samplesPerFrame * 1000 / sampleRate, audioBytes);
+            }
+        }
+
+        // VBRI always sits 32 bytes after the frame header
+        int vbri = frame + 4 + 32;
+        if (vbri + 18 <= window.length && matches(window, vbri, "VBRI")) {
+            long frames = readInt(window, vbri + 14) & 0xFFFFFFFFL;
+            if (frames > 0) return setVbrDuration(info, frames * samplesPerFrame * 1000 / sampleRate, audioBytes);
+        }
+
+        // No VBR header: treat as CBR and derive the frame count from the audio size
+        int bitrate = MP3_BITRATES[version == 0 ? 0 : 1][(header >> 12) & 0xF];
+        if (bitrate == 0) return false;
+        info.bitrate = bitrate * 1000;
+        info.durationMs = audioBytes * 8 / bitrate;
+        return info.hasDuration();
+    }
+
+    private static boolean setVbrDuration(TrackInfo info, long durationMs, long audioBytes) {
+        info.durationMs = durationMs;
+        if (durationMs > 0) {
+            info.bitrate = (int) (audioBytes * 8 * 1000 / durationMs);
+        }
+        return info.hasDuration();
+    }
+
+    // First offset holding a valid Layer III header that is followed by another valid header
+    static int findMp3Frame(byte[] data) {
+        for (int i = 0; i + 4 <= data.length; i++) {
+            if ((data[i] & 0xFF) != 0xFF || (data[i + 1] & 0xE0) != 0xE0) continue;
+            int header = readInt(data, i);
+            int frameLength = mp3FrameLength(header);
+            if (frameLength <= 0) continue;
+            int next = i + frameLength;
+            if (next + 4 > data.length) return i; // Cannot confirm, but nothing better in the window
+            if (mp3FrameLength(readInt(data, next)) > 0) return i;
+        }
+        return -1;
+    }
+
+    // Frame length in bytes for a Layer III header, or -1 if the header is not valid
+    static int mp3FrameLength(int header) {
+        if ((header & 0xFFE00000) != 0xFFE00000) return -1;
+        if (((header >> 19) & 3) == 1) return -1; // Reserved version
+        if (((header >> 17) & 3) != 1) return -1; // Not Layer III
+        int bitrateIndex = (header >> 12) & 0xF;
+        int sampleRateIndex = (header >> 10) & 3;
+        if (bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) return -1;
+
+        int version = mpegVersionIndex(header);
+        int bitrate = MP3_BITRATES[version == 0 ? 0 : 1][bitrateIndex] * 1000;
+        int sampleRate = MP3_SAMPLE_RATES[version][sampleRateIndex];
+        int padding = (header >> 9) & 1;
+        return (version == 0 ? 144 : 72) * bitrate / sampleRate + padding;
+    }
+
+    // 0 = MPEG-1, 1 = MPEG-2, 2 = MPEG-2.5
+    private static int mpegVersionIndex(int header) {
+        switch ((header >> 19) & 3) {
+            case 3:
+                return 0;
+            case 2:
+                return 1;
+            default:
+                return 2;
+        }
+    }
+
+    static long id3v2Size(ByteSource source) throws IOException {
+        if (source.length() < 10) return 0;
+        byte[] header = source.readBytes(0, 10);
+        if (header[0] != 'I' || header[1] != 'D' || header[2] != '3') return 0;
+        boolean footer = header[3] == 4 && (header[5] & 0x10) != 0;
+        return 10 + (long) Id3Reader.syncsafe(header, 6) + (footer ? 10 : 0);
+    }
+
+    private static boolean hasId3v1(ByteSource source) throws IOException {
+        long length = source.length();
+        if (length < 128) return false;
+        byte[] tag = source.readBytes(length - 128, 3);
+        return tag[0] == 'T' && tag[1] == 'A' && tag[2] == 'G';
+    }
+
+    // ---- ADTS AAC ----
+
+    static boolean probeAdts(ByteSource source, TrackInfo info) throws IOException {
+        long start = id3v2Size(source);
+        long audioBytes = source.length() - start;
+        if (audioBytes < 7) return false;
+
+        byte[] first = source.readBytes(start, 7);
+        int sampleRate = adtsSampleRate(first, 0);
+        if (sampleRate <= 0 || adtsFrameLength(first, 0) <= 0) return false;
+
+        long walkedBlocks = 0;
+        long walkedBytes = 0;
+        if (audioBytes <= (long) ADTS_SAMPLE_POINTS * ADTS_SAMPLE_WINDOW) {
+            // Small enough to walk completely
+            byte[] all = source.readBytes(start, (int) audioBytes);
+            long[] walk = walkAdts(all, 0);
+            walkedBlocks = walk[0];
+            walkedBytes = audioBytes;
+        } else {
+            byte[] window = new byte[ADTS_SAMPLE_WINDOW];
+            for (int i = 0; i < ADTS_SAMPLE_POINTS; i++) {
+                long from = start + audioBytes * i / ADTS_SAMPLE_POINTS;
+                source.readFully(from, window, 0, window.length);
+                int sync = i == 0 ? 0 : findAdtsFrame(window);
+                if (sync < 0) continue;
+                long[] walk = walkAdts(window, sync);
+                walkedBlocks += walk[0];
+                walkedBytes += walk[1];
+            }
+        }
+        if (walkedBlocks == 0 || walkedBytes == 0) return false;
+
+        long samples = walkedBlocks * 1024 * audioBytes / walkedBytes;
+        info.codec = "aac";
+        info.sampleRate = sampleRate;
+        info.durationMs = samples * 1000 / sampleRate;
+        if (info.durationMs > 0) {
+            info.bitrate = (int) (audioBytes * 8 * 1000 / info.durationMs);
+        }
+        return info.hasDuration();
+    }
+
+    // Walks whole frames from offset; returns {raw data blocks, bytes covered}
+    private static long[] walkAdts(byte[] data, int offset) {
+        long blocks = 0;
+        int pos = offset;
+        while (pos + 7 <= data.length) {
+            int frameLength = adtsFrameLength(data, pos);
+            if (frameLength <= 0 || pos + frameLength > data.length) break;
+            blocks += (data[pos + 6] & 0x03) + 1; // Raw data blocks of 1024 samples each
+            pos += frameLength;
+        }
+        return new long[]{blocks, pos - offset};
+    }
+
+    // First offset where two consecutive valid ADTS headers line up
+    private static int findAdtsFrame(byte[] data) {
+        for (int i = 0; i + 7 <= data.length; i++) {
+            int frameLength = adtsFrameLength(data, i);
+            if (frameLength <= 0) continue;
+            int next = i + frameLength;
+            if (next + 7 <= data.length && adtsFrameLength(data, next) > 0) return i;
+        }
+        return -1;
+    }
+
+    // Frame length including the header, or -1 if there is no valid ADTS header at pos
+    private static int adtsFrameLength(byte[] data, int pos) {
+        if ((data[pos] & 0xFF) != 0xFF || (data[pos + 1] & 0xF6) != 0xF0) return -1;
+        if (adtsSampleRate(data, pos) <= 0) return -1;
+        int frameLength = ((data[pos + 3] & 0x03) << 11) | ((data[pos + 4] & 0xFF) << 3) | ((data[pos + 5] & 0xE0) >> 5);
+        return frameLength >= 7 ? frameLength : -1;
+    }
+
+    private static int adtsSampleRate(byte[] data, int pos) {
+        int rateIndex = (data[pos + 2] >> 2) & 0xF;
+        return rateIndex < ADTS_SAMPLE_RATES.length ? ADTS_SAMPLE_RATES[rateIndex] : -1;
+    }
+
+    // ---- WAV ----
+
+    static boolean probeWav(ByteSource source, TrackInfo info) throws IOException {
+        long length = source.length();
+        if (length < 12) return false;
+        byte[] riff = source.readBytes(0, 12);
+        if (!matches(riff, 0, "RIFF") || !matches(riff, 8, "WAVE")) return false;
+
+        byte[] chunk = new byte[8];
+        long pos = 12;
+        long byteRate = 0;
+        while (pos + 8 <= length) {
+            source.readFully(pos, chunk, 0, 8);
+            long size = readIntLE(chunk, 4) & 0xFFFFFFFFL;
+            if (matches(chunk, 0, "fmt ")) {
+                byte[] fmt = source.readBytes(pos + 8, 12);
+                int formatTag = (fmt[0] & 0xFF) | (fmt[1] & 0xFF) << 8;
+                byteRate = readIntLE(fmt, 8) & 0xFFFFFFFFL;
+                info.codec = formatTag == 1 || formatTag == 0xFFFE ? "pcm" : formatTag == 3 ? "pcm_float" : "wav";
+                info.sampleRate = readIntLE(fmt, 4);
+                info.bitrate = (int) (byteRate * 8);
+            } else if (matches(chunk, 0, "data")) {
+                if (byteRate == 0) return false;
+                // Streamed WAVs leave the size unset; the data then runs to the end of the file
+                long dataSize = Math.min(size, length - pos - 8);
+                info.durationMs = dataSize * 1000 / byteRate;
+                return info.hasDuration();
+            }
+            pos += 8 + size + (size & 1);
+        }
+        return false;
+    }
+
+    // ---- helpers ----
+
+    static boolean matches(byte[] data, int offset, String ascii) {
+        if (offset + ascii.length() > data.length) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            if ((data[offset + i] & 0xFF) != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    static int readIntLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    static long readLong(byte[] b, int off) {
+        return (readInt(b, off) & 0xFFFFFFFFL) << 32 | (readInt(b, off + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+
+// Identifies an audio file from its first bytes rather than its extension, so mislabelled files
+// are routed to the right parser and unplayable ones are rejected before any decoder is created.
+public final class FormatSniffer {
+    private static final int SNIFF_SIZE = 64;
+
+    public enum Format {
+        MP3(true),
+        MP4(true),
+        ADTS(true),
+        WAV(true),
+        FLAC(false),
+        OGG(false),
+        UNKNOWN(false);
+
+        private final boolean playable;
+
+        Format(boolean playable) {
+            this.playable = playable;
+        }
+
+        // Formats the player accepts; matches what MediaPlayer handles reliably on our head units
+        public boolean isPlayable() {
+            return playable;
+        }
+    }
+
+    private FormatSniffer() {
+    }
+
+    public static Format sniff(ByteSource source) throws IOException {
+        byte[] head = readUpTo(source, 0);
+        if (head.length >= 10 && head[0] == 'I' && head[1] == 'D' && head[2] == '3') {
+            // Look at what follows the tag; ADTS and even FLAC files can carry ID3 as well
+            Format inner = sniff(readUpTo(source, DurationProbe.id3v2Size(source)));
+            // Encoders may pad between the tag and the first frame, so a tag alone still means MP3
+            return inner != Format.UNKNOWN ? inner : Format.MP3;
+        }
+        return sniff(head);
+    }
+
+    static Format sniff(byte[] b) {
+        if (b.length < 4) return Format.UNKNOWN;
+        if (DurationProbe.matches(b, 0, "fLaC")) return Format.FLAC;
+        if (DurationProbe.matches(b, 0, "OggS")) return Format.OGG;
+        if (DurationProbe.matches(b, 0, "RIFF") && DurationProbe.matches(b, 8, "WAVE")) return Format.WAV;
+        if (DurationProbe.matches(b, 4, "ftyp")) return Format.MP4;
+        if ((b[0] & 0xFF) == 0xFF && (b[1] & 0xF6) == 0xF0) return Format.ADTS;
+        if (DurationProbe.mp3FrameLength(DurationProbe.readInt(b, 0)) > 0) return Format.MP3;
+        return Format.UNKNOWN;
+    }
+
+    private static byte[] readUpTo(ByteSource source, long position) throws IOException {
+        int len = (int) Math.max(0, Math.min(SNIFF_SIZE, source.length() - position));
+        return source.readBytes(position, len);
+    }
+}
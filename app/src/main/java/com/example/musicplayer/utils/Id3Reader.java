@@ -0,0 +1,342 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+// Reads title/artist/album, and the track gain from ReplayGain or R128 TXXX frames, from the ID3v2
+// tag at the front of an MP3 and the ID3v1 trailer at its end.
+// Only the tag bytes are read: frame headers are walked with positional reads and only the bodies
+// of the text frames we need are loaded, so the audio payload is never touched. For an embedded
+// picture only its location is recorded, not its data.
+public final class Id3Reader {
+    private static final int HEADER_SIZE = 10;
+    private static final int FOOTER_SIZE = 10;
+    private static final int V1_SIZE = 128;
+    // Text frames are tiny; anything bigger is corrupt or not worth loading
+    private static final int MAX_TEXT_FRAME_SIZE = 64 * 1024;
+    // Enough of an APIC frame to get past its MIME type and description
+    private static final int PICTURE_HEADER_PEEK = 512;
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_16 = Charset.forName("UTF-16");
+    private static final Charset UTF_16BE = Charset.forName("UTF-16BE");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int FIELD_TITLE = 0;
+    private static final int FIELD_ARTIST = 1;
+    private static final int FIELD_ALBUM = 2;
+
+    public static class Tags {
+        public String title;
+        public String artist;
+        public String album;
+        public int majorVersion; // 0 when there is no ID3v2 tag
+        public long v2Size; // Bytes taken by the ID3v2 tag, i.e. where the audio starts
+        public boolean hasV1;
+        public long artOffset = -1; // File offset of the first embedded picture's image data
+        public int artLength;
+        public float gainDb = Float.NaN; // ReplayGain track gain, NaN if untagged
+    }
+
+    private Id3Reader() {
+    }
+
+    public static Tags read(ByteSource source) throws IOException {
+        Tags tags = new Tags();
+        readV2(source, tags);
+        if (isEmpty(tags.title) || isEmpty(tags.artist) || isEmpty(tags.album)) {
+            readV1(source, tags);
+        }
+        return tags;
+    }
+
+    private static void readV2(ByteSource source, Tags tags) throws IOException {
+        if (source.length() < HEADER_SIZE) return;
+
+        byte[] header = source.readBytes(0, HEADER_SIZE);
+        if (header[0] != 'I' || header[1] != 'D' || header[2] != '3') return;
+        int version = header[3] & 0xFF;
+        if (version < 2 || version > 4) return;
+
+        int flags = header[5] & 0xFF;
+        int size = syncsafe(header, 6);
+        boolean footer = version == 4 && (flags & 0x10) != 0;
+        tags.majorVersion = version;
+        tags.v2Size = HEADER_SIZE + (long) size + (footer ? FOOTER_SIZE : 0);
+
+        // ID3v2.2 defines a compression flag but no compression scheme
+        if (version == 2 && (flags & 0x40) != 0) return;
+
+        boolean tagUnsync = (flags & 0x80) != 0;
+        ByteSource body = source;
+        long pos = HEADER_SIZE;
+        long end = Math.min(HEADER_SIZE + (long) size, source.length());
+
+        if (tagUnsync && version < 4) {
+            // v2.2/v2.3 unsynchronise the whole tag, so frame boundaries are only known after undoing it
+            byte[] raw = source.readBytes(HEADER_SIZE, (int) (end - HEADER_SIZE));
+            int len = resync(raw, 0, raw.length);
+            body = ByteSource.of(Arrays.copyOf(raw, len));
+            pos = 0;
+            end = len;
+        }
+
+        if (version >= 3 && (flags & 0x40) != 0) {
+            if (pos + 4 > end) return;
+            byte[] ext = body.readBytes(pos, 4);
+            // v2.3 excludes the size field itself and is not syncsafe; v2.4 includes it
+            long extSize = version == 3 ? 4L + readInt(ext, 0) : syncsafe(ext, 0);
+            // A size that does not fit the tag means the header is corrupt; there are no frames to trust
+            if (extSize < 4 || extSize > end - pos) return;
+            pos += extSize;
+        }
+
+        readFrames(body, pos, end, version, version == 4 && tagUnsync, body == source, tags);
+    }
+
+    private static void readFrames(ByteSource body, long pos, long end, int version, boolean unsyncAll,
+                                   boolean fileOffsets, Tags tags) throws IOException {
+        int headerSize = version == 2 ? 6 : 10;
+        byte[] frameHeader = new byte[headerSize];
+
+        while (pos + headerSize <= end) {
+            body.readFully(pos, frameHeader, 0, headerSize);
+            if (frameHeader[0] == 0) break; // Padding
+
+            String id;
+            int frameSize;
+            int frameFlags = 0;
+            if (version == 2) {
+                id = new String(frameHeader, 0, 3, ISO_8859_1);
+                frameSize = (frameHeader[3] & 0xFF) << 16 | (frameHeader[4] & 0xFF) << 8 | (frameHeader[5] & 0xFF);
+            } else {
+                id = new String(frameHeader, 0, 4, ISO_8859_1);
+                frameSize = version == 4 ? syncsafe(frameHeader, 4) : readInt(frameHeader, 4);
+                frameFlags = (frameHeader[8] & 0xFF) << 8 | (frameHeader[9] & 0xFF);
+            }
+
+            long dataPos = pos + headerSize;
+            // A corrupt size ends the walk; the frames read so far are kept
+            if (frameSize <= 0 || frameSize > end - dataPos) break;
+            pos = dataPos + frameSize;
+
+            if (fileOffsets && tags.artOffset < 0 && (id.equals("APIC") || id.equals("PIC"))) {
+                // Picture data is only usable in place when it is stored verbatim
+                boolean verbatim = version == 3 ? (frameFlags & 0x00E0) == 0
+                        : version != 4 || (!unsyncAll && (frameFlags & 0x004F) == 0);
+                if (verbatim) {
+                    readPictureLocation(body, dataPos, frameSize, version, tags);
+                }
+                continue;
+            }
+
+            // User-defined text frames carry the gain tags
+            boolean userText = id.equals("TXXX") || id.equals("TXX");
+            int field = textField(id);
+            if (frameSize > MAX_TEXT_FRAME_SIZE) continue;
+            if (userText ? !Float.isNaN(tags.gainDb) : field < 0 || currentValue(tags, field) != null) continue;
+
+            byte[] data = body.readBytes(dataPos, frameSize);
+            int start = 0;
+            int length = frameSize;
+            if (version == 3) {
+                if ((frameFlags & 0x00C0) != 0) continue; // Compressed or encrypted
+                if ((frameFlags & 0x0020) != 0) start += 1; // Grouping identity
+            } else if (version == 4) {
+                if ((frameFlags & 0x000C) != 0) continue; // Compressed or encrypted
+                if ((frameFlags & 0x0040) != 0) start += 1; // Grouping identity
+                if ((frameFlags & 0x0001) != 0) start += 4; // Data length indicator
+                if (unsyncAll || (frameFlags & 0x0002) != 0) {
+                    length = resync(data, start, frameSize - start) + start;
+                }
+            }
+            if (start >= length) continue;
+
+            if (userText) {
+                tags.gainDb = decodeGain(data, start, length);
+            } else {
+                setValue(tags, field, decodeText(data, start, length));
+            }
+        }
+    }
+
+    // APIC: encoding, MIME type\0, picture type, description\0, data. v2.2 PIC has a 3-char format instead.
+    private static void readPictureLocation(ByteSource body, long dataPos, int frameSize, int version,
+                                            Tags tags) throws IOException {
+        byte[] peek = body.readBytes(dataPos, Math.min(frameSize, PICTURE_HEADER_PEEK));
+        int encoding = peek[0];
+        int i = 1;
+        if (version == 2) {
+            i += 3;
+        } else {
+            while (i < peek.length && peek[i] != 0) i++;
+            i++;
+        }
+        i++; // Picture type
+        if (encoding == 1 || encoding == 2) {
+            while (i + 1 < peek.length && (peek[i] != 0 || peek[i + 1] != 0)) i += 2;
+            i += 2;
+        } else {
+            while (i < peek.length && peek[i] != 0) i++;
+            i++;
+        }
+        if (i >= peek.length) return;
+        tags.artOffset = dataPos + i;
+        tags.artLength = frameSize - i;
+    }
+
+    private static void readV1(ByteSource source, Tags tags) throws IOException {
+        long length = source.length();
+        if (length < V1_SIZE || length - V1_SIZE < tags.v2Size) return;
+
+        byte[] trailer = source.readBytes(length - V1_SIZE, V1_SIZE);
+        if (trailer[0] != 'T' || trailer[1] != 'A' || trailer[2] != 'G') return;
+
+        tags.hasV1 = true;
+        if (isEmpty(tags.title)) tags.title = decodeV1(trailer, 3);
+        if (isEmpty(tags.artist)) tags.artist = decodeV1(trailer, 33);
+        if (isEmpty(tags.album)) tags.album = decodeV1(trailer, 63);
+    }
+
+    private static String decodeV1(byte[] trailer, int offset) {
+        int end = offset;
+        while (end < offset + 30 && trailer[end] != 0) end++;
+        return emptyToNull(new String(trailer, offset, end - offset, ISO_8859_1));
+    }
+
+    // Decodes an ID3v2 text frame body (encoding byte followed by the string); only the first value is kept
+    static String decodeText(byte[] data, int start, int end) {
+        int encoding = data[start];
+        int from = start + 1;
+        switch (encoding) {
+            case 1:
+            case 2: {
+                int to = from;
+                while (to + 1 < end && (data[to] != 0 || data[to + 1] != 0)) to += 2;
+                if (to + 1 >= end) to = end - ((end - from) & 1);
+                return emptyToNull(new String(data, from, to - from, encoding == 1 ? UTF_16 : UTF_16BE));
+            }
+            case 3: {
+                int to = from;
+                while (to < end && data[to] != 0) to++;
+                return emptyToNull(new String(data, from, to - from, UTF_8));
+            }
+            default: {
+                int to = from;
+                while (to < end && data[to] != 0) to++;
+                return emptyToNull(new String(data, from, to - from, ISO_8859_1));
+            }
+        }
+    }
+
+    // TXXX body: encoding, description, value. The gain, if the description names a track gain;
+    // NaN otherwise.
+    static float decodeGain(byte[] data, int start, int end) {
+        int encoding = data[start];
+        int width = encoding == 1 || encoding == 2 ? 2 : 1;
+        int from = start + 1;
+        int to = terminator(data, from, end, width);
+        Charset charset = charset(encoding);
+        String description = new String(data, from, to - from, charset).trim();
+        int valueFrom = Math.min(end, to + width);
+        String value = new String(data, valueFrom, terminator(data, valueFrom, end, width) - valueFrom, charset);
+        if (description.equalsIgnoreCase("REPLAYGAIN_TRACK_GAIN")) return ReplayGain.parseGain(value);
+        if (description.equalsIgnoreCase("R128_TRACK_GAIN")) return ReplayGain.parseR128Gain(value);
+        return Float.NaN;
+    }
+
+    // Index of the first null character (width bytes of zero, aligned) at or after from, or end
+    private static int terminator(byte[] data, int from, int end, int width) {
+        int to = from;
+        while (to + width <= end) {
+            if (data[to] == 0 && (width == 1 || data[to + 1] == 0)) return to;
+            to += width;
+        }
+        return end - ((end - from) % width);
+    }
+
+    private static Charset charset(int encoding) {
+        switch (encoding) {
+            case 1:
+                return UTF_16;
+            case 2:
+                return UTF_16BE;
+            case 3:
+                return UTF_8;
+            default:
+                return ISO_8859_1;
+        }
+    }
+
+    // Undoes unsynchronisation in place (every 0xFF 0x00 becomes 0xFF); returns the new length
+    static int resync(byte[] data, int offset, int length) {
+        int out = offset;
+        int end = offset + length;
+        for (int in = offset; in < end; in++) {
+            data[out++] = data[in];
+            if ((data[in] & 0xFF) == 0xFF && in + 1 < end && data[in + 1] == 0) {
+                in++;
+            }
+        }
+        return out - offset;
+    }
+
+    private static int textField(String id) {
+        switch (id) {
+            case "TIT2":
+            case "TT2":
+                return FIELD_TITLE;
+            case "TPE1":
+            case "TP1":
+                return FIELD_ARTIST;
+            case "TALB":
+            case "TAL":
+                return FIELD_ALBUM;
+            default:
+                return -1;
+        }
+    }
+
+    private static String currentValue(Tags tags, int field) {
+        switch (field) {
+            case FIELD_TITLE:
+                return tags.title;
+            case FIELD_ARTIST:
+                return tags.artist;
+            default:
+                return tags.album;
+        }
+    }
+
+    private static void setValue(Tags tags, int field, String value) {
+        switch (field) {
+            case FIELD_TITLE:
+                tags.title = value;
+                break;
+            case FIELD_ARTIST:
+                tags.artist = value;
+                break;
+            default:
+                tags.album = value;
+                break;
+        }
+    }
+
+    static int syncsafe(byte[] b, int off) {
+        return (b[off] & 0x7F) << 21 | (b[off + 1] & 0x7F) << 14 | (b[off + 2] & 0x7F) << 7 | (b[off + 3] & 0x7F);
+    }
+
+    static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    private static String emptyToNull(String value) {
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static boolean isEmpty(String str) {
+        return str == null || str.trim().isEmpty();
+    }
+}
@@ -1,121 +1,108 @@
 package com.example.musicplayer.utils;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.media.MediaMetadataRetriever;
 import android.util.Log;
-import com.mpatric.mp3agic.ID3v1;
-import com.mpatric.mp3agic.ID3v2;
-import com.mpatric.mp3agic.InvalidDataException;
-import com.mpatric.mp3agic.Mp3File;
-import com.mpatric.mp3agic.UnsupportedTagException;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
 
 public class MetadataExtractor {
     
-    public static class AudioMetadata {
-        public String title;
-        public String artist;
-        public String album;
-        
-        public AudioMetadata(String title, String artist, String album) {
-            this.title = title != null ? title.trim() : null;
-            this.artist = artist != null ? artist.trim() : null;
-            this.album = album != null ? album.trim() : null;
+    // Probes a track with a single open of the asset: tags, duration and stream details.
+    // The platform retriever is only consulted, on the same descriptor, when the header probe fails.
+    // sniffed is what FormatSniffer made of the file; it stands in for a probe that fails.
+    public static TrackInfo extractMetadata(Context context, String assetFileName, FormatSniffer.Format sniffed) {
+        TrackInfo info = new TrackInfo();
+        AssetFileDescriptor afd = null;
+        try {
+            afd = context.getAssets().openFd(assetFileName);
+            try {
+                info = TrackProbe.probe(openSource(afd));
+            } catch (IOException e) {
+                Log.w("MetadataExtractor", "Error probing " + assetFileName + ": " + e.getMessage());
+                info = unprobed(sniffed);
+            }
+            if (info.format.isPlayable() && !info.hasDuration()) {
+                extractGenericMetadata(afd, assetFileName, info);
+            }
+        } catch (IOException e) {
+            Log.w("MetadataExtractor", "Error opening " + assetFileName + ": " + e.getMessage());
+        } finally {
+            closeQuietly(afd);
         }
-    }
-    
-    public static AudioMetadata extractMetadata(Context context, String assetFileName) {
-        String lowerFileName = assetFileName.toLowerCase();
-        
-        if (lowerFileName.endsWith(".mp3")) {
-            return extractMp3Metadata(context, assetFileName);
-        } else {
-            return extractGenericMetadata(context, assetFileName);
+
+        // If no metadata found, fallback to filename
+        if (isEmpty(info.title)) {
+            info.title = getTitleFromFileName(assetFileName);
         }
+        info.title = trimToNull(info.title);
+        info.artist = trimToNull(info.artist);
+        info.album = trimToNull(info.album);
+
+        Log.d("MetadataExtractor", "Metadata for " + assetFileName +
+              " (" + info.format + ") - Title: " + info.title + ", Artist: " + info.artist + ", Album: " + info.album +
+              ", " + info.durationMs + "ms " + info.codec + " " + info.sampleRate + "Hz " + info.bitrate + "bps" +
+              ", read " + info.bytesRead + " bytes");
+        return info;
     }
     
-    private static AudioMetadata extractMp3Metadata(Context context, String assetFileName) {
+    // What is known of a file whose header probe failed, e.g. one cut short after the bytes the
+    // sniffer looked at: only its format, so it is still listed, by name, and the platform
+    // retriever gets a go at the rest
+    public static TrackInfo unprobed(FormatSniffer.Format sniffed) {
+        TrackInfo info = new TrackInfo();
+        info.format = sniffed;
+        return info;
+    }
+
+    // Fills whatever the header probe could not determine
+    private static void extractGenericMetadata(AssetFileDescriptor afd, String assetFileName, TrackInfo info) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
         try {
-            // Create a temporary file from the asset
-            java.io.File tempFile = java.io.File.createTempFile("temp_mp3", ".mp3", context.getCacheDir());
-            java.io.FileOutputStream outputStream = new java.io.FileOutputStream(tempFile);
+            retriever.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
             
-            // Copy asset to temporary file
-            InputStream inputStream = context.getAssets().open(assetFileName);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = inputStream.read(buffer)) > 0) {
-                outputStream.write(buffer, 0, length);
+            if (isEmpty(info.title)) info.title = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+            if (isEmpty(info.artist)) info.artist = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
+            if (isEmpty(info.album)) info.album = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            if (duration != null) {
+                info.durationMs = Long.parseLong(duration);
             }
-            inputStream.close();
-            outputStream.close();
-            
-            // Create Mp3File from temporary file
-            Mp3File mp3File = new Mp3File(tempFile.getAbsolutePath());
-            
-            String title = null;
-            String artist = null;
-            String album = null;
-            
-            if (mp3File.hasId3v2Tag()) {
-                ID3v2 id3v2Tag = mp3File.getId3v2Tag();
-                title = id3v2Tag.getTitle();
-                artist = id3v2Tag.getArtist();
-                album = id3v2Tag.getAlbum();
-            } else if (mp3File.hasId3v1Tag()) {
-                ID3v1 id3v1Tag = mp3File.getId3v1Tag();
-                title = id3v1Tag.getTitle();
-                artist = id3v1Tag.getArtist();
-                album = id3v1Tag.getAlbum();
-            }
-            
-            // Clean up temporary file
-            tempFile.delete();
-            
-            // If no metadata found, fallback to filename
-            if (isEmpty(title)) {
-                title = getTitleFromFileName(assetFileName);
+        } catch (Exception e) {
+            Log.w("MetadataExtractor", "Error extracting generic metadata for " + assetFileName + ": " + e.getMessage());
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception e) {
+                Log.w("MetadataExtractor", "Error releasing retriever: " + e.getMessage());
             }
-            
-            Log.d("MetadataExtractor", "MP3 metadata for " + assetFileName + 
-                  " - Title: " + title + ", Artist: " + artist + ", Album: " + album);
-            
-            return new AudioMetadata(title, artist, album);
-            
-        } catch (IOException | UnsupportedTagException | InvalidDataException e) {
-            Log.w("MetadataExtractor", "Error extracting MP3 metadata for " + assetFileName + ": " + e.getMessage());
-            // Fallback to generic method
-            return extractGenericMetadata(context, assetFileName);
         }
     }
     
-    private static AudioMetadata extractGenericMetadata(Context context, String assetFileName) {
+    // Sniffs an asset's content; UNKNOWN if it cannot be opened
+    public static FormatSniffer.Format sniffFormat(AssetFileDescriptor afd) {
         try {
-            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-            retriever.setDataSource(context.getAssets().openFd(assetFileName).getFileDescriptor());
-            
-            String title = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-            String artist = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
-            String album = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
-            
-            retriever.release();
-            
-            // If no metadata found, fallback to filename
-            if (isEmpty(title)) {
-                title = getTitleFromFileName(assetFileName);
-            }
-            
-            Log.d("MetadataExtractor", "Generic metadata for " + assetFileName + 
-                  " - Title: " + title + ", Artist: " + artist + ", Album: " + album);
-            
-            return new AudioMetadata(title, artist, album);
-            
-        } catch (Exception e) {
-            Log.w("MetadataExtractor", "Error extracting generic metadata for " + assetFileName + ": " + e.getMessage());
-            // Final fallback - use filename as title
-            String title = getTitleFromFileName(assetFileName);
-            return new AudioMetadata(title, null, null);
+            return FormatSniffer.sniff(openSource(afd));
+        } catch (IOException e) {
+            Log.w("MetadataExtractor", "Error sniffing format: " + e.getMessage());
+            return FormatSniffer.Format.UNKNOWN;
+        }
+    }
+
+    // Positional reads over the asset's byte range; the descriptor stays owned by afd
+    public static ByteSource openSource(AssetFileDescriptor afd) {
+        FileChannel channel = new FileInputStream(afd.getFileDescriptor()).getChannel();
+        return ByteSource.of(channel, afd.getStartOffset(), afd.getLength());
+    }
+
+    private static void closeQuietly(AssetFileDescriptor afd) {
+        if (afd == null) return;
+        try {
+            afd.close();
+        } catch (IOException e) {
+            Log.w("MetadataExtractor", "Error closing asset: " + e.getMessage());
         }
     }
     
@@ -129,4 +116,8 @@ public class MetadataExtractor {
     private static boolean isEmpty(String str) {
         return str == null || str.trim().isEmpty();
     }
+
+    private static String trimToNull(String str) {
+        return isEmpty(str) ? null : str.trim();
+    }
 } 
\ No newline at end of file
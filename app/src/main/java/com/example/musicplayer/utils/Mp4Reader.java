@@ -0,0 +1,231 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+// Reads duration, codec, iTunes-style tags, the ReplayGain track gain and cover art location from an
+// MP4/M4A file by walking box headers with positional reads; only the small leaf boxes we care
+// about are loaded.
+final class Mp4Reader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // Tag values are short; anything bigger is skipped
+    private static final int MAX_TEXT_SIZE = 4096;
+    private static final int DATA_TYPE_UTF8 = 1;
+
+    private Mp4Reader() {
+    }
+
+    static boolean read(ByteSource source, TrackInfo info) throws IOException {
+        long length = source.length();
+        long moov = findBox(source, 0, length, "moov");
+        if (moov < 0) return false;
+        long moovEnd = boxEnd(source, moov, length);
+        long moovBody = bodyStart(source, moov);
+
+        long mvhd = findBox(source, moovBody, moovEnd, "mvhd");
+        if (mvhd >= 0) {
+            info.durationMs = readMediaHeaderDuration(source, bodyStart(source, mvhd), null);
+        }
+
+        long trak = findBox(source, moovBody, moovEnd, "trak");
+        if (trak >= 0) {
+            readTrack(source, trak, boxEnd(source, trak, moovEnd), info);
+        }
+
+        long udta = findBox(source, moovBody, moovEnd, "udta");
+        if (udta >= 0) {
+            readTags(source, udta, boxEnd(source, udta, moovEnd), info);
+        }
+
+        if (info.hasDuration()) {
+            info.bitrate = (int) (length * 8 * 1000 / info.durationMs);
+        }
+        return info.hasDuration();
+    }
+
+    static long readDuration(ByteSource source) throws IOException {
+        TrackInfo info = new TrackInfo();
+        return read(source, info) ? info.durationMs : -1;
+    }
+
+    // Media header of the first track: duration fallback and sample rate; sample description: codec
+    private static void readTrack(ByteSource source, long trak, long trakEnd, TrackInfo info) throws IOException {
+        long mdia = findBox(source, bodyStart(source, trak), trakEnd, "mdia");
+        if (mdia < 0) return;
+        long mdiaEnd = boxEnd(source, mdia, trakEnd);
+
+        long mdhd = findBox(source, bodyStart(source, mdia), mdiaEnd, "mdhd");
+        if (mdhd >= 0) {
+            long[] timescale = new long[1];
+            long duration = readMediaHeaderDuration(source, bodyStart(source, mdhd), timescale);
+            if (!info.hasDuration()) {
+                info.durationMs = duration;
+            }
+            // For audio tracks the media timescale is the sample rate
+            info.sampleRate = (int) timescale[0];
+        }
+
+        long stsd = findPath(source, bodyStart(source, mdia), mdiaEnd, "minf", "stbl", "stsd");
+        if (stsd >= 0) {
+            // Full box header and entry count come before the first sample entry
+            long entry = bodyStart(source, stsd) + 8;
+            byte[] header = source.readBytes(entry, 8);
+            if (DurationProbe.matches(header, 4, "mp4a")) {
+                info.codec = "aac";
+            } else if (DurationProbe.matches(header, 4, "alac")) {
+                info.codec = "alac";
+            } else {
+                info.codec = new String(header, 4, 4, Charset.forName("ISO-8859-1")).trim();
+            }
+        }
+    }
+
+    // moov/udta/meta/ilst holds one box per tag, each wrapping a 'data' box
+    private static void readTags(ByteSource source, long udta, long udtaEnd, TrackInfo info) throws IOException {
+        long meta = findBox(source, bodyStart(source, udta), udtaEnd, "meta");
+        if (meta < 0) return;
+        long metaEnd = boxEnd(source, meta, udtaEnd);
+        long metaBody = bodyStart(source, meta);
+        // ISO 'meta' is a full box; QuickTime writers omit the version/flags field
+        byte[] peek = source.readBytes(metaBody, 8);
+        if (!DurationProbe.matches(peek, 4, "hdlr")) {
+            metaBody += 4;
+        }
+
+        long ilst = findBox(source, metaBody, metaEnd, "ilst");
+        if (ilst < 0) return;
+        long ilstEnd = boxEnd(source, ilst, metaEnd);
+
+        byte[] header = new byte[8];
+        long pos = bodyStart(source, ilst);
+        while (pos + 8 <= ilstEnd) {
+            source.readFully(pos, header, 0, 8);
+            long itemEnd = boxEnd(source, pos, ilstEnd);
+            if (itemEnd <= pos + 8) return;
+
+            long data = findBox(source, bodyStart(source, pos), itemEnd, "data");
+            if (DurationProbe.matches(header, 4, "----")) {
+                if (data >= 0 && Float.isNaN(info.gainDb)) info.gainDb = readFreeformGain(source, pos, itemEnd, data);
+            } else if (data >= 0) {
+                long dataBody = bodyStart(source, data);
+                long valueStart = dataBody + 8; // Type indicator and locale
+                long valueLength = boxEnd(source, data, itemEnd) - valueStart;
+                if (valueLength > 0) {
+                    readTagValue(source, header, dataBody, valueStart, (int) Math.min(valueLength, Integer.MAX_VALUE), info);
+                }
+            }
+            pos = itemEnd;
+        }
+    }
+
+    private static void readTagValue(ByteSource source, byte[] item, long dataBody, long valueStart, int valueLength,
+                                     TrackInfo info) throws IOException {
+        if (DurationProbe.matches(item, 4, "covr")) {
+            if (info.artOffset < 0) {
+                info.artOffset = valueStart;
+                info.artLength = valueLength;
+            }
+            return;
+        }
+        if ((item[4] & 0xFF) != 0xA9 || valueLength > MAX_TEXT_SIZE) return;
+
+        byte[] type = source.readBytes(dataBody, 4);
+        if (DurationProbe.readInt(type, 0) != DATA_TYPE_UTF8) return;
+
+        String tag = new String(item, 5, 3, Charset.forName("ISO-8859-1"));
+        String value = new String(source.readBytes(valueStart, valueLength), UTF_8).trim();
+        if (value.isEmpty()) return;
+        if (tag.equals("nam") && info.title == null) {
+            info.title = value;
+        } else if (tag.equals("ART") && info.artist == null) {
+            info.artist = value;
+        } else if (tag.equals("alb") && info.album == null) {
+            info.album = value;
+        }
+    }
+
+    // Freeform items ('----') name their tag in a 'name' box: a full box header, then the text
+    private static float readFreeformGain(ByteSource source, long item, long itemEnd, long data) throws IOException {
+        long name = findBox(source, bodyStart(source, item), itemEnd, "name");
+        if (name < 0) return Float.NaN;
+        String tag = readText(source, bodyStart(source, name) + 4, boxEnd(source, name, itemEnd));
+        if (tag == null) return Float.NaN;
+        long dataEnd = boxEnd(source, data, itemEnd);
+        if (tag.equalsIgnoreCase("replaygain_track_gain")) {
+            return ReplayGain.parseGain(readText(source, bodyStart(source, data) + 8, dataEnd));
+        }
+        if (tag.equalsIgnoreCase("R128_TRACK_GAIN")) {
+            return ReplayGain.parseR128Gain(readText(source, bodyStart(source, data) + 8, dataEnd));
+        }
+        return Float.NaN;
+    }
+
+    private static String readText(ByteSource source, long start, long end) throws IOException {
+        if (end <= start || end - start > MAX_TEXT_SIZE) return null;
+        return new String(source.readBytes(start, (int) (end - start)), UTF_8).trim();
+    }
+
+    // mvhd and mdhd share the same version/timescale/duration layout
+    private static long readMediaHeaderDuration(ByteSource source, long body, long[] timescaleOut) throws IOException {
+        byte[] data = source.readBytes(body, 32);
+        int version = data[0] & 0xFF;
+        long timescale;
+        long duration;
+        if (version == 1) {
+            timescale = DurationProbe.readInt(data, 20) & 0xFFFFFFFFL;
+            duration = DurationProbe.readLong(data, 24);
+        } else {
+            timescale = DurationProbe.readInt(data, 12) & 0xFFFFFFFFL;
+            duration = DurationProbe.readInt(data, 16) & 0xFFFFFFFFL;
+        }
+        if (timescaleOut != null) timescaleOut[0] = timescale;
+        if (timescale == 0 || duration <= 0 || duration == 0xFFFFFFFFL) return -1;
+        return duration * 1000 / timescale;
+    }
+
+    // Descends through nested boxes, e.g. findPath(src, s, e, "minf", "stbl", "stsd")
+    static long findPath(ByteSource source, long start, long end, String... path) throws IOException {
+        long box = -1;
+        for (String type : path) {
+            box = findBox(source, start, end, type);
+            if (box < 0) return -1;
+            end = boxEnd(source, box, end);
+            start = bodyStart(source, box);
+        }
+        return box;
+    }
+
+    // Offset of the first box of the given type in [start, end), or -1
+    static long findBox(ByteSource source, long start, long end, String type) throws IOException {
+        byte[] header = new byte[8];
+        long pos = start;
+        while (pos + 8 <= end) {
+            source.readFully(pos, header, 0, 8);
+            long size = boxSize(source, pos, end);
+            if (size < 8) return -1;
+            if (DurationProbe.matches(header, 4, type)) return pos;
+            pos += size;
+        }
+        return -1;
+    }
+
+    static long boxSize(ByteSource source, long pos, long end) throws IOException {
+        byte[] header = source.readBytes(pos, 8);
+        long size = DurationProbe.readInt(header, 0) & 0xFFFFFFFFL;
+        if (size == 1) {
+            size = DurationProbe.readLong(source.readBytes(pos + 8, 8), 0);
+        } else if (size == 0) {
+            size = end - pos; // Box extends to the end of its parent
+        }
+        return size;
+    }
+
+    static long boxEnd(ByteSource source, long pos, long end) throws IOException {
+        return Math.min(end, pos + boxSize(source, pos, end));
+    }
+
+    static long bodyStart(ByteSource source, long pos) throws IOException {
+        byte[] header = source.readBytes(pos, 4);
+        return pos + (DurationProbe.readInt(header, 0) == 1 ? 16 : 8);
+    }
+}
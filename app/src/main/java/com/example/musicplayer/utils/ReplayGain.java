@@ -0,0 +1,53 @@
+package com.example.musicplayer.utils;
+
+// Track gain in decibels, ReplayGain 2.0 style: how far to turn a track up or down so that it
+// plays at the reference loudness of -18 LUFS. NaN means the gain is not known.
+public final class ReplayGain {
+    public static final float REFERENCE_LUFS = -18f;
+    // R128 gain tags in Opus/ID3 aim for -23 LUFS, 5 dB below the ReplayGain reference
+    private static final float R128_OFFSET_DB = 5f;
+    // Anything outside this is a broken tag or measurement rather than a real track
+    private static final float MAX_GAIN_DB = 64f;
+
+    private ReplayGain() {
+    }
+
+    // "REPLAYGAIN_TRACK_GAIN" values such as "-6.48 dB" or "+1.2"; NaN if unreadable
+    public static float parseGain(String value) {
+        if (value == null) return Float.NaN;
+        String number = value.trim();
+        int end = 0;
+        while (end < number.length() && "+-.0123456789".indexOf(number.charAt(end)) >= 0) end++;
+        try {
+            return checked(Float.parseFloat(number.substring(0, end)));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    // "R128_TRACK_GAIN" values: a signed Q7.8 number of decibels relative to -23 LUFS
+    public static float parseR128Gain(String value) {
+        if (value == null) return Float.NaN;
+        try {
+            return checked(Integer.parseInt(value.trim()) / 256f + R128_OFFSET_DB);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    // The gain that brings a track measured at loudnessLufs to the reference
+    public static float forLoudness(double loudnessLufs) {
+        return Double.isNaN(loudnessLufs) ? Float.NaN : checked((float) (REFERENCE_LUFS - loudnessLufs));
+    }
+
+    // Volume factor for a player. Only ever turns down: the platform players cannot go above
+    // full scale, and turning a track up without its peak level could clip it.
+    public static float volume(float gainDb) {
+        if (Float.isNaN(gainDb) || gainDb >= 0) return 1f;
+        return (float) Math.pow(10, gainDb / 20);
+    }
+
+    private static float checked(float gainDb) {
+        return Math.abs(gainDb) <= MAX_GAIN_DB ? gainDb : Float.NaN;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.musicplayer.utils;
+
+// Everything the library scan learns about one track from a single probe of the file
+public class TrackInfo {
+    public FormatSniffer.Format format = FormatSniffer.Format.UNKNOWN;
+    public String title;
+    public String artist;
+    public String album;
+    public long durationMs = -1; // -1 when unknown
+    public String codec; // "mp3", "aac", "alac", "pcm", ...
+    public int sampleRate;
+    public int bitrate; // Bits per second, averaged over the file for VBR
+    public long artOffset = -1; // Byte offset of the embedded picture within the file, -1 if none
+    public int artLength;
+    public float gainDb = Float.NaN; // Track gain from ReplayGain or R128 tags, NaN if untagged
+    public long bytesRead; // I/O spent on the probe
+
+    public boolean hasDuration() {
+        return durationMs > 0;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+
+// Single-pass probe: one open, one read of a bounded window at each end of the file, and
+// everything the library needs (tags, duration, stream details, art location) parsed from it.
+// Parsers may still reach outside the windows (e.g. a large ID3 tag or an MP4 'moov' in the
+// middle); those reads are counted in TrackInfo.bytesRead.
+public final class TrackProbe {
+    private static final int HEAD_WINDOW = 64 * 1024;
+    private static final int TAIL_WINDOW = 8 * 1024;
+
+    private TrackProbe() {
+    }
+
+    public static TrackInfo probe(ByteSource file) throws IOException {
+        WindowedSource source = new WindowedSource(file, HEAD_WINDOW, TAIL_WINDOW);
+        TrackInfo info = new TrackInfo();
+
+        // Route on the content, not the extension
+        info.format = FormatSniffer.sniff(source);
+        if (!info.format.isPlayable()) {
+            info.bytesRead = source.getBytesRead();
+            return info;
+        }
+
+        if (info.format == FormatSniffer.Format.MP3 || info.format == FormatSniffer.Format.ADTS) {
+            // Raw ADTS files can carry ID3 tags just like MP3s
+            Id3Reader.Tags tags = Id3Reader.read(source);
+            info.title = tags.title;
+            info.artist = tags.artist;
+            info.album = tags.album;
+            info.artOffset = tags.artOffset;
+            info.artLength = tags.artLength;
+            info.gainDb = tags.gainDb;
+        }
+        // MP4 tags and cover art are read along with the stream details
+        DurationProbe.probe(source, info);
+
+        info.bytesRead = source.getBytesRead();
+        return info;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+
+// Finds the sample layout and the data chunk of a RIFF/WAVE file by walking its chunk headers,
+// so PCM can be played straight from the file without a decoder.
+public final class WavReader {
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    public static final class Layout {
+        public final int sampleRate;
+        public final int channels;
+        public final int bitsPerSample;
+        public final boolean floating; // IEEE float samples rather than integers
+        public final long dataOffset; // From the start of the file
+        public final long dataLength;
+
+        Layout(int sampleRate, int channels, int bitsPerSample, boolean floating, long dataOffset, long dataLength) {
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.bitsPerSample = bitsPerSample;
+            this.floating = floating;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+
+        // Bytes per sample across all channels
+        public int frameSize() {
+            return channels * ((bitsPerSample + 7) / 8);
+        }
+    }
+
+    private WavReader() {
+    }
+
+    // The layout of an uncompressed WAV, or null for anything else (including ADPCM and other
+    // codecs in a WAV wrapper, and a data chunk that comes before its fmt chunk)
+    public static Layout read(ByteSource source) throws IOException {
+        long length = source.length();
+        if (length < 12) return null;
+        byte[] riff = source.readBytes(0, 12);
+        if (!DurationProbe.matches(riff, 0, "RIFF") || !DurationProbe.matches(riff, 8, "WAVE")) return null;
+
+        byte[] chunk = new byte[8];
+        long pos = 12;
+        int formatTag = -1;
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        while (pos + 8 <= length) {
+            source.readFully(pos, chunk, 0, 8);
+            long size = DurationProbe.readIntLE(chunk, 4) & 0xFFFFFFFFL;
+            if (DurationProbe.matches(chunk, 0, "fmt ") && size >= 16 && pos + 8 + size <= length) {
+                byte[] fmt = source.readBytes(pos + 8, (int) Math.min(size, 40));
+                formatTag = readShortLE(fmt, 0);
+                channels = readShortLE(fmt, 2);
+                sampleRate = DurationProbe.readIntLE(fmt, 4);
+                bitsPerSample = readShortLE(fmt, 14);
+                // The real format is the first two bytes of the sub-format GUID
+                if (formatTag == FORMAT_EXTENSIBLE && fmt.length >= 26) formatTag = readShortLE(fmt, 24);
+            } else if (DurationProbe.matches(chunk, 0, "data")) {
+                if (formatTag != FORMAT_PCM && formatTag != FORMAT_FLOAT) return null;
+                if (channels <= 0 || sampleRate <= 0 || bitsPerSample <= 0) return null;
+                // Streamed WAVs leave the size unset; the data then runs to the end of the file
+                long dataLength = Math.min(size, length - pos - 8);
+                return new Layout(sampleRate, channels, bitsPerSample, formatTag == FORMAT_FLOAT, pos + 8, dataLength);
+            }
+            pos += 8 + size + (size & 1);
+        }
+        return null;
+    }
+
+    private static int readShortLE(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.musicplayer.utils;
+
+import java.io.IOException;
+
+// Reads a fixed window from the head and the tail of a source up front and serves parser reads
+// from them; anything outside the windows goes to the underlying source. Counts every byte that
+// is actually read so probes can report their I/O cost.
+public class WindowedSource extends ByteSource {
+    private final ByteSource inner;
+    private final long length;
+    private final byte[] head;
+    private final byte[] tail;
+    private final long tailStart;
+    private long bytesRead;
+
+    public WindowedSource(ByteSource inner, int headSize, int tailSize) throws IOException {
+        this.inner = inner;
+        this.length = inner.length();
+        int headLength = (int) Math.min(headSize, length);
+        this.head = inner.readBytes(0, headLength);
+        this.tailStart = Math.max(headLength, length - tailSize);
+        this.tail = inner.readBytes(tailStart, (int) (length - tailStart));
+        this.bytesRead = head.length + tail.length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read(long position, byte[] dst, int off, int len) throws IOException {
+        if (position >= length) return -1;
+        len = (int) Math.min(len, length - position);
+        if (position + len <= head.length) {
+            System.arraycopy(head, (int) position, dst, off, len);
+            return len;
+        }
+        if (position >= tailStart) {
+            System.arraycopy(tail, (int) (position - tailStart), dst, off, len);
+            return len;
+        }
+        int n = inner.read(position, dst, off, len);
+        if (n > 0) bytesRead += n;
+        return n;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.musicplayer.adapter;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class OrderDiffCallbackTest {
+    @Test
+    public void testRowsAreMatchedByTrackId() {
+        OrderDiffCallback callback = new OrderDiffCallback(new int[] {0, 1, 2}, new int[] {2, 0, 1, 3});
+        assertEquals(3, callback.getOldListSize());
+        assertEquals(4, callback.getNewListSize());
+        assertTrue(callback.areItemsTheSame(0, 1));
+        assertTrue(callback.areItemsTheSame(2, 0));
+        assertFalse(callback.areItemsTheSame(0, 0));
+        assertTrue(callback.areContentsTheSame(0, 1));
+    }
+}
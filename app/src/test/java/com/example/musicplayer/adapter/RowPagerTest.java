@@ -0,0 +1,144 @@
+package com.example.musicplayer.adapter;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RowPagerTest {
+    // Pages are their first row; every load and eviction is recorded
+    private static class RecordingLoader implements RowPager.Loader<Integer> {
+        int rowCount;
+        final List<Integer> loaded = new ArrayList<>();
+        final List<Integer> evicted = new ArrayList<>();
+
+        RecordingLoader(int rowCount) {
+            this.rowCount = rowCount;
+        }
+
+        @Override
+        public int rowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public Integer load(int firstRow, int count) {
+            assertTrue(count > 0 && firstRow + count <= rowCount);
+            loaded.add(firstRow);
+            return firstRow;
+        }
+
+        @Override
+        public void evict(Integer page) {
+            evicted.add(page);
+        }
+    }
+
+    @Test
+    public void testPageLoadsOnDemand() {
+        RecordingLoader loader = new RecordingLoader(100);
+        RowPager<Integer> pager = new RowPager<>(10, 3, loader);
+        assertEquals(Integer.valueOf(40), pager.page(47));
+        assertEquals(Integer.valueOf(40), pager.page(40));
+        assertEquals(1, loader.loaded.size());
+        assertTrue(pager.isLoaded(4));
+    }
+
+    @Test
+    public void testPrefetchesAheadInScrollDirection() {
+        RecordingLoader loader = new RecordingLoader(1000);
+        RowPager<Integer> pager = new RowPager<>(10, 3, loader);
+        pager.onVisibleRange(100, 115);
+        pager.onVisibleRange(105, 120);
+        // Visible pages 10-12, two pages ahead and one behind
+        for (int page = 9; page <= 14; page++) assertTrue("page " + page, pager.isLoaded(page));
+        assertFalse(pager.isLoaded(8));
+        assertFalse(pager.isLoaded(15));
+
+        pager.onVisibleRange(95, 110);
+        // Scrolling up turns the window around
+        for (int page = 7; page <= 12; page++) assertTrue("page " + page, pager.isLoaded(page));
+        assertFalse(pager.isLoaded(13));
+        assertTrue(loader.evicted.contains(130));
+        assertTrue(loader.evicted.contains(140));
+    }
+
+    @Test
+    public void testVisiblePagesLoadBeforePrefetchedOnes() {
+        RecordingLoader loader = new RecordingLoader(1000);
+        RowPager<Integer> pager = new RowPager<>(10, 3, loader);
+        pager.onVisibleRange(100, 115);
+        assertEquals(Integer.valueOf(100), loader.loaded.get(0));
+        assertEquals(Integer.valueOf(110), loader.loaded.get(1));
+        assertEquals(Integer.valueOf(120), loader.loaded.get(2));
+    }
+
+    @Test
+    public void testJumpLoadsOnlyPagesAroundTarget() {
+        RecordingLoader loader = new RecordingLoader(1_000_000);
+        RowPager<Integer> pager = new RowPager<>(32, 4, loader);
+        pager.onVisibleRange(0, 12);
+        pager.onVisibleRange(900_000, 900_012);
+        assertTrue(pager.isLoaded(900_000 / 32));
+        assertFalse(pager.isLoaded(0));
+        assertTrue(loader.loaded.size() < 12);
+        assertTrue(pager.loadedPages() <= 6);
+    }
+
+    @Test
+    public void testMemoryStaysFlatOverFullScroll() {
+        RecordingLoader loader = new RecordingLoader(200_000);
+        RowPager<Integer> pager = new RowPager<>(32, 4, loader);
+        int maxPages = 0;
+        for (int first = 0; first + 12 < loader.rowCount; first += 7) {
+            pager.onVisibleRange(first, first + 12);
+            maxPages = Math.max(maxPages, pager.loadedPages());
+        }
+        // One or two visible pages, three ahead and one behind
+        assertTrue("held " + maxPages, maxPages <= 6);
+        assertEquals(loader.loaded.size(), loader.evicted.size() + pager.loadedPages());
+        // Each page is loaded once on the way down
+        assertEquals((200_000 + 31) / 32, loader.loaded.size());
+    }
+
+    @Test
+    public void testShortLastPage() {
+        RecordingLoader loader = new RecordingLoader(25);
+        RowPager<Integer> pager = new RowPager<>(10, 4, loader);
+        pager.onVisibleRange(15, 24);
+        assertEquals(3, pager.loadedPages());
+
+        loader.rowCount = 35;
+        pager.invalidateFrom(25);
+        assertFalse(pager.isLoaded(2));
+        assertTrue(pager.isLoaded(1));
+        assertTrue(loader.evicted.contains(20));
+        pager.onVisibleRange(25, 34);
+        assertTrue(pager.isLoaded(3));
+    }
+
+    @Test
+    public void testClearEvictsEverything() {
+        RecordingLoader loader = new RecordingLoader(100);
+        RowPager<Integer> pager = new RowPager<>(10, 2, loader);
+        pager.onVisibleRange(0, 15);
+        int loaded = pager.loadedPages();
+        pager.clear();
+        assertEquals(0, pager.loadedPages());
+        assertEquals(loaded, loader.evicted.size());
+        pager.onVisibleRange(0, 5);
+    }
+
+    @Test
+    public void testEmptyList() {
+        RecordingLoader loader = new RecordingLoader(0);
+        RowPager<Integer> pager = new RowPager<>(10, 2, loader);
+        pager.onVisibleRange(0, 0);
+        assertEquals(0, pager.loadedPages());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyWindow() {
+        new RowPager<>(10, 0, new RecordingLoader(10));
+    }
+}
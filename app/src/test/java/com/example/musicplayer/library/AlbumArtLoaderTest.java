@@ -0,0 +1,35 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AlbumArtLoaderTest {
+    @Test
+    public void testSampleSizeNeverGoesBelowTarget() {
+        assertEquals(1, AlbumArtLoader.calculateInSampleSize(300, 300, 300, 300));
+        assertEquals(4, AlbumArtLoader.calculateInSampleSize(1400, 1400, 330, 330));
+        assertEquals(2, AlbumArtLoader.calculateInSampleSize(1400, 1400, 400, 400));
+        // The smaller dimension decides
+        assertEquals(2, AlbumArtLoader.calculateInSampleSize(3000, 800, 330, 330));
+        assertEquals(1, AlbumArtLoader.calculateInSampleSize(100, 100, 330, 330));
+    }
+
+    @Test
+    public void testCenterCropKeepsTargetAspectRatio() {
+        assertArrayEquals(new int[] {0, 0, 500, 500}, AlbumArtLoader.centerCrop(500, 500, 110, 110));
+        assertArrayEquals(new int[] {150, 0, 500, 500}, AlbumArtLoader.centerCrop(800, 500, 110, 110));
+        assertArrayEquals(new int[] {0, 100, 500, 500}, AlbumArtLoader.centerCrop(500, 700, 110, 110));
+        // 274x208 panel from a square cover: full width, trimmed top and bottom
+        assertArrayEquals(new int[] {0, 72, 600, 455}, AlbumArtLoader.centerCrop(600, 600, 274, 208));
+    }
+
+    @Test
+    public void testCacheKeyChangesWithArtAndSize() {
+        String key = AlbumArtLoader.cacheKey("song.mp3", 4096, 20000, 110, 110);
+        assertNotEquals(key, AlbumArtLoader.cacheKey("song.mp3", 8192, 20000, 110, 110));
+        assertNotEquals(key, AlbumArtLoader.cacheKey("song.mp3", 4096, 20000, 274, 208));
+        assertEquals(AlbumArtLoader.cacheFileName(key),
+                AlbumArtLoader.cacheFileName(AlbumArtLoader.cacheKey("song.mp3", 4096, 20000, 110, 110)));
+        assertTrue(AlbumArtLoader.cacheFileName(key).matches("[0-9a-f]{40}\\.jpg"));
+    }
+}
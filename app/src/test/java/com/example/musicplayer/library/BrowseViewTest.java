@@ -0,0 +1,38 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BrowseViewTest {
+    // Rows: 0 [A], 1 [a1], 2 t0, 3 t1, 4 [a2], 5 t2, 6 [B], 7 [b1], 8 t3
+    private static BrowseView view() {
+        return new BrowseView(BrowseView.Mode.ARTIST, new int[] {3, 1, 0, 2}, new int[] {0, 0, 2, 3, 3},
+                new int[] {0, 1, 1, 0, 1}, new String[] {"A", "a1", "a2", "B", "b1"});
+    }
+
+    @Test
+    public void testRowsInterleaveHeadersAndTracks() {
+        BrowseView view = view();
+        assertEquals(9, view.rowCount());
+        int[] headers = {0, 1, -1, -1, 2, -1, 3, 4, -1};
+        for (int row = 0; row < headers.length; row++) {
+            assertEquals("row " + row, headers[row], view.headerAt(row));
+        }
+        assertEquals(0, view.positionAt(2));
+        assertEquals(1, view.positionAt(3));
+        assertEquals(2, view.positionAt(5));
+        assertEquals(3, view.positionAt(8));
+        assertEquals("a2", view.headerLabel(2));
+        assertEquals(1, view.headerLevel(4));
+    }
+
+    @Test
+    public void testRowOfIsTheInverseOfPositionAt() {
+        BrowseView view = view();
+        for (int position = 0; position < view.size(); position++) {
+            assertEquals(position, view.positionAt(view.rowOf(position)));
+        }
+        assertArrayEquals(new int[] {2, 3, 5, 8},
+                new int[] {view.rowOf(0), view.rowOf(1), view.rowOf(2), view.rowOf(3)});
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+public class LibraryIndexTest {
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("library", ".idx");
+        try {
+            LibraryIndex index = new LibraryIndex(file);
+            index.put(new LibraryIndex.Entry("song.mp3", 1000, 64, "周杰伦", "Artist", null, 215000, 4096, 35000,
+                    "zhou'jie'lun z'j'l", -7.5f));
+            index.save();
+
+            LibraryIndex reloaded = new LibraryIndex(file);
+            reloaded.load();
+            LibraryIndex.Entry entry = reloaded.lookup("song.mp3", 1000, 64);
+            assertNotNull(entry);
+            assertEquals("周杰伦", entry.title);
+            assertEquals("Artist", entry.artist);
+            assertNull(entry.album);
+            assertEquals(215000, entry.durationMs);
+            assertEquals(4096, entry.artOffset);
+            assertEquals(35000, entry.artLength);
+            assertEquals("zhou'jie'lun z'j'l", entry.spellings);
+            assertEquals(-7.5f, entry.gainDb, 0f);
+            assertFalse(reloaded.isDirty());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testChangedFileIsNotReturned() {
+        LibraryIndex index = new LibraryIndex(new File("unused.idx"));
+        index.put(new LibraryIndex.Entry("song.mp3", 1000, 64, "Song", "Artist", "Album", 1000, -1, 0, null, Float.NaN));
+        assertNull(index.lookup("song.mp3", 1001, 64));
+        assertNull(index.lookup("song.mp3", 1000, 128));
+        assertNull(index.lookup("other.mp3", 1000, 64));
+    }
+
+    @Test
+    public void testRetainAllDropsRemovedFiles() {
+        LibraryIndex index = new LibraryIndex(new File("unused.idx"));
+        index.put(new LibraryIndex.Entry("a.mp3", 1, 0, "A", null, null, 0, -1, 0, null, Float.NaN));
+        index.put(new LibraryIndex.Entry("b.mp3", 1, 0, "B", null, null, 0, -1, 0, null, Float.NaN));
+        index.retainAll(Arrays.asList("b.mp3"));
+        assertEquals(1, index.size());
+        assertNotNull(index.lookup("b.mp3", 1, 0));
+    }
+
+    @Test
+    public void testMeasuredGainReplacesUnknownOne() throws Exception {
+        File file = File.createTempFile("library", ".idx");
+        try {
+            LibraryIndex index = new LibraryIndex(file);
+            index.put(new LibraryIndex.Entry("a.mp3", 1, 0, "A", null, null, 0, -1, 0, null, Float.NaN));
+            index.save();
+            index.put(index.lookup("a.mp3", 1, 0).withGain(3.25f));
+            assertTrue(index.isDirty());
+            index.save();
+
+            LibraryIndex reloaded = new LibraryIndex(file);
+            reloaded.load();
+            LibraryIndex.Entry entry = reloaded.lookup("a.mp3", 1, 0);
+            assertEquals(3.25f, entry.gainDb, 0f);
+            assertEquals("A", entry.title);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFileLoadsEmpty() throws Exception {
+        LibraryIndex index = new LibraryIndex(new File("does-not-exist.idx"));
+        index.load();
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class LoudnessMeterTest {
+    private static final int RATE = 48000;
+
+    @Test
+    public void testSineMatchesReference() {
+        // EBU Tech 3341 case 1: a 1 kHz stereo sine at -23 dBFS reads -23 LUFS
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        meter.addPcm16(sine(1000, -23, 20, 2));
+        assertEquals(-23, meter.integratedLufs(), 0.1);
+        assertEquals(197, meter.blockCount());
+    }
+
+    @Test
+    public void testOtherSampleRate() {
+        LoudnessMeter meter = new LoudnessMeter(44100, 1);
+        float[] samples = new float[44100 * 10];
+        double amplitude = Math.pow(10, -20 / 20.0);
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (float) (amplitude * Math.sin(2 * Math.PI * 1000 * i / 44100));
+        }
+        meter.add(samples, 0, samples.length);
+        // One channel carries half the energy of two
+        assertEquals(-23.01, meter.integratedLufs(), 0.1);
+    }
+
+    @Test
+    public void testSilenceIsGatedOut() {
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        meter.addPcm16(ByteBuffer.allocate(RATE * 4 * 5));
+        assertTrue(Double.isNaN(meter.integratedLufs()));
+        meter.addPcm16(sine(1000, -23, 10, 2));
+        meter.addPcm16(ByteBuffer.allocate(RATE * 4 * 20));
+        // The blocks that straddle the edges of the sine pull it down a little
+        assertEquals(-23, meter.integratedLufs(), 0.2);
+    }
+
+    @Test
+    public void testQuietPassagesBelowRelativeGate() {
+        // EBU Tech 3341 case 4: -72, -36, -23, -36 and -72 dBFS for 10, 10, 60, 10 and 10 s
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        meter.addPcm16(sine(1000, -72, 10, 2));
+        meter.addPcm16(sine(1000, -36, 10, 2));
+        meter.addPcm16(sine(1000, -23, 60, 2));
+        meter.addPcm16(sine(1000, -36, 10, 2));
+        meter.addPcm16(sine(1000, -72, 10, 2));
+        assertEquals(-23, meter.integratedLufs(), 0.1);
+    }
+
+    @Test
+    public void testSegmentsDoNotShareBlocks() {
+        LoudnessMeter meter = new LoudnessMeter(RATE, 2);
+        meter.addPcm16(sine(1000, -23, 0.35, 2));
+        meter.startSegment();
+        meter.addPcm16(sine(1000, -23, 0.35, 2));
+        // Neither part fills a 400 ms block
+        assertEquals(0, meter.blockCount());
+    }
+
+    // Interleaved 16-bit little-endian samples, the same on every channel
+    private static ByteBuffer sine(double hz, double dbfs, double seconds, int channels) {
+        int frames = (int) (RATE * seconds);
+        ByteBuffer pcm = ByteBuffer.allocate(frames * channels * 2).order(ByteOrder.LITTLE_ENDIAN);
+        double amplitude = Math.pow(10, dbfs / 20) * 32767;
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) Math.round(amplitude * Math.sin(2 * Math.PI * hz * i / RATE));
+            for (int c = 0; c < channels; c++) {
+                pcm.putShort(sample);
+            }
+        }
+        pcm.flip();
+        return pcm;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PinyinTest {
+    // Stands in for the platform transliterator, with tone marks the way ICU returns them
+    private static Pinyin pinyin() {
+        final Map<Character, String> table = new HashMap<>();
+        table.put('周', "zhōu");
+        table.put('杰', "jié");
+        table.put('伦', "lún");
+        table.put('晴', "qíng");
+        table.put('天', "tiān");
+        table.put('绿', "lǜ");
+        table.put('城', "chéng");
+        return new Pinyin(new Pinyin.Source() {
+            @Override
+            public String reading(char c) {
+                return table.get(c);
+            }
+        });
+    }
+
+    @Test
+    public void testSpellsRunsAsFullPinyinAndInitials() {
+        assertEquals("zhou'jie'lun z'j'l qing'tian q't", pinyin().spell("周杰伦", "晴天", null));
+    }
+
+    @Test
+    public void testOnlyHanRunsAreSpelled() {
+        assertEquals("zhou'jie'lun z'j'l tian", pinyin().spell("Jay 周杰伦 - Live 天", "Jay Chou"));
+        assertNull(pinyin().spell("Yesterday", "The Beatles", null));
+    }
+
+    @Test
+    public void testExpandsPolyphonicCharacters() {
+        // 长 is chang or zhang, 乐 is le or yue
+        assertEquals("chang'cheng c'c zhang'cheng z'c", pinyin().spell("长城"));
+        assertEquals("chang'le c'l chang'yue c'y zhang'le z'l zhang'yue z'y", pinyin().spell("长乐"));
+    }
+
+    @Test
+    public void testCapsPolyphonicExpansion() {
+        // 2 * 2 * 3 * 3 readings, but only four spellings are kept
+        String spelled = pinyin().spell("长乐和和");
+        assertEquals(8, spelled.split(" ").length);
+        assertTrue(spelled.startsWith("chang'le'he'he c'l'h'h "));
+    }
+
+    @Test
+    public void testDropsTonesAndWritesUmlautAsV() {
+        assertEquals("lv", Pinyin.toneless("lǜ"));
+        assertEquals("zhou", Pinyin.toneless("Zhōu"));
+        assertNull(Pinyin.toneless("绿"));
+        assertEquals("lv", pinyin().readings('绿')[0]);
+    }
+
+    @Test
+    public void testUnknownCharactersAreSkipped() {
+        assertEquals("zhou'lun z'l", pinyin().spell("周〇伦"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+    @Test
+    public void testMatchesWordPrefixesInAnyField() {
+        SearchIndex index = new SearchIndex();
+        index.add(0, "Yesterday", "The Beatles", "Help!");
+        index.add(1, "Let It Be", "The Beatles", "Let It Be");
+        index.add(2, "Beat It", "Michael Jackson", "Thriller");
+
+        assertArrayEquals(new int[] {0, 1}, index.search("beatles"));
+        assertArrayEquals(new int[] {0, 1, 2}, index.search("bea"));
+        assertArrayEquals(new int[] {2}, index.search("thr"));
+        assertArrayEquals(new int[] {1}, index.search("let be"));
+        // Prefixes only: "eat" is inside "Beat" but does not start a word
+        assertArrayEquals(new int[0], index.search("eat"));
+        assertNull(index.search("  "));
+    }
+
+    @Test
+    public void testFoldsCaseAndAccents() {
+        SearchIndex index = new SearchIndex();
+        index.add(0, "Café del Mar", "Énergie", null);
+        index.add(1, "Über Alles", "Motörhead", null);
+
+        assertArrayEquals(new int[] {0}, index.search("CAFE"));
+        assertArrayEquals(new int[] {0}, index.search("ener"));
+        assertArrayEquals(new int[] {1}, index.search("uber"));
+        assertArrayEquals(new int[] {1}, index.search("MOTÖR"));
+    }
+
+    @Test
+    public void testCjkMatchesFromAnyCharacter() {
+        SearchIndex index = new SearchIndex();
+        index.add(0, "凄美地", "郭顶", "飞行器的执行周期");
+        index.add(1, "晴天", "周杰伦", "叶惠美");
+
+        assertArrayEquals(new int[] {0}, index.search("美地"));
+        assertArrayEquals(new int[] {1}, index.search("杰伦"));
+        assertArrayEquals(new int[] {0, 1}, index.search("周"));
+    }
+
+    @Test
+    public void testMatchesPinyinSpellingsFromAnySyllable() {
+        SearchIndex index = new SearchIndex();
+        index.add(0, "晴天", "周杰伦", "叶惠美", "qing'tian q't zhou'jie'lun z'j'l ye'hui'mei y'h'm xie'hui'mei x'h'm");
+        index.add(1, "Zoo", "Jay Lin", null, null);
+
+        assertArrayEquals(new int[] {0}, index.search("zjl"));
+        assertArrayEquals(new int[] {0}, index.search("zhoujielun"));
+        assertArrayEquals(new int[] {0}, index.search("jielun"));
+        assertArrayEquals(new int[] {0}, index.search("xiehui"));
+        assertArrayEquals(new int[] {0, 1}, index.search("j"));
+        assertArrayEquals(new int[] {0}, index.search("zhou qingtian"));
+        // Syllables only join in order; "lunjie" is not a spelling of anything
+        assertArrayEquals(new int[0], index.search("lunjie"));
+    }
+
+    @Test
+    public void testRefinesAsTheQueryGrowsAndSeesNewTracks() {
+        SearchIndex index = new SearchIndex();
+        index.add(0, "Hello", "Adele", "25");
+        index.add(1, "Help", "The Beatles", "Help!");
+        assertArrayEquals(new int[] {0, 1}, index.search("he"));
+        assertArrayEquals(new int[] {0, 1}, index.search("hel"));
+        assertArrayEquals(new int[] {1}, index.search("help"));
+
+        // Backspacing or adding tracks goes back to the index
+        index.add(2, "Helpless", "Neil Young", "Déjà Vu");
+        assertArrayEquals(new int[] {1, 2}, index.search("help"));
+        assertArrayEquals(new int[] {0, 1, 2}, index.search("hel"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTracksMustBeAddedInOrder() {
+        new SearchIndex().add(1, "a", "b", "c");
+    }
+
+    @Test
+    public void testPinyinInitialsOnLargeLibrary() {
+        // 50k tracks with Chinese artists; an initials query matches on the initials of each syllable
+        SearchIndex index = new SearchIndex();
+        String[] syllables = {"zhou", "jie", "lun", "wang", "fei", "chen", "yi", "xun", "li", "ronghao"};
+        for (int i = 0; i < 50000; i++) {
+            String a = syllables[i % 10];
+            String b = syllables[(i / 10) % 10];
+            String c = syllables[(i / 100) % 10];
+            String spellings = a + "'" + b + "'" + c + " " + a.charAt(0) + "'" + b.charAt(0) + "'" + c.charAt(0);
+            index.add(i, "歌" + i, "歌手", null, spellings);
+        }
+
+        int[] results = index.search("zjl");
+        assertEquals(100, results.length); // zhou, jie, then lun or li
+    }
+
+    @Test
+    public void testTypeAheadOnLargeLibrary() {
+        // 50k tracks; typing "summer wi" one key at a time narrows down to the same answer as searching it at once
+        SearchIndex index = new SearchIndex();
+        String[] words = {"love", "summer", "night", "wind", "river", "heart", "blue", "city", "fire", "dream"};
+        for (int i = 0; i < 50000; i++) {
+            String title = words[i % 10] + " " + words[(i / 10) % 10] + " " + i;
+            index.add(i, title, "Artist " + (i % 3000), "Album " + (i % 9000));
+        }
+
+        String query = "summer wi";
+        int[] results = null;
+        for (int k = 1; k <= query.length(); k++) {
+            results = index.search(query.substring(0, k));
+        }
+        assertEquals(1000, results.length);
+        index.search("");
+        assertArrayEquals(index.search(query), results);
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.musicplayer.library;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import com.example.musicplayer.model.MusicItem;
+import com.example.musicplayer.model.SortKeys;
+import java.util.Arrays;
+
+public class TrackStoreTest {
+    @Test
+    public void testRowsReadBackFromColumns() {
+        TrackStore store = new TrackStore();
+        store.add(new MusicItem("凄美地", "郭顶", "飞行器的执行周期", 250000, 1024, 30000, "b.mp3"));
+        store.add(new MusicItem("Song", "Artist", null, 61000, "a.mp3"));
+
+        assertEquals(2, store.size());
+        assertEquals("凄美地", store.getTitle(0));
+        assertEquals("郭顶", store.getArtist(0));
+        assertEquals("飞行器的执行周期", store.getAlbum(0));
+        assertEquals(250000, store.getDurationMs(0));
+        assertEquals("b.mp3", store.getAssetFileName(0));
+        assertTrue(store.hasArt(0));
+        assertEquals(1024, store.getArtOffset(0));
+        assertEquals(30000, store.getArtLength(0));
+        assertNull(store.getAlbum(1));
+        assertFalse(store.hasArt(1));
+
+        assertEquals("Song", new String(store.getTitleChars(), store.getTitleStart(1), store.getTitleLength(1)));
+        MusicItem item = store.getItem(1);
+        assertEquals("Song", item.getTitle());
+        assertEquals("01:01", item.getDuration());
+    }
+
+    @Test
+    public void testGainsKeptToAQuarterDb() {
+        TrackStore store = new TrackStore();
+        MusicItem tagged = new MusicItem("A", "x", "y", 1000, "a.mp3");
+        tagged.setGainDb(-6.48f);
+        store.add(tagged);
+        store.add(new MusicItem("B", "x", "y", 1000, "b.mp3"));
+
+        assertEquals(-6.5f, store.getGainDb(0), 0f);
+        assertTrue(Float.isNaN(store.getGainDb(1)));
+        assertTrue(Float.isNaN(store.getItem(1).getGainDb()));
+        store.setGainDb(1, 3.1f);
+        assertEquals(3f, store.getGainDb(1), 0f);
+        store.setGainDb(1, -80f);
+        assertEquals(-31.75f, store.getGainDb(1), 0f);
+    }
+
+    @Test
+    public void testArtistsAndAlbumsAreDeduplicated() {
+        TrackStore store = new TrackStore();
+        for (int i = 0; i < 10; i++) {
+            store.add(new MusicItem("Track " + i, "Artist " + (i % 2), "Album", 1000, "t" + i + ".mp3"));
+        }
+        assertEquals(store.getArtistId(0), store.getArtistId(2));
+        assertNotEquals(store.getArtistId(0), store.getArtistId(1));
+        assertSame(store.getArtist(0), store.getArtist(8));
+        assertEquals(store.getAlbumId(0), store.getAlbumId(9));
+    }
+
+    @Test
+    public void testOrderMapsPositionsToTracks() {
+        TrackStore store = new TrackStore();
+        store.add(new MusicItem("C", "x", "y", 1000, "c.mp3"));
+        store.add(new MusicItem("A", "x", "y", 1000, "a.mp3"));
+        store.add(new MusicItem("B", "x", "y", 1000, "b.mp3"));
+
+        int[] order = store.orderByAssetName();
+        assertArrayEquals(new int[] {1, 2, 0}, order);
+        store.setOrder(order);
+        assertEquals("A", store.getTitle(store.getTrackId(0)));
+        assertEquals("c.mp3", store.getAssetFileName(store.getTrackId(2)));
+        assertEquals(2, store.positionOf(0));
+        assertArrayEquals(order, store.copyOrder());
+
+        // New tracks are appended after the current order
+        assertEquals(3, store.add(new MusicItem("D", "x", "y", 1000, "d.mp3")));
+        assertEquals(3, store.getTrackId(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOrderMustCoverEveryTrack() {
+        TrackStore store = new TrackStore();
+        store.add(new MusicItem("A", "x", "y", 1000, "a.mp3"));
+        store.setOrder(new int[0]);
+    }
+
+    @Test
+    public void testLargeLibraryStaysCompact() {
+        // 100k tracks by 2k artists: 20-char titles and asset names cost 80 bytes of chars and the
+        // title's collation key its own length; everything else should stay within a few dozen bytes
+        // per track
+        TrackStore store = new TrackStore();
+        char[] title = new char[20];
+        Arrays.fill(title, 'x');
+        for (int i = 0; i < 100000; i++) {
+            String name = String.format("%016d.mp3", i);
+            store.add(new MusicItem(new String(title), "Artist " + (i % 2000), "Album " + (i % 8000), 200000, name));
+        }
+        long perTrack = store.estimatedBytes() / store.size();
+        int keyBytes = SortKeys.of(new String(title), null, null, null).title.length;
+        assertTrue("bytes per track: " + perTrack + " with a " + keyBytes + "-byte key", perTrack < 200 + keyBytes);
+    }
+
+    private static TrackStore groupedLibrary() {
+        TrackStore store = new TrackStore();
+        store.add(new MusicItem("Yellow", "Coldplay", "Parachutes", 1000, "04.mp3"));
+        store.add(new MusicItem("Hello", "Adele", "25", 1000, "01.mp3"));
+        store.add(new MusicItem("Clocks", "Coldplay", "A Rush of Blood", 1000, "03.mp3"));
+        store.add(new MusicItem("Skyfall", "adele", "Skyfall", 1000, "02.mp3"));
+        MusicItem qingTian = new MusicItem("晴天", "周杰伦", "叶惠美", 1000, "05.mp3");
+        qingTian.setSpellings("qing'tian q't zhou'jie'lun z'j'l");
+        store.add(qingTian);
+        return store;
+    }
+
+    private static String[] titles(TrackStore store, BrowseView view) {
+        int[] order = view.copyOrder();
+        String[] titles = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            titles[i] = store.getTitle(order[i]);
+        }
+        return titles;
+    }
+
+    private static String[] headers(BrowseView view) {
+        String[] labels = new String[view.headerCount()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (view.headerLevel(i) == 1 ? "  " : "") + view.headerLabel(i);
+        }
+        return labels;
+    }
+
+    @Test
+    public void testBrowseByArtistThenAlbum() {
+        TrackStore store = groupedLibrary();
+        BrowseView view = store.browse(BrowseView.Mode.ARTIST);
+        // "Adele" and "adele" collate together
+        assertArrayEquals(new String[] {"Hello", "Skyfall", "Clocks", "Yellow", "晴天"}, titles(store, view));
+        assertEquals(2, view.rowOf(0)); // Below the artist and album headers
+        String[] labels = headers(view);
+        assertEquals(8, labels.length);
+        assertEquals("Adele", labels[0]);
+        assertEquals("  25", labels[1]);
+        assertEquals("  Skyfall", labels[2]);
+        assertEquals("Coldplay", labels[3]);
+        assertEquals("  A Rush of Blood", labels[4]);
+        assertEquals("  Parachutes", labels[5]);
+    }
+
+    @Test
+    public void testBrowseByTitleAndAlbum() {
+        TrackStore store = groupedLibrary();
+        BrowseView byTitle = store.browse(BrowseView.Mode.TITLE);
+        assertArrayEquals(new String[] {"Clocks", "Hello", "晴天", "Skyfall", "Yellow"}, titles(store, byTitle));
+        assertArrayEquals(new String[] {"C", "H", "Q", "S", "Y"}, headers(byTitle));
+
+        BrowseView byAlbum = store.browse(BrowseView.Mode.ALBUM);
+        assertEquals(5, byAlbum.headerCount());
+        assertEquals("25", byAlbum.headerLabel(0));
+
+        BrowseView files = store.browse(BrowseView.Mode.FILES);
+        assertArrayEquals(new String[] {"Hello", "Skyfall", "Clocks", "Yellow", "晴天"}, titles(store, files));
+        assertEquals(0, files.headerCount());
+    }
+
+    @Test
+    public void testViewsAreCachedUntilTracksAreAdded() {
+        TrackStore store = groupedLibrary();
+        BrowseView view = store.browse(BrowseView.Mode.ARTIST);
+        assertSame(view, store.browse(BrowseView.Mode.ARTIST));
+        store.setOrder(view);
+        assertEquals("Hello", store.getTitle(store.getTrackId(0)));
+
+        store.add(new MusicItem("Adventure of a Lifetime", "Coldplay", "A Head Full of Dreams", 1000, "06.mp3"));
+        BrowseView rebuilt = store.browse(BrowseView.Mode.ARTIST);
+        assertNotSame(view, rebuilt);
+        assertEquals(6, rebuilt.size());
+    }
+
+    @Test
+    public void testBrowseLargeLibrary() {
+        // 100k tracks: building a grouped view is one key sort; switching back to it is free, since
+        // the built view is kept rather than rebuilt
+        TrackStore store = new TrackStore();
+        for (int i = 0; i < 100000; i++) {
+            store.add(new MusicItem("Song " + (i * 7919 % 100000), "Artist " + (i % 2000), "Album " + (i % 8000),
+                    200000, String.format("%06d.mp3", i)));
+        }
+        BrowseView view = store.browse(BrowseView.Mode.ARTIST);
+        assertEquals(100000 + 2000 + 8000, view.rowCount());
+        assertSame(view, store.cachedView(BrowseView.Mode.ARTIST));
+        store.setOrder(store.browse(BrowseView.Mode.TITLE));
+        store.setOrder(store.browse(BrowseView.Mode.ARTIST));
+        assertSame(view, store.cachedView(BrowseView.Mode.ARTIST));
+        assertEquals(view.order()[0], store.getTrackId(0));
+        assertEquals(view.order()[99999], store.getTrackId(99999));
+    }
+}
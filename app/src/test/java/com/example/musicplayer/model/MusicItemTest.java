@@ -11,6 +11,14 @@ public class MusicItemTest {
         assertEquals("10:05", MusicItem.formatDuration(605));
     }
 
+    @Test
+    public void testFormatDurationIntoBuffer() {
+        char[] out = new char[12];
+        assertEquals("01:30", new String(out, 0, MusicItem.formatDuration(90, out)));
+        assertEquals("00:00", new String(out, 0, MusicItem.formatDuration(0, out)));
+        assertEquals("125:07", new String(out, 0, MusicItem.formatDuration(125 * 60 + 7, out)));
+    }
+
     @Test
     public void testGetters() {
         MusicItem item = new MusicItem("Song", "Artist", "Album", "03:20", "song.mp3");
@@ -0,0 +1,35 @@
+package com.example.musicplayer.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SortKeysTest {
+    private static int compareTitles(String a, String b) {
+        return Integer.signum(SortKeys.compare(SortKeys.of(a, null, null, null).title,
+                SortKeys.of(b, null, null, null).title));
+    }
+
+    @Test
+    public void testKeysOrderLikeTheCollator() {
+        assertEquals(-1, compareTitles("apple", "Banana"));
+        assertEquals(-1, compareTitles("Café", "cafeteria"));
+        assertEquals(0, compareTitles("Hello", "hello"));
+        assertEquals(1, compareTitles("zebra", "Zanzibar"));
+    }
+
+    @Test
+    public void testCompareIsUnsigned() {
+        assertTrue(SortKeys.compare(new byte[] {(byte) 0x80}, new byte[] {0x7F}) > 0);
+        assertTrue(SortKeys.compare(new byte[] {1}, new byte[] {1, 0}) < 0);
+    }
+
+    @Test
+    public void testInitials() {
+        assertEquals('H', SortKeys.initialOf("hello", null));
+        assertEquals('E', SortKeys.initialOf("  Été", null));
+        assertEquals('Z', SortKeys.initialOf("周杰伦", "zhou'jie'lun z'j'l"));
+        assertEquals('#', SortKeys.initialOf("周杰伦", null));
+        assertEquals('#', SortKeys.initialOf("1999", null));
+        assertEquals('#', SortKeys.initialOf(null, null));
+    }
+}
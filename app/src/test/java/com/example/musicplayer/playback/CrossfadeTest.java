@@ -0,0 +1,231 @@
+package com.example.musicplayer.playback;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CrossfadeTest {
+    // A clock the test moves by hand and a ticker holding the one posted step
+    private static class FakeTime implements Crossfade.Clock, Crossfade.Ticker {
+        long now = 1000;
+        Runnable posted;
+        long postedAt;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void postAtTime(Runnable r, long atMs) {
+            posted = r;
+            postedAt = atMs;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable r) {
+            if (posted == r) posted = null;
+        }
+
+        // Runs the posted step, lateMs after it was due
+        boolean step(long lateMs) {
+            if (posted == null) return false;
+            Runnable r = posted;
+            posted = null;
+            now = postedAt + lateMs;
+            r.run();
+            return true;
+        }
+    }
+
+    private static class Gains implements Crossfade.Target {
+        final List<float[]> steps = new ArrayList<>();
+        final List<Long> times = new ArrayList<>();
+        final FakeTime time;
+        boolean finished;
+
+        Gains(FakeTime time) {
+            this.time = time;
+        }
+
+        @Override
+        public void setGains(float out, float in) {
+            steps.add(new float[] {out, in});
+            times.add(time.now);
+        }
+
+        @Override
+        public void onFadeFinished() {
+            finished = true;
+        }
+    }
+
+    @Test
+    public void testEqualPowerRampIsSmoothAndLevel() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.EQUAL_POWER, 6000);
+        while (time.step(0)) { }
+
+        assertTrue(gains.finished);
+        assertFalse(fade.isRunning());
+        assertEquals(601, gains.steps.size()); // Every 10 ms, both ends included
+        float[] first = gains.steps.get(0);
+        float[] last = gains.steps.get(gains.steps.size() - 1);
+        assertEquals(1f, first[0], 1e-6f);
+        assertEquals(0f, first[1], 1e-6f);
+        assertEquals(0f, last[0], 1e-6f);
+        assertEquals(1f, last[1], 1e-6f);
+        for (int i = 1; i < gains.steps.size(); i++) {
+            float[] step = gains.steps.get(i);
+            assertTrue(gains.times.get(i) - gains.times.get(i - 1) <= Crossfade.STEP_MS);
+            assertTrue(step[0] <= gains.steps.get(i - 1)[0]);
+            assertTrue(step[1] >= gains.steps.get(i - 1)[1]);
+            assertEquals(1f, step[0] * step[0] + step[1] * step[1], 1e-4f);
+            // No audible jumps: 10 ms of a 6 s fade moves a gain by well under 1%
+            assertTrue(Math.abs(step[1] - gains.steps.get(i - 1)[1]) < 0.01f);
+        }
+    }
+
+    @Test
+    public void testLinearGainsSumToOne() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.LINEAR, 1000);
+        while (time.step(0)) { }
+        assertEquals(101, gains.steps.size());
+        for (float[] step : gains.steps) {
+            assertEquals(1f, step[0] + step[1], 1e-6f);
+        }
+        assertEquals(0.5f, gains.steps.get(50)[1], 1e-6f);
+    }
+
+    @Test
+    public void testLateStepsDoNotStretchTheFade() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.LINEAR, 1000);
+        long start = time.now;
+        // Every step runs 7 ms late; the schedule keeps to absolute times and catches up
+        while (time.posted != null) {
+            assertTrue(time.postedAt - time.now <= Crossfade.STEP_MS);
+            time.step(7);
+        }
+        assertTrue(gains.finished);
+        assertTrue(time.now - start <= 1000 + 7);
+    }
+
+    @Test
+    public void testShortenContinuesFromCurrentGains() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.LINEAR, 10000);
+        for (int i = 0; i < 300; i++) time.step(0); // 3 s in
+        assertEquals(0.3f, fade.progress(), 1e-3f);
+        int before = gains.steps.size();
+        long shortenedAt = time.now;
+        fade.shorten(150);
+        assertEquals(0.3f, gains.steps.get(before)[1], 1e-3f); // No jump
+        while (time.step(0)) { }
+        assertTrue(gains.finished);
+        assertEquals(150, time.now - shortenedAt);
+    }
+
+    @Test
+    public void testShortenNeverLengthens() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.LINEAR, 1000);
+        for (int i = 0; i < 95; i++) time.step(0);
+        long at = time.now;
+        fade.shorten(150);
+        while (time.step(0)) { }
+        assertEquals(50, time.now - at);
+    }
+
+    @Test
+    public void testPauseHoldsGainsUntilResume() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.LINEAR, 1000);
+        for (int i = 0; i < 40; i++) time.step(0);
+        fade.pause();
+        assertNull(time.posted);
+        time.now += 5000;
+        fade.resume();
+        assertEquals(0.4f, gains.steps.get(gains.steps.size() - 1)[1], 1e-3f);
+        long resumedAt = time.now;
+        while (time.step(0)) { }
+        assertEquals(600, time.now - resumedAt);
+    }
+
+    @Test
+    public void testFinishAndAbort() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        Crossfade fade = new Crossfade(time, time, gains);
+        fade.start(FadeCurve.EQUAL_POWER, 1000);
+        time.step(0);
+        fade.finish();
+        assertTrue(gains.finished);
+        assertNull(time.posted);
+        assertEquals(1f, gains.steps.get(gains.steps.size() - 1)[1], 1e-6f);
+
+        gains.finished = false;
+        fade.start(FadeCurve.EQUAL_POWER, 1000);
+        int steps = gains.steps.size();
+        fade.abort();
+        assertFalse(fade.isRunning());
+        assertNull(time.posted);
+        assertFalse(gains.finished);
+        assertEquals(steps, gains.steps.size());
+    }
+
+    @Test
+    public void testZeroLengthFadeFinishesAtOnce() {
+        FakeTime time = new FakeTime();
+        Gains gains = new Gains(time);
+        new Crossfade(time, time, gains).start(FadeCurve.EQUAL_POWER, 0);
+        assertTrue(gains.finished);
+        assertNull(time.posted);
+    }
+
+    @Test
+    public void testStepsDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+        FakeTime time = new FakeTime();
+        Crossfade.Target sink = new Crossfade.Target() {
+            float sum;
+
+            @Override
+            public void setGains(float out, float in) {
+                sum += out + in;
+            }
+
+            @Override
+            public void onFadeFinished() {
+            }
+        };
+        Crossfade fade = new Crossfade(time, time, sink);
+        fade.start(FadeCurve.EQUAL_POWER, Crossfade.MAX_FADE_MS);
+        for (int i = 0; i < 100; i++) time.step(0); // Warm up
+        threads.getThreadAllocatedBytes(thread);
+        long before = threads.getThreadAllocatedBytes(thread);
+        int steps = 0;
+        while (time.step(0)) steps++;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(steps > 1000);
+        assertTrue("allocated " + allocated + " bytes over " + steps + " steps", allocated < 1024);
+    }
+}
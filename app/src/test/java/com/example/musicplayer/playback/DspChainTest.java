@@ -0,0 +1,193 @@
+package com.example.musicplayer.playback;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class DspChainTest {
+    private static final int RATE = 48000;
+
+    @Test
+    public void testFlatLeavesSamplesUntouched() {
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 2);
+        float[] samples = sine(1000, 0.9, 4800, 2);
+        float[] copy = samples.clone();
+        dsp.process(samples, 0, 4800);
+        assertArrayEquals(copy, samples, 0f);
+    }
+
+    @Test
+    public void testPeakingBandBoostsOnlyAroundItsFrequency() {
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 2);
+        dsp.setSettings(new DspChain.Settings(-12f, Collections.singletonList(
+                new DspChain.Band(DspChain.FilterType.PEAKING, 1000, 6f, 1f)), 0f));
+
+        // Pre-gain -12 dB, +6 dB at the centre: -6 dB overall
+        assertEquals(-6, gainDb(dsp, 1000), 0.1);
+        // Far from the band only the pre-gain is left
+        assertEquals(-12, gainDb(dsp, 50), 0.2);
+        assertEquals(-12, gainDb(dsp, 15000), 0.2);
+    }
+
+    @Test
+    public void testShelvesAndPassFilters() {
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 1);
+        dsp.setSettings(new DspChain.Settings(-10f, Arrays.asList(
+                new DspChain.Band(DspChain.FilterType.LOW_SHELF, 200, 4f, 0.707f),
+                new DspChain.Band(DspChain.FilterType.HIGH_SHELF, 6000, -3f, 0.707f),
+                new DspChain.Band(DspChain.FilterType.HIGH_PASS, 20, 0f, 0.707f),
+                new DspChain.Band(DspChain.FilterType.LOW_PASS, 18000, 0f, 0.707f)), 0f));
+        assertEquals(-6, gainDb(dsp, 60), 0.3);
+        assertEquals(-10, gainDb(dsp, 1500), 0.3);
+        assertEquals(-13, gainDb(dsp, 12000), 0.3);
+    }
+
+    @Test
+    public void testLimiterHoldsTheCeiling() {
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 2);
+        dsp.setSettings(new DspChain.Settings(12f, Collections.<DspChain.Band>emptyList(), -1f));
+        float[] samples = sine(100, 0.9, RATE, 2);
+        dsp.process(samples, 0, RATE);
+        float ceiling = (float) Math.pow(10, -1 / 20.0);
+        float peak = 0;
+        for (float sample : samples) peak = Math.max(peak, Math.abs(sample));
+        assertTrue("peak " + peak, peak <= ceiling + 1e-6f);
+        assertTrue("peak " + peak, peak > ceiling * 0.9f);
+    }
+
+    @Test
+    public void testReEnablingAfterFlatStartsClean() {
+        DspChain.Settings eq = new DspChain.Settings(12f, Collections.singletonList(
+                new DspChain.Band(DspChain.FilterType.PEAKING, 100, 6f, 1f)), -1f);
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 2);
+        dsp.setSettings(eq);
+        // Loud enough that the limiter is still holding the gain down when the EQ is switched off
+        dsp.process(sine(100, 0.9, RATE / 10, 2), 0, RATE / 10);
+        dsp.setSettings(DspChain.Settings.FLAT);
+        float[] bypassed = sine(440, 0.1, RATE / 10, 2);
+        dsp.process(bypassed, 0, RATE / 10);
+        dsp.setSettings(eq);
+        float[] after = sine(440, 0.1, 480, 2);
+        dsp.process(after, 0, 480);
+
+        // Exactly what a chain that never saw the earlier audio makes of it
+        DspChain fresh = new DspChain();
+        fresh.configure(RATE, 2);
+        fresh.setSettings(eq);
+        float[] expected = sine(440, 0.1, 480, 2);
+        fresh.process(expected, 0, 480);
+        assertArrayEquals(expected, after, 0f);
+    }
+
+    @Test
+    public void testPcm16InPlaceAndClamped() {
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 2);
+        dsp.setSettings(new DspChain.Settings(-6.0206f, Collections.<DspChain.Band>emptyList(), 0f));
+        ByteBuffer pcm = ByteBuffer.allocateDirect(16).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putShort((short) 1000).putShort((short) -1000).putShort(Short.MAX_VALUE).putShort(Short.MIN_VALUE);
+        pcm.putShort((short) 7).putShort((short) 7).putShort((short) 7).putShort((short) 7);
+        pcm.order(ByteOrder.BIG_ENDIAN);
+        // Only the first two frames are handed over
+        dsp.processorFor(16, false).process(pcm, 0, 8);
+        assertEquals(ByteOrder.BIG_ENDIAN, pcm.order());
+        pcm.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(500, pcm.getShort(0));
+        assertEquals(-500, pcm.getShort(2));
+        assertEquals(16384, pcm.getShort(4));
+        assertEquals(-16384, pcm.getShort(6));
+        assertEquals(7, pcm.getShort(8));
+
+        short[] loud = {Short.MAX_VALUE, Short.MIN_VALUE};
+        dsp.setSettings(new DspChain.Settings(6f, Collections.<DspChain.Band>emptyList(), 0f));
+        dsp.process(loud, 0, 1);
+        assertEquals(Short.MAX_VALUE, loud[0]);
+        assertEquals(Short.MIN_VALUE, loud[1]);
+        assertNull(dsp.processorFor(8, false));
+    }
+
+    @Test
+    public void testSettingsFromAnotherThreadTakeEffectOnTheNextBuffer() throws Exception {
+        final DspChain dsp = new DspChain();
+        dsp.configure(RATE, 1);
+        Thread ui = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dsp.setSettings(new DspChain.Settings(-20f, Collections.<DspChain.Band>emptyList(), 0f));
+            }
+        });
+        ui.start();
+        ui.join();
+        float[] samples = {0.5f};
+        dsp.process(samples, 0, 1);
+        assertEquals(0.05f, samples[0], 1e-6f);
+    }
+
+    @Test
+    public void testProcessingAllocatesNothing() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return;
+
+        DspChain dsp = new DspChain();
+        dsp.configure(RATE, 2);
+        DspChain.Band[] bands = new DspChain.Band[10];
+        for (int i = 0; i < bands.length; i++) {
+            bands[i] = new DspChain.Band(DspChain.FilterType.PEAKING, 31.25f * (1 << i), i % 2 == 0 ? 3f : -3f, 1.4f);
+        }
+        DspChain.Settings eq = new DspChain.Settings(-3f, Arrays.asList(bands), -0.5f);
+        DspChain.Settings other = new DspChain.Settings(-4f, Arrays.asList(bands), -0.5f);
+        ByteBuffer pcm = ByteBuffer.allocateDirect(960 * 4);
+        float[] samples = sine(440, 0.5, 960, 2);
+        dsp.setSettings(eq);
+        for (int i = 0; i < 200; i++) {
+            dsp.processPcm16(pcm, 0, pcm.capacity());
+            dsp.process(samples, 0, 960);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            // Settings built elsewhere are swapped in without a cost on this thread
+            if (i % 100 == 0) dsp.setSettings(i % 200 == 0 ? other : eq);
+            dsp.processPcm16(pcm, 0, pcm.capacity());
+            dsp.process(samples, 0, 960);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    // Steady-state gain at hz, measured on the second half of a 200 ms mono sine
+    private static double gainDb(DspChain dsp, double hz) {
+        int frames = RATE / 5;
+        float[] input = sine(hz, 0.25, frames, 1);
+        float[] output = input.clone();
+        dsp.configure(RATE, 1);
+        dsp.process(output, 0, frames);
+        return 20 * Math.log10(rms(output, frames / 2) / rms(input, frames / 2));
+    }
+
+    private static double rms(float[] samples, int from) {
+        double sum = 0;
+        for (int i = from; i < samples.length; i++) sum += samples[i] * samples[i];
+        return Math.sqrt(sum / (samples.length - from));
+    }
+
+    private static float[] sine(double hz, double amplitude, int frames, int channels) {
+        float[] samples = new float[frames * channels];
+        for (int i = 0; i < frames; i++) {
+            for (int c = 0; c < channels; c++) {
+                samples[i * channels + c] = (float) (amplitude * Math.sin(2 * Math.PI * hz * i / RATE));
+            }
+        }
+        return samples;
+    }
+}
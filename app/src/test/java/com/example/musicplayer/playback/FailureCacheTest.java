@@ -0,0 +1,132 @@
+package com.example.musicplayer.playback;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FailureCacheTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("failures", ".cache");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        FailureCache cache = new FailureCache(file);
+        cache.load();
+        cache.put("broken.mp3", 1234, 56);
+        assertTrue(cache.isDirty());
+        cache.save();
+        assertFalse(cache.isDirty());
+
+        FailureCache loaded = new FailureCache(file);
+        loaded.load();
+        assertEquals(1, loaded.size());
+        assertTrue(loaded.contains("broken.mp3", 1234, 56));
+        assertFalse(loaded.contains("other.mp3", 1234, 56));
+    }
+
+    @Test
+    public void testChangedFileGetsAnotherChance() throws Exception {
+        FailureCache cache = new FailureCache(file);
+        cache.put("broken.mp3", 1234, 56);
+        cache.save();
+
+        assertFalse(cache.contains("broken.mp3", 4321, 56));
+        // The stale entry is gone, even for the old identity
+        assertFalse(cache.contains("broken.mp3", 1234, 56));
+        assertEquals(0, cache.size());
+        assertTrue(cache.isDirty());
+    }
+
+    @Test
+    public void testContainsByName() throws Exception {
+        FailureCache cache = new FailureCache(file);
+        cache.put("broken.mp3", 1234, 56);
+        assertTrue(cache.contains("broken.mp3"));
+        assertFalse(cache.contains("other.mp3"));
+
+        // Opening a changed file drops the entry, after which the name is clear as well
+        assertFalse(cache.contains("broken.mp3", 4321, 56));
+        assertFalse(cache.contains("broken.mp3"));
+    }
+
+    @Test
+    public void testLoadKeepsFailuresRecordedMeanwhile() throws Exception {
+        FailureCache earlier = new FailureCache(file);
+        earlier.put("old.mp3", 1, 2);
+        earlier.put("both.mp3", 3, 4);
+        earlier.save();
+
+        // The engine can record a failure before the cache has been read from disk
+        FailureCache cache = new FailureCache(file);
+        cache.put("new.mp3", 5, 6);
+        cache.put("both.mp3", 7, 8);
+        cache.load();
+        assertEquals(3, cache.size());
+        assertTrue(cache.contains("old.mp3", 1, 2));
+        assertTrue(cache.contains("new.mp3", 5, 6));
+        assertTrue(cache.contains("both.mp3", 7, 8));
+        assertTrue(cache.isDirty());
+    }
+
+    @Test
+    public void testFailedSaveStaysDirty() throws Exception {
+        File dir = new File(file.getPath() + ".dir");
+        File inDir = new File(dir, "failures");
+        FailureCache cache = new FailureCache(inDir);
+        cache.put("broken.mp3", 1234, 56);
+        try {
+            cache.save();
+            fail("Saved into a missing directory");
+        } catch (IOException expected) {
+            // The directory does not exist yet
+        }
+        assertTrue(cache.isDirty());
+
+        assertTrue(dir.mkdir());
+        try {
+            cache.save();
+            assertFalse(cache.isDirty());
+            FailureCache loaded = new FailureCache(inDir);
+            loaded.load();
+            assertTrue(loaded.contains("broken.mp3", 1234, 56));
+        } finally {
+            inDir.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFileLoadsEmpty() throws Exception {
+        FailureCache cache = new FailureCache(file);
+        cache.load();
+        assertEquals(0, cache.size());
+        assertFalse(cache.isDirty());
+    }
+
+    @Test
+    public void testGarbageFileLoadsEmpty() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+        out.close();
+
+        FailureCache cache = new FailureCache(file);
+        cache.load();
+        assertEquals(0, cache.size());
+        assertTrue(cache.isDirty());
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.musicplayer.playback;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FailureSkipperTest {
+    // A player that fails tracks in broken from inside play(), as an engine that fails fast would
+    private static class Harness implements PlaybackQueue.Tracks, FailureSkipper.Player, FailureSkipper.Listener {
+        final int size;
+        final Set<Integer> broken = new HashSet<>();
+        final List<Integer> played = new ArrayList<>();
+        long now;
+        int gaveUp = -1;
+        int depth;
+        int maxDepth;
+        PlaybackQueue queue;
+        FailureSkipper skipper;
+
+        Harness(int size) {
+            this.size = size;
+            queue = new PlaybackQueue(this, new Random(1));
+            skipper = new FailureSkipper(queue, this, new PlaybackClock.TimeSource() {
+                @Override
+                public long now() {
+                    return now;
+                }
+            }, this);
+        }
+
+        // The user picks the track at position
+        void start(int position) {
+            skipper.reset();
+            play(queue.jumpTo(position));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int trackIdAt(int position) {
+            return position;
+        }
+
+        @Override
+        public int positionOf(int trackId) {
+            return trackId;
+        }
+
+        @Override
+        public boolean isPlayable(int trackId) {
+            return skipper.isPlayable(trackId);
+        }
+
+        @Override
+        public void play(int position) {
+            played.add(position);
+            now += 2;
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+            try {
+                if (broken.contains(position)) {
+                    skipper.onFailed(position);
+                } else {
+                    skipper.onStarted(position);
+                }
+            } finally {
+                depth--;
+            }
+        }
+
+        @Override
+        public void onGaveUp(int failuresInRow) {
+            gaveUp = failuresInRow;
+        }
+    }
+
+    @Test
+    public void testSkipsToTheNextPlayableTrack() {
+        Harness h = new Harness(10);
+        h.broken.add(3);
+        h.broken.add(4);
+        h.start(3);
+
+        assertEquals(5, h.played.get(h.played.size() - 1).intValue());
+        assertEquals(5, h.queue.current());
+        assertEquals(2, h.skipper.getFailureCount());
+        assertEquals(2, h.skipper.getSkipCount());
+        assertEquals(-1, h.gaveUp);
+        // First failure at 2 ms, track 5 started at 6 ms
+        assertEquals(4, h.skipper.getLastSkipLatencyMs());
+    }
+
+    @Test
+    public void testFailedTracksAreSteppedOverLater() {
+        Harness h = new Harness(10);
+        h.broken.add(4);
+        h.start(4);
+        assertEquals(5, h.queue.current());
+
+        h.broken.clear();
+        h.start(2);
+        h.queue.next();
+        assertEquals(3, h.queue.current());
+        assertEquals(5, h.queue.next());
+        assertEquals(1, h.skipper.getFailedTrackCount());
+    }
+
+    @Test
+    public void testLargeLibraryOfBrokenTracksNeitherRecursesNorLoops() {
+        int size = 100_000;
+        Harness h = new Harness(size);
+        for (int i = 0; i < size; i++) h.broken.add(i);
+        h.start(0);
+
+        assertEquals(size, h.played.size());
+        // The user's play plus the skipper's loop, however many tracks fail
+        assertEquals(2, h.maxDepth);
+        assertEquals(size, h.gaveUp);
+        assertEquals(size, h.skipper.getFailedTrackCount());
+        assertEquals(size - 1, h.skipper.getSkipCount());
+    }
+
+    @Test
+    public void testGivesUpOnceAPassHasFailed() {
+        Harness h = new Harness(5);
+        for (int i = 0; i < 5; i++) h.broken.add(i);
+        h.start(2);
+
+        assertEquals(5, h.gaveUp);
+        assertEquals(5, h.played.size());
+        // Tracks are not retried within the run
+        assertEquals(5, new HashSet<>(h.played).size());
+    }
+
+    @Test
+    public void testStartingATrackEndsTheRun() {
+        Harness h = new Harness(6);
+        h.broken.add(0);
+        h.start(0);
+        assertEquals(1, h.queue.current());
+        assertEquals(2, h.skipper.getLastSkipLatencyMs());
+
+        h.broken.add(2);
+        h.broken.add(3);
+        h.play(h.queue.next());
+        assertEquals(4, h.queue.current());
+        assertEquals(4, h.skipper.getLastSkipLatencyMs());
+        assertEquals(4, h.skipper.getMaxSkipLatencyMs());
+        assertEquals(-1, h.gaveUp);
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.musicplayer.playback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FrameTickerTest {
+    // Display frames the test runs by hand; every posted callback stays pending until run or removed
+    private static class FakeDisplay implements PlaybackClock.TimeSource, Executor, FrameTicker.FrameScheduler {
+        long now = 1000;
+        final List<Runnable> pending = new ArrayList<>();
+        final List<Runnable> queued = new ArrayList<>();
+        int maxPending;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void execute(Runnable r) {
+            queued.add(r);
+        }
+
+        @Override
+        public void postFrame(Runnable frame) {
+            pending.add(frame);
+            maxPending = Math.max(maxPending, pending.size());
+        }
+
+        @Override
+        public void removeFrame(Runnable frame) {
+            pending.remove(frame);
+        }
+
+        void runQueued() {
+            while (!queued.isEmpty()) queued.remove(0).run();
+        }
+
+        // Advances a 60 Hz frame and runs the callbacks that were due
+        void frame() {
+            now += 16;
+            List<Runnable> due = new ArrayList<>(pending);
+            pending.clear();
+            for (Runnable r : due) r.run();
+        }
+    }
+
+    private static class Screen implements FrameTicker.Renderer {
+        int renders;
+        int position = -1;
+        int duration = -1;
+
+        @Override
+        public void render(int positionMs, int durationMs) {
+            renders++;
+            position = positionMs;
+            duration = durationMs;
+        }
+    }
+
+    @Test
+    public void testDrawsEveryFrameWhilePlaying() {
+        FakeDisplay display = new FakeDisplay();
+        PlaybackClock clock = new PlaybackClock(display, display);
+        Screen screen = new Screen();
+        FrameTicker ticker = new FrameTicker(clock, display, screen);
+        clock.publish(3, 200_000, 10_000, true);
+        ticker.setVisible(true);
+        assertEquals(10_000, screen.position);
+        assertEquals(200_000, screen.duration);
+
+        for (int i = 0; i < 60; i++) display.frame();
+        assertEquals(10_000 + 60 * 16, screen.position);
+        assertEquals(61, screen.renders);
+        assertEquals(1, display.pending.size());
+    }
+
+    @Test
+    public void testNoDuplicateTickChains() {
+        FakeDisplay display = new FakeDisplay();
+        PlaybackClock clock = new PlaybackClock(display, display);
+        FrameTicker ticker = new FrameTicker(clock, display, new Screen());
+        clock.publish(3, 200_000, 0, true);
+
+        // Every way of (re)starting the ticker, over and over, in between frames
+        for (int i = 0; i < 50; i++) {
+            ticker.setVisible(true);
+            clock.publish(3, 200_000, i * 16, true);
+            display.runQueued();
+            ticker.onAnchorChanged(clock.anchor());
+            if (i % 7 == 0) {
+                ticker.setVisible(false);
+                ticker.setVisible(true);
+            }
+            if (i % 3 == 0) display.frame();
+        }
+        assertEquals(1, display.maxPending);
+        assertTrue(ticker.isScheduled());
+    }
+
+    @Test
+    public void testStopsWhenPaused() {
+        FakeDisplay display = new FakeDisplay();
+        PlaybackClock clock = new PlaybackClock(display, display);
+        Screen screen = new Screen();
+        FrameTicker ticker = new FrameTicker(clock, display, screen);
+        ticker.setVisible(true);
+        clock.publish(3, 200_000, 0, true);
+        display.runQueued();
+        display.frame();
+
+        clock.publish(3, 200_000, 16, false);
+        display.runQueued();
+        assertTrue(display.pending.isEmpty());
+        assertFalse(ticker.isScheduled());
+        assertEquals(16, screen.position);
+
+        int renders = screen.renders;
+        display.frame();
+        assertEquals(renders, screen.renders);
+    }
+
+    @Test
+    public void testStopsAndUnobservesWhenHidden() {
+        FakeDisplay display = new FakeDisplay();
+        PlaybackClock clock = new PlaybackClock(display, display);
+        Screen screen = new Screen();
+        FrameTicker ticker = new FrameTicker(clock, display, screen);
+        clock.publish(3, 200_000, 0, true);
+        ticker.setVisible(true);
+        assertTrue(clock.isObserved());
+
+        ticker.setVisible(false);
+        assertTrue(display.pending.isEmpty());
+        assertFalse(clock.isObserved());
+
+        // A hidden screen hears nothing and draws nothing
+        int renders = screen.renders;
+        clock.publish(3, 200_000, 5000, true);
+        assertTrue(display.queued.isEmpty());
+        display.frame();
+        assertEquals(renders, screen.renders);
+
+        // Shown again, it starts from the latest anchor, one frame on
+        ticker.setVisible(true);
+        assertEquals(5016, screen.position);
+        assertEquals(1, display.pending.size());
+    }
+
+    @Test
+    public void testPausedScreenDrawsOnceAndWaits() {
+        FakeDisplay display = new FakeDisplay();
+        PlaybackClock clock = new PlaybackClock(display, display);
+        Screen screen = new Screen();
+        FrameTicker ticker = new FrameTicker(clock, display, screen);
+        clock.publish(3, 200_000, 42_000, false);
+        ticker.setVisible(true);
+        assertEquals(1, screen.renders);
+        assertEquals(42_000, screen.position);
+        assertTrue(display.pending.isEmpty());
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.musicplayer.playback;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PcmStreamerTest {
+    // Records what reaches it in a preallocated array; takes at most room bytes per write, and
+    // plays instantly unless told how far it got
+    private static class FakeSink implements PcmSink {
+        final byte[] received = new byte[1 << 20];
+        int receivedLength;
+        int room = Integer.MAX_VALUE;
+        int writes;
+        int flushes;
+        boolean playing;
+        boolean stopped;
+        long played = -1; // -1 plays everything written
+        long writtenFrames;
+        final int frameSize;
+
+        FakeSink(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
+        @Override
+        public int write(ByteBuffer buffer, int size) {
+            int n = Math.min(size, room);
+            n -= n % frameSize;
+            buffer.get(received, receivedLength, n);
+            receivedLength += n;
+            writtenFrames += n / frameSize;
+            writes++;
+            return n;
+        }
+
+        @Override
+        public void play() {
+            playing = true;
+            stopped = false;
+        }
+
+        @Override
+        public void pause() {
+            playing = false;
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+            writtenFrames = 0;
+            receivedLength = 0;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+
+        @Override
+        public long framesPlayed() {
+            return played < 0 ? writtenFrames : played;
+        }
+    }
+
+    // 16-bit stereo at 48 kHz where every byte holds its own offset
+    private static ByteBuffer data(int frames) {
+        ByteBuffer data = ByteBuffer.allocate(frames * 4);
+        for (int i = 0; i < data.capacity(); i++) data.put(i, (byte) i);
+        return data;
+    }
+
+    private static void assertReceivedFrom(FakeSink sink, int offset) {
+        for (int i = 0; i < sink.receivedLength; i++) {
+            assertEquals("byte " + i, (byte) (offset + i), sink.received[i]);
+        }
+    }
+
+    @Test
+    public void testStreamsAllDataInOrderThroughTheRing() throws Exception {
+        // More data than the ring holds, in chunks that do not divide it evenly
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(1000), data(10_000), 4, 48000, 300);
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.play();
+        while (streamer.pump() != PcmStreamer.END) {
+        }
+
+        assertEquals(40_000, sink.receivedLength);
+        assertReceivedFrom(sink, 0);
+        assertTrue(sink.stopped);
+        assertTrue(streamer.isDrained());
+        assertEquals(10_000, streamer.positionFrame());
+    }
+
+    @Test
+    public void testShortWritesKeepTheRestInTheRing() throws Exception {
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(1024), data(1000), 4, 48000, 512);
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.play();
+        sink.room = 100;
+        assertEquals(100, streamer.pump());
+        sink.room = Integer.MAX_VALUE;
+        while (streamer.pump() != PcmStreamer.END) {
+        }
+        assertEquals(4000, sink.receivedLength);
+        assertReceivedFrom(sink, 0);
+    }
+
+    @Test
+    public void testProcessorSeesEachFrameOnce() throws Exception {
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(1000), data(10_000), 4, 48000, 300);
+        FakeSink sink = new FakeSink(4);
+        streamer.setProcessor(new PcmProcessor() {
+            @Override
+            public void process(ByteBuffer buffer, int position, int size) {
+                assertEquals(0, size % 4);
+                for (int i = position; i < position + size; i++) buffer.put(i, (byte) (buffer.get(i) + 1));
+            }
+        });
+        streamer.attach(sink);
+        streamer.play();
+        // Short writes leave processed frames behind in the ring
+        sink.room = 100;
+        while (streamer.pump() != PcmStreamer.END) {
+        }
+        assertEquals(40_000, sink.receivedLength);
+        assertReceivedFrom(sink, 1);
+    }
+
+    @Test
+    public void testSeekIsSampleAccurate() throws Exception {
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(4096), data(48_000), 4, 48000, 1024);
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.play();
+        streamer.pump();
+
+        streamer.seekToFrame(12_345);
+        assertEquals(12_345, streamer.positionFrame());
+        assertTrue(sink.playing);
+        streamer.pump();
+        // The first byte written after the seek is the first byte of frame 12345
+        assertReceivedFrom(sink, 12_345 * 4);
+
+        // 250 ms at 48 kHz is frame 12000 exactly
+        streamer.seekToMs(250);
+        assertEquals(12_000, streamer.positionFrame());
+        assertEquals(250, streamer.positionMs());
+        streamer.pump();
+        assertReceivedFrom(sink, 12_000 * 4);
+        assertEquals(1000, streamer.durationMs());
+    }
+
+    @Test
+    public void testPositionFollowsWhatTheSinkPlayed() throws Exception {
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(4096), data(48_000), 4, 48000, 1024);
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.seekToFrame(4800);
+        streamer.play();
+        streamer.pump();
+        sink.played = 100;
+        assertEquals(4900, streamer.positionFrame());
+        // Frames the sink claims beyond what it was given are not counted
+        sink.played = 1_000_000;
+        assertEquals(4800 + 256, streamer.positionFrame());
+    }
+
+    @Test
+    public void testNotDrainedUntilTheSinkHasPlayedTheEnd() throws Exception {
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(4096), data(100), 4, 48000, 1024);
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.play();
+        sink.played = 0;
+        assertEquals(400, streamer.pump());
+        assertFalse(streamer.isDrained());
+        assertEquals(PcmStreamer.END, streamer.pump());
+        assertFalse(streamer.isDrained());
+        sink.played = 100;
+        assertTrue(streamer.isDrained());
+
+        // Seeking back after the end plays again
+        streamer.seekToFrame(50);
+        assertFalse(streamer.isDrained());
+        assertEquals(200, streamer.pump());
+    }
+
+    @Test
+    public void testPartialTrailingFrameIsDropped() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(4 * 10 + 3);
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(4096), data, 4, 48000, 1024);
+        assertEquals(10, streamer.durationFrames());
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.play();
+        while (streamer.pump() != PcmStreamer.END) {
+        }
+        assertEquals(40, sink.receivedLength);
+    }
+
+    @Test
+    public void testPumpingAllocatesNothing() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) return;
+
+        PcmStreamer streamer = new PcmStreamer(ByteBuffer.allocateDirect(4096), data(200_000), 4, 48000, 960);
+        FakeSink sink = new FakeSink(4);
+        streamer.attach(sink);
+        streamer.play();
+        // Warm up, then measure many writes
+        for (int i = 0; i < 100; i++) {
+            streamer.pump();
+            sink.flush();
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int writes = 0;
+        while (streamer.pump() != PcmStreamer.END) {
+            sink.flush();
+            writes++;
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(writes > 500);
+        // Nothing per write; the measurement itself may cost a little
+        assertTrue("allocated " + allocated + " bytes over " + writes + " writes", allocated < 1024);
+    }
+}
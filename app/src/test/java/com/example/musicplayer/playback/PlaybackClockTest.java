@@ -0,0 +1,115 @@
+package com.example.musicplayer.playback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PlaybackClockTest {
+    // Time moved by hand, and a main thread that only runs what it was handed when told to
+    private static class FakeMain implements PlaybackClock.TimeSource, Executor {
+        long now = 1000;
+        final List<Runnable> queued = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void execute(Runnable r) {
+            queued.add(r);
+        }
+
+        void runAll() {
+            while (!queued.isEmpty()) queued.remove(0).run();
+        }
+    }
+
+    private static class Recorder implements PlaybackClock.Listener {
+        final List<PlaybackClock.Anchor> anchors = new ArrayList<>();
+
+        @Override
+        public void onAnchorChanged(PlaybackClock.Anchor anchor) {
+            anchors.add(anchor);
+        }
+    }
+
+    @Test
+    public void testInterpolatesFromAnchor() {
+        FakeMain main = new FakeMain();
+        PlaybackClock clock = new PlaybackClock(main, main);
+        clock.publish(7, 60_000, 5000, true);
+        main.now += 1234;
+        assertEquals(6234, clock.position());
+
+        clock.publish(7, 60_000, clock.position(), false);
+        main.now += 5000;
+        assertEquals(6234, clock.position());
+    }
+
+    @Test
+    public void testPositionStopsAtEndOfTrack() {
+        FakeMain main = new FakeMain();
+        PlaybackClock clock = new PlaybackClock(main, main);
+        clock.publish(7, 60_000, 59_000, true);
+        main.now += 10_000;
+        assertEquals(60_000, clock.position());
+    }
+
+    @Test
+    public void testUnobservedClockNotifiesNobody() {
+        FakeMain main = new FakeMain();
+        PlaybackClock clock = new PlaybackClock(main, main);
+        clock.publish(7, 60_000, 0, true);
+        assertTrue(main.queued.isEmpty());
+        assertEquals(7, clock.anchor().trackId);
+    }
+
+    @Test
+    public void testBurstOfAnchorsNotifiesOnce() {
+        FakeMain main = new FakeMain();
+        PlaybackClock clock = new PlaybackClock(main, main);
+        Recorder recorder = new Recorder();
+        clock.addListener(recorder);
+        assertEquals(1, recorder.anchors.size());
+
+        for (int i = 0; i < 10; i++) clock.publish(7, 60_000, i * 100, true);
+        assertEquals(1, main.queued.size());
+        main.runAll();
+        assertEquals(2, recorder.anchors.size());
+        assertEquals(900, recorder.anchors.get(1).positionMs);
+
+        clock.publish(7, 60_000, 1000, false);
+        main.runAll();
+        assertEquals(3, recorder.anchors.size());
+    }
+
+    @Test
+    public void testOnObservedRunsOnFirstListenerOnly() {
+        FakeMain main = new FakeMain();
+        PlaybackClock clock = new PlaybackClock(main, main);
+        final int[] observed = new int[1];
+        clock.setOnObserved(new Runnable() {
+            @Override
+            public void run() {
+                observed[0]++;
+            }
+        });
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        clock.addListener(first);
+        clock.addListener(second);
+        clock.addListener(first);
+        assertEquals(1, observed[0]);
+        assertEquals(1, first.anchors.size());
+
+        clock.removeListener(first);
+        assertTrue(clock.isObserved());
+        clock.removeListener(second);
+        assertFalse(clock.isObserved());
+        clock.addListener(first);
+        assertEquals(2, observed[0]);
+    }
+}
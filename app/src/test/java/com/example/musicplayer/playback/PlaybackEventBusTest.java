@@ -0,0 +1,211 @@
+package com.example.musicplayer.playback;
+
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PlaybackEventBusTest {
+    // A thread that only runs what it was handed when the test says so
+    private static class ManualExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable r) {
+            queued.add(r);
+        }
+
+        void runAll() {
+            while (!queued.isEmpty()) queued.remove(0).run();
+        }
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            r.run();
+        }
+    };
+
+    private static class Recorder implements PlaybackEventBus.ProgressListener {
+        final List<String> heard = new ArrayList<>();
+
+        @Override
+        public void onPlaybackStateChanged(boolean isPlaying) {
+            heard.add(isPlaying ? "playing" : "paused");
+        }
+
+        @Override
+        public void onSongChanged(int songIndex) {
+            heard.add("song " + songIndex);
+        }
+
+        @Override
+        public void onProgress(PlaybackClock.Anchor anchor) {
+            heard.add("at " + anchor.positionMs);
+        }
+    }
+
+    // Hears state and songs only
+    private static class StateRecorder implements PlaybackEventBus.Listener {
+        final List<String> heard = new ArrayList<>();
+
+        @Override
+        public void onPlaybackStateChanged(boolean isPlaying) {
+            heard.add(isPlaying ? "playing" : "paused");
+        }
+
+        @Override
+        public void onSongChanged(int songIndex) {
+            heard.add("song " + songIndex);
+        }
+    }
+
+    private static class FakeLifecycle extends Lifecycle implements LifecycleOwner {
+        State state = State.RESUMED;
+        final List<LifecycleObserver> observers = new ArrayList<>();
+
+        @Override
+        public void addObserver(LifecycleObserver o) {
+            observers.add(o);
+        }
+
+        @Override
+        public void removeObserver(LifecycleObserver o) {
+            observers.remove(o);
+        }
+
+        @Override
+        public State getCurrentState() {
+            return state;
+        }
+
+        @Override
+        public Lifecycle getLifecycle() {
+            return this;
+        }
+
+        void destroy() {
+            state = State.DESTROYED;
+            for (LifecycleObserver o : new ArrayList<>(observers)) {
+                ((LifecycleEventObserver) o).onStateChanged(this, Event.ON_DESTROY);
+            }
+        }
+    }
+
+    private static PlaybackClock.Anchor anchorAt(int positionMs) {
+        return new PlaybackClock.Anchor(1, 60_000, positionMs, 0, 1f);
+    }
+
+    @Test
+    public void testEverySubscriberHearsEventsInOrder() {
+        PlaybackEventBus bus = new PlaybackEventBus(null);
+        Recorder first = new Recorder();
+        StateRecorder second = new StateRecorder();
+        ManualExecutor secondThread = new ManualExecutor();
+        bus.subscribe(first, DIRECT);
+        bus.subscribe(second, secondThread);
+
+        bus.postSongChanged(3);
+        bus.postStateChanged(true);
+        bus.postSongChanged(4);
+        assertEquals(List.of("song 3", "playing", "song 4"), first.heard);
+        assertTrue(second.heard.isEmpty());
+        secondThread.runAll();
+        assertEquals(List.of("song 3", "playing", "song 4"), second.heard);
+    }
+
+    @Test
+    public void testSlowSubscriberGetsOneDrainAndLatestProgress() {
+        PlaybackEventBus bus = new PlaybackEventBus(null);
+        Recorder slow = new Recorder();
+        ManualExecutor slowThread = new ManualExecutor();
+        bus.subscribe(slow, slowThread);
+
+        bus.postStateChanged(true);
+        for (int i = 0; i < 1000; i++) bus.postProgress(anchorAt(i));
+        assertEquals(1, slowThread.queued.size());
+        slowThread.runAll();
+        assertEquals(List.of("playing", "at 999"), slow.heard);
+    }
+
+    @Test
+    public void testProgressOnlyReachesProgressListeners() {
+        PlaybackEventBus bus = new PlaybackEventBus(null);
+        StateRecorder recorder = new StateRecorder();
+        ManualExecutor thread = new ManualExecutor();
+        bus.subscribe(recorder, thread);
+        bus.postProgress(anchorAt(10));
+        assertTrue(thread.queued.isEmpty());
+        assertFalse(bus.isProgressWatched());
+    }
+
+    @Test
+    public void testCancelledSubscriberHearsNothingQueued() {
+        PlaybackEventBus bus = new PlaybackEventBus(null);
+        Recorder recorder = new Recorder();
+        ManualExecutor thread = new ManualExecutor();
+        PlaybackEventBus.Subscription subscription = bus.subscribe(recorder, thread);
+        bus.postSongChanged(1);
+        bus.postProgress(anchorAt(5));
+
+        subscription.cancel();
+        thread.runAll();
+        bus.postSongChanged(2);
+        thread.runAll();
+        assertTrue(recorder.heard.isEmpty());
+        assertEquals(0, bus.subscriberCount());
+    }
+
+    @Test
+    public void testDestroyedOwnerIsNeverCalledBack() {
+        PlaybackEventBus bus = new PlaybackEventBus(null);
+        FakeLifecycle activity = new FakeLifecycle();
+        Recorder recorder = new Recorder();
+        ManualExecutor main = new ManualExecutor();
+        PlaybackEventBus.Subscription subscription = bus.subscribe(activity, recorder, main);
+        bus.postSongChanged(1);
+        main.runAll();
+        bus.postSongChanged(2);
+
+        activity.destroy();
+        main.runAll();
+        assertEquals(List.of("song 1"), recorder.heard);
+        assertFalse(subscription.isActive());
+        assertTrue(activity.observers.isEmpty());
+
+        PlaybackEventBus.Subscription late = bus.subscribe(activity, recorder, main);
+        assertFalse(late.isActive());
+        assertEquals(0, bus.subscriberCount());
+    }
+
+    @Test
+    public void testWatcherNudgedOnFirstAndLastProgressSubscriber() {
+        final int[] nudges = new int[1];
+        PlaybackEventBus bus = new PlaybackEventBus(new PlaybackEventBus.ProgressWatcher() {
+            @Override
+            public void onProgressWatchedChanged() {
+                nudges[0]++;
+            }
+        });
+        bus.subscribe(new StateRecorder(), DIRECT);
+        assertEquals(0, nudges[0]);
+
+        PlaybackEventBus.Subscription first = bus.subscribe(new Recorder(), DIRECT);
+        PlaybackEventBus.Subscription second = bus.subscribe(new Recorder(), DIRECT);
+        assertEquals(1, nudges[0]);
+        assertTrue(bus.isProgressWatched());
+
+        first.cancel();
+        first.cancel();
+        assertEquals(1, nudges[0]);
+        second.cancel();
+        assertEquals(2, nudges[0]);
+        assertFalse(bus.isProgressWatched());
+    }
+}
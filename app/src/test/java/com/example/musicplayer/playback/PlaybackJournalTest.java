@@ -0,0 +1,196 @@
+package com.example.musicplayer.playback;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PlaybackJournalTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("playback", ".journal");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(file);
+        journal.load();
+        journal.setTrack("周杰伦 - 晴天.mp3", 83_500);
+        journal.setPlaying(true);
+        journal.setModes(true, RepeatMode.ONE);
+        journal.setUpNext(Arrays.asList("a.mp3", "b.ogg"));
+        journal.flush();
+
+        PlaybackJournal.State state = new PlaybackJournal(file).load();
+        assertEquals("周杰伦 - 晴天.mp3", state.assetFileName);
+        assertEquals(83_500, state.positionMs);
+        assertTrue(state.playing);
+        assertTrue(state.shuffle);
+        assertEquals(RepeatMode.ONE, state.repeatMode);
+        assertEquals(Arrays.asList("a.mp3", "b.ogg"), state.upNext);
+    }
+
+    @Test
+    public void testMissingFileLoadsNothingPlaying() throws Exception {
+        PlaybackJournal.State state = new PlaybackJournal(file).load();
+        assertNull(state.assetFileName);
+        assertFalse(state.playing);
+        assertEquals(RepeatMode.ALL, state.repeatMode);
+        assertTrue(state.upNext.isEmpty());
+    }
+
+    @Test
+    public void testNothingIsWrittenUntilFlush() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(file);
+        journal.load();
+        for (int position = 0; position < 10_000; position += 250) {
+            journal.setTrack("a.mp3", position);
+        }
+        assertFalse(file.exists());
+        journal.flush();
+        long length = file.length();
+
+        // Unchanged values leave nothing to write
+        journal.setTrack("a.mp3", 9750);
+        journal.setUpNext(Collections.<String>emptyList());
+        assertFalse(journal.isDirty());
+        journal.flush();
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    public void testFlushAppendsOnlyChangedFields() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(file);
+        journal.load();
+        journal.setTrack("a.mp3", 0);
+        journal.setUpNext(Arrays.asList("b.mp3", "c.mp3", "d.mp3"));
+        journal.flush();
+        long length = file.length();
+
+        journal.setPosition(15_000);
+        journal.flush();
+        // One position record: type, length, int, checksum
+        assertEquals(length + 13, file.length());
+        assertEquals(15_000, new PlaybackJournal(file).load().positionMs);
+    }
+
+    @Test
+    public void testFailedFlushIsRetried() throws Exception {
+        File dir = new File(file.getPath() + ".dir");
+        File inDir = new File(dir, "journal");
+        PlaybackJournal journal = new PlaybackJournal(inDir);
+        journal.load();
+        journal.setTrack("a.mp3", 4_000);
+        try {
+            journal.flush();
+            fail("Wrote into a missing directory");
+        } catch (IOException expected) {
+            // The directory does not exist yet
+        }
+        assertTrue(journal.isDirty());
+
+        assertTrue(dir.mkdir());
+        try {
+            journal.flush();
+            assertFalse(journal.isDirty());
+            PlaybackJournal.State state = new PlaybackJournal(inDir).load();
+            assertEquals("a.mp3", state.assetFileName);
+            assertEquals(4_000, state.positionMs);
+        } finally {
+            inDir.delete();
+            new File(inDir.getPath() + ".tmp").delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testCompactsOnceRecordsPileUp() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(file);
+        journal.load();
+        journal.setTrack("a.mp3", 0);
+        journal.flush();
+        long snapshot = file.length();
+        for (int i = 1; i < 3000; i++) {
+            journal.setPosition(i * 1000);
+            journal.flush();
+            assertTrue(file.length() < snapshot + PlaybackJournal.COMPACT_BYTES + 64);
+        }
+        PlaybackJournal.State state = new PlaybackJournal(file).load();
+        assertEquals("a.mp3", state.assetFileName);
+        assertEquals(2_999_000, state.positionMs);
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(file);
+        journal.load();
+        journal.setTrack("a.mp3", 1000);
+        journal.flush();
+        journal.setTrack("b.mp3", 2000);
+        journal.flush();
+
+        // Power lost halfway through the last record
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 7);
+        raf.close();
+
+        PlaybackJournal reloaded = new PlaybackJournal(file);
+        PlaybackJournal.State state = reloaded.load();
+        assertEquals("b.mp3", state.assetFileName);
+        assertEquals(1000, state.positionMs);
+
+        // The next flush starts over from a clean snapshot
+        reloaded.setPosition(3000);
+        reloaded.flush();
+        state = new PlaybackJournal(file).load();
+        assertEquals("b.mp3", state.assetFileName);
+        assertEquals(3000, state.positionMs);
+    }
+
+    @Test
+    public void testCorruptRecordIsDropped() throws Exception {
+        PlaybackJournal journal = new PlaybackJournal(file);
+        journal.load();
+        journal.setTrack("a.mp3", 1000);
+        journal.flush();
+        long length = file.length();
+        journal.setPosition(2000);
+        journal.flush();
+
+        // Flip a bit in the new position
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(length + 5);
+        int b = raf.read();
+        raf.seek(length + 5);
+        raf.write(b ^ 1);
+        raf.close();
+
+        assertEquals(1000, new PlaybackJournal(file).load().positionMs);
+    }
+
+    @Test
+    public void testForeignFileLoadsNothingPlaying() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeInt(0x12345678);
+        raf.close();
+        PlaybackJournal journal = new PlaybackJournal(file);
+        assertNull(journal.load().assetFileName);
+        journal.setTrack("a.mp3", 0);
+        journal.flush();
+        assertEquals("a.mp3", new PlaybackJournal(file).load().assetFileName);
+    }
+}
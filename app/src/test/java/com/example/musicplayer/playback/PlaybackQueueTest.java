@@ -0,0 +1,285 @@
+package com.example.musicplayer.playback;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PlaybackQueueTest {
+    // A list of size tracks shown in order[]; ids are their original positions
+    private static class FakeTracks implements PlaybackQueue.Tracks {
+        int size;
+        int[] order;
+        int lookups;
+        final Set<Integer> broken = new HashSet<>();
+
+        FakeTracks(int size) {
+            this.size = size;
+            order = new int[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int trackIdAt(int position) {
+            return order[position];
+        }
+
+        @Override
+        public int positionOf(int trackId) {
+            lookups++;
+            for (int i = 0; i < size; i++) {
+                if (order[i] == trackId) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean isPlayable(int trackId) {
+            return !broken.contains(trackId);
+        }
+
+        void reverse() {
+            for (int i = 0; i < size / 2; i++) {
+                int t = order[i];
+                order[i] = order[size - 1 - i];
+                order[size - 1 - i] = t;
+            }
+        }
+    }
+
+    @Test
+    public void testPlaysInOrderAndWraps() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(3), new Random(1));
+        queue.jumpTo(1);
+        assertEquals(2, queue.next());
+        assertEquals(0, queue.next());
+        assertEquals(2, queue.previous());
+        assertEquals(1, queue.previous());
+    }
+
+    @Test
+    public void testRepeatOffStopsAtEnds() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(3), new Random(1));
+        queue.setRepeatMode(RepeatMode.OFF);
+        queue.jumpTo(2);
+        assertEquals(PlaybackQueue.NONE, queue.peekNext());
+        assertEquals(PlaybackQueue.NONE, queue.advance());
+        assertEquals(2, queue.current());
+        queue.jumpTo(0);
+        assertEquals(PlaybackQueue.NONE, queue.previous());
+    }
+
+    @Test
+    public void testRepeatOneReplaysOnlyWhenTrackEnds() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(5), new Random(1));
+        queue.setRepeatMode(RepeatMode.ONE);
+        queue.jumpTo(3);
+        assertEquals(3, queue.peekNext());
+        assertEquals(3, queue.advance());
+        assertEquals(3, queue.advance());
+        assertEquals(4, queue.next());
+    }
+
+    @Test
+    public void testUpNextPlaysBeforeTheList() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(10), new Random(1));
+        queue.jumpTo(0);
+        queue.append(7);
+        queue.append(8);
+        queue.playNext(5);
+        assertEquals(3, queue.upNextSize());
+        assertEquals(5, queue.next());
+        assertEquals(7, queue.next());
+        assertEquals(8, queue.next());
+        // Then on from wherever the list was left
+        assertEquals(9, queue.next());
+        assertEquals(0, queue.upNextSize());
+    }
+
+    @Test
+    public void testQueueChangedAfterPeekIsHonoured() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(10), new Random(1));
+        queue.jumpTo(0);
+        assertEquals(1, queue.peekNext());
+        queue.playNext(6);
+        assertEquals(6, queue.peekNext());
+        assertEquals(6, queue.advance());
+    }
+
+    @Test
+    public void testShufflePlaysEveryTrackOncePerCycle() {
+        FakeTracks tracks = new FakeTracks(500);
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(7));
+        queue.jumpTo(42);
+        queue.setShuffle(true);
+        Set<Integer> played = new HashSet<>();
+        played.add(42);
+        for (int i = 1; i < 500; i++) {
+            int position = queue.next();
+            assertTrue("replayed " + position, played.add(position));
+        }
+        // A new cycle, which does not start with the track just played
+        int last = queue.current();
+        assertNotEquals(last, queue.next());
+    }
+
+    @Test
+    public void testShuffleIsNotTheListOrder() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(1000), new Random(3));
+        queue.jumpTo(0);
+        queue.setShuffle(true);
+        int inOrder = 0;
+        int previous = 0;
+        for (int i = 0; i < 100; i++) {
+            int position = queue.next();
+            if (position == previous + 1) inOrder++;
+            previous = position;
+        }
+        assertTrue(inOrder < 5);
+    }
+
+    @Test
+    public void testPeekedDrawsThatAreDroppedStayInTheCycle() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(50), new Random(11));
+        queue.jumpTo(0);
+        queue.setShuffle(true);
+        Set<Integer> played = new HashSet<>();
+        played.add(0);
+        // Each track is peeked for preparing, then the user taps another one instead
+        for (int i = 0; i < 20; i++) {
+            int peeked = queue.peekNext();
+            int tapped = (peeked + 1) % 50;
+            if (played.contains(tapped)) continue;
+            queue.jumpTo(tapped);
+            played.add(tapped);
+        }
+        while (played.size() < 50) {
+            int position = queue.next();
+            assertTrue("replayed " + position, played.add(position));
+        }
+    }
+
+    @Test
+    public void testPreviousRetracesShuffleAndNextReplaysIt() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(100), new Random(5));
+        queue.jumpTo(10);
+        queue.setShuffle(true);
+        int a = queue.next();
+        int b = queue.next();
+        int c = queue.next();
+        assertEquals(b, queue.previous());
+        assertEquals(a, queue.previous());
+        assertEquals(10, queue.previous());
+        assertEquals(PlaybackQueue.NONE, queue.previous());
+        assertEquals(a, queue.next());
+        assertEquals(b, queue.next());
+        assertEquals(c, queue.next());
+    }
+
+    @Test
+    public void testTracksAreFollowedAcrossResorts() {
+        FakeTracks tracks = new FakeTracks(10);
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(1));
+        queue.jumpTo(2);
+        queue.append(5);
+        tracks.reverse();
+        queue.onTracksChanged();
+        assertEquals(7, queue.current());
+        // Track 5 now sits at position 4, and the list goes on down from there
+        assertEquals(4, queue.next());
+        assertEquals(5, queue.next());
+    }
+
+    @Test
+    public void testTracksAddedMidCycleJoinIt() {
+        FakeTracks tracks = new FakeTracks(3);
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(9));
+        queue.jumpTo(0);
+        queue.setShuffle(true);
+        queue.next();
+        FakeTracks grown = new FakeTracks(6);
+        tracks.size = grown.size;
+        tracks.order = grown.order;
+        queue.onTracksChanged();
+        Set<Integer> played = new HashSet<>();
+        for (int i = 0; i < 4; i++) played.add(queue.next());
+        assertTrue(played.contains(3) && played.contains(4) && played.contains(5));
+    }
+
+    @Test
+    public void testShuffleCostsNothingUpFront() {
+        FakeTracks tracks = new FakeTracks(100_000);
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(2));
+        queue.jumpTo(0);
+        queue.setShuffle(true);
+        for (int i = 0; i < 1000; i++) queue.next();
+        // No pass over the list: only the positions of the tracks handed out were looked up
+        assertTrue("looked up " + tracks.lookups, tracks.lookups <= 2 * 1000 + 10);
+    }
+
+    @Test
+    public void testSingleTrackShuffleRepeats() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(1), new Random(1));
+        queue.jumpTo(0);
+        queue.setShuffle(true);
+        assertEquals(0, queue.next());
+        assertEquals(0, queue.next());
+    }
+
+    @Test
+    public void testHistoryIsBounded() {
+        PlaybackQueue queue = new PlaybackQueue(new FakeTracks(5000), new Random(4));
+        queue.jumpTo(0);
+        queue.setShuffle(true);
+        for (int i = 0; i < PlaybackQueue.HISTORY_LIMIT + 500; i++) queue.next();
+        int steps = 0;
+        while (queue.previous() != PlaybackQueue.NONE) steps++;
+        assertEquals(PlaybackQueue.HISTORY_LIMIT, steps);
+    }
+
+    @Test
+    public void testStepsOverUnplayableTracks() {
+        FakeTracks tracks = new FakeTracks(6);
+        tracks.broken.addAll(Arrays.asList(1, 2, 5));
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(1));
+        queue.jumpTo(0);
+        queue.append(5);
+        assertEquals(3, queue.next());
+        assertEquals(4, queue.next());
+        assertEquals(0, queue.next());
+        assertEquals(4, queue.previous());
+        assertEquals(3, queue.previous());
+        assertEquals(0, queue.previous());
+    }
+
+    @Test
+    public void testShuffleStepsOverUnplayableTracks() {
+        FakeTracks tracks = new FakeTracks(100);
+        for (int id = 0; id < 100; id += 2) tracks.broken.add(id);
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(8));
+        queue.jumpTo(1);
+        queue.setShuffle(true);
+        for (int i = 0; i < 49; i++) {
+            assertEquals(1, queue.next() % 2);
+        }
+    }
+
+    @Test
+    public void testNothingPlayableEndsTheQueue() {
+        FakeTracks tracks = new FakeTracks(4);
+        PlaybackQueue queue = new PlaybackQueue(tracks, new Random(1));
+        queue.jumpTo(0);
+        tracks.broken.addAll(Arrays.asList(0, 1, 2, 3));
+        queue.onTracksChanged();
+        assertEquals(PlaybackQueue.NONE, queue.next());
+        queue.setShuffle(true);
+        assertEquals(PlaybackQueue.NONE, queue.next());
+    }
+}
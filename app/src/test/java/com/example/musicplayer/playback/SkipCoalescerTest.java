@@ -0,0 +1,118 @@
+package com.example.musicplayer.playback;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SkipCoalescerTest {
+    // Runs posted callbacks when the test advances its clock
+    private static class FakeScheduler implements SkipCoalescer.Scheduler {
+        long now;
+        private final List<Runnable> runnables = new ArrayList<>();
+        private final List<Long> dueTimes = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable r, long delayMs) {
+            runnables.add(r);
+            dueTimes.add(now + delayMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable r) {
+            for (int i = runnables.size() - 1; i >= 0; i--) {
+                if (runnables.get(i) == r) {
+                    runnables.remove(i);
+                    dueTimes.remove(i);
+                }
+            }
+        }
+
+        void advance(long ms) {
+            now += ms;
+            for (int i = 0; i < runnables.size(); i++) {
+                if (dueTimes.get(i) <= now) {
+                    Runnable r = runnables.remove(i);
+                    dueTimes.remove(i);
+                    r.run();
+                    i = -1;
+                }
+            }
+        }
+    }
+
+    // Stands in for the service: each settled index is one prepare
+    private static class Prepares implements SkipCoalescer.Listener {
+        final List<Integer> prepared = new ArrayList<>();
+
+        @Override
+        public void onSettled(int index) {
+            prepared.add(index);
+        }
+    }
+
+    @Test
+    public void testBurstOfPressesPreparesOnce() {
+        FakeScheduler scheduler = new FakeScheduler();
+        Prepares prepares = new Prepares();
+        SkipCoalescer coalescer = new SkipCoalescer(scheduler, 250, prepares);
+        for (int press = 0; press < 6; press++) {
+            coalescer.jumpTo(4 + press);
+            assertTrue(coalescer.isPending());
+            scheduler.advance(100);
+        }
+        assertTrue(prepares.prepared.isEmpty());
+        scheduler.advance(250);
+        assertEquals(1, prepares.prepared.size());
+        assertEquals(Integer.valueOf(9), prepares.prepared.get(0));
+        assertFalse(coalescer.isPending());
+    }
+
+    @Test
+    public void testMixedNextPrevAndTapsSettleOnLast() {
+        FakeScheduler scheduler = new FakeScheduler();
+        Prepares prepares = new Prepares();
+        SkipCoalescer coalescer = new SkipCoalescer(scheduler, 250, prepares);
+        coalescer.jumpTo(1);
+        coalescer.jumpTo(2);
+        coalescer.jumpTo(1);
+        coalescer.jumpTo(7);
+        coalescer.jumpTo(8);
+        scheduler.advance(300);
+        assertEquals(1, prepares.prepared.size());
+        assertEquals(Integer.valueOf(8), prepares.prepared.get(0));
+    }
+
+    @Test
+    public void testPressesApartEachPrepare() {
+        FakeScheduler scheduler = new FakeScheduler();
+        Prepares prepares = new Prepares();
+        SkipCoalescer coalescer = new SkipCoalescer(scheduler, 250, prepares);
+        coalescer.jumpTo(1);
+        scheduler.advance(400);
+        coalescer.jumpTo(2);
+        scheduler.advance(400);
+        assertEquals(2, prepares.prepared.size());
+        assertEquals(Integer.valueOf(2), prepares.prepared.get(1));
+    }
+
+    @Test
+    public void testFlushSettlesNowAndCancelDrops() {
+        FakeScheduler scheduler = new FakeScheduler();
+        Prepares prepares = new Prepares();
+        SkipCoalescer coalescer = new SkipCoalescer(scheduler, 250, prepares);
+        coalescer.jumpTo(1);
+        coalescer.flush();
+        assertEquals(1, prepares.prepared.size());
+        scheduler.advance(500);
+        assertEquals(1, prepares.prepared.size());
+        coalescer.flush(); // Nothing pending
+        assertEquals(1, prepares.prepared.size());
+
+        coalescer.jumpTo(2);
+        coalescer.cancel();
+        scheduler.advance(500);
+        assertEquals(1, prepares.prepared.size());
+        assertFalse(coalescer.isPending());
+    }
+}
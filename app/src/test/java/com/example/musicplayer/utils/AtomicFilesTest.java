@@ -0,0 +1,53 @@
+package com.example.musicplayer.utils;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AtomicFilesTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("atomic", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+
+    @Test
+    public void testWriteReplacesContents() throws Exception {
+        AtomicFiles.write(file, new byte[] {1, 2, 3, 4, 5});
+        AtomicFiles.write(file, new byte[] {9, 8});
+        assertArrayEquals(new byte[] {9, 8}, AtomicFiles.readFully(file));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testFailedWriteKeepsOldContents() throws Exception {
+        AtomicFiles.write(file, new byte[] {1, 2, 3});
+        // A directory in the temporary file's place makes the write fail before the rename
+        File tmp = new File(file.getPath() + ".tmp");
+        assertTrue(tmp.mkdir());
+        try {
+            AtomicFiles.write(file, new byte[] {4, 5, 6});
+            fail("Wrote over a directory");
+        } catch (IOException expected) {
+            // The old file is untouched
+        } finally {
+            tmp.delete();
+        }
+        assertArrayEquals(new byte[] {1, 2, 3}, AtomicFiles.readFully(file));
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        assertEquals(0, AtomicFiles.readFully(file).length);
+    }
+}
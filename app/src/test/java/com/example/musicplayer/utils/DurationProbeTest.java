@@ -0,0 +1,190 @@
+package com.example.musicplayer.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+
+public class DurationProbeTest {
+    // MPEG-1 Layer III, 128 kbps, stereo: 384-byte frames at 48 kHz
+    private static final int MP3_128K_48K = 0xFFFB9400;
+    // MPEG-1 Layer III, 128 kbps, stereo at 44.1 kHz
+    private static final int MP3_128K_44K = 0xFFFB9000;
+
+    @Test
+    public void testCbrMp3UsesFrameCount() throws Exception {
+        // 1000 frames * 1152 samples / 48000 Hz = 24 s
+        byte[] file = concat(id3Header(100), new byte[100], mp3Frames(MP3_128K_48K, 384, 1000));
+        assertEquals(24000, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testCbrMp3IgnoresId3v1Trailer() throws Exception {
+        byte[] trailer = new byte[128];
+        trailer[0] = 'T';
+        trailer[1] = 'A';
+        trailer[2] = 'G';
+        byte[] file = concat(mp3Frames(MP3_128K_48K, 384, 500), trailer);
+        assertEquals(12000, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testXingHeader() throws Exception {
+        // 5000 frames * 1152 / 44100 Hz = 130612 ms, regardless of how much audio follows
+        byte[] first = new byte[417];
+        writeInt(first, 0, MP3_128K_44K);
+        writeAscii(first, 4 + 32, "Xing");
+        writeInt(first, 4 + 32 + 4, 1);
+        writeInt(first, 4 + 32 + 8, 5000);
+        byte[] file = concat(first, mp3Frames(MP3_128K_44K, 417, 10));
+        assertEquals(130612, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testVbriHeader() throws Exception {
+        // 2500 frames * 1152 / 48000 Hz = 60 s
+        byte[] first = new byte[384];
+        writeInt(first, 0, MP3_128K_48K);
+        writeAscii(first, 4 + 32, "VBRI");
+        writeInt(first, 4 + 32 + 14, 2500);
+        byte[] file = concat(first, mp3Frames(MP3_128K_48K, 384, 10));
+        assertEquals(60000, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testMp4MovieHeader() throws Exception {
+        byte[] mvhd = box("mvhd", fullBoxHeader(0, 1000, 183000));
+        byte[] file = concat(box("ftyp", "M4A ".getBytes("US-ASCII")), box("mdat", new byte[4096]), box("moov", mvhd));
+        assertEquals(183000, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testMp4FallsBackToMediaHeader() throws Exception {
+        byte[] mdhd = box("mdhd", fullBoxHeader(0, 44100, 44100 * 95));
+        byte[] moov = box("moov", concat(box("mvhd", fullBoxHeader(0, 600, 0)), box("trak", box("mdia", mdhd))));
+        byte[] file = concat(box("ftyp", "M4A ".getBytes("US-ASCII")), moov);
+        assertEquals(95000, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testAdtsFrameWalk() throws Exception {
+        // 431 frames * 1024 samples / 44100 Hz = 10007 ms
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 431; i++) {
+            out.write(adtsFrame(4, 300), 0, 300);
+        }
+        assertEquals(10007, DurationProbe.probe(ByteSource.of(out.toByteArray())));
+    }
+
+    @Test
+    public void testAdtsExtrapolatesLongFiles() throws Exception {
+        // 4000 frames of 400 bytes at 48 kHz = 85333 ms; only a few windows are walked
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < 4000; i++) {
+            out.write(adtsFrame(3, 400), 0, 400);
+        }
+        assertEquals(85333, DurationProbe.probe(ByteSource.of(out.toByteArray())));
+    }
+
+    @Test
+    public void testWavDataChunk() throws Exception {
+        // 44.1 kHz stereo 16-bit: 176400 bytes per second, 10 s of data
+        byte[] fmt = new byte[16];
+        writeIntLE(fmt, 0, 1 | (2 << 16));
+        writeIntLE(fmt, 4, 44100);
+        writeIntLE(fmt, 8, 176400);
+        writeIntLE(fmt, 12, 4 | (16 << 16));
+        byte[] file = concat("RIFF".getBytes("US-ASCII"), new byte[4], "WAVE".getBytes("US-ASCII"),
+                riffChunk("LIST", new byte[5]), riffChunk("fmt ", fmt), riffChunk("data", new byte[1764000]));
+        assertEquals(10000, DurationProbe.probe(ByteSource.of(file)));
+    }
+
+    @Test
+    public void testUnrecognisedDataFails() throws Exception {
+        assertEquals(-1, DurationProbe.probe(ByteSource.of(new byte[2048])));
+        // Each parser also gives up on data that does not match the format it was handed
+        for (FormatSniffer.Format format : FormatSniffer.Format.values()) {
+            TrackInfo info = new TrackInfo();
+            info.format = format;
+            assertFalse(format.name(), DurationProbe.probe(ByteSource.of(new byte[2048]), info));
+        }
+    }
+
+    static byte[] mp3Frames(int header, int frameLength, int count) {
+        byte[] data = new byte[frameLength * count];
+        for (int i = 0; i < count; i++) {
+            writeInt(data, i * frameLength, header);
+        }
+        return data;
+    }
+
+    static byte[] adtsFrame(int sampleRateIndex, int frameLength) {
+        byte[] frame = new byte[frameLength];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xF1; // MPEG-4, no CRC
+        frame[2] = (byte) ((1 << 6) | (sampleRateIndex << 2)); // AAC LC
+        frame[3] = (byte) ((2 << 6) | ((frameLength >> 11) & 0x03)); // Stereo
+        frame[4] = (byte) (frameLength >> 3);
+        frame[5] = (byte) (((frameLength & 0x07) << 5) | 0x1F);
+        frame[6] = (byte) 0xFC; // One raw data block
+        return frame;
+    }
+
+    static byte[] id3Header(int bodySize) {
+        byte[] header = {'I', 'D', '3', 3, 0, 0, 0, 0, 0, 0};
+        header[8] = (byte) ((bodySize >> 7) & 0x7F);
+        header[9] = (byte) (bodySize & 0x7F);
+        return header;
+    }
+
+    // Version 0 mvhd/mdhd body: version/flags, creation, modification, timescale, duration
+    static byte[] fullBoxHeader(int version, int timescale, int duration) {
+        byte[] body = new byte[32];
+        body[0] = (byte) version;
+        writeInt(body, 12, timescale);
+        writeInt(body, 16, duration);
+        return body;
+    }
+
+    static byte[] box(String type, byte[] body) throws Exception {
+        byte[] header = new byte[8];
+        writeInt(header, 0, 8 + body.length);
+        writeAscii(header, 4, type);
+        return concat(header, body);
+    }
+
+    static byte[] riffChunk(String id, byte[] body) {
+        byte[] header = new byte[8];
+        writeAscii(header, 0, id);
+        writeIntLE(header, 4, body.length);
+        return body.length % 2 == 0 ? concat(header, body) : concat(header, body, new byte[1]);
+    }
+
+    static void writeInt(byte[] b, int off, int value) {
+        b[off] = (byte) (value >> 24);
+        b[off + 1] = (byte) (value >> 16);
+        b[off + 2] = (byte) (value >> 8);
+        b[off + 3] = (byte) value;
+    }
+
+    static void writeIntLE(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >> 8);
+        b[off + 2] = (byte) (value >> 16);
+        b[off + 3] = (byte) (value >> 24);
+    }
+
+    static void writeAscii(byte[] b, int off, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            b[off + i] = (byte) s.charAt(i);
+        }
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
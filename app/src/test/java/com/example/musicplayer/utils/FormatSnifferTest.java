@@ -0,0 +1,35 @@
+package com.example.musicplayer.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static com.example.musicplayer.utils.DurationProbeTest.*;
+
+import com.example.musicplayer.utils.FormatSniffer.Format;
+
+public class FormatSnifferTest {
+    private static final int MP3_128K_48K = 0xFFFB9400;
+
+    @Test
+    public void testRecognisesEachFormat() throws Exception {
+        assertEquals(Format.MP3, sniff(mp3Frames(MP3_128K_48K, 384, 2)));
+        assertEquals(Format.MP4, sniff(box("ftyp", "M4A ".getBytes("US-ASCII"))));
+        assertEquals(Format.ADTS, sniff(adtsFrame(4, 300)));
+        assertEquals(Format.WAV, sniff(concat("RIFF".getBytes("US-ASCII"), new byte[4], "WAVE".getBytes("US-ASCII"))));
+        assertEquals(Format.FLAC, sniff(concat("fLaC".getBytes("US-ASCII"), new byte[60])));
+        assertEquals(Format.OGG, sniff(concat("OggS".getBytes("US-ASCII"), new byte[60])));
+        assertEquals(Format.UNKNOWN, sniff(new byte[64]));
+        assertEquals(Format.UNKNOWN, sniff(new byte[2]));
+    }
+
+    @Test
+    public void testLooksPastId3Tag() throws Exception {
+        assertEquals(Format.ADTS, sniff(concat(id3Header(200), new byte[200], adtsFrame(4, 300))));
+        assertEquals(Format.FLAC, sniff(concat(id3Header(20), new byte[20], "fLaC".getBytes("US-ASCII"), new byte[60])));
+        // Padding between the tag and the first frame still counts as MP3
+        assertEquals(Format.MP3, sniff(concat(id3Header(20), new byte[20], new byte[100], mp3Frames(MP3_128K_48K, 384, 2))));
+    }
+
+    private static Format sniff(byte[] data) throws Exception {
+        return FormatSniffer.sniff(ByteSource.of(data));
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.musicplayer.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Id3ReaderTest {
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF_16LE = Charset.forName("UTF-16LE");
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testV23Utf16Frames() throws Exception {
+        byte[] body = concat(
+                v23Frame("TIT2", utf16Text("不要说话")),
+                v23Frame("TPE1", latin1Text("Eason Chan")),
+                v23Frame("TALB", latin1Text("U87")));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(3, 0, body))));
+        assertEquals("不要说话", tags.title);
+        assertEquals("Eason Chan", tags.artist);
+        assertEquals("U87", tags.album);
+        assertEquals(3, tags.majorVersion);
+        assertEquals(10 + body.length, tags.v2Size);
+    }
+
+    @Test
+    public void testV22Frames() throws Exception {
+        byte[] body = concat(v22Frame("TT2", latin1Text("Title")), v22Frame("TP1", latin1Text("Artist")));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(2, 0, body))));
+        assertEquals("Title", tags.title);
+        assertEquals("Artist", tags.artist);
+        assertNull(tags.album);
+    }
+
+    @Test
+    public void testV24Utf8WithUnsynchronisedFrame() throws Exception {
+        byte[] text = utf8Text("ÿ Title");
+        byte[] unsynced = unsynchronise(text);
+        byte[] body = concat(v24Frame("TIT2", 0x0002, unsynced), v24Frame("TALB", 0, utf8Text("专辑")));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(4, 0, body))));
+        assertEquals("ÿ Title", tags.title);
+        assertEquals("专辑", tags.album);
+    }
+
+    @Test
+    public void testV23WholeTagUnsynchronisation() throws Exception {
+        // 0xFF in a Latin-1 title forces an inserted zero byte into the frame stream
+        byte[] body = concat(v23Frame("TIT2", latin1Text("ÿÿ")), v23Frame("TPE1", latin1Text("Artist")));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(3, 0x80, unsynchronise(body)))));
+        assertEquals("ÿÿ", tags.title);
+        assertEquals("Artist", tags.artist);
+    }
+
+    @Test
+    public void testV1FillsMissingFields() throws Exception {
+        byte[] body = v23Frame("TIT2", latin1Text("From v2"));
+        byte[] file = concat(withAudio(tag(3, 0, body)), v1("From v1", "V1 Artist", "V1 Album"));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(file));
+        assertEquals("From v2", tags.title);
+        assertEquals("V1 Artist", tags.artist);
+        assertEquals("V1 Album", tags.album);
+        assertTrue(tags.hasV1);
+    }
+
+    @Test
+    public void testNoTags() throws Exception {
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(new byte[4096]));
+        assertNull(tags.title);
+        assertEquals(0, tags.majorVersion);
+        assertFalse(tags.hasV1);
+    }
+
+    @Test
+    public void testTrackGainFromTxxx() throws Exception {
+        byte[] body = concat(
+                v23Frame("TXXX", concat(latin1Text("REPLAYGAIN_ALBUM_GAIN"), new byte[]{0}, "-9.00 dB".getBytes(ISO_8859_1))),
+                v23Frame("TXXX", concat(latin1Text("replaygain_track_gain"), new byte[]{0}, "-6.48 dB".getBytes(ISO_8859_1))),
+                v23Frame("TIT2", latin1Text("Title")));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(3, 0, body))));
+        assertEquals(-6.48f, tags.gainDb, 0.001f);
+        assertEquals("Title", tags.title);
+    }
+
+    @Test
+    public void testR128GainInUtf16Txxx() throws Exception {
+        // -1280 / 256 = -5 dB against -23 LUFS, which is 0 dB against the ReplayGain reference
+        byte[] value = concat(new byte[]{(byte) 0xFF, (byte) 0xFE}, "-1280".getBytes(UTF_16LE));
+        byte[] body = v24Frame("TXXX", 0, concat(utf16Text("R128_TRACK_GAIN"), value));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(4, 0, body))));
+        assertEquals(0f, tags.gainDb, 0.001f);
+    }
+
+    @Test
+    public void testNoGainTag() throws Exception {
+        byte[] body = v23Frame("TXXX", concat(latin1Text("COMMENT"), new byte[]{0}, "-6 dB".getBytes(ISO_8859_1)));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(3, 0, body))));
+        assertTrue(Float.isNaN(tags.gainDb));
+    }
+
+    @Test
+    public void testCorruptExtendedHeaderSize() throws Exception {
+        byte[] frames = v23Frame("TIT2", latin1Text("From v2"));
+        byte[] v1 = v1("From v1", "V1 Artist", "V1 Album");
+        for (int extSize : new int[]{-8, Integer.MAX_VALUE, frames.length + 1}) {
+            byte[] ext = {(byte) (extSize >> 24), (byte) (extSize >> 16), (byte) (extSize >> 8), (byte) extSize, 0, 0};
+            byte[] file = concat(withAudio(tag(3, 0x40, concat(ext, frames))), v1);
+            Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(file));
+            // The frames cannot be located, so the v1 trailer is all there is
+            assertEquals("From v1", tags.title);
+            assertEquals("V1 Artist", tags.artist);
+            assertEquals(3, tags.majorVersion);
+        }
+    }
+
+    @Test
+    public void testFrameSizeBeyondTagKeepsEarlierFrames() throws Exception {
+        byte[] broken = v23Frame("TPE1", latin1Text("Artist"));
+        broken[4] = (byte) 0x80; // Negative as a signed size
+        byte[] body = concat(v23Frame("TIT2", latin1Text("Title")), broken, v23Frame("TALB", latin1Text("Album")));
+        Id3Reader.Tags tags = Id3Reader.read(ByteSource.of(withAudio(tag(3, 0, body))));
+        assertEquals("Title", tags.title);
+        assertNull(tags.artist);
+        assertNull(tags.album);
+
+        // The tag claims more than the file holds
+        byte[] truncated = tag(4, 0, concat(v24Frame("TIT2", 0, utf8Text("Title")), v24Frame("TALB", 0, utf8Text("Album"))));
+        tags = Id3Reader.read(ByteSource.of(Arrays.copyOf(truncated, truncated.length - 3)));
+        assertEquals("Title", tags.title);
+        assertNull(tags.album);
+    }
+
+    @Test
+    public void testFuzzedTagsOnlyEverFailWithIOException() throws Exception {
+        byte[][] seeds = {
+                tag(2, 0, concat(v22Frame("TT2", latin1Text("Title")), v22Frame("PIC", new byte[40]))),
+                tag(3, 0x40, concat(new byte[]{0, 0, 0, 6, 0, 0, 0, 0, 0, 0}, v23Frame("TIT2", utf16Text("Title")),
+                        v23Frame("APIC", new byte[64]))),
+                tag(3, 0x80, unsynchronise(v23Frame("TIT2", latin1Text("ÿÿ")))),
+                tag(4, 0x40, concat(new byte[]{0, 0, 0, 6, 1, 0}, v24Frame("TXXX", 0x0003,
+                        concat(latin1Text("REPLAYGAIN_TRACK_GAIN"), new byte[]{0}, "-3 dB".getBytes(ISO_8859_1)))))};
+        Random random = new Random(1234);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] file = withAudio(seeds[i % seeds.length].clone());
+            for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                file[3 + random.nextInt(Math.min(file.length - 3, 80))] = (byte) random.nextInt(256);
+            }
+            if (random.nextBoolean()) file = Arrays.copyOf(file, random.nextInt(file.length));
+            try {
+                Id3Reader.read(ByteSource.of(file));
+            } catch (IOException expected) {
+                // Bad input may be reported, never thrown as anything else
+            }
+        }
+    }
+
+    @Test
+    public void testResync() {
+        byte[] data = {(byte) 0xFF, 0x00, (byte) 0xE0, 0x01, (byte) 0xFF, 0x00};
+        assertEquals(4, Id3Reader.resync(data, 0, data.length));
+        assertEquals((byte) 0xFF, data[0]);
+        assertEquals((byte) 0xE0, data[1]);
+        assertEquals((byte) 0xFF, data[3]);
+    }
+
+    static byte[] tag(int version, int flags, byte[] body) {
+        byte[] header = {'I', 'D', '3', (byte) version, 0, (byte) flags, 0, 0, 0, 0};
+        writeSyncsafe(header, 6, body.length);
+        return concat(header, body);
+    }
+
+    static byte[] v22Frame(String id, byte[] data) {
+        byte[] header = new byte[6];
+        System.arraycopy(id.getBytes(ISO_8859_1), 0, header, 0, 3);
+        header[3] = (byte) (data.length >> 16);
+        header[4] = (byte) (data.length >> 8);
+        header[5] = (byte) data.length;
+        return concat(header, data);
+    }
+
+    static byte[] v23Frame(String id, byte[] data) {
+        byte[] header = new byte[10];
+        System.arraycopy(id.getBytes(ISO_8859_1), 0, header, 0, 4);
+        header[4] = (byte) (data.length >> 24);
+        header[5] = (byte) (data.length >> 16);
+        header[6] = (byte) (data.length >> 8);
+        header[7] = (byte) data.length;
+        return concat(header, data);
+    }
+
+    static byte[] v24Frame(String id, int flags, byte[] data) {
+        byte[] header = new byte[10];
+        System.arraycopy(id.getBytes(ISO_8859_1), 0, header, 0, 4);
+        writeSyncsafe(header, 4, data.length);
+        header[8] = (byte) (flags >> 8);
+        header[9] = (byte) flags;
+        return concat(header, data);
+    }
+
+    static byte[] latin1Text(String s) {
+        return concat(new byte[]{0}, s.getBytes(ISO_8859_1));
+    }
+
+    static byte[] utf16Text(String s) {
+        return concat(new byte[]{1, (byte) 0xFF, (byte) 0xFE}, s.getBytes(UTF_16LE), new byte[]{0, 0});
+    }
+
+    static byte[] utf8Text(String s) {
+        return concat(new byte[]{3}, s.getBytes(UTF_8));
+    }
+
+    static byte[] v1(String title, String artist, String album) {
+        byte[] trailer = new byte[128];
+        trailer[0] = 'T';
+        trailer[1] = 'A';
+        trailer[2] = 'G';
+        byte[] t = title.getBytes(ISO_8859_1);
+        byte[] ar = artist.getBytes(ISO_8859_1);
+        byte[] al = album.getBytes(ISO_8859_1);
+        System.arraycopy(t, 0, trailer, 3, t.length);
+        System.arraycopy(ar, 0, trailer, 33, ar.length);
+        System.arraycopy(al, 0, trailer, 63, al.length);
+        return trailer;
+    }
+
+    static byte[] unsynchronise(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < data.length; i++) {
+            out.write(data[i]);
+            if ((data[i] & 0xFF) == 0xFF && (i + 1 == data.length || (data[i + 1] & 0xE0) == 0xE0 || data[i + 1] == 0)) {
+                out.write(0);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] withAudio(byte[] tag) {
+        return concat(tag, new byte[512]);
+    }
+
+    private static void writeSyncsafe(byte[] b, int off, int value) {
+        b[off] = (byte) ((value >> 21) & 0x7F);
+        b[off + 1] = (byte) ((value >> 14) & 0x7F);
+        b[off + 2] = (byte) ((value >> 7) & 0x7F);
+        b[off + 3] = (byte) (value & 0x7F);
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.musicplayer.utils;
 
+import java.io.IOException;
+import java.util.Arrays;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -10,4 +12,24 @@ public class MetadataExtractorTest {
         assertEquals("不要说话 陈奕迅", MetadataExtractor.getTitleFromFileName("不要说话-陈奕迅.mp3"));
         assertEquals("Unknown Title", MetadataExtractor.getTitleFromFileName(null));
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testTruncatedFileKeepsItsSniffedFormat() throws Exception {
+        byte[] full = DurationProbeTest.concat("RIFF".getBytes("US-ASCII"), new byte[4], "WAVE".getBytes("US-ASCII"),
+                DurationProbeTest.riffChunk("fmt ", WavReaderTest.fmt(1, 2, 44100, 16)),
+                DurationProbeTest.riffChunk("data", new byte[4096]));
+        // Cut off inside the fmt chunk
+        ByteSource truncated = ByteSource.of(Arrays.copyOf(full, 24));
+        assertEquals(FormatSniffer.Format.WAV, FormatSniffer.sniff(truncated));
+        try {
+            TrackProbe.probe(truncated);
+            fail("Probed a truncated file");
+        } catch (IOException expected) {
+            // Reported as bad input, as every parser does
+        }
+        // So the scan still lists it, by its file name
+        TrackInfo info = MetadataExtractor.unprobed(FormatSniffer.Format.WAV);
+        assertTrue(info.format.isPlayable());
+        assertFalse(info.hasDuration());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.musicplayer.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ReplayGainTest {
+    @Test
+    public void testParseGain() {
+        assertEquals(-6.48f, ReplayGain.parseGain("-6.48 dB"), 0.001f);
+        assertEquals(1.2f, ReplayGain.parseGain(" +1.2"), 0.001f);
+        assertTrue(Float.isNaN(ReplayGain.parseGain("loud")));
+        assertTrue(Float.isNaN(ReplayGain.parseGain(null)));
+        // Out of any real track's range
+        assertTrue(Float.isNaN(ReplayGain.parseGain("-200 dB")));
+    }
+
+    @Test
+    public void testParseR128Gain() {
+        // Q7.8 dB against -23 LUFS, a target 5 dB quieter than the ReplayGain reference
+        assertEquals(5f, ReplayGain.parseR128Gain("0"), 0.001f);
+        assertEquals(-3f, ReplayGain.parseR128Gain("-2048"), 0.001f);
+        assertTrue(Float.isNaN(ReplayGain.parseR128Gain("-3 dB")));
+    }
+
+    @Test
+    public void testForLoudness() {
+        assertEquals(-6f, ReplayGain.forLoudness(-12), 0.001f);
+        assertEquals(5f, ReplayGain.forLoudness(-23), 0.001f);
+        assertTrue(Float.isNaN(ReplayGain.forLoudness(Double.NaN)));
+    }
+
+    @Test
+    public void testVolumeOnlyTurnsDown() {
+        assertEquals(0.5f, ReplayGain.volume(-6.0206f), 0.0001f);
+        assertEquals(1f, ReplayGain.volume(4f), 0f);
+        assertEquals(1f, ReplayGain.volume(Float.NaN), 0f);
+    }
+}
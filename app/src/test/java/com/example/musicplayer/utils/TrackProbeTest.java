@@ -0,0 +1,98 @@
+package com.example.musicplayer.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.Charset;
+
+public class TrackProbeTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testMp3TagsDurationAndArtInOnePass() throws Exception {
+        byte[] picture = new byte[100 * 1024];
+        byte[] apic = Id3ReaderTest.concat(new byte[]{0}, "image/jpeg".getBytes(UTF_8), new byte[]{0, 3}, "cover".getBytes(UTF_8), new byte[]{0}, picture);
+        byte[] body = Id3ReaderTest.concat(
+                Id3ReaderTest.v23Frame("TIT2", Id3ReaderTest.latin1Text("Title")),
+                Id3ReaderTest.v23Frame("APIC", apic),
+                Id3ReaderTest.v23Frame("TPE1", Id3ReaderTest.latin1Text("Artist")));
+        byte[] tag = Id3ReaderTest.tag(3, 0, body);
+        // 5000 CBR frames at 48 kHz = 120 s, about 1.9 MB of audio
+        byte[] file = Id3ReaderTest.concat(tag, DurationProbeTest.mp3Frames(0xFFFB9400, 384, 5000));
+
+        TrackInfo info = TrackProbe.probe(ByteSource.of(file));
+        assertEquals("Title", info.title);
+        assertEquals("Artist", info.artist);
+        assertEquals(120000, info.durationMs);
+        assertEquals("mp3", info.codec);
+        assertEquals(48000, info.sampleRate);
+        assertEquals(128000, info.bitrate);
+        // The picture ends where the trailing 17-byte TPE1 frame starts
+        assertEquals(tag.length - 17 - picture.length, info.artOffset);
+        assertEquals(picture.length, info.artLength);
+        // Head and tail windows plus the frames behind the picture and the first audio frame, not the audio
+        assertTrue("read " + info.bytesRead, info.bytesRead < 128 * 1024);
+    }
+
+    @Test
+    public void testMp4TagsAndCover() throws Exception {
+        byte[] cover = new byte[2048];
+        byte[] ilst = DurationProbeTest.box("ilst", Id3ReaderTest.concat(
+                item(new byte[]{(byte) 0xA9, 'n', 'a', 'm'}, 1, "青城".getBytes(UTF_8)),
+                item(new byte[]{(byte) 0xA9, 'A', 'R', 'T'}, 1, "Artist".getBytes(UTF_8)),
+                item(new byte[]{'c', 'o', 'v', 'r'}, 13, cover)));
+        byte[] meta = DurationProbeTest.box("meta", Id3ReaderTest.concat(new byte[4], DurationProbeTest.box("hdlr", new byte[25]), ilst));
+        byte[] moov = DurationProbeTest.box("moov", Id3ReaderTest.concat(
+                DurationProbeTest.box("mvhd", DurationProbeTest.fullBoxHeader(0, 1000, 61000)),
+                DurationProbeTest.box("udta", meta)));
+        byte[] ftyp = DurationProbeTest.box("ftyp", "M4A ".getBytes(UTF_8));
+        byte[] file = Id3ReaderTest.concat(ftyp, moov, DurationProbeTest.box("mdat", new byte[256 * 1024]));
+
+        TrackInfo info = TrackProbe.probe(ByteSource.of(file));
+        assertEquals("青城", info.title);
+        assertEquals("Artist", info.artist);
+        assertNull(info.album);
+        assertEquals(61000, info.durationMs);
+        assertEquals(cover.length, info.artLength);
+        assertEquals(ftyp.length + moov.length - cover.length, info.artOffset);
+        assertTrue("read " + info.bytesRead, info.bytesRead <= 72 * 1024);
+    }
+
+    @Test
+    public void testMp4FreeformTrackGain() throws Exception {
+        byte[] ilst = DurationProbeTest.box("ilst", Id3ReaderTest.concat(
+                freeform("REPLAYGAIN_TRACK_PEAK", "0.988"),
+                freeform("replaygain_track_gain", "-7.25 dB"),
+                item(new byte[]{(byte) 0xA9, 'n', 'a', 'm'}, 1, "Title".getBytes(UTF_8))));
+        byte[] meta = DurationProbeTest.box("meta", Id3ReaderTest.concat(new byte[4], DurationProbeTest.box("hdlr", new byte[25]), ilst));
+        byte[] moov = DurationProbeTest.box("moov", Id3ReaderTest.concat(
+                DurationProbeTest.box("mvhd", DurationProbeTest.fullBoxHeader(0, 1000, 61000)),
+                DurationProbeTest.box("udta", meta)));
+        byte[] file = Id3ReaderTest.concat(DurationProbeTest.box("ftyp", "M4A ".getBytes(UTF_8)), moov,
+                DurationProbeTest.box("mdat", new byte[64 * 1024]));
+
+        TrackInfo info = TrackProbe.probe(ByteSource.of(file));
+        assertEquals(-7.25f, info.gainDb, 0.001f);
+        assertEquals("Title", info.title);
+    }
+
+    // A "----" item as iTunes writes it: mean, name, then the value in a data box
+    private static byte[] freeform(String name, String value) throws Exception {
+        byte[] data = new byte[8 + value.length()];
+        DurationProbeTest.writeInt(data, 0, 1);
+        System.arraycopy(value.getBytes(UTF_8), 0, data, 8, value.length());
+        return DurationProbeTest.box("----", Id3ReaderTest.concat(
+                DurationProbeTest.box("mean", Id3ReaderTest.concat(new byte[4], "com.apple.iTunes".getBytes(UTF_8))),
+                DurationProbeTest.box("name", Id3ReaderTest.concat(new byte[4], name.getBytes(UTF_8))),
+                DurationProbeTest.box("data", data)));
+    }
+
+    private static byte[] item(byte[] type, int dataType, byte[] value) throws Exception {
+        byte[] data = new byte[8 + value.length];
+        DurationProbeTest.writeInt(data, 0, dataType);
+        System.arraycopy(value, 0, data, 8, value.length);
+        byte[] box = DurationProbeTest.box("xxxx", DurationProbeTest.box("data", data));
+        System.arraycopy(type, 0, box, 4, 4);
+        return box;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.musicplayer.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static com.example.musicplayer.utils.DurationProbeTest.*;
+
+public class WavReaderTest {
+    static byte[] fmt(int formatTag, int channels, int sampleRate, int bitsPerSample) {
+        byte[] fmt = new byte[16];
+        int frameSize = channels * bitsPerSample / 8;
+        writeIntLE(fmt, 0, formatTag | (channels << 16));
+        writeIntLE(fmt, 4, sampleRate);
+        writeIntLE(fmt, 8, sampleRate * frameSize);
+        writeIntLE(fmt, 12, frameSize | (bitsPerSample << 16));
+        return fmt;
+    }
+
+    static byte[] wav(byte[] fmt, byte[] data) throws Exception {
+        return concat("RIFF".getBytes("US-ASCII"), new byte[4], "WAVE".getBytes("US-ASCII"),
+                riffChunk("LIST", new byte[5]), riffChunk("fmt ", fmt), riffChunk("data", data));
+    }
+
+    @Test
+    public void testFindsLayoutAndDataChunk() throws Exception {
+        byte[] file = wav(fmt(1, 2, 44100, 16), new byte[4000]);
+        WavReader.Layout layout = WavReader.read(ByteSource.of(file));
+        assertEquals(44100, layout.sampleRate);
+        assertEquals(2, layout.channels);
+        assertEquals(16, layout.bitsPerSample);
+        assertFalse(layout.floating);
+        assertEquals(4, layout.frameSize());
+        // RIFF header 12, LIST 8 + 5 + pad, fmt 8 + 16, data header 8
+        assertEquals(12 + 14 + 24 + 8, layout.dataOffset);
+        assertEquals(4000, layout.dataLength);
+    }
+
+    @Test
+    public void testFloatAndExtensibleFormats() throws Exception {
+        WavReader.Layout floating = WavReader.read(ByteSource.of(wav(fmt(3, 1, 48000, 32), new byte[8])));
+        assertTrue(floating.floating);
+        assertEquals(4, floating.frameSize());
+
+        // WAVE_FORMAT_EXTENSIBLE names the real format in its sub-format GUID
+        byte[] extensible = new byte[40];
+        System.arraycopy(fmt(0xFFFE, 2, 96000, 16), 0, extensible, 0, 16);
+        extensible[24] = 1;
+        WavReader.Layout pcm = WavReader.read(ByteSource.of(wav(extensible, new byte[8])));
+        assertFalse(pcm.floating);
+        assertEquals(96000, pcm.sampleRate);
+    }
+
+    @Test
+    public void testStreamedDataRunsToTheEnd() throws Exception {
+        byte[] file = wav(fmt(1, 1, 8000, 8), new byte[100]);
+        // A size of 0xFFFFFFFF, as left by a recorder that never went back to fill it in
+        writeIntLE(file, file.length - 100 - 4, -1);
+        assertEquals(100, WavReader.read(ByteSource.of(file)).dataLength);
+    }
+
+    @Test
+    public void testRejectsCompressedAndForeignData() throws Exception {
+        // IMA ADPCM in a WAV wrapper
+        assertNull(WavReader.read(ByteSource.of(wav(fmt(0x11, 1, 22050, 4), new byte[64]))));
+        assertNull(WavReader.read(ByteSource.of(new byte[64])));
+        // A data chunk with no fmt chunk before it
+        assertNull(WavReader.read(ByteSource.of(concat("RIFF".getBytes("US-ASCII"), new byte[4],
+                "WAVE".getBytes("US-ASCII"), riffChunk("data", new byte[16])))));
+    }
+}